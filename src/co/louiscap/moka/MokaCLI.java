@@ -32,19 +32,31 @@ package co.louiscap.moka;
 import co.louiscap.moka.exceptions.InvalidFormatException;
 import co.louiscap.moka.exceptions.InvalidModuleException;
 import co.louiscap.moka.exceptions.LanguageSyntaxException;
+import co.louiscap.moka.exceptions.TranslationException;
 import co.louiscap.moka.lexer.LexFile;
 import co.louiscap.moka.lexer.LexRule;
 import co.louiscap.moka.lexer.Lexer;
-import co.louiscap.moka.lexer.Token;
+import co.louiscap.moka.lexer.LexerPartial;
+import co.louiscap.moka.lexer.TokenBuffer;
 import co.louiscap.moka.modules.Module;
 import co.louiscap.moka.modules.ModuleReader;
 import co.louiscap.moka.parser.LangFile;
 import co.louiscap.moka.parser.LangRule;
 import co.louiscap.moka.parser.Parser;
+import co.louiscap.moka.parser.Precedence;
 import co.louiscap.moka.parser.RuleMerger;
+import co.louiscap.moka.translator.TranslationCache;
+import co.louiscap.moka.translator.Translator;
+import co.louiscap.moka.translator.tree.TreeNode;
+import co.louiscap.moka.utils.data.SymbolTable;
 import co.louiscap.moka.utils.io.Logging;
+import co.louiscap.moka.utils.io.MappedFileReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
@@ -67,6 +79,10 @@ public class MokaCLI {
 
 //    public static final MultiplexedStringPrinter PRINTER = new MultiplexedStringPrinter();
     public static CommandLine PROGOPTS;
+    /**
+     * The default file extension for lexer partials built with the `b` option
+     */
+    public static final String PARTIAL_EXTENSION = ".mokalex";
     /**
      * @param args the command line arguments
      */
@@ -133,41 +149,143 @@ public class MokaCLI {
                         System.exit(105);
                     }
                     
-                    Collection<LexFile> lexFiles = module.getAllLexFiles().values();
-                    Set<LexRule> lexSet = new HashSet<>();
-                    lexFiles.forEach(file -> lexSet.addAll(Arrays.asList(file.getRules())));
-                    
-                    Lexer lexer = new Lexer(lexSet.stream().toArray(LexRule[]::new));
-                    Boolean swspc = (Boolean)module.options.getOrDefault("stripwhitespace", false);
-                    Logging.LOGGER.println("Stripping whitespace: " + swspc, "debug");
-                    lexer.setStripWhitespace(swspc);
+                    Lexer lexer = null;
+                    if(PROGOPTS.hasOption("p") && !PROGOPTS.hasOption("b")) {
+                        File partialFile = new File(PROGOPTS.getOptionValue("p"));
+                        try {
+                            LexerPartial partial = LexerPartial.read(partialFile);
+                            if(!partial.getModuleID().equals(module.getID())) {
+                                Logging.LOGGER.println("Partial " + partialFile.getName() + " was built from module "
+                                        + partial.getModuleID() + ", not " + module.getID(), "err");
+                                System.exit(112);
+                            }
+                            lexer = partial.getLexer();
+                        } catch (InvalidFormatException ex) {
+                            ex.printStackTrace(Logging.LOGGER.getChannel("err"));
+                            System.exit(109);
+                        }
+                        Logging.LOGGER.println("Loaded lexer partial " + partialFile.getName(), "debug");
+                    } else {
+                        lexer = createLexer(module);
+                    }
+                    if(PROGOPTS.hasOption("b")) {
+                        File partialFile = new File(PROGOPTS.getOptionValue("p", module.getID() + PARTIAL_EXTENSION));
+                        new LexerPartial(module.getID(), lexer).write(partialFile);
+                        Logging.LOGGER.println("Built lexer partial " + partialFile.getPath(), "debug");
+                        if(!PROGOPTS.hasOption("s")) {
+                            System.exit(0);
+                        }
+                    }
+                    SymbolTable symbols = lexer.getSymbols();
+                    Logging.LOGGER.println("Stripping whitespace: " + lexer.isStripWhitespace(), "debug");
+                    Logging.LOGGER.println("Lexer engine: " + lexer.getEngine(), "debug");
                     if(PROGOPTS.hasOption("s")) {
                         File srcFile = new File(PROGOPTS.getOptionValue("s"));
                         if(!srcFile.exists()) {
                             Logging.LOGGER.println("Invalid source file provided", "err");
                             System.exit(106);
                         }
-                        Logging.LOGGER.println("Reading in source file " + FilenameUtils.getName(srcFile.getPath()), "debug");
-                        String source = FileUtils.readFileToString(srcFile);
-                        Token[] fileTokens = null;
+                        Charset encoding = null;
                         try {
-                            fileTokens = lexer.process(source, FilenameUtils.getName(srcFile.getPath()));
+                            encoding = Charset.forName(PROGOPTS.getOptionValue("e", "UTF-8"));
+                        } catch (IllegalArgumentException ex) {
+                            Logging.LOGGER.println("Unsupported encoding " + PROGOPTS.getOptionValue("e"), "err");
+                            System.exit(108);
+                        }
+                        Logging.LOGGER.println("Reading in source file " + FilenameUtils.getName(srcFile.getPath())
+                                + " as " + encoding.name(), "debug");
+                        if(lexer.getSyncPattern() != null) {
+                            Logging.LOGGER.println(fitsInMemory(srcFile)
+                                    ? "Lexing in parallel, splitting after " + lexer.getSyncPattern()
+                                    : "Source is too large to hold in memory, lexing it as a stream", "debug");
+                        }
+                        TokenBuffer fileTokens = null;
+                        try {
+                            if(lexer.getSyncPattern() != null && fitsInMemory(srcFile)) {
+                                // Chunks need random access to the whole source
+                                fileTokens = lexer.processParallel(FileUtils.readFileToString(srcFile, encoding),
+                                        FilenameUtils.getName(srcFile.getPath()));
+                            } else {
+                                fileTokens = lexer.stream(new MappedFileReader(srcFile, encoding),
+                                        FilenameUtils.getName(srcFile.getPath())).toBuffer();
+                            }
                         } catch (LanguageSyntaxException ex) {
                             ex.printStackTrace(Logging.LOGGER.getChannel("err"));
                             System.exit(107);
+                        } catch (UncheckedIOException ex) {
+                            throw ex.getCause();
+                        }
+                        if(PROGOPTS.hasOption("v")) {
+                            Logging.LOGGER.println("Created Token stream:", "debug");
+                            Logging.LOGGER.println(fileTokens.toString(), "debug");
                         }
-                        Logging.LOGGER.println("Created Token stream:", "debug");
-                        Logging.LOGGER.println(Arrays.toString(fileTokens), "debug");
                         
                         Collection<LangFile> langSet = module.getAllLangFiles().values();
-                        RuleMerger merger = new RuleMerger();
+                        RuleMerger merger = new RuleMerger(symbols);
                         langSet.stream()
                                 .flatMap(lang -> Arrays.stream(lang.getRules()))
                                 .forEach(rule -> merger.addRule(rule));
                         
-                        Logging.LOGGER.println("Created the following language rules:", "debug");
-                        Logging.LOGGER.println(merger.toString(), "debug");
-                        Parser parser = new Parser(merger.getRules().stream().toArray(LangRule[]::new));
+                        if(PROGOPTS.hasOption("v")) {
+                            Logging.LOGGER.println("Created the following language rules:", "debug");
+                            Logging.LOGGER.println(merger.toString(), "debug");
+                        }
+                        Precedence[] precedences = langSet.stream()
+                                .flatMap(lang -> Arrays.stream(lang.getPrecedences()))
+                                .toArray(Precedence[]::new);
+                        Parser parser = createParser(module, merger, precedences, symbols);
+                        Logging.LOGGER.println("Parser engine: " + parser.getEngine(), "debug");
+                        if(parser.getStatementBoundary() != null) {
+                            Logging.LOGGER.println("Parsing in parallel, splitting after "
+                                    + parser.getStatementBoundary(), "debug");
+                        }
+                        String problems = parser.getAnalysis().describeProblems(symbols);
+                        if(!problems.isEmpty()) {
+                            Logging.LOGGER.println(problems.trim(), "err");
+                        }
+                        TreeNode tree = null;
+                        try {
+                            tree = parser.parseParallel(fileTokens);
+                        } catch (LanguageSyntaxException ex) {
+                            ex.printStackTrace(Logging.LOGGER.getChannel("err"));
+                            System.exit(110);
+                        }
+                        if(PROGOPTS.hasOption("v")) {
+                            Logging.LOGGER.println("Created parse tree:", "debug");
+                            Logging.LOGGER.println(tree.toString(), "debug");
+                        }
+                        
+                        Translator translator = null;
+                        try {
+                            translator = module.getTranslator(symbols);
+                        } catch (InvalidFormatException ex) {
+                            ex.printStackTrace(Logging.LOGGER.getChannel("err"));
+                            System.exit(113);
+                        }
+                        Logging.LOGGER.println("Compiled " + translator.getTable().getTranslations().length
+                                + " translations", "debug");
+                        int cacheSize = (int)Math.min(readLongOption(module, "translatecache", 0),
+                                Integer.MAX_VALUE);
+                        if(cacheSize > 0) {
+                            translator.setCache(new TranslationCache(cacheSize));
+                        }
+                        try {
+                            if(PROGOPTS.hasOption("t")) {
+                                File targetFile = new File(PROGOPTS.getOptionValue("t"));
+                                Logging.LOGGER.println("Writing translation to " + targetFile.getPath(), "debug");
+                                try(Writer out = Files.newBufferedWriter(targetFile.toPath(), encoding)) {
+                                    translator.translate(tree, out);
+                                }
+                            } else {
+                                Logging.LOGGER.println(translator.translate(tree), "out");
+                            }
+                        } catch (TranslationException ex) {
+                            ex.printStackTrace(Logging.LOGGER.getChannel("err"));
+                            System.exit(111);
+                        }
+                        if(translator.getCache() != null) {
+                            Logging.LOGGER.println("Translation cache: " + translator.getCache(), "debug");
+                        }
                     } else {
                         Logging.LOGGER.println("Currently required to provide source file with s argument", "err");
                         System.exit(201);
@@ -182,17 +300,125 @@ public class MokaCLI {
         System.exit(0);
     }
     
+    /**
+     * Whether a source file is small enough to read into a single String for
+     * parallel lexing. Reading a file that way holds its bytes and its
+     * characters at once, and lexing it keeps the characters until the tokens
+     * are parsed, so a file is only read whole when four times its size fits
+     * in the free heap, and it can't have more characters than a String. A
+     * larger file is lexed sequentially through memory mapped segments, which
+     * keeps only a window of it in memory
+     * @param file The source file
+     * @return True if the file should be lexed in parallel
+     */
+    private static boolean fitsInMemory(File file) {
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory();
+        return file.length() < Integer.MAX_VALUE && file.length() * 4 <= free;
+    }
+    
+    /**
+     * Read a module's lexical files and options into a new Lexer
+     * @param module The module to read
+     * @return A Lexer for the module's language
+     */
+    private static Lexer createLexer(Module module) {
+        Collection<LexFile> lexFiles = module.getAllLexFiles().values();
+        Set<LexRule> lexSet = new HashSet<>();
+        lexFiles.forEach(file -> lexSet.addAll(Arrays.asList(file.getRules())));
+        
+        SymbolTable symbols = module.getSymbols();
+        Logging.LOGGER.println("Interned " + symbols.size() + " symbols", "debug");
+        Lexer lexer = new Lexer(lexSet.stream().sorted().toArray(LexRule[]::new), symbols);
+        Boolean swspc = (Boolean)module.options.getOrDefault("stripwhitespace", false);
+        lexer.setStripWhitespace(swspc);
+        String engine = module.options.getOrDefault("lexengine", "regex").toString();
+        try {
+            lexer.setEngine(Lexer.Engine.valueOf(engine.toUpperCase()));
+        } catch (IllegalArgumentException ex) {
+            Logging.LOGGER.println("No such lexer engine " + engine + ", using regex", "err");
+        }
+        Object sync = module.options.get("lexsync");
+        if(sync != null) {
+            lexer.setSyncPattern(sync.toString());
+            long chunkSize = readLongOption(module, "lexchunksize", Lexer.DEFAULT_CHUNK_SIZE);
+            lexer.setChunkSize((int)Math.min(chunkSize, Integer.MAX_VALUE));
+        }
+        return lexer;
+    }
+    
+    /**
+     * Create a Parser for a module's merged language rules, using the parser
+     * options from the module
+     * @param module The module that the rules were read from
+     * @param merger The merged language rules of the module
+     * @param precedences The operator declarations of the module, from
+     * loosest binding to tightest
+     * @param symbols The table that the module's symbols were interned in
+     * @return A Parser for the module's language
+     */
+    private static Parser createParser(Module module, RuleMerger merger, Precedence[] precedences,
+            SymbolTable symbols) {
+        Parser parser = new Parser(merger.getRules().stream().toArray(LangRule[]::new), precedences, symbols);
+        String engine = module.options.getOrDefault("parseengine", "gll").toString();
+        try {
+            parser.setEngine(Parser.Engine.valueOf(engine.toUpperCase()));
+        } catch (IllegalArgumentException ex) {
+            Logging.LOGGER.println("No such parser engine " + engine + ", using gll", "err");
+        }
+        long megabytes = readLongOption(module, "packratmemory", Parser.DEFAULT_MEMO_LIMIT >> 20);
+        try {
+            parser.setMemoLimit(Math.multiplyExact(megabytes, 1L << 20));
+        } catch (ArithmeticException ex) {
+            Logging.LOGGER.println("Option packratmemory is too large, using "
+                    + (Parser.DEFAULT_MEMO_LIMIT >> 20), "err");
+        }
+        Object boundary = module.options.get("parseboundary");
+        if(boundary != null) {
+            parser.setStatementBoundary(boundary.toString());
+        }
+        return parser;
+    }
+    
+    /**
+     * Read a whole number option from a module. Options that are missing use
+     * the fallback; those that aren't a non negative whole number are logged
+     * as errors and use the fallback too
+     * @param module The module to read the option from
+     * @param option The name of the option
+     * @param fallback The value to use if the option can't be read
+     * @return The value of the option, or the fallback
+     */
+    private static long readLongOption(Module module, String option, long fallback) {
+        Object value = module.options.get(option);
+        if(value == null) {
+            return fallback;
+        }
+        try {
+            long parsed = Long.parseLong(value.toString().trim());
+            if(parsed >= 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException ex) {
+            // Reported below
+        }
+        Logging.LOGGER.println("Option " + option + " should be a whole number, not " + value
+                + ", using " + fallback, "err");
+        return fallback;
+    }
+    
     private static Options setupCommandLine() {
         Options options = new Options();
         options.addOption("v", false, "Verbose; Print debug info to stdout");
-        options.addOption("t", "target", true, "~Target output file for compiling"
+        options.addOption("t", "target", true, "Target output file for compiling "
                 + "the source code. Requires `source` to be set.");
-        options.addOption("p", "partial", true, "~Specify the precompiled partial"
-                + " to be used for parsing the source program");
-        options.addOption("b", false, "~Build a Moka partial that includes "
-                + "configurations up to and including the segment specified with "
-                + "the `mode` option, or a full partial if no `mode` is specified.");
-        options.addOption("e", true, "~File encoding. Defaults to UTF-8");
+        options.addOption("p", "partial", true, "Specify the precompiled lexer partial"
+                + " to be used for lexing the source program, instead of the "
+                + "module's lexical files");
+        options.addOption("b", false, "Build a lexer partial from the input module, "
+                + "written to the file given by `partial`, or to <module name>"
+                + PARTIAL_EXTENSION + " if no `partial` is specified.");
+        options.addOption("e", true, "Source file encoding. Defaults to UTF-8");
         options.addOption("h", "help", false, "Print out this help text");
         options.addOption("m", "mode", true, "Set the mode; only run a "
                 + "sub-section of Moka. "
@@ -0,0 +1,50 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.exceptions;
+
+/**
+ * Wraps a {@link LanguageSyntaxException} so that it can be thrown through
+ * interfaces that don't allow checked exceptions, such as
+ * {@link java.util.Iterator} or {@link java.util.stream.Stream}. Calling code
+ * should catch this and rethrow or report the wrapped exception.
+ * @author Louis Capitanchik
+ */
+public class UncheckedSyntaxException extends RuntimeException {
+    
+    public UncheckedSyntaxException(LanguageSyntaxException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized LanguageSyntaxException getCause() {
+        return (LanguageSyntaxException) super.getCause();
+    }
+    
+}
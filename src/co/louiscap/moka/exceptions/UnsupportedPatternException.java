@@ -0,0 +1,61 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.exceptions;
+
+/**
+ * Thrown when a regular expression makes use of a feature that cannot be
+ * represented by a finite automaton, such as backreferences or lookaround.
+ * Code that can fall back to {@link java.util.regex.Pattern} should catch this
+ * and do so, rather than treating it as an error in the module
+ * @author Louis Capitanchik
+ */
+public class UnsupportedPatternException extends Exception {
+
+    protected String pattern;
+    
+    public UnsupportedPatternException(String pattern, String reason) {
+        super("[" + pattern + "] " + reason);
+        this.pattern = pattern;
+    }
+
+    public UnsupportedPatternException(String pattern, String reason, Throwable cause) {
+        super("[" + pattern + "] " + reason, cause);
+        this.pattern = pattern;
+    }
+    
+    /**
+     * Gets the pattern that could not be compiled into an automaton
+     * @return The source of the offending regular expression
+     */
+    public String getPattern() {
+        return pattern;
+    }
+    
+}
@@ -0,0 +1,167 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer;
+
+import co.louiscap.moka.exceptions.UnsupportedPatternException;
+import co.louiscap.moka.lexer.dfa.CharRanges;
+import co.louiscap.moka.lexer.dfa.PatternParser;
+import co.louiscap.moka.utils.io.BinaryIO;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Indexes a set of LexRules by the characters that a match of each rule can
+ * start with, so that only the rules that could possibly match at a position
+ * need to be tried there. ASCII characters are looked up in a table with one
+ * entry per character; every other character shares a single fallback list of
+ * the rules that can start with something outside of ASCII. Candidates are
+ * always listed in the same order as the rules they were built from.
+ * <br><br>
+ * Rules whose first characters can't be worked out, such as those using
+ * inline flags, are a candidate for every character.
+ * @author Louis Capitanchik
+ */
+final class DispatchTable {
+    
+    static final int ASCII_SIZE = 128;
+    
+    private final int[][] ascii;
+    private final int[] fallback;
+    
+    /**
+     * @param rules Every rule known to the lexer
+     * @param indexes The indexes of the rules to include, in the order that
+     * they should be tried
+     */
+    DispatchTable(LexRule[] rules, int[] indexes) {
+        ArrayList<ArrayList<Integer>> buckets = new ArrayList<>(ASCII_SIZE);
+        for(int c = 0; c < ASCII_SIZE; c += 1) {
+            buckets.add(new ArrayList<>());
+        }
+        ArrayList<Integer> other = new ArrayList<>();
+        for(int r : indexes) {
+            CharRanges first = firstChars(rules[r]);
+            for(int c = 0; c < ASCII_SIZE; c += 1) {
+                if(first.contains((char) c)) {
+                    buckets.get(c).add(r);
+                }
+            }
+            if(!first.isEmpty() && first.upperBound(first.rangeCount() - 1) >= ASCII_SIZE) {
+                other.add(r);
+            }
+        }
+        ascii = new int[ASCII_SIZE][];
+        for(int c = 0; c < ASCII_SIZE; c += 1) {
+            ascii[c] = toArray(buckets.get(c));
+        }
+        share(ascii);
+        fallback = toArray(other);
+    }
+    
+    private DispatchTable(int[][] ascii, int[] fallback) {
+        this.ascii = ascii;
+        this.fallback = fallback;
+    }
+    
+    /**
+     * @param c The character at the current position of the source
+     * @return The indexes of the rules that could match starting with c
+     */
+    int[] candidates(char c) {
+        return c < ASCII_SIZE ? ascii[c] : fallback;
+    }
+    
+    /**
+     * Write the candidate lists in the format read by
+     * {@link DispatchTable#read(ByteBuffer, int)}
+     */
+    void write(DataOutputStream out) throws IOException {
+        for(int[] candidates : ascii) {
+            BinaryIO.writeInts(out, candidates);
+        }
+        BinaryIO.writeInts(out, fallback);
+    }
+    
+    /**
+     * @param rules The number of rules that the candidates index
+     * @throws IllegalArgumentException Thrown if a candidate isn't one of the
+     * rules
+     */
+    static DispatchTable read(ByteBuffer in, int rules) {
+        int[][] ascii = new int[ASCII_SIZE][];
+        for(int c = 0; c < ASCII_SIZE; c += 1) {
+            ascii[c] = checked(BinaryIO.readInts(in), rules);
+        }
+        share(ascii);
+        return new DispatchTable(ascii, checked(BinaryIO.readInts(in), rules));
+    }
+    
+    private static int[] checked(int[] candidates, int rules) {
+        for(int r : candidates) {
+            if(r < 0 || r >= rules) {
+                throw new IllegalArgumentException("Candidate " + r + " is not one of the " + rules + " rules");
+            }
+        }
+        return candidates;
+    }
+    
+    /**
+     * Most characters share a candidate list, so share the arrays too
+     */
+    private static void share(int[][] ascii) {
+        for(int c = 0; c < ascii.length; c += 1) {
+            for(int prev = 0; prev < c; prev += 1) {
+                if(Arrays.equals(ascii[prev], ascii[c])) {
+                    ascii[c] = ascii[prev];
+                    break;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Work out the set of characters that a non-empty match of a rule could
+     * start with
+     */
+    static CharRanges firstChars(LexRule rule) {
+        try {
+            return PatternParser.parseLenient(rule.getPattern()).first();
+        } catch (UnsupportedPatternException ex) {
+            return CharRanges.ALL;
+        }
+    }
+    
+    private static int[] toArray(ArrayList<Integer> list) {
+        return list.stream().mapToInt(i -> i).toArray();
+    }
+}
@@ -45,6 +45,12 @@ public class LexFile implements ModuleFile {
     
     private final LinkedList<LexRule> rules;
     
+    /**
+     * @param moduleID The module the file belongs to
+     * @param source The rules of the file, one per line
+     * @throws java.util.regex.PatternSyntaxException Thrown if one of the
+     * rules' patterns isn't a valid regular expression
+     */
     public LexFile (String moduleID, String source) {
         this.moduleID = moduleID;
         this.source = source;
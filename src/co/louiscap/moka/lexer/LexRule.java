@@ -73,12 +73,26 @@ public class LexRule implements Comparable<LexRule> {
         return this.outToken;
     }
 
+    /**
+     * Gets the compiled regular expression for this rule, which is compiled
+     * when the rule is created
+     * @return The compiled form of this rule's pattern
+     */
     public Pattern getRegex() {
         return this.regex;
     }
     
+    /**
+     * Gets the source of the regular expression used by this rule, including
+     * the leading anchor that is added to every rule
+     * @return The pattern this rule was created with
+     */
+    public String getPattern() {
+        return this.pattern;
+    }
+    
     public Token apply(String src, Location currentLocation) {
-        Matcher match = regex.matcher(src);
+        Matcher match = this.regex.matcher(src);
         if (!match.find()) {
             return null;
         } else {
@@ -98,7 +112,7 @@ public class LexRule implements Comparable<LexRule> {
         sb.append(" : ");
         sb.append(outToken);
         sb.append(" : ");
-        sb.append(regex.toString());
+        sb.append(pattern);
         
         return sb.toString();
     }
@@ -30,15 +30,23 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package co.louiscap.moka.lexer;
 
 import co.louiscap.moka.exceptions.LanguageSyntaxException;
-import co.louiscap.moka.utils.data.Location;
+import co.louiscap.moka.exceptions.UnsupportedPatternException;
+import co.louiscap.moka.lexer.dfa.Dfa;
+import co.louiscap.moka.lexer.dfa.DfaBuilder;
+import co.louiscap.moka.utils.data.SymbolTable;
+import co.louiscap.moka.utils.io.CharWindow;
 import co.louiscap.moka.utils.io.Logging;
 import co.louiscap.moka.utils.number.IntUtils;
-import co.louiscap.moka.utils.string.StringChunker;
-import co.louiscap.moka.utils.string.StringUtils;
+import co.louiscap.moka.utils.string.LineIndex;
+import co.louiscap.moka.utils.string.TextEdit;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.UUID;
-import java.util.regex.MatchResult;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 /**
  * The Lexer is used to split a given source String into a sequence of tokens
@@ -46,8 +54,41 @@ import java.util.regex.MatchResult;
  * @author Louis Capitanchik
  */
 public class Lexer {
+    
+    /**
+     * The default minimum number of characters in each chunk of a source that
+     * is lexed in parallel
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+    
+    /**
+     * The strategies that a Lexer can use to match rules against the source
+     */
+    public enum Engine {
+        /**
+         * Try the regular expression of each rule that could start with the
+         * current character in order, and use the first one that matches
+         */
+        REGEX,
+        /**
+         * Compile every rule into one combined automaton and take the longest
+         * match, using rule order to break ties. Rules that can't be expressed
+         * as an automaton are still tried with their regular expression
+         */
+        DFA
+    }
+    
     private LexRule[] rules;
+    private int[] ruleTypes;
+    private SymbolTable symbols;
     private boolean stripWhitespace = false;
+    private Pattern syncPattern = null;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private Engine engine = Engine.REGEX;
+    
+    private final DispatchTable dispatch;
+    private Dfa automaton;
+    private DispatchTable fallbackDispatch;
     
     /**
      * Create a new Lexer with the specified rule set. Rules should be in the
@@ -57,7 +98,48 @@ public class Lexer {
      * tokens out of a provided source string
      */
     public Lexer(LexRule[] rules) {
+        this(rules, new SymbolTable());
+    }
+    
+    /**
+     * Create a new Lexer with the specified rule set, whose token identifiers
+     * are interned in the given SymbolTable. Rules should be in the order by
+     * which they should be tried against the source program, but this ordering
+     * is left up to the calling code.
+     * @param rules An array of LexRule objects that will be used to create
+     * tokens out of a provided source string
+     * @param symbols The table used to give each token type an id, usually the
+     * one belonging to the Module that the rules were loaded from
+     */
+    public Lexer(LexRule[] rules, SymbolTable symbols) {
         this.rules = rules;
+        this.symbols = symbols;
+        this.ruleTypes = new int[rules.length];
+        for(int r = 0; r < rules.length; r += 1) {
+            ruleTypes[r] = symbols.intern(rules[r].getOutToken());
+        }
+        this.dispatch = new DispatchTable(rules, IntStream.range(0, rules.length).toArray());
+    }
+    
+    /**
+     * Create a Lexer from tables that have already been built, such as those
+     * loaded from a {@link LexerPartial}
+     * @param automaton The combined automaton for the rule set, or null if it
+     * hasn't been built
+     * @param fallbackDispatch The index of the rules that the automaton can't
+     * match, or null if there is no automaton
+     */
+    Lexer(LexRule[] rules, SymbolTable symbols, DispatchTable dispatch, Dfa automaton,
+            DispatchTable fallbackDispatch) {
+        this.rules = rules;
+        this.symbols = symbols;
+        this.ruleTypes = new int[rules.length];
+        for(int r = 0; r < rules.length; r += 1) {
+            ruleTypes[r] = symbols.intern(rules[r].getOutToken());
+        }
+        this.dispatch = dispatch;
+        this.automaton = automaton;
+        this.fallbackDispatch = fallbackDispatch;
     }
     
     /**
@@ -97,47 +179,272 @@ public class Lexer {
      * string that can't be parsed
      */
     public Token[] process(String src, String name) throws LanguageSyntaxException {
-        if(this.stripWhitespace) {
-            src = src.trim();
+        return stream(src, name).toArray();
+    }
+    
+    /**
+     * Creates a lazily evaluated stream of the tokens in a source program that
+     * is already held in memory. Tokens are identical to those produced by
+     * {@link Lexer#process(String, String)}, but are only lexed as they are
+     * read from the stream.
+     * @param src The source program to be tokenised
+     * @param name The name of the source program being tokenised
+     * @return A TokenStream positioned at the start of the source
+     */
+    public TokenStream stream(CharSequence src, String name) {
+        return stream(src, name, 0, null);
+    }
+    
+    /**
+     * Tokenises a source program that is already held in memory, using every
+     * core of the common ForkJoinPool if a synchronisation pattern has been
+     * set. See {@link Lexer#processParallel(CharSequence, String, ForkJoinPool)}
+     * @param src The source program to be tokenised
+     * @param name The name of the source program being tokenised
+     * @return The tokens of the source program
+     * @throws LanguageSyntaxException Thrown if there is an element of the source
+     * string that can't be parsed
+     */
+    public TokenBuffer processParallel(CharSequence src, String name) throws LanguageSyntaxException {
+        return processParallel(src, name, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Tokenises a source program that is already held in memory by splitting
+     * it into chunks just after matches of the synchronisation pattern, and
+     * lexing the chunks concurrently. The result is always identical to that
+     * of {@link Lexer#process(String, String)}; sources that are too small to
+     * split, or a Lexer without a synchronisation pattern, are simply lexed
+     * sequentially.
+     * @param src The source program to be tokenised
+     * @param name The name of the source program being tokenised
+     * @param pool The pool to lex chunks on
+     * @return The tokens of the source program
+     * @throws LanguageSyntaxException Thrown if there is an element of the source
+     * string that can't be parsed
+     */
+    public TokenBuffer processParallel(CharSequence src, String name, ForkJoinPool pool) throws LanguageSyntaxException {
+        if(syncPattern == null || src.length() < 2 * chunkSize) {
+            return stream(src, name).toBuffer();
         }
-        final StringChunker sc = new StringChunker(src);
-        final ArrayList<Token> tokens = new ArrayList<>();
-        final int[] lineIndexes = StringUtils.getNewlineIndexes(src);
-        MatchResult latest;
-        Token t;
-        LexRule curRule;
-        Location curLocation;
-        int c, indexOfLine;
-        while(!sc.eof()) {
-            c = 0;
-            t = null;
-            indexOfLine = IntUtils.getClosestLowerBoundIndex(sc.getPosition(), lineIndexes);
-            if(indexOfLine == -1) {
-                curLocation = new Location(name, 1, sc.getPosition());
-            } else {
-                curLocation = new Location(name, indexOfLine+2, sc.getPosition() - lineIndexes[indexOfLine]);
-            }
-            while(t == null && c < rules.length) {
-                curRule = rules[c];
-                latest = sc.chunkWith(curRule.getRegex());
-                if(latest != null && !latest.group().equals("")) {
-                    t = new Token(curRule.getOutToken(), latest.groupCount() > 0 ? latest.group(1) : latest.group(), curLocation);
-                    tokens.add(t);
-                    c = rules.length;
-                }
-                c += 1;
+        return new ParallelLexer(this, src, name, pool).lex(syncPattern, chunkSize);
+    }
+    
+    /**
+     * Update the tokens of an in-memory source after an edit, lexing as
+     * little of the new source as possible. Lexing starts again from the
+     * token before the edit, since a token that ended just before the edit
+     * might now run into it, and stops as soon as a token ends exactly where
+     * one of the old tokens after the edit started; the old tokens from there
+     * on are reused, moved along by the size of the edit. The result is
+     * always identical to that of lexing the whole of the new source.
+     * <br><br>
+     * Only the lexing is limited to the area of the edit. Applying the edit
+     * copies the whole source, and the reused tokens are copied into the new
+     * buffer and moved one by one, so an edit still costs time in proportion
+     * to the length of the source; it is just far less than lexing it all.
+     * @param previous The tokens of the source before the edit, as produced by
+     * any of the in-memory lexing methods of a Lexer with the same rules
+     * @param edit The change made to the source
+     * @return The tokens of the edited source. {@link TokenBuffer#getEdit()}
+     * describes which tokens changed, leaving out any that were lexed again
+     * but came out the same
+     * @throws LanguageSyntaxException Thrown if there is an element of the
+     * edited source that can't be parsed
+     * @throws IllegalArgumentException Thrown if the previous tokens were
+     * read from a stream, so their source isn't available
+     */
+    public TokenBuffer relex(TokenBuffer previous, TextEdit edit) throws LanguageSyntaxException {
+        if(previous.ownsText()) {
+            throw new IllegalArgumentException("Only tokens of an in-memory source can be relexed");
+        }
+        String src = edit.apply(previous.getText());
+        String name = previous.getName();
+        int size = previous.size();
+        if(size == 0 || edit.offset <= previous.offset(0)) {
+            // The start of the first line may have moved
+            TokenBuffer tokens = stream(src, name).toBuffer();
+            tokens.setEdit(new TokenEdit(0, tokens.size(), size));
+            return tokens;
+        }
+        // The token before the last one that starts before the edit
+        int first = Math.max(0, IntUtils.getClosestLowerBoundIndex(edit.offset - 1, previous.offsets(), size) - 1);
+        int start = previous.offset(first);
+        int column = previous.column(first);
+        LineIndex lines = new LineIndex(start - column, previous.line(first));
+        lines.extend(src, start);
+        
+        TokenBuffer tokens = new TokenBuffer(symbols, src, name);
+        tokens.append(previous, 0, first);
+        TokenStream stream = stream(src, name, start, lines);
+        int resume = size;
+        while(stream.next(tokens)) {
+            int position = stream.getPosition();
+            if(position < edit.insertedEnd()) {
+                continue;
             }
-            if(t == null) {
-                throw new LanguageSyntaxException("Invalid syntax; no matching token", curLocation);
+            int old = Arrays.binarySearch(previous.offsets(), first, size, position - edit.delta());
+            if(old >= 0) {
+                resume = old;
+                break;
             }
-            if(this.stripWhitespace) {
-                sc.eatWhitespace();
+        }
+        int relexed = tokens.size();
+        // Tokens lexed again before the edit usually come out the same
+        int changed = first;
+        while(changed < relexed && changed < resume && previous.type(changed) == tokens.type(changed)
+                && previous.offset(changed) == tokens.offset(changed)
+                && previous.contentEnd(changed) == tokens.contentEnd(changed)) {
+            changed += 1;
+        }
+        if(resume < size) {
+            int position = stream.getPosition();
+            lines.extend(src, position + 1);
+            int line = lines.lineOf(position);
+            int oldLine = previous.line(resume);
+            tokens.append(previous, resume, size);
+            tokens.shift(relexed, edit.delta(), line - oldLine, oldLine,
+                    position - lines.lineStart(line) - previous.column(resume));
+        }
+        tokens.setEdit(new TokenEdit(changed, relexed, resume - changed));
+        return tokens;
+    }
+    
+    /**
+     * Creates a lazily evaluated stream of the tokens read from a Reader. Only
+     * a window of the input around the current token is held in memory, so
+     * sources of any size can be tokenised as long as each token fits in
+     * memory. The Reader is closed once it has been read to the end.
+     * @param src A Reader over the source program to be tokenised
+     * @param name The name of the source program being tokenised
+     * @return A TokenStream positioned at the start of the source
+     */
+    public TokenStream stream(Reader src, String name) {
+        return stream(new CharWindow(src), name);
+    }
+    
+    /**
+     * Creates a stream starting part way through a source, whose tokens are
+     * located with an index of the whole source
+     * @param start The offset to start lexing from
+     * @param lines An index of the whole source, or null to start from the
+     * beginning of the source and index it as it is read
+     */
+    TokenStream stream(CharSequence src, String name, int start, LineIndex lines) {
+        boolean useAutomaton = this.engine == Engine.DFA && compileAutomaton();
+        return new TokenStream(rules, ruleTypes, symbols,
+                useAutomaton ? automaton : null,
+                useAutomaton ? fallbackDispatch : dispatch,
+                stripWhitespace, src, name, start, lines);
+    }
+    
+    /**
+     * Builds the combined automaton for the current rule set if it hasn't
+     * already been built
+     * @return Whether or not an automaton is available. If the rule set
+     * produces an automaton that is too large, this Lexer reverts to the
+     * {@link Engine#REGEX} engine
+     */
+    boolean compileAutomaton() {
+        if(automaton != null) {
+            return true;
+        }
+        DfaBuilder builder = new DfaBuilder();
+        ArrayList<Integer> fallback = new ArrayList<>();
+        for(int r = 0; r < rules.length; r += 1) {
+            try {
+                builder.add(r, rules[r].getPattern());
+            } catch (UnsupportedPatternException ex) {
+                Logging.LOGGER.println("Lexing " + rules[r].getOutToken() + " with regex engine: " + ex.getMessage(), "debug");
+                fallback.add(r);
             }
         }
-        return tokens.stream().toArray(i -> new Token[i]);
+        try {
+            automaton = builder.build();
+        } catch (UnsupportedPatternException ex) {
+            Logging.LOGGER.println("Falling back to regex lexer: " + ex.getMessage(), "debug");
+            engine = Engine.REGEX;
+            return false;
+        }
+        fallbackDispatch = new DispatchTable(rules, fallback.stream().mapToInt(i -> i).toArray());
+        Logging.LOGGER.println("Compiled lexer automaton with " + automaton.stateCount() + " states", "debug");
+        return true;
     }
     
     public void setStripWhitespace(boolean sw) {
         this.stripWhitespace = sw;
     }
+    
+    public boolean isStripWhitespace() {
+        return stripWhitespace;
+    }
+    
+    /**
+     * @return The source of the synchronisation pattern, or null if parallel
+     * lexing is disabled
+     */
+    public String getSyncPattern() {
+        return syncPattern == null ? null : syncPattern.pattern();
+    }
+    
+    public int getChunkSize() {
+        return chunkSize;
+    }
+    
+    LexRule[] getRules() {
+        return rules;
+    }
+    
+    DispatchTable getDispatch() {
+        return dispatch;
+    }
+    
+    Dfa getAutomaton() {
+        return automaton;
+    }
+    
+    DispatchTable getFallbackDispatch() {
+        return fallbackDispatch;
+    }
+    
+    /**
+     * Set the pattern used to find places where a source can be split for
+     * {@link Lexer#processParallel(CharSequence, String, ForkJoinPool)}. A
+     * chunk starts just after a match of the pattern, and just after any
+     * whitespace that follows it if whitespace is stripped. Splitting is
+     * fastest when no token can contain a match of the pattern, such as a
+     * statement terminator. Parallel lexing needs the whole source in memory,
+     * so the command line only uses it for sources that fit comfortably in the
+     * heap, and streams larger ones from a memory mapped file
+     * @param regex The synchronisation pattern, or null to always lex
+     * sequentially
+     */
+    public void setSyncPattern(String regex) {
+        this.syncPattern = regex == null ? null : Pattern.compile(regex);
+    }
+    
+    /**
+     * @param chars The minimum number of characters in each chunk of a source
+     * that is lexed in parallel
+     */
+    public void setChunkSize(int chars) {
+        this.chunkSize = Math.max(1, chars);
+    }
+    
+    /**
+     * Select the strategy used to match rules against the source. The
+     * {@link Engine#DFA} engine is compiled the first time it is used
+     * @param engine The engine to use for subsequent calls to process
+     */
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+    
+    public Engine getEngine() {
+        return engine;
+    }
+    
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
 }
@@ -0,0 +1,191 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer;
+
+import co.louiscap.moka.exceptions.InvalidFormatException;
+import co.louiscap.moka.lexer.dfa.Dfa;
+import co.louiscap.moka.utils.data.SymbolTable;
+import co.louiscap.moka.utils.io.BinaryIO;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A compiled Lexer saved to disk, so that later runs using the same module can
+ * skip reading and compiling its lexical files. A partial holds everything a
+ * Lexer needs: its options, the module's SymbolTable, the rules themselves,
+ * the first character dispatch index and, for the {@link Lexer.Engine#DFA}
+ * engine, the combined automaton. Rule patterns are compiled into regular
+ * expressions as the partial is read, so a malformed pattern rejects the
+ * partial.
+ * <br><br>
+ * Partials are read with a single memory mapped read of the whole file. The
+ * format starts with {@link LexerPartial#MAGIC} and
+ * {@link LexerPartial#VERSION}; partials written by any other version are
+ * rejected rather than guessed at.
+ * @author Louis Capitanchik
+ */
+public class LexerPartial {
+    
+    /**
+     * The first four bytes of every lexer partial; "MKLX"
+     */
+    public static final int MAGIC = 0x4D4B4C58;
+    public static final int VERSION = 2;
+    
+    private final String moduleID;
+    private final Lexer lexer;
+    
+    /**
+     * @param moduleID The ID of the module that the lexer was built from
+     * @param lexer The lexer to be saved
+     */
+    public LexerPartial(String moduleID, Lexer lexer) {
+        this.moduleID = moduleID;
+        this.lexer = lexer;
+    }
+    
+    public String getModuleID() {
+        return moduleID;
+    }
+    
+    public Lexer getLexer() {
+        return lexer;
+    }
+    
+    /**
+     * Save this partial, compiling the lexer's automaton first if it uses one
+     * @param file The file to write the partial to
+     * @throws IOException Thrown if the file can't be written
+     */
+    public void write(File file) throws IOException {
+        if(lexer.getEngine() == Lexer.Engine.DFA) {
+            lexer.compileAutomaton();
+        }
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            BinaryIO.writeString(out, moduleID);
+            
+            out.writeBoolean(lexer.isStripWhitespace());
+            BinaryIO.writeString(out, lexer.getEngine().name());
+            out.writeBoolean(lexer.getSyncPattern() != null);
+            if(lexer.getSyncPattern() != null) {
+                BinaryIO.writeString(out, lexer.getSyncPattern());
+            }
+            out.writeInt(lexer.getChunkSize());
+            
+            lexer.getSymbols().write(out);
+            LexRule[] rules = lexer.getRules();
+            out.writeInt(rules.length);
+            for(LexRule rule : rules) {
+                out.writeInt(rule.getPriority());
+                BinaryIO.writeString(out, rule.getOutToken());
+                BinaryIO.writeString(out, rule.getPattern());
+            }
+            lexer.getDispatch().write(out);
+            
+            Dfa automaton = lexer.getEngine() == Lexer.Engine.DFA ? lexer.getAutomaton() : null;
+            out.writeBoolean(automaton != null);
+            if(automaton != null) {
+                automaton.write(out);
+                lexer.getFallbackDispatch().write(out);
+            }
+        }
+    }
+    
+    /**
+     * Load a partial written by {@link LexerPartial#write(File)}
+     * @param file The partial to load
+     * @return The loaded partial, holding a Lexer that is ready to use
+     * @throws IOException Thrown if the file can't be read
+     * @throws InvalidFormatException Thrown if the file isn't a lexer partial,
+     * was written by a different version of Moka, or is truncated
+     */
+    public static LexerPartial read(File file) throws IOException, InvalidFormatException {
+        MappedByteBuffer in;
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if(in.remaining() < 8 || in.getInt() != MAGIC) {
+                throw new InvalidFormatException(file.getName(), "Not a Moka lexer partial");
+            }
+            int version = in.getInt();
+            if(version != VERSION) {
+                throw new InvalidFormatException(file.getName(), "Lexer partial is version "
+                        + version + ", expected version " + VERSION + "; rebuild it with -b");
+            }
+            String moduleID = BinaryIO.readString(in);
+            
+            boolean stripWhitespace = in.get() != 0;
+            Lexer.Engine engine = Lexer.Engine.valueOf(BinaryIO.readString(in));
+            String sync = in.get() != 0 ? BinaryIO.readString(in) : null;
+            int chunkSize = in.getInt();
+            
+            SymbolTable symbols = SymbolTable.read(in);
+            LexRule[] rules = new LexRule[in.getInt()];
+            for(int r = 0; r < rules.length; r += 1) {
+                int priority = in.getInt();
+                String outToken = BinaryIO.readString(in);
+                rules[r] = new LexRule(priority, outToken, BinaryIO.readString(in));
+            }
+            DispatchTable dispatch = DispatchTable.read(in, rules.length);
+            
+            Dfa automaton = null;
+            DispatchTable fallbackDispatch = null;
+            if(in.get() != 0) {
+                automaton = Dfa.read(in, rules.length);
+                fallbackDispatch = DispatchTable.read(in, rules.length);
+            }
+            
+            Lexer lexer = new Lexer(rules, symbols, dispatch, automaton, fallbackDispatch);
+            lexer.setStripWhitespace(stripWhitespace);
+            lexer.setEngine(engine);
+            lexer.setSyncPattern(sync);
+            lexer.setChunkSize(chunkSize);
+            return new LexerPartial(moduleID, lexer);
+        } catch (BufferUnderflowException ex) {
+            throw new InvalidFormatException(file.getName(), "Lexer partial is truncated", ex);
+        } catch (PatternSyntaxException ex) {
+            throw new InvalidFormatException(file.getName(), "Lexer partial has an invalid pattern "
+                    + ex.getPattern(), ex);
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidFormatException(file.getName(), "Lexer partial is corrupt", ex);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer;
+
+import co.louiscap.moka.exceptions.LanguageSyntaxException;
+import co.louiscap.moka.utils.string.LineIndex;
+import co.louiscap.moka.utils.string.StringUtils;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Lexes an in-memory source by splitting it into chunks at synchronisation
+ * points, lexing the chunks concurrently and joining the results.
+ * <br><br>
+ * Each chunk is lexed by its own TokenStream over the whole source, so rules
+ * see exactly the same input as they would when lexing sequentially, and
+ * tokens are located through a single LineIndex of the whole source. Since
+ * the only state a TokenStream carries from one token to the next is its
+ * position, a chunk's tokens are the same as the sequential tokens whenever
+ * the previous chunk stops exactly where the next one starts. When a token
+ * runs across a synchronisation point, the previous chunk's stream simply
+ * carries on past it until it lines up with a later chunk, so the result is
+ * always identical to lexing sequentially; a poorly chosen synchronisation
+ * pattern only costs speed.
+ * @author Louis Capitanchik
+ */
+final class ParallelLexer {
+    
+    private final Lexer lexer;
+    private final CharSequence source;
+    private final String name;
+    private final ForkJoinPool pool;
+    
+    private int[] starts;
+    private LineIndex lines;
+    
+    ParallelLexer(Lexer lexer, CharSequence source, String name, ForkJoinPool pool) {
+        this.lexer = lexer;
+        this.source = source;
+        this.name = name;
+        this.pool = pool;
+    }
+    
+    /**
+     * @param sync The pattern that matches just before a safe place to split
+     * the source
+     * @param chunkSize The minimum number of characters in each chunk
+     * @return The tokens of the whole source
+     * @throws LanguageSyntaxException Thrown at the same point that lexing
+     * sequentially would throw
+     */
+    TokenBuffer lex(Pattern sync, int chunkSize) throws LanguageSyntaxException {
+        int origin = 0;
+        if(lexer.isStripWhitespace()) {
+            // Equivalent to String.trim() on the start of the input
+            while(origin < source.length() && source.charAt(origin) <= ' ') {
+                origin += 1;
+            }
+        }
+        split(origin, sync, chunkSize);
+        lines = new LineIndex(origin);
+        lines.extend(source, source.length());
+        
+        ArrayList<ForkJoinTask<Chunk>> tasks = new ArrayList<>(starts.length);
+        for(int k = 0; k < starts.length; k += 1) {
+            // Streams are created up front, as the lexer may still need to
+            // compile its automaton
+            TokenStream stream = lexer.stream(source, name, starts[k], lines);
+            stream.setLimit(k + 1 < starts.length ? starts[k + 1] : Integer.MAX_VALUE);
+            tasks.add(pool.submit(() -> lexChunk(stream)));
+        }
+        try {
+            return join(tasks);
+        } finally {
+            tasks.forEach(task -> task.cancel(false));
+        }
+    }
+    
+    /**
+     * Choose chunk starts spread evenly through the source, each just after a
+     * match of the synchronisation pattern
+     */
+    private void split(int origin, Pattern sync, int chunkSize) {
+        int length = source.length();
+        int chunks = Math.max(1, Math.min(pool.getParallelism() * 4, (length - origin) / chunkSize));
+        ArrayList<Integer> found = new ArrayList<>(chunks);
+        found.add(origin);
+        Matcher m = sync.matcher(source);
+        for(int k = 1; k < chunks; k += 1) {
+            int target = origin + (int) ((long) (length - origin) * k / chunks);
+            if(target <= found.get(found.size() - 1) || !m.find(target)) {
+                continue;
+            }
+            int start = m.end();
+            if(lexer.isStripWhitespace()) {
+                start = StringUtils.skipWhitespace(source, start);
+            }
+            if(start > found.get(found.size() - 1) && start < length) {
+                found.add(start);
+            }
+        }
+        starts = found.stream().mapToInt(i -> i).toArray();
+    }
+    
+    private Chunk lexChunk(TokenStream stream) {
+        Chunk chunk = new Chunk();
+        chunk.stream = stream;
+        chunk.tokens = new TokenBuffer(lexer.getSymbols(), source, name);
+        try {
+            chunk.stream.toBuffer(chunk.tokens);
+        } catch (LanguageSyntaxException ex) {
+            chunk.error = ex;
+        }
+        return chunk;
+    }
+    
+    /**
+     * Join the chunks in order, following on from wherever each chunk really
+     * finished
+     */
+    private TokenBuffer join(ArrayList<ForkJoinTask<Chunk>> tasks) throws LanguageSyntaxException {
+        TokenBuffer result = new TokenBuffer(lexer.getSymbols(), source, name);
+        int k = 0;
+        while(true) {
+            Chunk chunk = tasks.get(k).join();
+            result.append(chunk.tokens);
+            if(chunk.error != null) {
+                throw chunk.error;
+            }
+            TokenStream stream = chunk.stream;
+            while(true) {
+                if(stream.isFinished()) {
+                    return result;
+                }
+                int position = stream.getPosition();
+                int next = k + 1;
+                while(next < starts.length && starts[next] < position) {
+                    next += 1;
+                }
+                if(next < starts.length && starts[next] == position) {
+                    k = next;
+                    break;
+                }
+                // A token ran across the start of the next chunk
+                stream.setLimit(next < starts.length ? starts[next] : Integer.MAX_VALUE);
+                stream.toBuffer(result);
+            }
+        }
+    }
+    
+    private static class Chunk {
+        TokenStream stream;
+        TokenBuffer tokens;
+        LanguageSyntaxException error;
+    }
+}
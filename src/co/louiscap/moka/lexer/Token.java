@@ -45,7 +45,18 @@ public class Token implements Serializable {
     
     public final Location loc;
     
+    /**
+     * The id of this token's ident in the module's SymbolTable, or -1 if the
+     * token was created without one
+     */
+    public final int type;
+    
     public Token(String ident, String content, Location loc) {
+        this(-1, ident, content, loc);
+    }
+    
+    public Token(int type, String ident, String content, Location loc) {
+        this.type = type;
         this.ident = ident;
         this.content = content;
         this.loc = loc;
@@ -83,6 +94,9 @@ public class Token implements Serializable {
             return false;
         }
         final Token other = (Token) obj;
+        // The ids of two tokens from different SymbolTables can't be
+        // compared, so the idents always are. Tokens from the same table
+        // share their ident Strings, which equals checks for first
         if (!Objects.equals(this.ident, other.ident)) {
             return false;
         }
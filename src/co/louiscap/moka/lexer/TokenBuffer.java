@@ -0,0 +1,401 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer;
+
+import co.louiscap.moka.utils.data.Location;
+import co.louiscap.moka.utils.data.SymbolTable;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact, append-only sequence of tokens. Rather than holding a Token
+ * object per token, each token is stored as an entry in a handful of parallel
+ * primitive arrays: its type id from the lexer's {@link SymbolTable}, the start and end offsets of its
+ * content within the buffer's text, and its line and column packed into a
+ * single long. Token objects are only created when they are asked for with
+ * {@link TokenBuffer#get(int)}, so parsers that work with the primitive
+ * accessors don't allocate anything per token.
+ * <br><br>
+ * When the source is already held in memory the buffer's text is the source
+ * itself, and content offsets point straight into it. When the source is
+ * streamed the content of each token is copied into a text buffer owned by
+ * the TokenBuffer, since the source will have been released.
+ * @author Louis Capitanchik
+ */
+public class TokenBuffer implements Iterable<Token> {
+    
+    private static final int INITIAL_CAPACITY = 64;
+    
+    private final SymbolTable symbols;
+    private final String name;
+    private final CharSequence text;
+    private final StringBuilder ownedText;
+    
+    private int[] types, starts, ends, offsets;
+    private long[] positions;
+    private int size;
+    private TokenEdit edit;
+
+    /**
+     * @param symbols The table that type ids were interned in
+     * @param source The source that content offsets refer to, or null if
+     * content will be copied into the buffer as tokens are added
+     * @param name The name of the source, used for token locations
+     */
+    TokenBuffer(SymbolTable symbols, CharSequence source, String name) {
+        this.symbols = symbols;
+        this.name = name;
+        this.ownedText = source == null ? new StringBuilder() : null;
+        this.text = source == null ? ownedText : source;
+        this.types = new int[INITIAL_CAPACITY];
+        this.starts = new int[INITIAL_CAPACITY];
+        this.ends = new int[INITIAL_CAPACITY];
+        this.offsets = new int[INITIAL_CAPACITY];
+        this.positions = new long[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+    
+    /**
+     * Add a token whose content lies between the given offsets of the source
+     * this buffer was created with. If the buffer owns its text, the content
+     * is first copied out of the given source.
+     * @param start The start of the token's content, or -1 if it has none
+     * @param offset The offset in the source that the token's match starts at
+     */
+    void add(int type, CharSequence source, int start, int end, int offset, int line, int column) {
+        ensureCapacity(size + 1);
+        if(ownedText != null && start != -1) {
+            int copied = ownedText.length();
+            ownedText.append(source, start, end);
+            end = copied + end - start;
+            start = copied;
+        }
+        types[size] = type;
+        starts[size] = start;
+        ends[size] = end;
+        offsets[size] = offset;
+        positions[size] = pack(line, column);
+        size += 1;
+    }
+    
+    /**
+     * Add every token of another buffer to the end of this one. Both buffers
+     * must share the same source text
+     */
+    void append(TokenBuffer other) {
+        append(other, 0, other.size);
+    }
+    
+    /**
+     * Add a range of the tokens of another buffer to the end of this one
+     * @param from The index of the first token to add
+     * @param to The index after the last token to add
+     */
+    void append(TokenBuffer other, int from, int to) {
+        int count = to - from;
+        ensureCapacity(size + count);
+        System.arraycopy(other.types, from, types, size, count);
+        System.arraycopy(other.starts, from, starts, size, count);
+        System.arraycopy(other.ends, from, ends, size, count);
+        System.arraycopy(other.offsets, from, offsets, size, count);
+        System.arraycopy(other.positions, from, positions, size, count);
+        size += count;
+    }
+    
+    /**
+     * Move every token from the given index onwards to a new place in the
+     * source, after an edit before them
+     * @param from The index of the first token to move
+     * @param chars How many characters later in the source the tokens start
+     * @param lines How many lines later in the source the tokens start
+     * @param line The line, before moving, whose tokens also change column
+     * @param columns How many columns later the tokens on that line start
+     */
+    void shift(int from, int chars, int lines, int line, int columns) {
+        for(int i = from; i < size; i += 1) {
+            if(starts[i] != -1) {
+                starts[i] += chars;
+                ends[i] += chars;
+            }
+            offsets[i] += chars;
+            int l = (int) (positions[i] >>> 32);
+            int c = (int) positions[i];
+            positions[i] = pack(l + lines, l == line ? c + columns : c);
+        }
+    }
+    
+    /**
+     * @return Which tokens were lexed again if this buffer was made by
+     * relexing another, or null if every token was lexed from scratch
+     */
+    public TokenEdit getEdit() {
+        return edit;
+    }
+    
+    void setEdit(TokenEdit edit) {
+        this.edit = edit;
+    }
+    
+    /**
+     * @return Whether token content was copied into text owned by this
+     * buffer, rather than pointing into the source
+     */
+    boolean ownsText() {
+        return ownedText != null;
+    }
+    
+    /**
+     * @return The number of tokens in this buffer
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * @param index The index of a token in this buffer
+     * @return The interned type id of the token
+     */
+    public int type(int index) {
+        check(index);
+        return types[index];
+    }
+    
+    /**
+     * @param index The index of a token in this buffer
+     * @return The identifier of the token's type, as given by the LexRule that
+     * produced it
+     */
+    public String typeName(int index) {
+        return symbols.nameOf(type(index));
+    }
+    
+    /**
+     * @param ident A token identifier
+     * @return The type id used for the given identifier in this buffer, or -1
+     * if it has not been interned
+     */
+    public int typeId(String ident) {
+        return symbols.idOf(ident);
+    }
+    
+    /**
+     * @return The table that the type ids in this buffer were interned in
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+    
+    /**
+     * @return The text that content offsets refer to
+     */
+    public CharSequence getText() {
+        return text;
+    }
+    
+    /**
+     * @param index The index of a token in this buffer
+     * @return The offset into {@link TokenBuffer#getText()} that the token's
+     * content starts at, or -1 if the token has no content
+     */
+    public int contentStart(int index) {
+        check(index);
+        return starts[index];
+    }
+    
+    /**
+     * @param index The index of a token in this buffer
+     * @return The offset into {@link TokenBuffer#getText()} that the token's
+     * content ends at, or -1 if the token has no content
+     */
+    public int contentEnd(int index) {
+        check(index);
+        return ends[index];
+    }
+    
+    /**
+     * @param index The index of a token in this buffer
+     * @return A new String containing the content of the token, or null if the
+     * token has no content
+     */
+    public String content(int index) {
+        check(index);
+        return starts[index] == -1 ? null : text.subSequence(starts[index], ends[index]).toString();
+    }
+    
+    /**
+     * Compare the content of a token without creating a String for it
+     * @param index The index of a token in this buffer
+     * @param other The characters to compare against
+     * @return Whether or not the token's content is exactly equal to other
+     */
+    public boolean contentEquals(int index, CharSequence other) {
+        check(index);
+        int start = starts[index];
+        if(start == -1 || ends[index] - start != other.length()) {
+            return false;
+        }
+        for(int i = 0; i < other.length(); i += 1) {
+            if(text.charAt(start + i) != other.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * @param index The index of a token in this buffer
+     * @return The offset in the source that the token starts at, including
+     * any part of its match outside of its content
+     */
+    public int offset(int index) {
+        check(index);
+        return offsets[index];
+    }
+    
+    /**
+     * @return The offset of every token, in an array that may be longer than
+     * the buffer
+     */
+    int[] offsets() {
+        return offsets;
+    }
+    
+    /**
+     * @param index The index of a token in this buffer
+     * @return The 1-based line that the token starts on
+     */
+    public int line(int index) {
+        check(index);
+        return (int) (positions[index] >>> 32);
+    }
+    
+    /**
+     * @param index The index of a token in this buffer
+     * @return The 0-based column within its line that the token starts at
+     */
+    public int column(int index) {
+        check(index);
+        return (int) positions[index];
+    }
+    
+    /**
+     * @param index The index of a token in this buffer
+     * @return A new Location object for the start of the token
+     */
+    public Location location(int index) {
+        return new Location(name, line(index), column(index));
+    }
+    
+    /**
+     * Materialize a single token
+     * @param index The index of a token in this buffer
+     * @return A new Token object equal to the one that
+     * {@link Lexer#process(String, String)} would have produced at this index
+     */
+    public Token get(int index) {
+        return new Token(type(index), typeName(index), content(index), location(index));
+    }
+    
+    /**
+     * @return A new array holding a materialized Token for every entry in this
+     * buffer
+     */
+    public Token[] toArray() {
+        Token[] tokens = new Token[size];
+        for(int i = 0; i < size; i += 1) {
+            tokens[i] = get(i);
+        }
+        return tokens;
+    }
+    
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Iterator<Token> iterator() {
+        return new Iterator<Token>() {
+            private int next = 0;
+            
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Token next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                next += 1;
+                return get(next - 1);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for(int i = 0; i < size; i += 1) {
+            if(i > 0) {
+                sb.append(", ");
+            }
+            sb.append(typeName(i));
+            sb.append(";");
+            sb.append(content(i));
+            sb.append(";");
+            sb.append(location(i).toString());
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+    
+    private void ensureCapacity(int required) {
+        if(required > types.length) {
+            int capacity = Math.max(required, types.length * 2);
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+    }
+    
+    private void check(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Token " + index + " of " + size);
+        }
+    }
+    
+    private static long pack(int line, int column) {
+        return ((long) line << 32) | (column & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer;
+
+/**
+ * Describes which tokens of a {@link TokenBuffer} were lexed again after an
+ * edit to its source, by {@link Lexer#relex(TokenBuffer, co.louiscap.moka.utils.string.TextEdit)}.
+ * Every token before {@link TokenEdit#start} and from {@link TokenEdit#end}
+ * onwards is the same as a token of the buffer that was relexed, moved along
+ * by the difference in the number of tokens.
+ * @author Louis Capitanchik
+ */
+public class TokenEdit {
+    
+    /**
+     * The index of the first token that was lexed again
+     */
+    public final int start;
+    /**
+     * The index after the last token that was lexed again, in the new buffer
+     */
+    public final int end;
+    /**
+     * The number of tokens of the old buffer that were replaced by the tokens
+     * from start to end
+     */
+    public final int replaced;
+    
+    public TokenEdit(int start, int end, int replaced) {
+        this.start = start;
+        this.end = end;
+        this.replaced = replaced;
+    }
+    
+    /**
+     * @return How many more tokens there are after the edit than before it
+     */
+    public int delta() {
+        return end - start - replaced;
+    }
+    
+    @Override
+    public String toString() {
+        return "[" + start + ", " + end + ") replacing " + replaced;
+    }
+}
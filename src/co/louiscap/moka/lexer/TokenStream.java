@@ -0,0 +1,414 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer;
+
+import co.louiscap.moka.exceptions.LanguageSyntaxException;
+import co.louiscap.moka.exceptions.UncheckedSyntaxException;
+import co.louiscap.moka.lexer.dfa.Dfa;
+import co.louiscap.moka.utils.data.Location;
+import co.louiscap.moka.utils.data.SymbolTable;
+import co.louiscap.moka.utils.io.CharWindow;
+import co.louiscap.moka.utils.string.LineIndex;
+import co.louiscap.moka.utils.string.StringUtils;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.regex.Matcher;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A lazily evaluated sequence of tokens, created by
+ * {@link Lexer#stream(CharSequence, String)} or
+ * {@link Lexer#stream(java.io.Reader, String)}. Each token is only lexed when
+ * it is asked for, so a parser can consume tokens as they are produced. When
+ * reading from a {@link CharWindow}, characters are released once the stream
+ * has moved past them, so memory use is bounded by the length of the longest
+ * token rather than the length of the input. Tokens can also be collected
+ * into a compact {@link TokenBuffer} with {@link TokenStream#toBuffer()},
+ * which doesn't create any Token objects.
+ * <br><br>
+ * Syntax errors are thrown as {@link LanguageSyntaxException}s by
+ * {@link TokenStream#read()}; the Iterator and Stream views wrap them in an
+ * {@link UncheckedSyntaxException}.
+ * @author Louis Capitanchik
+ */
+public class TokenStream implements Iterator<Token> {
+    
+    /**
+     * The number of characters that are buffered ahead of the current position
+     * before each token is matched
+     */
+    private static final int LOOKAHEAD = 1024;
+    
+    private final LexRule[] rules;
+    private final int[] ruleTypes;
+    private final SymbolTable symbols;
+    private final Dfa automaton;
+    private final DispatchTable dispatch;
+    private final boolean stripWhitespace;
+    
+    private final CharSequence source;
+    private final CharWindow window;
+    private final String name;
+    private final Matcher[] matchers;
+    
+    private final LineIndex lines;
+    private final LineIndex.Cursor cursor;
+    private int position, limit;
+    private int tokenRule, tokenStart, tokenEnd, tokenOffset, tokenLine, tokenColumn;
+    private boolean pending, finished;
+    
+    /**
+     * @param start The position to start lexing from. Whitespace is only
+     * trimmed from the start of the source when no LineIndex is given
+     * @param lines An index of the lines of the whole source, or null to build
+     * one as the source is read
+     */
+    TokenStream(LexRule[] rules, int[] ruleTypes, SymbolTable symbols, Dfa automaton,
+            DispatchTable dispatch, boolean stripWhitespace, CharSequence source, String name,
+            int start, LineIndex lines) {
+        this.rules = rules;
+        this.ruleTypes = ruleTypes;
+        this.symbols = symbols;
+        this.automaton = automaton;
+        this.dispatch = dispatch;
+        this.stripWhitespace = stripWhitespace;
+        this.source = source;
+        this.window = source instanceof CharWindow ? (CharWindow) source : null;
+        this.name = name;
+        this.matchers = new Matcher[rules.length];
+        this.position = start;
+        this.limit = Integer.MAX_VALUE;
+        this.pending = false;
+        this.finished = false;
+        if(lines == null) {
+            if(stripWhitespace) {
+                // Equivalent to String.trim() on the start of the input
+                while(available(position) && source.charAt(position) <= ' ') {
+                    position += 1;
+                }
+            }
+            // Leading whitespace is trimmed before lines are counted
+            lines = new LineIndex(position);
+        }
+        this.lines = lines;
+        this.cursor = lines.cursor();
+    }
+    
+    /**
+     * Lex the next token from the source
+     * @return The next token, or null if the end of the source has been
+     * reached
+     * @throws LanguageSyntaxException Thrown if no rule matches the source at
+     * the current position
+     */
+    public Token read() throws LanguageSyntaxException {
+        if(!pending && !advance()) {
+            return null;
+        }
+        pending = false;
+        return current();
+    }
+    
+    /**
+     * Lex every remaining token in the source
+     * @return An array containing every token that had not yet been read
+     * @throws LanguageSyntaxException Thrown if no rule matches the source at
+     * some position
+     */
+    public Token[] toArray() throws LanguageSyntaxException {
+        return toBuffer().toArray();
+    }
+    
+    /**
+     * Lex every remaining token in the source into a compact TokenBuffer,
+     * without creating any Token objects
+     * @return A TokenBuffer containing every token that had not yet been read
+     * @throws LanguageSyntaxException Thrown if no rule matches the source at
+     * some position
+     */
+    public TokenBuffer toBuffer() throws LanguageSyntaxException {
+        TokenBuffer buffer = new TokenBuffer(symbols, window == null ? source : null, name);
+        toBuffer(buffer);
+        return buffer;
+    }
+    
+    /**
+     * Lex tokens onto the end of an existing buffer until the end of the
+     * source, or until the limit of this stream, is reached
+     */
+    void toBuffer(TokenBuffer buffer) throws LanguageSyntaxException {
+        while(next(buffer)) {
+            // Each call adds a token
+        }
+    }
+    
+    /**
+     * Lex a single token onto the end of an existing buffer
+     * @return Whether there was another token before the end of the source,
+     * or the limit of this stream
+     */
+    boolean next(TokenBuffer buffer) throws LanguageSyntaxException {
+        if(!pending && !advance()) {
+            return false;
+        }
+        pending = false;
+        buffer.add(ruleTypes[tokenRule], source, tokenStart, tokenEnd, tokenOffset, tokenLine, tokenColumn);
+        return true;
+    }
+    
+    /**
+     * Stop producing tokens once the stream's position reaches the given
+     * offset, without treating it as the end of the source. Lexing can be
+     * resumed by raising the limit
+     */
+    void setLimit(int limit) {
+        this.limit = limit;
+    }
+    
+    /**
+     * @return The offset of the start of the next token, or of the whitespace
+     * before it if whitespace isn't stripped
+     */
+    int getPosition() {
+        return position;
+    }
+    
+    /**
+     * @return Whether or not the end of the source has been reached
+     */
+    boolean isFinished() {
+        return finished;
+    }
+    
+    /**
+     * Lex the next token into the token fields of this stream
+     * @return Whether or not there was another token
+     * @throws LanguageSyntaxException Thrown if no rule matches the source at
+     * the current position
+     */
+    private boolean advance() throws LanguageSyntaxException {
+        if(position >= limit) {
+            return false;
+        }
+        if(finished || !available(position) || (stripWhitespace && onlyTrimmedRemaining())) {
+            finished = true;
+            return false;
+        }
+        lines.extend(source, position + 1);
+        if(window != null) {
+            // The previous token's content is no longer needed
+            window.release(position);
+        }
+        available(position + LOOKAHEAD);
+        
+        int best = -1, end = position;
+        int contentStart = position, contentEnd = position;
+        int[] candidates = dispatch.candidates(source.charAt(position));
+        if(automaton == null) {
+            for(int i = 0; i < candidates.length && best == -1; i += 1) {
+                int r = candidates[i];
+                Matcher m = matcher(r);
+                if(lookingAt(m) && m.end() > position) {
+                    best = r;
+                    end = m.end();
+                    contentStart = m.groupCount() > 0 ? m.start(1) : m.start();
+                    contentEnd = m.groupCount() > 0 ? m.end(1) : m.end();
+                }
+            }
+        } else {
+            long match = automaton.match(source, position, source.length());
+            while(window != null && Dfa.hitEnd(match) && !window.isExhausted()) {
+                grow();
+                match = automaton.match(source, position, source.length());
+            }
+            boolean resolved = false;
+            if(Dfa.isMatch(match)) {
+                best = Dfa.acceptOf(match);
+                end = Dfa.endOf(match);
+            }
+            for(int f : candidates) {
+                Matcher m = matcher(f);
+                if(lookingAt(m) && m.end() > position
+                        && (m.end() > end || (m.end() == end && f < best))) {
+                    best = f;
+                    end = m.end();
+                    contentStart = m.groupCount() > 0 ? m.start(1) : m.start();
+                    contentEnd = m.groupCount() > 0 ? m.end(1) : m.end();
+                    resolved = true;
+                }
+            }
+            if(best != -1 && !resolved) {
+                contentStart = position;
+                contentEnd = end;
+                Matcher m = matcher(best);
+                if(m.groupCount() > 0) {
+                    // The automaton only finds the extent of a match, so rules
+                    // with a capture group need their regular expression re-run
+                    // over that extent to find the token's content
+                    m.region(position, end);
+                    if(m.matches()) {
+                        contentStart = m.start(1);
+                        contentEnd = m.end(1);
+                    }
+                }
+            }
+        }
+        if(best == -1) {
+            throw new LanguageSyntaxException("Invalid syntax; no matching token",
+                    lines.locate(name, position));
+        }
+        
+        tokenRule = best;
+        tokenStart = contentStart;
+        tokenEnd = contentEnd;
+        tokenOffset = position;
+        tokenLine = cursor.lineOf(position);
+        tokenColumn = position - lines.lineStart(tokenLine);
+        
+        position = end;
+        if(stripWhitespace) {
+            position = skipWhitespace(position);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(!pending && !finished) {
+            try {
+                pending = advance();
+            } catch (LanguageSyntaxException ex) {
+                finished = true;
+                throw new UncheckedSyntaxException(ex);
+            }
+        }
+        return pending;
+    }
+
+    @Override
+    public Token next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        pending = false;
+        return current();
+    }
+    
+    /**
+     * @return The index of the lines of the source that have been read so
+     * far, relative to the first token if leading whitespace is stripped
+     */
+    public LineIndex getLineIndex() {
+        return lines;
+    }
+    
+    /**
+     * @return A Spliterator over the remaining tokens. The size of the stream
+     * is unknown until it has been consumed, so the Spliterator can't be split
+     * efficiently
+     */
+    public Spliterator<Token> spliterator() {
+        return Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+    }
+    
+    /**
+     * @return A sequential Stream over the remaining tokens
+     */
+    public Stream<Token> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+    
+    /**
+     * Materialize the most recently lexed token
+     */
+    private Token current() {
+        int type = ruleTypes[tokenRule];
+        return new Token(type, symbols.nameOf(type),
+                tokenStart == -1 ? null : source.subSequence(tokenStart, tokenEnd).toString(),
+                new Location(name, tokenLine, tokenColumn));
+    }
+    
+    private Matcher matcher(int rule) {
+        if(matchers[rule] == null) {
+            matchers[rule] = rules[rule].getRegex().matcher(source);
+        }
+        return matchers[rule];
+    }
+    
+    /**
+     * Match a rule at the current position, reading more of the source if the
+     * match ran into the end of what has been read so far
+     */
+    private boolean lookingAt(Matcher m) {
+        while(true) {
+            m.region(position, source.length());
+            boolean found = m.lookingAt();
+            if(window == null || !m.hitEnd() || window.isExhausted()) {
+                return found;
+            }
+            grow();
+        }
+    }
+    
+    /**
+     * Double the amount of the source that is available past the current
+     * position
+     */
+    private void grow() {
+        window.fill(position + 2L * (source.length() - position) + LOOKAHEAD);
+    }
+    
+    private boolean available(int index) {
+        return index < source.length() || (window != null && window.fill(index + 1L));
+    }
+    
+    private int skipWhitespace(int from) {
+        do {
+            from = StringUtils.skipWhitespace(source, from);
+        } while(window != null && from == source.length() && window.fill(from + 1L));
+        return from;
+    }
+    
+    /**
+     * Equivalent to String.trim() on the end of the input; checks whether
+     * everything left is a control character or space
+     */
+    private boolean onlyTrimmedRemaining() {
+        int i = position;
+        while(available(i) && source.charAt(i) <= ' ') {
+            i += 1;
+        }
+        return !available(i);
+    }
+}
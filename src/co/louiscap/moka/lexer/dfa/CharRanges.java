@@ -0,0 +1,220 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer.dfa;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of characters, stored as a sorted list of disjoint,
+ * inclusive ranges. Used to label the edges of an automaton so that character
+ * classes such as {@code [A-Za-z]} or {@code \w} don't need one edge per
+ * character.
+ * <br><br>
+ * Like {@link java.util.regex.Pattern}, sets hold Unicode code points rather
+ * than UTF-16 characters, so a negated set such as {@code [^"]} contains the
+ * characters outside of the Basic Multilingual Plane as well
+ * @author Louis Capitanchik
+ */
+public class CharRanges {
+    
+    public static final CharRanges EMPTY = new CharRanges(new int[0]);
+    public static final CharRanges ALL = range(Character.MIN_CODE_POINT, Character.MAX_CODE_POINT);
+    public static final CharRanges DIGIT = range('0', '9');
+    public static final CharRanges WORD = range('a', 'z')
+            .union(range('A', 'Z'))
+            .union(range('0', '9'))
+            .union(single('_'));
+    public static final CharRanges SPACE = range('\t', '\r')
+            .union(single(' '));
+    /**
+     * The set of characters matched by {@code .} when no flags are given to
+     * {@link java.util.regex.Pattern}; everything except line terminators
+     */
+    public static final CharRanges DOT = single('\n')
+            .union(single('\r'))
+            .union(single('\u0085'))
+            .union(range('\u2028', '\u2029'))
+            .negate();
+    
+    /**
+     * Pairs of inclusive lower and upper bounds, ordered and non-overlapping
+     */
+    private final int[] bounds;
+    
+    private CharRanges(int[] bounds) {
+        this.bounds = bounds;
+    }
+    
+    public static CharRanges single(int codePoint) {
+        return new CharRanges(new int[]{codePoint, codePoint});
+    }
+    
+    public static CharRanges range(int lo, int hi) {
+        if(hi < lo) {
+            return EMPTY;
+        }
+        return new CharRanges(new int[]{lo, hi});
+    }
+    
+    /**
+     * Creates a set that contains every character in this set or the other
+     * @param other The set to combine with this one
+     * @return A new set representing the union of the two
+     */
+    public CharRanges union(CharRanges other) {
+        int[] all = Arrays.copyOf(bounds, bounds.length + other.bounds.length);
+        System.arraycopy(other.bounds, 0, all, bounds.length, other.bounds.length);
+        return normalise(all);
+    }
+    
+    /**
+     * Creates a set that contains every character not contained in this one
+     * @return The complement of this set
+     */
+    public CharRanges negate() {
+        int[] result = new int[bounds.length + 2];
+        int n = 0, next = Character.MIN_CODE_POINT;
+        for(int i = 0; i < bounds.length; i += 2) {
+            if(bounds[i] > next) {
+                result[n++] = next;
+                result[n++] = bounds[i] - 1;
+            }
+            next = bounds[i + 1] + 1;
+        }
+        if(next <= Character.MAX_CODE_POINT) {
+            result[n++] = next;
+            result[n++] = Character.MAX_CODE_POINT;
+        }
+        return new CharRanges(Arrays.copyOf(result, n));
+    }
+    
+    public boolean contains(int codePoint) {
+        for(int i = 0; i < bounds.length; i += 2) {
+            if(codePoint < bounds[i]) {
+                return false;
+            }
+            if(codePoint <= bounds[i + 1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Creates a set that contains every character in both this set and the
+     * range given
+     * @param lo The first character of the range
+     * @param hi The last character of the range
+     * @return A new set representing the intersection
+     */
+    public CharRanges intersect(int lo, int hi) {
+        int[] result = new int[bounds.length];
+        int n = 0;
+        for(int i = 0; i < bounds.length; i += 2) {
+            if(bounds[i] <= hi && bounds[i + 1] >= lo) {
+                result[n++] = Math.max(bounds[i], lo);
+                result[n++] = Math.min(bounds[i + 1], hi);
+            }
+        }
+        return new CharRanges(Arrays.copyOf(result, n));
+    }
+    
+    public boolean isEmpty() {
+        return bounds.length == 0;
+    }
+    
+    /**
+     * @return The number of disjoint ranges that make up this set
+     */
+    public int rangeCount() {
+        return bounds.length / 2;
+    }
+    
+    public int lowerBound(int range) {
+        return bounds[range * 2];
+    }
+    
+    public int upperBound(int range) {
+        return bounds[range * 2 + 1];
+    }
+    
+    /**
+     * Sorts and merges a list of possibly overlapping range pairs
+     */
+    private static CharRanges normalise(int[] pairs) {
+        int count = pairs.length / 2;
+        long[] packed = new long[count];
+        for(int i = 0; i < count; i += 1) {
+            packed[i] = ((long)pairs[i * 2] << 32) | pairs[i * 2 + 1];
+        }
+        Arrays.sort(packed);
+        int[] result = new int[pairs.length];
+        int n = 0;
+        for(long p : packed) {
+            int lo = (int)(p >>> 32), hi = (int)p;
+            if(n > 0 && lo <= result[n - 1] + 1) {
+                result[n - 1] = Math.max(result[n - 1], hi);
+            } else {
+                result[n++] = lo;
+                result[n++] = hi;
+            }
+        }
+        return new CharRanges(Arrays.copyOf(result, n));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for(int i = 0; i < bounds.length; i += 2) {
+            sb.append(String.format("\\u%04x-\\u%04x", bounds[i], bounds[i + 1]));
+        }
+        return sb.append("]").toString();
+    }
+
+    @Override
+    public int hashCode() {
+        return 59 * 7 + Arrays.hashCode(this.bounds);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final CharRanges other = (CharRanges) obj;
+        return Arrays.equals(this.bounds, other.bounds);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer.dfa;
+
+import co.louiscap.moka.utils.io.BinaryIO;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A deterministic automaton over UTF-16 characters, produced by
+ * {@link DfaBuilder}. Characters are first mapped to one of a small number of
+ * equivalence classes, so the transition table only needs one column per class
+ * rather than per character. Matching never backtracks; the cost of a match is
+ * proportional to the number of characters examined, regardless of how many
+ * patterns went into the automaton.
+ * <br><br>
+ * Patterns are read as code points, so a character outside of the Basic
+ * Multilingual Plane is matched as a whole surrogate pair, as it is by
+ * {@link java.util.regex.Pattern}.
+ * @author Louis Capitanchik
+ */
+public class Dfa {
+    
+    private static final long HIT_END = 1L << 62;
+    private static final long ACCEPT_MASK = (1L << 30) - 1;
+    
+    private static final int ASCII = 128;
+    
+    private final int[] classStarts;
+    private final int[] asciiClasses;
+    private final int classCount;
+    private final int[] transitions;
+    private final int[] accepts;
+    
+    Dfa(int[] classStarts, int[] transitions, int[] accepts) {
+        this.classStarts = classStarts;
+        this.classCount = classStarts.length - 1;
+        this.transitions = transitions;
+        this.accepts = accepts;
+        this.asciiClasses = new int[ASCII];
+        for(int c = 0; c < ASCII; c += 1) {
+            asciiClasses[c] = findClass((char)c);
+        }
+    }
+    
+    /**
+     * Finds the longest non-empty prefix of the given region that is accepted
+     * by the automaton
+     * @param src The characters to match against
+     * @param from The index at which the match must start
+     * @param to The index past which the automaton will not read
+     * @return A value describing the result of the match, which can be read
+     * with {@link Dfa#isMatch(long)}, {@link Dfa#acceptOf(long)},
+     * {@link Dfa#endOf(long)} and {@link Dfa#hitEnd(long)}
+     */
+    public long match(CharSequence src, int from, int to) {
+        int state = 0, lastAccept = -1, lastEnd = from;
+        int i = from;
+        for(; i < to; i += 1) {
+            char c = src.charAt(i);
+            int cls = c < ASCII ? asciiClasses[c] : findClass(c);
+            state = transitions[state * classCount + cls];
+            if(state == -1) {
+                break;
+            }
+            if(accepts[state] != -1) {
+                lastAccept = accepts[state];
+                lastEnd = i + 1;
+            }
+        }
+        long result = ((long)(lastAccept + 1) << 32) | lastEnd;
+        return i == to ? result | HIT_END : result;
+    }
+    
+    /**
+     * @param match A result of {@link Dfa#match(CharSequence, int, int)}
+     * @return Whether or not any pattern matched
+     */
+    public static boolean isMatch(long match) {
+        return acceptOf(match) != -1;
+    }
+    
+    /**
+     * @param match A result of {@link Dfa#match(CharSequence, int, int)}
+     * @return The accepting value of the pattern that matched, or -1 if there
+     * was no match
+     */
+    public static int acceptOf(long match) {
+        return (int)((match >>> 32) & ACCEPT_MASK) - 1;
+    }
+    
+    /**
+     * Checks whether the automaton was still running when it reached the end
+     * of the region it was given, in which case more input could have produced
+     * a different (longer) match
+     * @param match A result of {@link Dfa#match(CharSequence, int, int)}
+     * @return True if the match was cut short by the end of the region
+     */
+    public static boolean hitEnd(long match) {
+        return (match & HIT_END) != 0;
+    }
+    
+    /**
+     * @param match A successful result of {@link Dfa#match(CharSequence, int, int)}
+     * @return The index one past the last character of the match
+     */
+    public static int endOf(long match) {
+        return (int)match;
+    }
+    
+    /**
+     * Write the tables of this automaton in the format read by
+     * {@link Dfa#read(ByteBuffer, int)}
+     * @param out The stream to write to
+     * @throws IOException Thrown if the stream can't be written to
+     */
+    public void write(DataOutputStream out) throws IOException {
+        BinaryIO.writeInts(out, classStarts);
+        BinaryIO.writeInts(out, transitions);
+        BinaryIO.writeInts(out, accepts);
+    }
+    
+    /**
+     * @param in A buffer positioned at an automaton written by
+     * {@link Dfa#write(DataOutputStream)}
+     * @param acceptValues The number of accepting values that the automaton
+     * may report; every value it was built with must be below this
+     * @return An automaton that matches exactly as the written one did
+     * @throws IllegalArgumentException Thrown if the tables that were read
+     * don't form a valid automaton
+     */
+    public static Dfa read(ByteBuffer in, int acceptValues) {
+        int[] classStarts = BinaryIO.readInts(in);
+        int[] transitions = BinaryIO.readInts(in);
+        int[] accepts = BinaryIO.readInts(in);
+        if(classStarts.length < 2 || classStarts[0] != Character.MIN_VALUE
+                || classStarts[classStarts.length - 1] != Character.MAX_VALUE + 1) {
+            throw new IllegalArgumentException("Character classes don't cover every character");
+        }
+        for(int c = 1; c < classStarts.length; c += 1) {
+            if(classStarts[c] <= classStarts[c - 1]) {
+                throw new IllegalArgumentException("Character classes are out of order");
+            }
+        }
+        int classCount = classStarts.length - 1;
+        if(accepts.length == 0 || (long)accepts.length * classCount != transitions.length) {
+            throw new IllegalArgumentException("Transition table has " + transitions.length + " entries for "
+                    + accepts.length + " states of " + classCount + " classes");
+        }
+        for(int target : transitions) {
+            if(target < -1 || target >= accepts.length) {
+                throw new IllegalArgumentException("Transition to unknown state " + target);
+            }
+        }
+        for(int accept : accepts) {
+            if(accept < -1 || accept >= acceptValues) {
+                throw new IllegalArgumentException("State accepts unknown value " + accept);
+            }
+        }
+        return new Dfa(classStarts, transitions, accepts);
+    }
+    
+    public int stateCount() {
+        return accepts.length;
+    }
+    
+    public int classCount() {
+        return classCount;
+    }
+    
+    private int findClass(char c) {
+        int found = Arrays.binarySearch(classStarts, c);
+        return found >= 0 ? found : -found - 2;
+    }
+}
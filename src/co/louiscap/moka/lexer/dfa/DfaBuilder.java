@@ -0,0 +1,236 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer.dfa;
+
+import co.louiscap.moka.exceptions.UnsupportedPatternException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/**
+ * Combines any number of regular expressions into one deterministic automaton.
+ * Each pattern is added with an accepting value; when more than one pattern
+ * accepts in the same state, the lowest value wins, so adding rules with their
+ * index in priority order gives the usual "longest match, then earliest rule"
+ * resolution of lexer generators.
+ * @author Louis Capitanchik
+ */
+public class DfaBuilder {
+    
+    /**
+     * Subset construction can in theory produce exponentially many states;
+     * anything past this is treated as unsupported rather than allowed to
+     * exhaust memory
+     */
+    public static final int MAX_STATES = 20000;
+    
+    private final Nfa nfa;
+    private final int root;
+    
+    /**
+     * Scratch space for {@link #closure(int[])}, reused by every call of a
+     * build. A state has been reached by the current call when its mark
+     * equals the current generation, so the marks never need clearing
+     */
+    private int[] marks, reached;
+    private int generation;
+    
+    public DfaBuilder() {
+        this.nfa = new Nfa();
+        this.root = nfa.addState();
+    }
+    
+    /**
+     * Add a pattern to the automaton
+     * @param acceptValue The value reported by the automaton when this pattern
+     * is the best match. Must not be negative
+     * @param pattern The regular expression to add
+     * @throws UnsupportedPatternException Thrown if the pattern can't be
+     * represented by a finite automaton. The builder is left unchanged when this
+     * happens, so other patterns can still be added
+     */
+    public void add(int acceptValue, String pattern) throws UnsupportedPatternException {
+        RegexNode tree = PatternParser.parse(pattern);
+        int[] fragment = nfa.build(tree);
+        nfa.addEpsilon(root, fragment[0]);
+        nfa.setAccept(fragment[1], acceptValue);
+    }
+    
+    /**
+     * Run the subset construction over every pattern added so far
+     * @return A Dfa that can be used to match all of the patterns at once
+     * @throws UnsupportedPatternException Thrown if the automaton grows larger
+     * than {@link DfaBuilder#MAX_STATES}
+     */
+    public Dfa build() throws UnsupportedPatternException {
+        int[] classStarts = partitionAlphabet();
+        int classCount = classStarts.length - 1;
+        marks = new int[nfa.size()];
+        reached = new int[nfa.size()];
+        generation = 0;
+        
+        HashMap<StateSet, Integer> known = new HashMap<>();
+        ArrayList<int[]> rows = new ArrayList<>();
+        ArrayList<Integer> accepts = new ArrayList<>();
+        ArrayDeque<StateSet> pending = new ArrayDeque<>();
+        
+        StateSet start = closure(new int[]{root});
+        known.put(start, 0);
+        rows.add(null);
+        accepts.add(start.accept);
+        pending.add(start);
+        
+        while(!pending.isEmpty()) {
+            StateSet current = pending.poll();
+            int[] row = new int[classCount];
+            for(int cls = 0; cls < classCount; cls += 1) {
+                int[] moved = move(current.states, (char)classStarts[cls]);
+                if(moved.length == 0) {
+                    row[cls] = -1;
+                    continue;
+                }
+                StateSet next = closure(moved);
+                Integer id = known.get(next);
+                if(id == null) {
+                    id = rows.size();
+                    if(id >= MAX_STATES) {
+                        throw new UnsupportedPatternException("<combined>", "Automaton exceeds " + MAX_STATES + " states");
+                    }
+                    known.put(next, id);
+                    rows.add(null);
+                    accepts.add(next.accept);
+                    pending.add(next);
+                }
+                row[cls] = id;
+            }
+            rows.set(known.get(current), row);
+        }
+        
+        int[] transitions = new int[rows.size() * classCount];
+        for(int s = 0; s < rows.size(); s += 1) {
+            System.arraycopy(rows.get(s), 0, transitions, s * classCount, classCount);
+        }
+        return new Dfa(classStarts, transitions, accepts.stream().mapToInt(i -> i).toArray());
+    }
+    
+    /**
+     * Splits the character space into the coarsest set of intervals such that
+     * every edge label in the automaton either contains all of an interval or
+     * none of it
+     * @return The first character of every interval, followed by one past the
+     * last character
+     */
+    private int[] partitionAlphabet() {
+        TreeSet<Integer> cuts = new TreeSet<>();
+        cuts.add((int)Character.MIN_VALUE);
+        cuts.add(Character.MAX_VALUE + 1);
+        nfa.labels.forEach(edges -> edges.forEach(label -> {
+            for(int r = 0; r < label.rangeCount(); r += 1) {
+                cuts.add(label.lowerBound(r));
+                cuts.add(label.upperBound(r) + 1);
+            }
+        }));
+        return cuts.stream().mapToInt(i -> i).toArray();
+    }
+    
+    private int[] move(int[] states, char representative) {
+        TreeSet<Integer> result = new TreeSet<>();
+        for(int s : states) {
+            ArrayList<CharRanges> labels = nfa.labels.get(s);
+            for(int e = 0; e < labels.size(); e += 1) {
+                if(labels.get(e).contains(representative)) {
+                    result.add(nfa.targets.get(s).get(e));
+                }
+            }
+        }
+        return result.stream().mapToInt(i -> i).toArray();
+    }
+    
+    private StateSet closure(int[] states) {
+        generation += 1;
+        int count = 0;
+        for(int s : states) {
+            if(marks[s] != generation) {
+                marks[s] = generation;
+                reached[count++] = s;
+            }
+        }
+        for(int i = 0; i < count; i += 1) {
+            for(int next : nfa.epsilons.get(reached[i])) {
+                if(marks[next] != generation) {
+                    marks[next] = generation;
+                    reached[count++] = next;
+                }
+            }
+        }
+        int[] result = Arrays.copyOf(reached, count);
+        Arrays.sort(result);
+        int accept = -1;
+        for(int s : result) {
+            int value = nfa.accepts.get(s);
+            if(value >= 0 && (accept == -1 || value < accept)) {
+                accept = value;
+            }
+        }
+        return new StateSet(result, accept);
+    }
+    
+    /**
+     * A sorted set of NFA states that together form one DFA state
+     */
+    private static class StateSet {
+        final int[] states;
+        final int accept;
+        final int hash;
+        StateSet(int[] states, int accept) {
+            this.states = states;
+            this.accept = accept;
+            this.hash = Arrays.hashCode(states);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            return Arrays.equals(this.states, ((StateSet) obj).states);
+        }
+    }
+}
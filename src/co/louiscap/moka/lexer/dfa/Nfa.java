@@ -0,0 +1,170 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer.dfa;
+
+import java.util.ArrayList;
+
+/**
+ * A Thompson style nondeterministic automaton, built up one pattern at a time
+ * by {@link DfaBuilder}. States are identified by their index; each state
+ * has a list of character set labelled edges, a list of epsilon edges and
+ * an optional accepting value
+ * @author Louis Capitanchik
+ */
+class Nfa {
+    
+    final ArrayList<ArrayList<CharRanges>> labels = new ArrayList<>();
+    final ArrayList<ArrayList<Integer>> targets = new ArrayList<>();
+    final ArrayList<ArrayList<Integer>> epsilons = new ArrayList<>();
+    final ArrayList<Integer> accepts = new ArrayList<>();
+    
+    int addState() {
+        labels.add(new ArrayList<>());
+        targets.add(new ArrayList<>());
+        epsilons.add(new ArrayList<>());
+        accepts.add(-1);
+        return accepts.size() - 1;
+    }
+    
+    int size() {
+        return accepts.size();
+    }
+    
+    void addEdge(int from, CharRanges label, int to) {
+        labels.get(from).add(label);
+        targets.get(from).add(to);
+    }
+    
+    void addEpsilon(int from, int to) {
+        epsilons.get(from).add(to);
+    }
+    
+    void setAccept(int state, int value) {
+        accepts.set(state, value);
+    }
+    
+    /**
+     * Adds the states for a regex tree to this automaton
+     * @param node The root of the tree to add
+     * @return A two element array containing the entry and exit states of the
+     * created fragment
+     */
+    int[] build(RegexNode node) {
+        int start = addState(), end;
+        if(node instanceof RegexNode.Chars) {
+            end = addState();
+            addChars(start, ((RegexNode.Chars) node).chars, end);
+        } else if(node instanceof RegexNode.Seq) {
+            end = start;
+            for(RegexNode part : ((RegexNode.Seq) node).parts) {
+                int[] fragment = build(part);
+                addEpsilon(end, fragment[0]);
+                end = fragment[1];
+            }
+        } else if(node instanceof RegexNode.Alt) {
+            end = addState();
+            for(RegexNode option : ((RegexNode.Alt) node).options) {
+                int[] fragment = build(option);
+                addEpsilon(start, fragment[0]);
+                addEpsilon(fragment[1], end);
+            }
+        } else if(node instanceof RegexNode.Repeat) {
+            RegexNode.Repeat rep = (RegexNode.Repeat) node;
+            end = start;
+            for(int i = 0; i < rep.min; i += 1) {
+                int[] fragment = build(rep.body);
+                addEpsilon(end, fragment[0]);
+                end = fragment[1];
+            }
+            if(rep.max == -1) {
+                int[] fragment = build(rep.body);
+                int loopExit = addState();
+                addEpsilon(end, fragment[0]);
+                addEpsilon(end, loopExit);
+                addEpsilon(fragment[1], fragment[0]);
+                addEpsilon(fragment[1], loopExit);
+                end = loopExit;
+            } else {
+                int optionalExit = addState();
+                for(int i = rep.min; i < rep.max; i += 1) {
+                    int[] fragment = build(rep.body);
+                    addEpsilon(end, fragment[0]);
+                    addEpsilon(end, optionalExit);
+                    end = fragment[1];
+                }
+                addEpsilon(end, optionalExit);
+                end = optionalExit;
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown regex node " + node);
+        }
+        return new int[]{start, end};
+    }
+    
+    /**
+     * Adds edges that match one code point from a set as UTF-16 characters.
+     * A code point outside of the Basic Multilingual Plane is matched as a
+     * surrogate pair, and never as the two halves of the pair on their own,
+     * just as {@link java.util.regex.Pattern} reads it. A lone low surrogate
+     * is matched as itself; a lone high surrogate, which decoding a source
+     * never produces, isn't matched at all
+     */
+    private void addChars(int from, CharRanges chars, int to) {
+        CharRanges single = chars.intersect(Character.MIN_VALUE, Character.MIN_HIGH_SURROGATE - 1)
+                .union(chars.intersect(Character.MIN_LOW_SURROGATE, Character.MAX_VALUE));
+        if(!single.isEmpty()) {
+            addEdge(from, single, to);
+        }
+        CharRanges supplementary = chars.intersect(Character.MIN_SUPPLEMENTARY_CODE_POINT, Character.MAX_CODE_POINT);
+        for(int r = 0; r < supplementary.rangeCount(); r += 1) {
+            int lo = supplementary.lowerBound(r), hi = supplementary.upperBound(r);
+            char firstHigh = Character.highSurrogate(lo), lastHigh = Character.highSurrogate(hi);
+            if(firstHigh == lastHigh) {
+                addPair(from, CharRanges.single(firstHigh),
+                        CharRanges.range(Character.lowSurrogate(lo), Character.lowSurrogate(hi)), to);
+                continue;
+            }
+            addPair(from, CharRanges.single(firstHigh),
+                    CharRanges.range(Character.lowSurrogate(lo), Character.MAX_LOW_SURROGATE), to);
+            if(lastHigh - firstHigh > 1) {
+                addPair(from, CharRanges.range(firstHigh + 1, lastHigh - 1),
+                        CharRanges.range(Character.MIN_LOW_SURROGATE, Character.MAX_LOW_SURROGATE), to);
+            }
+            addPair(from, CharRanges.single(lastHigh),
+                    CharRanges.range(Character.MIN_LOW_SURROGATE, Character.lowSurrogate(hi)), to);
+        }
+    }
+    
+    private void addPair(int from, CharRanges high, CharRanges low, int to) {
+        int middle = addState();
+        addEdge(from, high, middle);
+        addEdge(middle, low, to);
+    }
+}
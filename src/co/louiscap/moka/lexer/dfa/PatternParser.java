@@ -0,0 +1,424 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer.dfa;
+
+import co.louiscap.moka.exceptions.UnsupportedPatternException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the subset of {@link java.util.regex.Pattern} syntax that describes a
+ * regular language into a tree of {@link RegexNode}s. Anything that needs more
+ * than a finite automaton to evaluate (backreferences, lookaround, anchors
+ * other than the leading {@code ^} that every LexRule receives, possessive or
+ * lazy quantifiers and inline flags) causes an
+ * {@link UnsupportedPatternException} so that the caller can fall back to the
+ * regex engine for that pattern.
+ * @author Louis Capitanchik
+ */
+public class PatternParser {
+    
+    /**
+     * Counted repetitions are expanded into copies of the repeated node, so
+     * the counts have to be kept within reason
+     */
+    public static final int MAX_REPEAT = 256;
+    
+    private final String pattern;
+    private final boolean lenient;
+    private int position;
+    
+    private PatternParser(String pattern, boolean lenient) {
+        this.pattern = pattern;
+        this.lenient = lenient;
+        this.position = 0;
+    }
+    
+    /**
+     * Parse a regular expression into a tree that can be turned into an
+     * automaton
+     * @param pattern The source of the regular expression
+     * @return The root of the parsed expression
+     * @throws UnsupportedPatternException Thrown if the pattern makes use of
+     * a feature that does not describe a regular language
+     */
+    public static RegexNode parse(String pattern) throws UnsupportedPatternException {
+        return parse(pattern, false);
+    }
+    
+    /**
+     * Parse a regular expression into a tree that accepts at least every
+     * string the expression does, for working out which characters a match
+     * could start with. Constructs that only narrow down what matches
+     * (lookaround, anchors and word boundaries) match the empty string, lazy
+     * and possessive quantifiers are treated as greedy and backreferences
+     * match any string. The tree is not suitable for building an automaton.
+     * @param pattern The source of the regular expression
+     * @return The root of the parsed expression
+     * @throws UnsupportedPatternException Thrown if the pattern makes use of a
+     * feature that can't be approximated, such as inline flags
+     */
+    public static RegexNode parseLenient(String pattern) throws UnsupportedPatternException {
+        return parse(pattern, true);
+    }
+    
+    private static RegexNode parse(String pattern, boolean lenient) throws UnsupportedPatternException {
+        PatternParser pp = new PatternParser(pattern, lenient);
+        if(pp.peek('^')) {
+            pp.position += 1;
+        }
+        RegexNode root = pp.alternation();
+        if(pp.position < pattern.length()) {
+            throw pp.unsupported("Unexpected '" + pattern.charAt(pp.position) + "'");
+        }
+        return root;
+    }
+    
+    private RegexNode alternation() throws UnsupportedPatternException {
+        List<RegexNode> options = new ArrayList<>();
+        options.add(sequence());
+        while(peek('|')) {
+            position += 1;
+            options.add(sequence());
+        }
+        return options.size() == 1 ? options.get(0) : new RegexNode.Alt(options);
+    }
+    
+    private RegexNode sequence() throws UnsupportedPatternException {
+        List<RegexNode> parts = new ArrayList<>();
+        while(position < pattern.length() && !peek('|') && !peek(')')) {
+            parts.add(repetition());
+        }
+        return parts.size() == 1 ? parts.get(0) : new RegexNode.Seq(parts);
+    }
+    
+    private RegexNode repetition() throws UnsupportedPatternException {
+        RegexNode atom = atom();
+        while(position < pattern.length()) {
+            int min, max;
+            char c = pattern.charAt(position);
+            if(c == '*') {
+                min = 0;
+                max = -1;
+                position += 1;
+            } else if(c == '+') {
+                min = 1;
+                max = -1;
+                position += 1;
+            } else if(c == '?') {
+                min = 0;
+                max = 1;
+                position += 1;
+            } else if(c == '{') {
+                position += 1;
+                min = number();
+                max = min;
+                if(peek(',')) {
+                    position += 1;
+                    max = peek('}') ? -1 : number();
+                }
+                expect('}');
+                if((max != -1 && max < min) || (!lenient && (min > MAX_REPEAT || max > MAX_REPEAT))) {
+                    throw unsupported("Repetition count out of range");
+                }
+            } else {
+                break;
+            }
+            if(peek('?') || peek('+')) {
+                if(!lenient) {
+                    throw unsupported("Lazy and possessive quantifiers change match semantics");
+                }
+                position += 1;
+            }
+            atom = new RegexNode.Repeat(atom, min, max);
+        }
+        return atom;
+    }
+    
+    private RegexNode atom() throws UnsupportedPatternException {
+        char c = pattern.charAt(position);
+        switch(c) {
+            case '(':
+                position += 1;
+                boolean lookaround = false;
+                if(peek('?')) {
+                    if(position + 1 < pattern.length() && pattern.charAt(position + 1) == ':') {
+                        position += 2;
+                    } else if(lenient && lookaround()) {
+                        lookaround = true;
+                    } else if(!lenient || !group()) {
+                        throw unsupported("Lookaround, named groups and inline flags need the regex engine");
+                    }
+                }
+                RegexNode inner = alternation();
+                expect(')');
+                return lookaround ? empty() : inner;
+            case '[':
+                position += 1;
+                return new RegexNode.Chars(charClass());
+            case '.':
+                position += 1;
+                return new RegexNode.Chars(CharRanges.DOT);
+            case '\\':
+                position += 1;
+                if(lenient && position < pattern.length()) {
+                    RegexNode approximated = approximateEscape();
+                    if(approximated != null) {
+                        return approximated;
+                    }
+                }
+                return new RegexNode.Chars(escape(false));
+            case '^':
+            case '$':
+                if(lenient) {
+                    position += 1;
+                    return empty();
+                }
+                throw unsupported("Anchors need the regex engine");
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+            case ')':
+            case '|':
+                throw unsupported("Dangling '" + c + "'");
+            default:
+                int codePoint = pattern.codePointAt(position);
+                position += Character.charCount(codePoint);
+                return new RegexNode.Chars(CharRanges.single(codePoint));
+        }
+    }
+    
+    /**
+     * Consume the opening of a lookahead or lookbehind, following the '(?'
+     * @return Whether or not the group was a lookaround
+     */
+    private boolean lookaround() {
+        for(String open : new String[]{"?=", "?!", "?<=", "?<!"}) {
+            if(pattern.startsWith(open, position)) {
+                position += open.length();
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Consume the opening of a named or atomic group, following the '('
+     * @return Whether or not the group was a named or atomic group
+     */
+    private boolean group() {
+        if(pattern.startsWith("?>", position)) {
+            position += 2;
+            return true;
+        }
+        if(pattern.startsWith("?<", position)) {
+            int close = pattern.indexOf('>', position);
+            if(close != -1) {
+                position = close + 1;
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Approximate an escape outside of a character class that an automaton
+     * can't evaluate
+     * @return The approximation, or null if the escape should be parsed
+     * normally
+     */
+    private RegexNode approximateEscape() {
+        char c = pattern.charAt(position);
+        if(c >= '1' && c <= '9') {
+            while(position < pattern.length() && Character.isDigit(pattern.charAt(position))) {
+                position += 1;
+            }
+            return new RegexNode.Repeat(new RegexNode.Chars(CharRanges.ALL), 0, -1);
+        }
+        switch(c) {
+            case 'b':
+            case 'B':
+            case 'A':
+            case 'G':
+            case 'z':
+            case 'Z':
+                position += 1;
+                return empty();
+            case 'p':
+            case 'P':
+                position += 1;
+                if(peek('{')) {
+                    int close = pattern.indexOf('}', position);
+                    position = close == -1 ? pattern.length() : close + 1;
+                } else if(position < pattern.length()) {
+                    position += 1;
+                }
+                return new RegexNode.Chars(CharRanges.ALL);
+            default:
+                return null;
+        }
+    }
+    
+    private static RegexNode empty() {
+        return new RegexNode.Seq(new ArrayList<>());
+    }
+    
+    private CharRanges charClass() throws UnsupportedPatternException {
+        boolean negated = false;
+        if(peek('^')) {
+            negated = true;
+            position += 1;
+        }
+        if(peek(']')) {
+            throw unsupported("Empty or ambiguous character class");
+        }
+        CharRanges set = CharRanges.EMPTY;
+        while(!peek(']')) {
+            if(position >= pattern.length()) {
+                throw unsupported("Unterminated character class");
+            }
+            if(peek('[') || pattern.startsWith("&&", position)) {
+                throw unsupported("Nested character classes and intersections need the regex engine");
+            }
+            CharRanges low = classMember();
+            if(peek('-') && position + 1 < pattern.length() && pattern.charAt(position + 1) != ']') {
+                position += 1;
+                CharRanges high = classMember();
+                if(low.rangeCount() != 1 || high.rangeCount() != 1
+                        || low.lowerBound(0) != low.upperBound(0)
+                        || high.lowerBound(0) != high.upperBound(0)) {
+                    throw unsupported("Invalid range in character class");
+                }
+                set = set.union(CharRanges.range(low.lowerBound(0), high.lowerBound(0)));
+            } else {
+                set = set.union(low);
+            }
+        }
+        position += 1;
+        return negated ? set.negate() : set;
+    }
+    
+    private CharRanges classMember() throws UnsupportedPatternException {
+        int codePoint = pattern.codePointAt(position);
+        position += Character.charCount(codePoint);
+        if(codePoint == '\\') {
+            return escape(true);
+        }
+        return CharRanges.single(codePoint);
+    }
+    
+    private CharRanges escape(boolean inClass) throws UnsupportedPatternException {
+        if(position >= pattern.length()) {
+            throw unsupported("Trailing escape");
+        }
+        char c = pattern.charAt(position);
+        position += 1;
+        switch(c) {
+            case 'd': return CharRanges.DIGIT;
+            case 'D': return CharRanges.DIGIT.negate();
+            case 'w': return CharRanges.WORD;
+            case 'W': return CharRanges.WORD.negate();
+            case 's': return CharRanges.SPACE;
+            case 'S': return CharRanges.SPACE.negate();
+            case 't': return CharRanges.single('\t');
+            case 'n': return CharRanges.single('\n');
+            case 'r': return CharRanges.single('\r');
+            case 'f': return CharRanges.single('\f');
+            case 'a': return CharRanges.single('\u0007');
+            case 'e': return CharRanges.single('\u001B');
+            case 'x': return CharRanges.single((char)hex(2));
+            case 'u': return CharRanges.single(utf16Escape());
+            default:
+                if(Character.isLetterOrDigit(c)) {
+                    throw unsupported("Escape \\" + c + " needs the regex engine");
+                }
+                return CharRanges.single(c);
+        }
+    }
+    
+    /**
+     * Read the digits of a unicode escape. As in
+     * {@link java.util.regex.Pattern}, a high surrogate escape followed by a
+     * low surrogate escape is a single code point
+     */
+    private int utf16Escape() throws UnsupportedPatternException {
+        char high = (char)hex(4);
+        if(Character.isHighSurrogate(high) && pattern.startsWith("\\u", position)) {
+            int mark = position;
+            position += 2;
+            char low = (char)hex(4);
+            if(Character.isLowSurrogate(low)) {
+                return Character.toCodePoint(high, low);
+            }
+            position = mark;
+        }
+        return high;
+    }
+    
+    private int hex(int digits) throws UnsupportedPatternException {
+        if(position + digits > pattern.length()) {
+            throw unsupported("Truncated hex escape");
+        }
+        try {
+            int value = Integer.parseInt(pattern.substring(position, position + digits), 16);
+            position += digits;
+            return value;
+        } catch (NumberFormatException ex) {
+            throw new UnsupportedPatternException(pattern, "Malformed hex escape", ex);
+        }
+    }
+    
+    private int number() throws UnsupportedPatternException {
+        int start = position;
+        while(position < pattern.length() && Character.isDigit(pattern.charAt(position))) {
+            position += 1;
+        }
+        if(start == position || position - start > 4) {
+            throw unsupported("Malformed repetition count");
+        }
+        return Integer.parseInt(pattern.substring(start, position));
+    }
+    
+    private void expect(char c) throws UnsupportedPatternException {
+        if(!peek(c)) {
+            throw unsupported("Expected '" + c + "'");
+        }
+        position += 1;
+    }
+    
+    private boolean peek(char c) {
+        return position < pattern.length() && pattern.charAt(position) == c;
+    }
+    
+    private UnsupportedPatternException unsupported(String reason) {
+        return new UnsupportedPatternException(pattern, reason + " (at index " + position + ")");
+    }
+}
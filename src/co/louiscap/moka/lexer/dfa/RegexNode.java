@@ -0,0 +1,139 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer.dfa;
+
+import java.util.List;
+
+/**
+ * A node in the tree produced by {@link PatternParser}. The tree only contains
+ * the constructs needed to describe a regular language; captures are dropped
+ * since an automaton only cares about the extent of a match
+ * @author Louis Capitanchik
+ */
+public abstract class RegexNode {
+    
+    /**
+     * @return The set of characters that a non-empty match of this node can
+     * start with
+     */
+    public abstract CharRanges first();
+    
+    /**
+     * @return Whether or not this node can match the empty string
+     */
+    public abstract boolean nullable();
+    
+    /**
+     * Matches exactly one character from a set
+     */
+    public static class Chars extends RegexNode {
+        public final CharRanges chars;
+        public Chars(CharRanges chars) {
+            this.chars = chars;
+        }
+        @Override
+        public CharRanges first() {
+            return chars;
+        }
+        @Override
+        public boolean nullable() {
+            return false;
+        }
+    }
+    
+    /**
+     * Matches each of its parts one after the other
+     */
+    public static class Seq extends RegexNode {
+        public final List<RegexNode> parts;
+        public Seq(List<RegexNode> parts) {
+            this.parts = parts;
+        }
+        @Override
+        public CharRanges first() {
+            CharRanges first = CharRanges.EMPTY;
+            for(RegexNode part : parts) {
+                first = first.union(part.first());
+                if(!part.nullable()) {
+                    break;
+                }
+            }
+            return first;
+        }
+        @Override
+        public boolean nullable() {
+            return parts.stream().allMatch(RegexNode::nullable);
+        }
+    }
+    
+    /**
+     * Matches any one of its options
+     */
+    public static class Alt extends RegexNode {
+        public final List<RegexNode> options;
+        public Alt(List<RegexNode> options) {
+            this.options = options;
+        }
+        @Override
+        public CharRanges first() {
+            CharRanges first = CharRanges.EMPTY;
+            for(RegexNode option : options) {
+                first = first.union(option.first());
+            }
+            return first;
+        }
+        @Override
+        public boolean nullable() {
+            return options.stream().anyMatch(RegexNode::nullable);
+        }
+    }
+    
+    /**
+     * Matches its body between {@code min} and {@code max} times, where a max
+     * of -1 means there is no upper limit
+     */
+    public static class Repeat extends RegexNode {
+        public final RegexNode body;
+        public final int min, max;
+        public Repeat(RegexNode body, int min, int max) {
+            this.body = body;
+            this.min = min;
+            this.max = max;
+        }
+        @Override
+        public CharRanges first() {
+            return max == 0 ? CharRanges.EMPTY : body.first();
+        }
+        @Override
+        public boolean nullable() {
+            return min == 0 || body.nullable();
+        }
+    }
+}
@@ -33,11 +33,17 @@ import co.louiscap.moka.exceptions.InvalidFormatException;
 import co.louiscap.moka.exceptions.InvalidModuleException;
 import co.louiscap.moka.lexer.LexFile;
 import co.louiscap.moka.parser.LangFile;
+import co.louiscap.moka.parser.LangRule;
 import co.louiscap.moka.translator.InterpFile;
+import co.louiscap.moka.translator.Translation;
+import co.louiscap.moka.translator.TranslationTable;
+import co.louiscap.moka.translator.Translator;
+import co.louiscap.moka.utils.data.SymbolTable;
 import co.louiscap.moka.utils.io.Logging;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -70,6 +76,9 @@ public class Module {
     private String tmpid, id;
     public final Map options;
     
+    private SymbolTable symbols;
+    private Translator translator;
+    
     public Module(File verifiedSourceDir) throws InvalidModuleException, InvalidFormatException {
         directory = verifiedSourceDir;
         
@@ -144,15 +153,91 @@ public class Module {
         return langFiles;
     }
     
-    public HashMap<String, InterpFile> getAllInterpFiles() {
+    public HashMap<String, InterpFile> getAllInterpFiles() throws InvalidFormatException {
         if (interpSource.size() != interpFiles.size()) {
             Set<String> interpKeys = interpSource.keySet();
             interpKeys.removeAll(interpFiles.keySet());
-            interpKeys.forEach(s -> loadInterpFile(s));
+            for(String s : interpKeys) {
+                loadInterpFile(s);
+            }
         }
         return interpFiles;
     }
     
+    /**
+     * Get the table of every terminal and nonterminal symbol used by this
+     * module. The table is built the first time it is requested, loading every
+     * lexical and language file; terminals are given ids in the order of the
+     * lexical files' rules, followed by the targets of each language rule,
+     * and then any other symbol used by a language rule, which is marked as a
+     * nonterminal that has no rule
+     * @return The module wide SymbolTable
+     */
+    public SymbolTable getSymbols() {
+        if(symbols == null) {
+            symbols = new SymbolTable();
+            getAllLexFiles().values().stream()
+                    .flatMap(file -> Arrays.stream(file.getRules()))
+                    .forEach(rule -> symbols.intern(rule.getOutToken()));
+            LangRule[] langRules = getAllLangFiles().values().stream()
+                    .flatMap(file -> Arrays.stream(file.getRules()))
+                    .toArray(LangRule[]::new);
+            Arrays.stream(langRules).forEach(rule -> symbols.internNonterminal(rule.target));
+            int known = symbols.size();
+            Arrays.stream(langRules).forEach(rule -> rule.compile(symbols));
+            // No lexical rule produces a symbol that is first seen in a
+            // language rule, so it can only be a nonterminal, even though
+            // no rule defines it
+            for(int id = known; id < symbols.size(); id += 1) {
+                symbols.internNonterminal(symbols.nameOf(id));
+            }
+        }
+        return symbols;
+    }
+    
+    /**
+     * Get every translation handler of this module, loading every interpreter
+     * file, in the order the files were loaded and then the order that each
+     * file declares them
+     * @return The handlers of the module, ready for a {@link TranslationTable}
+     * @throws InvalidFormatException Thrown if any handler of the module is
+     * malformed
+     */
+    public Translation[] getTranslations() throws InvalidFormatException {
+        return getAllInterpFiles().values().stream()
+                .flatMap(file -> Arrays.stream(file.getTranslations()))
+                .toArray(Translation[]::new);
+    }
+    
+    /**
+     * Get the translator for this module's parse trees. It is created the
+     * first time it is requested, compiling every handler of the module
+     * against {@link #getSymbols()}, and then reused
+     * @return The module wide Translator
+     * @throws InvalidFormatException Thrown if any handler of the module is
+     * malformed or fails to compile
+     */
+    public Translator getTranslator() throws InvalidFormatException {
+        return getTranslator(getSymbols());
+    }
+    
+    /**
+     * Get the translator for trees parsed with the given symbols, so that
+     * it can dispatch on the symbol ids the parser gave each node. The
+     * module wide translator is reused as long as it was compiled against
+     * the same table
+     * @param symbols The symbols of the parser that builds the trees
+     * @return A Translator for the parser's trees
+     * @throws InvalidFormatException Thrown if any handler of the module is
+     * malformed or fails to compile
+     */
+    public Translator getTranslator(SymbolTable symbols) throws InvalidFormatException {
+        if(translator == null || translator.getTable().getSymbols() != symbols) {
+            translator = new Translator(new TranslationTable(getTranslations(), symbols));
+        }
+        return translator;
+    }
+    
     public String getLexSourceByName(String name) {
         return lexSource.get(name);
     }
@@ -183,7 +268,7 @@ public class Module {
         return file;
     }
     
-    public InterpFile getInterpFileByName(String name) {
+    public InterpFile getInterpFileByName(String name) throws InvalidFormatException {
         InterpFile file = interpFiles.get(name);
         if(file == null) {
             loadInterpFile(name);
@@ -213,7 +298,7 @@ public class Module {
      * InterpFiles map, it needs to be loaded and placed in the map
      * @param name The name of the interpreter file being loaded
      */
-    private void loadInterpFile (String name) {
+    private void loadInterpFile (String name) throws InvalidFormatException {
         interpFiles.put(name, new InterpFile(id, interpSource.get(name)));
     }
     
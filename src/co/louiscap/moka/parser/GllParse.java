@@ -0,0 +1,443 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser;
+
+import co.louiscap.moka.exceptions.LanguageSyntaxException;
+import co.louiscap.moka.lexer.Token;
+import co.louiscap.moka.parser.forest.ForestNode;
+import co.louiscap.moka.parser.forest.ParseForest;
+import co.louiscap.moka.parser.graph.GrammarGraph;
+import co.louiscap.moka.parser.graph.GraphRelations;
+import co.louiscap.moka.utils.data.SymbolTable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.function.IntFunction;
+
+/**
+ * A single run of the GLL algorithm over one input. Rather than a stack, the
+ * parser keeps a graph structured stack (GSS) in which every return point for
+ * a (slot, input position) pair exists exactly once, and rather than a tree
+ * it builds a binarised shared packed parse forest ({@link ParseForest}) in
+ * which every (symbol, start, end) derivation exists exactly once. Together these bound
+ * the work done on any grammar, including left recursive and ambiguous ones,
+ * to a cubic function of the input length, and to roughly linear work when
+ * the grammar is deterministic.
+ * <br><br>
+ * Instances are single use and not thread safe; {@link Parser} creates a new
+ * one for every input.
+ * <br><br>
+ * The input may contain nonterminals as well as tokens, each standing in for
+ * a subtree kept from an earlier parse; they are matched like tokens, and
+ * appear as leaves of the tree.
+ * @author Louis Capitanchik
+ */
+final class GllParse {
+    
+    /**
+     * The slot of the bottom of the stack
+     */
+    private static final int EMPTY = -1;
+    
+    private final GrammarSlots slots;
+    private final GrammarGraph graph;
+    private final SymbolTable symbols;
+    private final int[] input;
+    private final int[] lookaheads;
+    private final IntFunction<Token> tokens;
+    private final String filename;
+    
+    private final ArrayDeque<Descriptor> pending;
+    private final HashSet<Descriptor> seen;
+    private final HashMap<Long, GssNode> stack;
+    private final GssNode root;
+    private final ParseForest forest;
+    
+    private int furthest;
+    private final BitSet expected;
+    
+    /**
+     * @param slots The parse table of the grammar
+     * @param symbols The table that the grammar was interned in
+     * @param input The symbol id of each token's type, in the same table
+     * @param tokens Looks up the token at an index of the input
+     * @param filename The name of the file being parsed, for errors
+     * @param lookaheads The lookahead symbol at every index of the input and
+     * at the index after it, or null to work them out from the input with
+     * {@link GrammarSlots#eof} after it
+     */
+    GllParse(GrammarSlots slots, SymbolTable symbols, int[] input, IntFunction<Token> tokens, String filename,
+            int[] lookaheads) {
+        this.slots = slots;
+        this.graph = slots.graph();
+        this.symbols = symbols;
+        this.input = input;
+        this.lookaheads = lookaheads;
+        this.tokens = tokens;
+        this.filename = filename;
+        pending = new ArrayDeque<>();
+        seen = new HashSet<>();
+        stack = new HashMap<>();
+        root = new GssNode(EMPTY, 0);
+        forest = new ParseForest(symbols, input, tokens);
+        furthest = 0;
+        expected = new BitSet();
+    }
+    
+    /**
+     * Parse the whole input as the given symbol
+     * @param start The symbol id of the entry rule
+     * @return The parse forest, rooted at the match of the start symbol over
+     * the whole input
+     * @throws LanguageSyntaxException Thrown if the input isn't a sentence of
+     * the start symbol. The location is that of the furthest token that any
+     * alternative reached
+     */
+    ParseForest run(int start) throws LanguageSyntaxException {
+        expand(start, root, 0);
+        while(!pending.isEmpty()) {
+            step(pending.pollLast());
+        }
+        ForestNode result = forest.find(start, false, 0, input.length);
+        if(result == null) {
+            throw Parser.syntaxError(furthest, expected, input.length, tokens, filename, symbols);
+        }
+        forest.setRoot(result);
+        return forest;
+    }
+    
+    /**
+     * Carry one descriptor forward through terminals until it fails, or has
+     * to call another nonterminal or take more than one path. Completing the
+     * rule along the way doesn't stop the descriptor, since a longer match
+     * may still follow
+     */
+    private void step(Descriptor d) {
+        int slot = d.slot;
+        GssNode u = d.stack;
+        int i = d.index;
+        ForestNode w = d.node;
+        while(true) {
+            if(!slots.selects(slot, lookahead(i))) {
+                reject(i, slots.selectSet(slot));
+                return;
+            }
+            if(slots.isAccepting(slot)) {
+                pop(u, i, complete(slot, w, i));
+            }
+            int next = -1;
+            ForestNode nextNode = null;
+            for(int e = graph.first(GraphRelations.THEN, slot); e < graph.end(GraphRelations.THEN, slot); e += 1) {
+                int to = graph.target(GraphRelations.THEN, e);
+                int x = graph.label(GraphRelations.THEN, e);
+                if(slots.isNonterminal(x)) {
+                    expand(x, call(to, u, i, w), i);
+                }
+                if(i < input.length && input[i] == x) {
+                    // A nonterminal in the input stands for a subtree that
+                    // has already been parsed, and is matched like a token
+                    ForestNode z = extend(to, w, forest.terminal(i));
+                    if(next >= 0) {
+                        add(next, u, i + 1, nextNode);
+                    }
+                    next = to;
+                    nextNode = z;
+                }
+            }
+            if(next < 0) {
+                return;
+            }
+            slot = next;
+            w = nextNode;
+            i += 1;
+            reach(i);
+        }
+    }
+    
+    /**
+     * Start a nonterminal's rule at index i, returning to u
+     */
+    private void expand(int symbol, GssNode u, int i) {
+        int node = slots.node(symbol);
+        for(int e = graph.first(GraphRelations.THEN, node); e < graph.end(GraphRelations.THEN, node); e += 1) {
+            add(graph.target(GraphRelations.THEN, e), u, i, null);
+        }
+    }
+    
+    private void add(int slot, GssNode u, int i, ForestNode w) {
+        if(!slots.selects(slot, lookahead(i))) {
+            reject(i, slots.selectSet(slot));
+            return;
+        }
+        Descriptor d = new Descriptor(slot, u, i, w);
+        if(seen.add(d)) {
+            pending.add(d);
+        }
+    }
+    
+    /**
+     * @return The symbol id of the token at index i, for testing against
+     * the lookahead sets of the grammar
+     */
+    private int lookahead(int i) {
+        if(lookaheads != null) {
+            return lookaheads[i];
+        }
+        return i < input.length ? slots.lookahead(input[i]) : slots.eof;
+    }
+    
+    /**
+     * Record that a parse got as far as index i
+     */
+    private void reach(int i) {
+        if(i > furthest) {
+            furthest = i;
+            expected.clear();
+        }
+    }
+    
+    /**
+     * Record that a parse couldn't continue at index i, and which symbols
+     * would have let it
+     */
+    private void reject(int i, BitSet wanted) {
+        reach(i);
+        if(i == furthest) {
+            expected.or(wanted);
+            expected.clear(slots.eof);
+        }
+    }
+    
+    /**
+     * Push a return point for the given slot at index i onto u, replaying
+     * any derivations already found from that point
+     */
+    private GssNode call(int slot, GssNode u, int i, ForestNode w) {
+        long key = ((long)slot << 32) | i;
+        GssNode v = stack.get(key);
+        if(v == null) {
+            v = new GssNode(slot, i);
+            stack.put(key, v);
+        }
+        if(v.addEdge(u, w)) {
+            for(int p = 0; p < v.popped.size(); p += 1) {
+                ForestNode z = v.popped.get(p);
+                add(slot, u, z.end, extend(slot, w, z));
+            }
+        }
+        return v;
+    }
+    
+    /**
+     * Return from u with the derivation z, which ends at index i
+     */
+    private void pop(GssNode u, int i, ForestNode z) {
+        if(u == root) {
+            return;
+        }
+        if(!u.pop(z)) {
+            return;
+        }
+        for(int e = 0; e < u.parents.size(); e += 1) {
+            add(u.slot, u.parents.get(e), i, extend(u.slot, u.nodes.get(e), z));
+        }
+    }
+    
+    /**
+     * Find or create the forest node for a rule's match up to the given slot,
+     * made up of w (everything before the last symbol) followed by z (the
+     * last symbol). When w is null, z is the whole match and stands in for it
+     */
+    private ForestNode extend(int slot, ForestNode w, ForestNode z) {
+        if(w == null) {
+            return z;
+        }
+        ForestNode y = forest.node(slot, true, w.start, z.end);
+        y.addPacked(slot, z.start, w, z);
+        return y;
+    }
+    
+    /**
+     * Find or create the forest node for a whole match of the rule that the
+     * given slot belongs to, where w is the match up to the slot (or null if
+     * the match is empty) and i is the index after it
+     */
+    private ForestNode complete(int slot, ForestNode w, int i) {
+        ForestNode z = w == null ? forest.empty(i) : w;
+        ForestNode y = forest.node(slots.target(slot), false, z.start, i);
+        y.addPacked(slot, z.start, null, z);
+        return y;
+    }
+    
+    /**
+     * A return point in the graph structured stack; where to carry on from
+     * once a call made at a given input index has found a derivation. The
+     * edges and derivations are kept in order to be replayed. An ambiguous
+     * grammar can give a node as many of each as there are indexes in the
+     * input, so once there are more than a few they are also indexed in hash
+     * sets to check for duplicates
+     */
+    static final class GssNode {
+        
+        private static final int INDEX_AT = 8;
+        
+        final int slot, index;
+        final ArrayList<GssNode> parents;
+        final ArrayList<ForestNode> nodes;
+        final ArrayList<ForestNode> popped;
+        private HashSet<Edge> edges;
+        private HashSet<ForestNode> derivations;
+        
+        GssNode(int slot, int index) {
+            this.slot = slot;
+            this.index = index;
+            parents = new ArrayList<>(1);
+            nodes = new ArrayList<>(1);
+            popped = new ArrayList<>(1);
+        }
+        
+        /**
+         * @return true if the edge is new
+         */
+        boolean addEdge(GssNode parent, ForestNode node) {
+            if(edges != null) {
+                if(!edges.add(new Edge(parent, node))) {
+                    return false;
+                }
+            } else {
+                for(int e = 0; e < parents.size(); e += 1) {
+                    if(parents.get(e) == parent && nodes.get(e) == node) {
+                        return false;
+                    }
+                }
+                if(parents.size() + 1 >= INDEX_AT) {
+                    edges = new HashSet<>();
+                    for(int e = 0; e < parents.size(); e += 1) {
+                        edges.add(new Edge(parents.get(e), nodes.get(e)));
+                    }
+                    edges.add(new Edge(parent, node));
+                }
+            }
+            parents.add(parent);
+            nodes.add(node);
+            return true;
+        }
+        
+        /**
+         * Record a derivation found from this return point
+         * @return true if the derivation is new
+         */
+        boolean pop(ForestNode node) {
+            if(derivations != null) {
+                if(!derivations.add(node)) {
+                    return false;
+                }
+            } else {
+                if(popped.contains(node)) {
+                    return false;
+                }
+                if(popped.size() + 1 >= INDEX_AT) {
+                    derivations = new HashSet<>(popped);
+                    derivations.add(node);
+                }
+            }
+            popped.add(node);
+            return true;
+        }
+    }
+    
+    /**
+     * An edge of the graph structured stack, from a return point to its
+     * parent, labelled with the forest node built before the call. Forest
+     * and stack nodes are unique, so they are compared by identity
+     */
+    private static final class Edge {
+        final GssNode parent;
+        final ForestNode node;
+        
+        Edge(GssNode parent, ForestNode node) {
+            this.parent = parent;
+            this.node = node;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(parent) + System.identityHashCode(node);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof Edge)) {
+                return false;
+            }
+            Edge other = (Edge) obj;
+            return parent == other.parent && node == other.node;
+        }
+    }
+    
+    /**
+     * A unit of pending work: carry on from a slot, with a return stack, at an
+     * input index, having built a forest node for the alternative so far
+     */
+    private static final class Descriptor {
+        final int slot;
+        final GssNode stack;
+        final int index;
+        final ForestNode node;
+        
+        Descriptor(int slot, GssNode stack, int index, ForestNode node) {
+            this.slot = slot;
+            this.stack = stack;
+            this.index = index;
+            this.node = node;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = slot;
+            hash = 31 * hash + index;
+            hash = 31 * hash + System.identityHashCode(stack);
+            hash = 31 * hash + System.identityHashCode(node);
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof Descriptor)) {
+                return false;
+            }
+            Descriptor other = (Descriptor) obj;
+            return slot == other.slot && index == other.index
+                    && stack == other.stack && node == other.node;
+        }
+    }
+}
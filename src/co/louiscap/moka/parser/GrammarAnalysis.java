@@ -0,0 +1,531 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser;
+
+import co.louiscap.moka.utils.data.SymbolTable;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+
+/**
+ * The static properties of a grammar, worked out once from the compiled
+ * {@link RuleAutomaton} of every rule. Sets of symbols are BitSets over the
+ * ids of a {@link SymbolTable}, with the extra id {@link GrammarAnalysis#eof}
+ * standing for the end of the input.
+ * <br><br>
+ * As well as the nullable, FIRST and FOLLOW sets that the parse tables are
+ * built from, the analysis finds the rules that are likely to be mistakes:
+ * nonterminals that are used but have no rule, rules that can't be reached
+ * from the entry rule, rules that can never finish matching because every
+ * path through them needs a rule that can't, and rules that can call
+ * themselves without consuming any tokens. None of
+ * these stop a grammar from being used, but unproductive rules never match
+ * anything, and left recursive rules need an engine that can grow a seed.
+ * @author Louis Capitanchik
+ */
+public final class GrammarAnalysis {
+    
+    /**
+     * The symbol that stands for the end of the input in FOLLOW sets
+     */
+    public final int eof;
+    
+    /**
+     * The symbol id of the rule that whole inputs are parsed as, or -1 if
+     * there is no such rule
+     */
+    public final int entry;
+    
+    private final RuleAutomaton[] rules;
+    private final BitSet nullable;
+    private final BitSet[] first;
+    private final BitSet[] follow;
+    /**
+     * FIRST sets of the rest of each rule from each of its states, indexed
+     * by target and then by position + 1, so that the start state is at 0
+     */
+    private final BitSet[][] restFirst;
+    private final BitSet[] restNullable;
+    private final BitSet[] leftCorners;
+    private final BitSet undefined;
+    private final BitSet productive;
+    private final BitSet reachable;
+    private final BitSet[] terminals;
+    
+    /**
+     * @param rules The compiled rule for each nonterminal, indexed by the
+     * symbol id of the rule's target. Entries for terminals are null
+     * @param entry The symbol id of the rule that whole inputs are parsed as,
+     * or -1 if there is no such rule
+     * @param symbols The table that the rules were compiled against. Symbols
+     * used by a rule that it marks as nonterminals, but that have no rule of
+     * their own, are undefined
+     */
+    public GrammarAnalysis(RuleAutomaton[] rules, int entry, SymbolTable symbols) {
+        this.rules = rules;
+        this.entry = entry;
+        eof = rules.length;
+        undefined = new BitSet(rules.length);
+        for(RuleAutomaton rule : rules) {
+            for(int p = 0; rule != null && p < rule.size(); p += 1) {
+                int y = rule.symbol(p);
+                undefined.set(y, rules[y] == null && symbols.isNonterminal(y));
+            }
+        }
+        nullable = new BitSet(rules.length);
+        first = new BitSet[rules.length];
+        follow = new BitSet[rules.length];
+        restFirst = new BitSet[rules.length][];
+        restNullable = new BitSet[rules.length];
+        for(int x = 0; x < rules.length; x += 1) {
+            first[x] = new BitSet();
+            follow[x] = new BitSet();
+            if(rules[x] == null) {
+                first[x].set(x);
+                continue;
+            }
+            restFirst[x] = new BitSet[rules[x].size() + 1];
+            for(int p = 0; p < restFirst[x].length; p += 1) {
+                restFirst[x][p] = new BitSet();
+            }
+            restNullable[x] = new BitSet();
+        }
+        
+        // FIRST sets and nullability of the rest of each rule from each state,
+        // and of each symbol, until neither changes
+        boolean changed = true;
+        while(changed) {
+            changed = false;
+            for(int x = 0; x < rules.length; x += 1) {
+                RuleAutomaton rule = rules[x];
+                if(rule == null) {
+                    continue;
+                }
+                for(int p = rule.size() - 1; p >= -1; p -= 1) {
+                    BitSet into = restFirst[x][p + 1];
+                    int before = into.cardinality();
+                    boolean empty = accepts(rule, p);
+                    for(int n : next(rule, p)) {
+                        int y = rule.symbol(n);
+                        into.or(first[y]);
+                        if(nullable.get(y)) {
+                            into.or(restFirst[x][n + 1]);
+                            empty |= restNullable[x].get(n + 1);
+                        }
+                    }
+                    changed |= into.cardinality() != before || empty != restNullable[x].get(p + 1);
+                    restNullable[x].set(p + 1, empty);
+                }
+                first[x].or(restFirst[x][0]);
+                nullable.set(x, restNullable[x].get(0));
+            }
+        }
+        
+        // FOLLOW sets of each nonterminal
+        if(entry >= 0) {
+            follow[entry].set(eof);
+        }
+        changed = true;
+        while(changed) {
+            changed = false;
+            for(int x = 0; x < rules.length; x += 1) {
+                RuleAutomaton rule = rules[x];
+                if(rule == null) {
+                    continue;
+                }
+                for(int p = -1; p < rule.size(); p += 1) {
+                    for(int n : next(rule, p)) {
+                        int y = rule.symbol(n);
+                        if(rules[y] == null) {
+                            continue;
+                        }
+                        int before = follow[y].cardinality();
+                        follow[y].or(restFirst[x][n + 1]);
+                        if(restNullable[x].get(n + 1)) {
+                            follow[y].or(follow[x]);
+                        }
+                        changed |= follow[y].cardinality() != before;
+                    }
+                }
+            }
+        }
+        
+        // The nonterminals that each nonterminal can call without consuming
+        // any tokens first
+        leftCorners = new BitSet[rules.length];
+        for(int x = 0; x < rules.length; x += 1) {
+            leftCorners[x] = new BitSet();
+            if(rules[x] != null) {
+                addLeftCorners(rules[x], -1, leftCorners[x], new BitSet());
+            }
+        }
+        changed = true;
+        while(changed) {
+            changed = false;
+            for(int x = 0; x < rules.length; x += 1) {
+                int before = leftCorners[x].cardinality();
+                for(int y = leftCorners[x].nextSetBit(0); y >= 0; y = leftCorners[x].nextSetBit(y + 1)) {
+                    leftCorners[x].or(leftCorners[y]);
+                }
+                changed |= leftCorners[x].cardinality() != before;
+            }
+        }
+        
+        // Symbols that can derive a string of tokens; every terminal, and
+        // every rule with a path through it made only of such symbols
+        productive = new BitSet(rules.length);
+        BitSet[] restProductive = new BitSet[rules.length];
+        for(int x = 0; x < rules.length; x += 1) {
+            if(rules[x] == null) {
+                productive.set(x, !undefined.get(x));
+            } else {
+                restProductive[x] = new BitSet();
+            }
+        }
+        changed = true;
+        while(changed) {
+            changed = false;
+            for(int x = 0; x < rules.length; x += 1) {
+                RuleAutomaton rule = rules[x];
+                if(rule == null) {
+                    continue;
+                }
+                for(int p = rule.size() - 1; p >= -1; p -= 1) {
+                    if(restProductive[x].get(p + 1)) {
+                        continue;
+                    }
+                    boolean done = accepts(rule, p);
+                    for(int n : next(rule, p)) {
+                        done |= productive.get(rule.symbol(n)) && restProductive[x].get(n + 1);
+                    }
+                    if(done) {
+                        restProductive[x].set(p + 1);
+                        changed = true;
+                    }
+                }
+                productive.set(x, restProductive[x].get(0));
+            }
+        }
+        
+        // Terminals that can appear anywhere in a match of each symbol
+        terminals = new BitSet[rules.length];
+        for(int x = 0; x < rules.length; x += 1) {
+            terminals[x] = new BitSet();
+            if(rules[x] == null) {
+                terminals[x].set(x);
+            }
+        }
+        changed = true;
+        while(changed) {
+            changed = false;
+            for(int x = 0; x < rules.length; x += 1) {
+                RuleAutomaton rule = rules[x];
+                if(rule == null) {
+                    continue;
+                }
+                int before = terminals[x].cardinality();
+                for(int p = 0; p < rule.size(); p += 1) {
+                    terminals[x].or(terminals[rule.symbol(p)]);
+                }
+                changed |= terminals[x].cardinality() != before;
+            }
+        }
+        
+        // Symbols used by the entry rule, or by a rule that it uses
+        reachable = new BitSet(rules.length);
+        if(entry >= 0 && entry < rules.length) {
+            ArrayDeque<Integer> pending = new ArrayDeque<>();
+            reachable.set(entry);
+            pending.push(entry);
+            while(!pending.isEmpty()) {
+                RuleAutomaton rule = rules[pending.pop()];
+                if(rule == null) {
+                    continue;
+                }
+                for(int p = 0; p < rule.size(); p += 1) {
+                    int y = rule.symbol(p);
+                    if(!reachable.get(y)) {
+                        reachable.set(y);
+                        pending.push(y);
+                    }
+                }
+            }
+        }
+    }
+    
+    private static int[] next(RuleAutomaton rule, int position) {
+        return position < 0 ? rule.first() : rule.follow(position);
+    }
+    
+    private static boolean accepts(RuleAutomaton rule, int position) {
+        return position < 0 ? rule.isNullable() : rule.isAccepting(position);
+    }
+    
+    private void addLeftCorners(RuleAutomaton rule, int position, BitSet into, BitSet seen) {
+        seen.set(position + 1);
+        for(int n : next(rule, position)) {
+            int y = rule.symbol(n);
+            if(rules[y] != null) {
+                into.set(y);
+            }
+            if(nullable.get(y) && !seen.get(n + 1)) {
+                addLeftCorners(rule, n, into, seen);
+            }
+        }
+    }
+    
+    /**
+     * @param symbol A symbol id
+     * @return Whether the symbol can derive the empty sequence
+     */
+    public boolean isNullable(int symbol) {
+        return nullable.get(symbol);
+    }
+    
+    /**
+     * @param symbol A symbol id
+     * @return The terminals that can start a match of the symbol; just the
+     * symbol itself for a terminal
+     */
+    public BitSet first(int symbol) {
+        return (BitSet) first[symbol].clone();
+    }
+    
+    /**
+     * @param symbol A symbol id
+     * @return The terminals, and {@link GrammarAnalysis#eof}, that can come
+     * straight after a match of the symbol. Empty for terminals
+     */
+    public BitSet follow(int symbol) {
+        return (BitSet) follow[symbol].clone();
+    }
+    
+    /**
+     * @param symbol A symbol id
+     * @return The terminals that can appear anywhere in a match of the
+     * symbol; just the symbol itself for a terminal
+     */
+    public BitSet terminals(int symbol) {
+        return (BitSet) terminals[symbol].clone();
+    }
+    
+    /**
+     * Find the rules that every match of ends with a given token, and that
+     * can't contain that token anywhere else; so that wherever the token
+     * appears in a match of one of these rules, the rule's match ends there.
+     * A run of such rules can be split into its matches just after each of
+     * the tokens
+     * @param boundary The symbol id of a terminal
+     * @return The nonterminals whose rules end at the boundary
+     */
+    public BitSet statements(int boundary) {
+        BitSet result = new BitSet();
+        for(int x = 0; x < rules.length; x += 1) {
+            RuleAutomaton rule = rules[x];
+            if(rule == null || rule.isNullable()) {
+                continue;
+            }
+            boolean ends = true;
+            for(int p = 0; p < rule.size() && ends; p += 1) {
+                int y = rule.symbol(p);
+                if(rule.isAccepting(p)) {
+                    ends = y == boundary && rule.follow(p).length == 0;
+                } else {
+                    ends = !terminals[y].get(boundary);
+                }
+            }
+            result.set(x, ends);
+        }
+        return result;
+    }
+    
+    /**
+     * @param symbol The symbol id of a nonterminal
+     * @return The nonterminals that the symbol's rule can call before
+     * consuming any tokens
+     */
+    public BitSet leftCorners(int symbol) {
+        return (BitSet) leftCorners[symbol].clone();
+    }
+    
+    /**
+     * @param symbol A symbol id
+     * @return Whether the symbol's rule can call itself before consuming any
+     * tokens
+     */
+    public boolean isLeftRecursive(int symbol) {
+        return callsFirst(symbol, symbol);
+    }
+    
+    /**
+     * @param symbol The symbol id of a nonterminal
+     * @param callee A symbol id
+     * @return Whether the symbol's rule can call the callee before consuming
+     * any tokens
+     */
+    boolean callsFirst(int symbol, int callee) {
+        return leftCorners[symbol].get(callee);
+    }
+    
+    /**
+     * @param symbol A symbol id
+     * @return Whether the symbol can derive a sequence of tokens
+     */
+    public boolean isProductive(int symbol) {
+        return productive.get(symbol);
+    }
+    
+    /**
+     * @param symbol A symbol id
+     * @return Whether the symbol can be used by the entry rule
+     */
+    public boolean isReachable(int symbol) {
+        return reachable.get(symbol);
+    }
+    
+    /**
+     * @return The nonterminals that can call themselves before consuming
+     * any tokens
+     */
+    public BitSet getLeftRecursive() {
+        BitSet set = new BitSet();
+        for(int x = 0; x < rules.length; x += 1) {
+            if(leftCorners[x].get(x)) {
+                set.set(x);
+            }
+        }
+        return set;
+    }
+    
+    /**
+     * @return The nonterminals that are used by a rule but have no rule
+     */
+    public BitSet getUndefined() {
+        return (BitSet) undefined.clone();
+    }
+    
+    /**
+     * @return The nonterminals that can't derive any sequence of tokens
+     */
+    public BitSet getUnproductive() {
+        BitSet set = rules();
+        set.andNot(productive);
+        return set;
+    }
+    
+    /**
+     * @return The nonterminals that can't be used by the entry rule. Every
+     * nonterminal if there is no entry rule
+     */
+    public BitSet getUnreachable() {
+        BitSet set = rules();
+        set.andNot(reachable);
+        return set;
+    }
+    
+    private BitSet rules() {
+        BitSet set = new BitSet();
+        for(int x = 0; x < rules.length; x += 1) {
+            if(rules[x] != null) {
+                set.set(x);
+            }
+        }
+        return set;
+    }
+    
+    /**
+     * @param symbol The symbol id of a nonterminal
+     * @param position A position of the symbol's rule, or -1 for its start
+     * @return The FIRST set of the rest of the rule after the position. Must
+     * not be modified
+     */
+    BitSet restFirst(int symbol, int position) {
+        return restFirst[symbol][position + 1];
+    }
+    
+    /**
+     * @param symbol The symbol id of a nonterminal
+     * @param position A position of the symbol's rule, or -1 for its start
+     * @return Whether the rule can end without consuming any more tokens
+     * after the position
+     */
+    boolean isRestNullable(int symbol, int position) {
+        return restNullable[symbol].get(position + 1);
+    }
+    
+    /**
+     * Describe the problems found in the grammar, one per line
+     * @param symbols The table that the grammar was interned in
+     * @return A warning for each undefined nonterminal and each unreachable
+     * and unproductive rule, or an empty String if there are none
+     */
+    public String describeProblems(SymbolTable symbols) {
+        StringBuilder sb = new StringBuilder();
+        for(int x = undefined.nextSetBit(0); x >= 0; x = undefined.nextSetBit(x + 1)) {
+            sb.append("Symbol ").append(symbols.nameOf(x)).append(" is used");
+            String users = usersOf(x, symbols);
+            if(!users.isEmpty()) {
+                sb.append(" by ").append(users);
+            }
+            sb.append(" but has no rule\n");
+        }
+        BitSet unproductive = getUnproductive();
+        for(int x = unproductive.nextSetBit(0); x >= 0; x = unproductive.nextSetBit(x + 1)) {
+            sb.append("Rule ").append(symbols.nameOf(x)).append(" can never match any tokens\n");
+        }
+        if(entry >= 0) {
+            BitSet unreachable = getUnreachable();
+            for(int x = unreachable.nextSetBit(0); x >= 0; x = unreachable.nextSetBit(x + 1)) {
+                sb.append("Rule ").append(symbols.nameOf(x)).append(" is not used by ")
+                        .append(symbols.nameOf(entry)).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * @return The names of the rules that use a symbol, separated by commas
+     */
+    private String usersOf(int symbol, SymbolTable symbols) {
+        StringBuilder sb = new StringBuilder();
+        for(int x = 0; x < rules.length; x += 1) {
+            RuleAutomaton rule = rules[x];
+            if(rule == null) {
+                continue;
+            }
+            for(int p = 0; p < rule.size(); p += 1) {
+                if(rule.symbol(p) == symbol) {
+                    sb.append(sb.length() == 0 ? "" : ", ").append(symbols.nameOf(x));
+                    break;
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,258 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser;
+
+import co.louiscap.moka.parser.graph.GrammarGraph;
+import co.louiscap.moka.parser.graph.GraphRelations;
+import java.util.BitSet;
+
+/**
+ * The parse table used by the GLL engine. Every state of every rule's
+ * {@link RuleAutomaton} is given a slot id, so that the parser can represent
+ * "how far through which rule" it is as a single int. The slots of one rule
+ * are numbered consecutively, starting with its start state.
+ * <br><br>
+ * The shape of the grammar is kept in a {@link GrammarGraph} whose first
+ * {@link GrammarSlots#size()} nodes are the slots, followed by one node for
+ * every symbol. Each nonterminal's node has a {@link GraphRelations#THEN} edge
+ * to the start slot of its rule, each slot has a THEN edge to every slot that
+ * can come after it, labelled with the symbol matched on the way, and every
+ * slot that can end its rule has a {@link GraphRelations#TERMINATES} edge to
+ * the node of the rule.
+ * <br><br>
+ * Each slot also carries the set of tokens that may come next when the parser
+ * is at that slot, worked out from the FIRST and FOLLOW sets of the grammar's
+ * {@link GrammarAnalysis}.
+ * Testing the next token against this set before doing any work stops the
+ * parser from trying paths that can't match, and from finishing rules that
+ * can't be followed by what comes next.
+ * @author Louis Capitanchik
+ */
+final class GrammarSlots {
+    
+    /**
+     * The lookahead symbol that stands for the end of the input
+     */
+    final int eof;
+    
+    private final int[] target;
+    private final int[] position;
+    private final BitSet accepting;
+    private final GrammarGraph graph;
+    private final GrammarAnalysis analysis;
+    private final BitSet[] select;
+    private final int[][] choices;
+    
+    /**
+     * @param rules The compiled rule for each nonterminal, indexed by the
+     * symbol id of the rule's target. Entries for terminals are null
+     * @param analysis The analysis of the same rules
+     */
+    GrammarSlots(RuleAutomaton[] rules, GrammarAnalysis analysis) {
+        this.analysis = analysis;
+        eof = analysis.eof;
+        int count = 0;
+        for(RuleAutomaton rule : rules) {
+            if(rule != null) {
+                count += rule.size() + 1;
+            }
+        }
+        target = new int[count];
+        position = new int[count];
+        accepting = new BitSet(count);
+        int[] start = new int[rules.length];
+        
+        GrammarGraph.Builder builder = new GrammarGraph.Builder(count + rules.length);
+        int slot = 0;
+        for(int x = 0; x < rules.length; x += 1) {
+            RuleAutomaton rule = rules[x];
+            if(rule == null) {
+                continue;
+            }
+            int base = slot;
+            start[x] = base;
+            builder.addEdge(count + x, GraphRelations.THEN, base, 0);
+            for(int p = -1; p < rule.size(); p += 1, slot += 1) {
+                target[slot] = x;
+                position[slot] = p;
+                int[] next = p < 0 ? rule.first() : rule.follow(p);
+                for(int n : next) {
+                    builder.addEdge(slot, GraphRelations.THEN, base + 1 + n, rule.symbol(n));
+                }
+                if(p < 0 ? rule.isNullable() : rule.isAccepting(p)) {
+                    accepting.set(slot);
+                    builder.addEdge(slot, GraphRelations.TERMINATES, count + x, x);
+                }
+            }
+        }
+        graph = builder.build();
+        
+        // Rules that can finish from a slot accept whatever can follow them
+        select = new BitSet[count];
+        for(int q = 0; q < count; q += 1) {
+            select[q] = (BitSet) analysis.restFirst(target[q], position[q]).clone();
+            if(analysis.isRestNullable(target[q], position[q])) {
+                select[q].or(analysis.follow(target[q]));
+            }
+        }
+        
+        // Left recursive paths out of each start slot first, then the rest
+        // in the order they were written
+        choices = new int[count][];
+        for(int x = 0; x < rules.length; x += 1) {
+            if(rules[x] == null) {
+                continue;
+            }
+            int q = start[x];
+            int from = graph.first(GraphRelations.THEN, q), to = graph.end(GraphRelations.THEN, q);
+            int[] order = new int[to - from];
+            int n = 0;
+            for(int pass = 0; pass < 2; pass += 1) {
+                for(int e = from; e < to; e += 1) {
+                    int y = graph.label(GraphRelations.THEN, e);
+                    boolean recursive = y == x || (y < rules.length && analysis.callsFirst(y, x));
+                    if(recursive == (pass == 0)) {
+                        order[n++] = e;
+                    }
+                }
+            }
+            choices[q] = order;
+        }
+    }
+    
+    /**
+     * @return The number of slots in the table
+     */
+    int size() {
+        return target.length;
+    }
+    
+    /**
+     * @param slot A slot id
+     * @return The symbol id of the rule that the slot belongs to
+     */
+    int target(int slot) {
+        return target[slot];
+    }
+    
+    /**
+     * @param slot A slot id
+     * @return Whether the rule can end at the slot
+     */
+    boolean isAccepting(int slot) {
+        return accepting.get(slot);
+    }
+    
+    /**
+     * @param slot A slot id
+     * @param lookahead The symbol id of the next token, or
+     * {@link GrammarSlots#eof} at the end of the input
+     * @return Whether the parser could make progress from the slot with the
+     * given next token
+     */
+    boolean selects(int slot, int lookahead) {
+        return select[slot].get(lookahead);
+    }
+    
+    /**
+     * @param slot A slot id
+     * @return The set of symbols that {@link GrammarSlots#selects(int, int)}
+     * accepts for the slot. Must not be modified
+     */
+    BitSet selectSet(int slot) {
+        return select[slot];
+    }
+    
+    /**
+     * @param symbol A symbol id
+     * @return Whether the symbol is the target of a rule
+     */
+    boolean isNonterminal(int symbol) {
+        return symbol >= 0 && symbol < eof && graph.degree(GraphRelations.THEN, node(symbol)) > 0;
+    }
+    
+    /**
+     * @param symbol The symbol id of a nonterminal
+     * @return The slot of the start state of the symbol's rule
+     */
+    int start(int symbol) {
+        return graph.target(GraphRelations.THEN, graph.first(GraphRelations.THEN, node(symbol)));
+    }
+    
+    /**
+     * @param slot A slot id
+     * @return Whether the slot is the start state of its rule
+     */
+    boolean isStart(int slot) {
+        return position[slot] < 0;
+    }
+    
+    /**
+     * @param id A symbol id
+     * @return The id of the symbol's node in {@link GrammarSlots#graph()}
+     */
+    int node(int id) {
+        return target.length + id;
+    }
+    
+    /**
+     * @return The graph of the grammar's slots and symbols
+     */
+    GrammarGraph graph() {
+        return graph;
+    }
+    
+    /**
+     * @return The analysis that the table was built from
+     */
+    GrammarAnalysis analysis() {
+        return analysis;
+    }
+    
+    /**
+     * @param slot A slot id
+     * @return The edges out of the slot in the order that an ordered choice
+     * should try them; for a rule's start slot, any left recursive paths
+     * come before the rest, so that a seed can be grown from the others. Null
+     * for other slots, whose edges are tried in graph order
+     */
+    int[] choices(int slot) {
+        return choices[slot];
+    }
+    
+    /**
+     * @param symbol The symbol id of a token's type, or -1 if the type isn't
+     * part of the grammar
+     * @return The symbol that stands for the token in lookahead sets
+     */
+    int lookahead(int symbol) {
+        return symbol >= 0 && symbol < eof ? symbol : eof + 1;
+    }
+}
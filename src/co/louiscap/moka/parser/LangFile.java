@@ -36,7 +36,9 @@ import java.util.Arrays;
 import java.util.LinkedList;
 
 /**
- * A file that holds all of the lexical rules for its given lexical scope
+ * A file that holds all of the lexical rules for its given lexical scope.
+ * Lines starting with <code>#</code> are comments, and lines starting with
+ * <code>%</code> are {@link Precedence} declarations
  * @author Louis Capitanchik
  */
 public class LangFile implements ModuleFile {
@@ -44,18 +46,24 @@ public class LangFile implements ModuleFile {
     private final String source, moduleID;
     
     protected final LinkedList<LangRule> rules;
+    protected final LinkedList<Precedence> precedences;
     
     public LangFile (String moduleID, String source) throws InvalidFormatException {
         this.moduleID = moduleID;
         this.source = source;
         
         this.rules = new LinkedList<>();
+        this.precedences = new LinkedList<>();
         
         String[] lines = source.split("\\n|\\r|\\n\\r|\\r\\n");
         Arrays.stream(lines).forEach(line -> {
             if(!line.trim().isEmpty() && !line.trim().startsWith("#")) {
                 try {
-                    rules.add(new LangRule(line));
+                    if(Precedence.isDeclaration(line)) {
+                        precedences.add(new Precedence(line));
+                    } else {
+                        rules.add(new LangRule(line));
+                    }
                 } catch (InvalidFormatException ex) {
                     ex.printStackTrace(Logging.LOGGER.getChannel("err"));
                 }
@@ -77,4 +85,12 @@ public class LangFile implements ModuleFile {
         return rules.stream().toArray(LangRule[]::new);
     }
     
+    /**
+     * @return The precedence declarations of this file, from loosest binding
+     * to tightest
+     */
+    public Precedence[] getPrecedences() {
+        return precedences.stream().toArray(Precedence[]::new);
+    }
+    
 }
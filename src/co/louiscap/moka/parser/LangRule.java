@@ -31,31 +31,60 @@ package co.louiscap.moka.parser;
 
 import co.louiscap.moka.exceptions.InvalidFormatException;
 import co.louiscap.moka.exceptions.MismatchedRuleTargetException;
+import co.louiscap.moka.utils.data.SymbolTable;
 import co.louiscap.moka.utils.io.Logging;
 import co.louiscap.moka.utils.string.StringChunker;
+import co.louiscap.moka.utils.string.StringUtils;
+import java.util.AbstractSet;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedHashSet;
+import java.util.BitSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
+ * A rule of a language file, such as
+ * <code>S_ASSIGN : T_VAR? T_IDENT (T_ASSIGN S_DATA)?</code>
+ * <br><br>
+ * The rule is held as an automaton over the symbols written in it (see
+ * {@link RuleAutomaton}) rather than as a list of every sequence it can
+ * match, so that optional symbols and groups, including nested ones, cost
+ * space in proportion to how they're written rather than doubling the number
+ * of sequences each time.
  * @author Louis Capitanchik
  */
 public class LangRule {
     public final String target;
+    /**
+     * A read only view of every sequence of symbols that this rule matches.
+     * The sequences are worked out as the view is iterated, so iterating over
+     * a rule with many optional parts is slow; prefer
+     * {@link LangRule#compile(SymbolTable)}
+     */
     public final Set<String[]> sequences;
-    private static final Pattern TOKEN_BREAKER = Pattern.compile("\\s*(\\(?\\w*\\w\\)?|\\?|\\(|\\))");
+    
+    /**
+     * The right hand side of each rule merged into this one, as written
+     */
+    private final ArrayList<String> written;
+    private final ArrayList<String> positions;
+    private final ArrayList<BitSet> follow;
+    private final BitSet first;
+    private final BitSet last;
+    private boolean nullable;
+    private static final Pattern TOKEN_BREAKER = Pattern.compile("\\s*(\\(?\\w*\\w\\??\\)?|\\?|\\(|\\))");
     
     public LangRule(String src) throws InvalidFormatException {
         ArrayDeque<RulePart> ruleParts = new ArrayDeque<>();
         StringChunker sc = new StringChunker(src);
         target = sc.getUntil(":", false).trim();
-        while(!sc.eof() && !sc.tail().matches("^\\s*$")) {
+        while(StringUtils.skipWhitespace(src, sc.getPosition()) < src.length()) {
             MatchResult chunk = sc.chunkWith(TOKEN_BREAKER);
             switch(chunk.group().trim()){
                 case "?":
@@ -63,10 +92,16 @@ public class LangRule {
                         throw new InvalidFormatException("Rule Parse " + target,
                         "Dangling optional operator; no prior token");
                     } else {
-                        if(ruleParts.getLast().optional) {
+                        RulePart prior = ruleParts.getLast();
+                        // After a closing bracket the operator applies to the
+                        // whole group, which doesn't exist yet
+                        boolean group = prior.endsGroup && !prior.startsGroup;
+                        if(group ? prior.closesOptional : prior.optional) {
                             Logging.LOGGER.println("Redundant optional operator for " + target + " rule", "debug");
+                        } else if(group) {
+                            prior.closesOptional = true;
                         } else {
-                            ruleParts.getLast().optional = true;
+                            prior.optional = true;
                         }
                     }
                     break;
@@ -79,38 +114,103 @@ public class LangRule {
                     boolean startRule = r.startsWith("("), 
                             endRule = r.endsWith(")");
                     r = r.replace("(", "").replace(")", "");
-                    AtomicRule token = new AtomicRule(r);
+                    boolean optional = r.endsWith("?");
+                    AtomicRule token = new AtomicRule(optional ? r.substring(0, r.length() - 1) : r);
                     token.endsGroup = endRule;
                     token.startsGroup = startRule;
+                    token.optional = optional;
                     ruleParts.add(token);
                     break;
             }
         }
         ruleParts = collapse(ruleParts);
-        sequences = new LinkedHashSet<>();
-        createPermutations(ruleParts);
+        written = new ArrayList<>(1);
+        written.add(src.substring(src.indexOf(':') + 1).trim());
+        positions = new ArrayList<>();
+        follow = new ArrayList<>();
+        first = new BitSet();
+        last = new BitSet();
+        Fragment whole = build(ruleParts);
+        first.or(whole.first);
+        last.or(whole.last);
+        nullable = whole.nullable;
+        sequences = new SequenceView();
+    }
+    
+    /**
+     * Create a copy of a rule that can be merged into without changing the
+     * original
+     * @param other The rule to copy
+     */
+    LangRule(LangRule other) {
+        target = other.target;
+        written = new ArrayList<>(other.written);
+        positions = new ArrayList<>(other.positions);
+        follow = new ArrayList<>(other.follow.size());
+        other.follow.forEach(f -> follow.add((BitSet) f.clone()));
+        first = (BitSet) other.first.clone();
+        last = (BitSet) other.last.clone();
+        nullable = other.nullable;
+        sequences = new SequenceView();
     }
     
+    /**
+     * Add every sequence of another rule with the same target to this one
+     * @param other The rule to merge into this one
+     * @throws MismatchedRuleTargetException Thrown if the rules have
+     * different targets
+     */
     public void merge(LangRule other) throws MismatchedRuleTargetException {
         if(this.target.equals(other.target)) {
-            this.sequences.addAll(other.sequences);
+            int offset = positions.size();
+            written.addAll(other.written);
+            positions.addAll(other.positions);
+            for(BitSet next : other.follow) {
+                follow.add(shift(next, offset));
+            }
+            first.or(shift(other.first, offset));
+            last.or(shift(other.last, offset));
+            nullable |= other.nullable;
         } else {
             throw new MismatchedRuleTargetException(other.target, this.target);
         }
     }
     
+    private static BitSet shift(BitSet set, int offset) {
+        BitSet result = new BitSet();
+        set.stream().forEach(p -> result.set(p + offset));
+        return result;
+    }
+    
+    /**
+     * Translate this rule into an automaton over symbol ids, interning the
+     * target as a nonterminal and any symbol that hasn't been seen before
+     * @param symbols The table to look symbols up in
+     * @return The compiled rule
+     */
+    public RuleAutomaton compile(SymbolTable symbols) {
+        int id = symbols.internNonterminal(target);
+        int[] syms = positions.stream().mapToInt(symbols::intern).toArray();
+        int[][] next = follow.stream().map(f -> f.stream().toArray()).toArray(int[][]::new);
+        boolean[] accepting = new boolean[syms.length];
+        last.stream().forEach(p -> accepting[p] = true);
+        return new RuleAutomaton(id, syms, first.stream().toArray(), next, accepting, nullable);
+    }
+    
+    /**
+     * Renders the rule as it was written, one line for each rule merged into
+     * it, rather than as every sequence it matches, of which there can be
+     * exponentially many
+     */
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("Target: ");
         sb.append(target);
-        sb.append("\n");
-        sequences.forEach(seq -> {
-            sb.append("\t");
-            sb.append(Arrays.toString(seq));
-            sb.append("\n");
+        written.forEach(alternative -> {
+            sb.append("\n\t");
+            sb.append(alternative);
         });
-        sb.replace(sb.length()-1, sb.length(), "");
         return sb.toString();
     }
     
@@ -130,7 +230,7 @@ public class LangRule {
                 }
                 grouping.push(next);
                 RuleGroup group = new RuleGroup();
-                group.optional = rp.optional;
+                group.optional = rp.closesOptional;
                 group.startsGroup = true;
                 group.endsGroup = true;
                 while(!grouping.isEmpty()) {
@@ -148,36 +248,130 @@ public class LangRule {
         return correctOrder;
     }
 
-    private void createPermutations(ArrayDeque<RulePart> ruleParts) {
-        //TODO: Man, that's a lot of edge cases that need handled that just...haven't been, you know?
-        //TODO: Also, need to handle sub level optionals. Currently only does the top level stuff. Cream of the crop etc.
-        ArrayList<ArrayList<String>> seqs = new ArrayList<>();
-        seqs.add(new ArrayList<>());
-        while(!ruleParts.isEmpty()) {
-            RulePart rp = ruleParts.removeFirst();
-            if(!rp.optional) {
-                seqs.forEach(s -> s.addAll(ruleToNameList(rp)));
+    /**
+     * Add positions for a sequence of parts, linking the end of each part to
+     * the start of the next
+     */
+    private Fragment build(Iterable<RulePart> parts) {
+        Fragment result = new Fragment();
+        result.nullable = true;
+        for(RulePart rp : parts) {
+            Fragment part;
+            if(rp instanceof AtomicRule) {
+                part = new Fragment();
+                int p = positions.size();
+                positions.add(((AtomicRule) rp).name);
+                follow.add(new BitSet());
+                part.first.set(p);
+                part.last.set(p);
+            } else if (rp instanceof RuleGroup) {
+                part = build(((RuleGroup) rp).parts);
             } else {
-                ArrayList<ArrayList<String>> without = new ArrayList<>(seqs.size());
-                seqs.forEach(s -> {
-                    without.add((ArrayList<String>)s.clone());
-                    s.addAll(ruleToNameList(rp));
-                });
-                seqs.addAll(without);
+                throw new RuntimeException("This can only be reached by gross incompetence by a future maintainer");
+            }
+            part.nullable |= rp.optional;
+            result.last.stream().forEach(p -> follow.get(p).or(part.first));
+            if(result.nullable) {
+                result.first.or(part.first);
             }
+            if(!part.nullable) {
+                result.last.clear();
+            }
+            result.last.or(part.last);
+            result.nullable &= part.nullable;
         }
-        seqs.forEach(s -> sequences.add(s.stream().toArray(String[]::new)));
+        return result;
     }
     
-    private List<String> ruleToNameList(RulePart rp) {
-        if(rp instanceof AtomicRule) {
-            return Arrays.asList(((AtomicRule) rp).name);
-        } else if (rp instanceof RuleGroup) {
-            ArrayList<String> recurse = new ArrayList<>();
-            ((RuleGroup) rp).parts.forEach(r -> recurse.addAll(ruleToNameList(r)));
-            return recurse;
-        } else {
-            throw new RuntimeException("This can only be reached by gross incompetence by a future maintainer");
+    /**
+     * The positions that a run of parts can start and end on
+     */
+    private static class Fragment {
+        final BitSet first = new BitSet();
+        final BitSet last = new BitSet();
+        boolean nullable = false;
+    }
+    
+    /**
+     * Lists the sequences of the rule by walking every path through its
+     * positions, depth first
+     */
+    private class SequenceView extends AbstractSet<String[]> {
+        @Override
+        public Iterator<String[]> iterator() {
+            return new Iterator<String[]>() {
+                /**
+                 * Each entry of the path is a position, and how many of the
+                 * positions that follow it have been tried so far. The start
+                 * state is position -1
+                 */
+                private final ArrayDeque<int[]> path = new ArrayDeque<>();
+                private String[] next;
+                
+                {
+                    path.push(new int[]{-1, 0});
+                    next = nullable ? new String[0] : advance();
+                }
+                
+                private String[] advance() {
+                    while(!path.isEmpty()) {
+                        int[] top = path.peek();
+                        BitSet options = top[0] < 0 ? first : follow.get(top[0]);
+                        int p = options.nextSetBit(0);
+                        for(int i = 0; i < top[1] && p >= 0; i += 1) {
+                            p = options.nextSetBit(p + 1);
+                        }
+                        if(p < 0) {
+                            path.pop();
+                            continue;
+                        }
+                        top[1] += 1;
+                        path.push(new int[]{p, 0});
+                        if(last.get(p)) {
+                            String[] seq = new String[path.size() - 1];
+                            Iterator<int[]> it = path.descendingIterator();
+                            it.next();
+                            for(int i = 0; i < seq.length; i += 1) {
+                                seq[i] = positions.get(it.next()[0]);
+                            }
+                            return seq;
+                        }
+                    }
+                    return null;
+                }
+                
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+                
+                @Override
+                public String[] next() {
+                    if(next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    String[] result = next;
+                    next = advance();
+                    return result;
+                }
+            };
+        }
+        
+        @Override
+        public int size() {
+            // Count the paths from each position to the end, back to front
+            long[] counts = new long[positions.size()];
+            for(int p = positions.size() - 1; p >= 0; p -= 1) {
+                counts[p] = last.get(p) ? 1 : 0;
+                for(int n = follow.get(p).nextSetBit(0); n >= 0; n = follow.get(p).nextSetBit(n + 1)) {
+                    counts[p] = Math.min(counts[p] + counts[n], Integer.MAX_VALUE);
+                }
+            }
+            long total = nullable ? 1 : 0;
+            for(int n = first.nextSetBit(0); n >= 0; n = first.nextSetBit(n + 1)) {
+                total = Math.min(total + counts[n], Integer.MAX_VALUE);
+            }
+            return (int) total;
         }
     }
     
@@ -185,6 +379,10 @@ public class LangRule {
         boolean startsGroup = false;
         boolean endsGroup = false;
         boolean optional = false;
+        /**
+         * Whether the group that this part closes is optional
+         */
+        boolean closesOptional = false;
         public abstract String[] getAsListOfTokenNames();
     }
     
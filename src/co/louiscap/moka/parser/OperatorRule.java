@@ -0,0 +1,300 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser;
+
+import co.louiscap.moka.exceptions.LanguageSyntaxException;
+import co.louiscap.moka.parser.Precedence.Associativity;
+import co.louiscap.moka.translator.tree.TreeNode;
+import co.louiscap.moka.utils.data.SymbolTable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * A rule with binary operator alternatives, such as
+ * <code>S_PHRASE : S_PHRASE T_CONCAT S_PHRASE</code>, whose operators have
+ * {@link Precedence} declarations. Written that way the rule is ambiguous,
+ * which makes the general engines find every way of grouping the operators
+ * and then throw all but one of them away.
+ * <br><br>
+ * Instead, the rule is given to the engines as a flat run of operands and
+ * operators, with the rule's other alternatives as the operands:
+ * <pre>
+ * S_PHRASE           : S_PHRASE#operand S_PHRASE#operators?
+ * S_PHRASE#operators : T_CONCAT S_PHRASE#operand S_PHRASE#operators?
+ * S_PHRASE#operand   : T_IDENT
+ * S_PHRASE#operand   : T_STRING
+ * </pre>
+ * which has exactly one parse. The run is then grouped by precedence
+ * climbing in a single pass over it, giving the same tree that the rule as
+ * written would give for the grouping that the declarations ask for. Other
+ * alternatives that mention the rule, such as prefix operators, are left as
+ * operands and are parsed as written
+ * @author Louis Capitanchik
+ */
+final class OperatorRule {
+    
+    final String name;
+    final int target, operand, operators;
+    private final String operandName;
+    /**
+     * The precedence level of each operator by symbol id, starting at 1, or
+     * 0 for symbols that aren't operators of this rule
+     */
+    private final int[] levels;
+    private final Associativity[] associativity;
+    private final RuleAutomaton[] automata;
+    
+    /**
+     * @param written The rule as written
+     * @param operands The positions of the rule's operand alternatives,
+     * which no position outside them leads into
+     * @param opIds The symbol id of each operator, in order of appearance
+     */
+    private OperatorRule(RuleAutomaton written, boolean[] operands, int[] opIds, SymbolTable symbols,
+            Map<String, Integer> levels, Map<String, Associativity> associativity) {
+        name = symbols.nameOf(written.target);
+        operandName = name + "#operand";
+        target = written.target;
+        operand = symbols.internNonterminal(operandName);
+        operators = symbols.internNonterminal(name + "#operators");
+        
+        // The operand alternatives, as written but without the operator
+        // alternatives
+        int[] index = new int[written.size()];
+        int size = 0;
+        for(int p = 0; p < index.length; p += 1) {
+            index[p] = operands[p] ? size++ : -1;
+        }
+        int[] syms = new int[size];
+        int[][] follow = new int[size][];
+        boolean[] accepting = new boolean[size];
+        for(int p = 0; p < index.length; p += 1) {
+            if(operands[p]) {
+                syms[index[p]] = written.symbol(p);
+                follow[index[p]] = Arrays.stream(written.follow(p)).map(q -> index[q]).toArray();
+                accepting[index[p]] = written.isAccepting(p);
+            }
+        }
+        int[] first = Arrays.stream(written.first()).filter(p -> operands[p]).map(p -> index[p]).toArray();
+        RuleAutomaton operandRule = new RuleAutomaton(operand, syms, first, follow, accepting, false);
+        
+        RuleAutomaton targetRule = new RuleAutomaton(target, new int[]{operand, operators}, new int[]{0},
+                new int[][]{{1}, {}}, new boolean[]{true, true}, false);
+        
+        // An operator, an operand and optionally more of the run, for each
+        // operator
+        syms = new int[opIds.length * 3];
+        first = new int[opIds.length];
+        follow = new int[syms.length][];
+        accepting = new boolean[syms.length];
+        for(int o = 0; o < opIds.length; o += 1) {
+            int q = o * 3;
+            first[o] = q;
+            syms[q] = opIds[o];
+            syms[q + 1] = operand;
+            syms[q + 2] = operators;
+            follow[q] = new int[]{q + 1};
+            follow[q + 1] = new int[]{q + 2};
+            follow[q + 2] = new int[0];
+            accepting[q + 1] = true;
+            accepting[q + 2] = true;
+        }
+        RuleAutomaton operatorRule = new RuleAutomaton(operators, syms, first, follow, accepting, false);
+        automata = new RuleAutomaton[]{targetRule, operandRule, operatorRule};
+        
+        this.levels = new int[symbols.size()];
+        this.associativity = new Associativity[symbols.size()];
+        for(int op : opIds) {
+            this.levels[op] = levels.get(symbols.nameOf(op));
+            this.associativity[op] = associativity.get(symbols.nameOf(op));
+        }
+    }
+    
+    /**
+     * Split a compiled rule into operands and declared binary operators. The
+     * operator alternatives are found in the rule's automaton, so a rule with
+     * many optional parts costs no more to inspect than its size; an operator
+     * alternative is a path of three positions, the target, an operator and
+     * the target again, that shares none of its positions with any other
+     * alternative
+     * @param rule A merged rule, compiled against the symbol table
+     * @param symbols The table that the rule was compiled against
+     * @param levels The precedence level of each declared operator, starting
+     * at 1
+     * @param associativity The associativity of each declared operator
+     * @return The operator form of the rule, or null if it has no binary
+     * alternatives with declared operators, or has an empty alternative
+     */
+    static OperatorRule of(RuleAutomaton rule, SymbolTable symbols, Map<String, Integer> levels,
+            Map<String, Associativity> associativity) {
+        if(rule.isNullable()) {
+            return null;
+        }
+        boolean mentioned = false;
+        for(int p = 0; p < rule.size() && !mentioned; p += 1) {
+            mentioned = levels.containsKey(symbols.nameOf(rule.symbol(p)));
+        }
+        if(!mentioned) {
+            return null;
+        }
+        // How many ways each position can be entered, counting the start
+        int[] incoming = new int[rule.size()];
+        for(int p : rule.first()) {
+            incoming[p] += 1;
+        }
+        for(int p = 0; p < rule.size(); p += 1) {
+            for(int q : rule.follow(p)) {
+                incoming[q] += 1;
+            }
+        }
+        boolean[] operands = new boolean[rule.size()];
+        Arrays.fill(operands, true);
+        LinkedHashSet<Integer> ops = new LinkedHashSet<>();
+        for(int p : rule.first()) {
+            if(rule.symbol(p) != rule.target || incoming[p] != 1 || rule.isAccepting(p)
+                    || rule.follow(p).length != 1) {
+                continue;
+            }
+            int q = rule.follow(p)[0];
+            if(incoming[q] != 1 || rule.isAccepting(q) || rule.follow(q).length != 1
+                    || !levels.containsKey(symbols.nameOf(rule.symbol(q)))) {
+                continue;
+            }
+            int r = rule.follow(q)[0];
+            if(rule.symbol(r) != rule.target || incoming[r] != 1 || !rule.isAccepting(r)
+                    || rule.follow(r).length != 0) {
+                continue;
+            }
+            operands[p] = operands[q] = operands[r] = false;
+            ops.add(rule.symbol(q));
+        }
+        boolean hasOperand = false;
+        for(boolean kept : operands) {
+            hasOperand |= kept;
+        }
+        if(ops.isEmpty() || !hasOperand) {
+            return null;
+        }
+        return new OperatorRule(rule, operands, ops.stream().mapToInt(Integer::intValue).toArray(), symbols,
+                levels, associativity);
+    }
+    
+    /**
+     * @return The rule itself, its operand rule and its operator run rule,
+     * compiled for the general engines
+     */
+    RuleAutomaton[] automata() {
+        return automata;
+    }
+    
+    private int level(TreeNode op, SymbolTable symbols) {
+        int id = symbols.idOf(op.id);
+        return id >= 0 && id < levels.length && op.leaves.isEmpty() ? levels[id] : 0;
+    }
+    
+    /**
+     * @param node A node of a tree
+     * @return Whether the node is a run of operands and operators, as parsed
+     * by the general engines, that hasn't been grouped yet
+     */
+    boolean isRun(TreeNode node) {
+        return node.id.equals(name) && !node.leaves.isEmpty() && node.leaves.get(0).id.equals(operandName);
+    }
+    
+    /**
+     * @param node A node of a tree, after grouping
+     * @param symbols The table that the grammar was interned in
+     * @return Whether the node is the application of one of the rule's
+     * declared operators to two operands, each of which is part of the same
+     * run
+     */
+    boolean isBinary(TreeNode node, SymbolTable symbols) {
+        return node.id.equals(name) && node.leaves.size() == 3 && node.leaves.get(0).id.equals(name)
+                && node.leaves.get(2).id.equals(name) && level(node.leaves.get(1), symbols) > 0;
+    }
+    
+    /**
+     * Group a run of operands and operators by precedence and associativity,
+     * in place. Every operand becomes a node of the rule with the operand's
+     * children, and every operator a node of the rule with the operands
+     * either side of it, just as the rule as written would have parsed them
+     * @param run A node for which {@link OperatorRule#isRun(TreeNode)} holds
+     * @param symbols The table that the grammar was interned in
+     * @throws LanguageSyntaxException Thrown if an operator with no
+     * associativity follows another of the same precedence
+     */
+    void group(TreeNode run, SymbolTable symbols) throws LanguageSyntaxException {
+        ArrayDeque<TreeNode> values = new ArrayDeque<>();
+        ArrayDeque<TreeNode> pending = new ArrayDeque<>();
+        values.push(operand(run.leaves.get(0)));
+        TreeNode rest = run.leaves.size() > 1 ? run.leaves.get(1) : null;
+        while(rest != null) {
+            TreeNode op = rest.leaves.get(0);
+            int level = level(op, symbols);
+            Associativity assoc = associativity[symbols.idOf(op.id)];
+            while(!pending.isEmpty()) {
+                TreeNode top = pending.peek();
+                int above = level(top, symbols);
+                if(above == level && assoc == Associativity.NONASSOC) {
+                    throw new LanguageSyntaxException(op.id + " can't follow " + top.id
+                            + " without brackets", op.loc);
+                }
+                if(above < level || (above == level && assoc == Associativity.RIGHT)) {
+                    break;
+                }
+                reduce(values, pending.pop());
+            }
+            pending.push(op);
+            values.push(operand(rest.leaves.get(1)));
+            rest = rest.leaves.size() > 2 ? rest.leaves.get(2) : null;
+        }
+        while(!pending.isEmpty()) {
+            reduce(values, pending.pop());
+        }
+        run.leaves = values.pop().leaves;
+    }
+    
+    private TreeNode operand(TreeNode node) {
+        TreeNode result = new TreeNode(name, target, null, node.loc, node.start, node.end);
+        result.leaves = node.leaves;
+        return result;
+    }
+    
+    private void reduce(ArrayDeque<TreeNode> values, TreeNode op) {
+        TreeNode right = values.pop();
+        TreeNode left = values.pop();
+        TreeNode result = new TreeNode(name, target, null, left.loc, left.start, right.end);
+        result.leaves = new ArrayList<>(Arrays.asList(left, op, right));
+        values.push(result);
+    }
+}
@@ -0,0 +1,451 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser;
+
+import co.louiscap.moka.exceptions.LanguageSyntaxException;
+import co.louiscap.moka.lexer.Token;
+import co.louiscap.moka.parser.graph.GrammarGraph;
+import co.louiscap.moka.parser.graph.GraphRelations;
+import co.louiscap.moka.translator.tree.TreeNode;
+import co.louiscap.moka.utils.data.SymbolTable;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.function.IntFunction;
+
+/**
+ * A single run of a packrat parser over one input. The grammar is read as a
+ * parsing expression grammar: the transitions out of each slot are ordered
+ * choices, tried in the order they were written, and optional parts are
+ * greedy. Each nonterminal matches at most one way from any index, so the
+ * result of every (slot, index) pair can be remembered, and with every
+ * result remembered the parse takes time linear in the length of the input.
+ * <br><br>
+ * Where a rule is left recursive, its left recursive paths are tried before
+ * its others, wherever they were written, so that the seed grown from the
+ * others can be extended by them.
+ * <br><br>
+ * As for {@link GllParse}, the input may contain nonterminals standing in for
+ * subtrees kept from an earlier parse, which are matched like tokens. Only
+ * the indexes that the parse is told hold such stand-ins are matched that
+ * way; a token whose type happens to share a nonterminal's name isn't.
+ * <br><br>
+ * Results are remembered in a dense table with a row for each token index
+ * and a column for each slot. The table only keeps rows for a bounded window
+ * of indexes, reusing the row of the oldest index once the window is full;
+ * forgotten results are worked out again if needed, trading the linear time
+ * bound for bounded memory on very large inputs.
+ * <br><br>
+ * Left recursive rules are supported by growing a seed, as described by
+ * Warth, Douglass and Millstein: the first time a rule calls itself at the
+ * same index the inner call fails, then the rule is tried again and again
+ * with its previous match as the result of the inner call, for as long as
+ * the match keeps getting longer.
+ * @author Louis Capitanchik
+ */
+final class PackratParse {
+    
+    private static final int FAIL = -1;
+    
+    private final GrammarSlots slots;
+    private final GrammarGraph graph;
+    private final SymbolTable symbols;
+    private final int[] input;
+    private final BitSet kept;
+    private final IntFunction<Token> tokens;
+    private final String filename;
+    
+    private final int width;
+    private final int window;
+    private final int[] owner;
+    private final int[] ends;
+    private final int[] edges;
+    
+    private final HashMap<Long, Frame> active;
+    /**
+     * The ends of every seed grown by a rule at an index, in order
+     */
+    private final HashMap<Long, int[]> grown;
+    private final ArrayDeque<Frame> stack;
+    private int furthest;
+    private final BitSet expected;
+    
+    /**
+     * @param slots The parse table of the grammar
+     * @param symbols The table that the grammar was interned in
+     * @param input The symbol id of each token's type, in the same table
+     * @param kept The indexes of the input that stand in for subtrees kept
+     * from an earlier parse, or null if there are none
+     * @param tokens Looks up the token at an index of the input
+     * @param filename The name of the file being parsed, for errors
+     * @param memoLimit The most memory, in bytes, that remembered results can
+     * take up
+     */
+    PackratParse(GrammarSlots slots, SymbolTable symbols, int[] input, BitSet kept, IntFunction<Token> tokens,
+            String filename, long memoLimit) {
+        this.slots = slots;
+        this.graph = slots.graph();
+        this.symbols = symbols;
+        this.input = input;
+        this.kept = kept == null ? new BitSet() : kept;
+        this.tokens = tokens;
+        this.filename = filename;
+        width = slots.size();
+        // Two ints per result
+        long rows = Math.max(1, memoLimit / (8L * Math.max(width, 1)));
+        // Each table is one array, so its length must still fit in an int
+        rows = Math.min(rows, Integer.MAX_VALUE / Math.max(width, 1));
+        window = (int) Math.min(input.length + 1, rows);
+        owner = new int[window];
+        Arrays.fill(owner, -1);
+        ends = new int[window * width];
+        edges = new int[window * width];
+        active = new HashMap<>();
+        grown = new HashMap<>();
+        stack = new ArrayDeque<>();
+        furthest = 0;
+        expected = new BitSet();
+    }
+    
+    /**
+     * Parse the whole input as the given symbol
+     * @param start The symbol id of the entry rule
+     * @return The parse tree
+     * @throws LanguageSyntaxException Thrown if the symbol doesn't match the
+     * whole input
+     */
+    TreeNode run(int start) throws LanguageSyntaxException {
+        int end = eval(slots.start(start), 0);
+        if(end != input.length) {
+            throw Parser.syntaxError(furthest, expected, input.length, tokens, filename, symbols);
+        }
+        return toTree(start);
+    }
+    
+    /**
+     * Work out where the rest of a slot's rule would end if started at index
+     * i, remembering the result of every slot passed through on the way
+     * @return The index after the match, or FAIL
+     */
+    private int eval(int slot, int i) {
+        return eval(frame(slot, i));
+    }
+    
+    private int eval(Frame root) {
+        stack.push(root);
+        int result = FAIL;
+        while(!stack.isEmpty()) {
+            Frame f = stack.peek();
+            switch(f.phase) {
+                case Frame.START:
+                    int known = recall(f.slot, f.index);
+                    if(known != 0) {
+                        result = known - 2;
+                        stack.pop();
+                        continue;
+                    }
+                    if(f.isRule) {
+                        Frame running = active.get(key(f.slot, f.index));
+                        if(running != null) {
+                            // Left recursion; use the seed grown so far
+                            running.recursive = true;
+                            result = running.seed;
+                            stack.pop();
+                            continue;
+                        }
+                        active.put(key(f.slot, f.index), f);
+                    }
+                    f.choice = 0;
+                    f.phase = Frame.TRY;
+                    break;
+                case Frame.TRY:
+                    f.edge = edge(f.slot, f.choice);
+                    if(f.edge < 0) {
+                        finish(f, slots.isAccepting(f.slot) ? f.index : FAIL, -1);
+                        result = f.result;
+                        break;
+                    }
+                    int x = graph.label(GraphRelations.THEN, f.edge);
+                    if(isLeaf(x, f.index)) {
+                        f.phase = Frame.CONTINUED;
+                        stack.push(frame(graph.target(GraphRelations.THEN, f.edge), f.index + 1));
+                        if(f.index + 1 > furthest) {
+                            furthest = f.index + 1;
+                            expected.clear();
+                        }
+                    } else if(slots.isNonterminal(x)) {
+                        f.phase = Frame.CALLED;
+                        stack.push(frame(slots.start(x), f.index));
+                    } else {
+                        if(f.index > furthest) {
+                            furthest = f.index;
+                            expected.clear();
+                        }
+                        if(f.index == furthest) {
+                            expected.set(x);
+                        }
+                        f.choice += 1;
+                    }
+                    break;
+                case Frame.CALLED:
+                    if(result == FAIL) {
+                        f.choice += 1;
+                        f.phase = Frame.TRY;
+                    } else {
+                        f.phase = Frame.CONTINUED;
+                        stack.push(frame(graph.target(GraphRelations.THEN, f.edge), result));
+                    }
+                    break;
+                case Frame.CONTINUED:
+                    if(result == FAIL) {
+                        f.choice += 1;
+                        f.phase = Frame.TRY;
+                    } else {
+                        finish(f, result, f.edge);
+                        result = f.result;
+                    }
+                    break;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Finish evaluating a frame, growing the seed of a left recursive rule if
+     * need be
+     */
+    private void finish(Frame f, int end, int edge) {
+        if(f.recursive && end != FAIL && (f.seed == FAIL || end > f.seed)) {
+            f.below = f.seed;
+            f.seed = end;
+            f.seedEdge = edge;
+            if(f.levels.length == f.grown) {
+                f.levels = Arrays.copyOf(f.levels, f.grown * 2 + 1);
+            }
+            f.levels[f.grown++] = end;
+            if(end != f.limit) {
+                // The match got longer, so try again with it as the seed.
+                // Every result at this index may have depended on the old seed
+                forget(f.index);
+                f.choice = 0;
+                f.phase = Frame.TRY;
+                return;
+            }
+        }
+        if(f.recursive) {
+            end = f.seed;
+            edge = f.seedEdge;
+            if(f.limit == FAIL) {
+                grown.put(key(f.slot, f.index), Arrays.copyOf(f.levels, f.grown));
+            }
+        }
+        if(f.isRule) {
+            active.remove(key(f.slot, f.index));
+        }
+        remember(f.slot, f.index, end, edge);
+        f.result = end;
+        stack.pop();
+    }
+    
+    /**
+     * @return The index of the n'th edge to try out of a slot, or -1 if
+     * there are no more
+     */
+    private int edge(int slot, int n) {
+        int[] order = slots.choices(slot);
+        if(order != null) {
+            return n < order.length ? order[n] : -1;
+        }
+        int e = graph.first(GraphRelations.THEN, slot) + n;
+        return e < graph.end(GraphRelations.THEN, slot) ? e : -1;
+    }
+    
+    /**
+     * @return Whether the symbol is matched by the input at index i as a
+     * single leaf; a token, or a nonterminal standing in for a subtree that
+     * has already been parsed
+     */
+    private boolean isLeaf(int x, int i) {
+        return i < input.length && input[i] == x && (!slots.isNonterminal(x) || kept.get(i));
+    }
+    
+    private int row(int i) {
+        return (i % window) * width;
+    }
+    
+    /**
+     * @return The remembered end of the slot's match at index i, plus 2, or 0
+     * if it isn't known
+     */
+    private int recall(int slot, int i) {
+        return owner[i % window] == i ? ends[row(i) + slot] : 0;
+    }
+    
+    private void remember(int slot, int i, int end, int edge) {
+        int r = i % window;
+        if(owner[r] != i) {
+            forget(i);
+        }
+        ends[r * width + slot] = end + 2;
+        edges[r * width + slot] = edge;
+    }
+    
+    /**
+     * Clear the row of index i, and give it to index i
+     */
+    private void forget(int i) {
+        int r = i % window;
+        owner[r] = i;
+        Arrays.fill(ends, r * width, (r + 1) * width, 0);
+    }
+    
+    /**
+     * @return The edge taken out of the slot by its match at index i, or -1
+     * if the match ended at the slot
+     */
+    private int choice(int slot, int i) {
+        if(recall(slot, i) == 0) {
+            eval(slot, i);
+        }
+        return edges[row(i) + slot];
+    }
+    
+    /**
+     * Grow the seed of a left recursive rule at index i again, from the seed
+     * before the match that ends at the given index, so that the results at
+     * index i are the ones that match was built from
+     * @return The seed that the match was grown from
+     */
+    private int regrow(int rule, int i, int end) {
+        int[] levels = grown.get(key(rule, i));
+        int level = Arrays.binarySearch(levels, end);
+        forget(i);
+        Frame f = frame(rule, i);
+        f.recursive = true;
+        f.seed = level > 0 ? levels[level - 1] : FAIL;
+        f.limit = end;
+        eval(f);
+        return f.below;
+    }
+    
+    private Frame frame(int slot, int i) {
+        return new Frame(slot, i, slots.isStart(slot));
+    }
+    
+    private long key(int slot, int i) {
+        return ((long) slot << 32) | i;
+    }
+    
+    /**
+     * Rebuild the tree of the entry rule's match by following the remembered
+     * choices from the start of the input. Left recursive rules only remember
+     * their longest match, so each step of a grown seed is grown again as it
+     * is rebuilt
+     */
+    private TreeNode toTree(int start) {
+        TreeNode root = new TreeNode(symbols.nameOf(start), start, null,
+                input.length > 0 ? tokens.apply(0).loc : null, 0, input.length);
+        ArrayDeque<TreeNode> nodes = new ArrayDeque<>();
+        ArrayDeque<int[]> states = new ArrayDeque<>();
+        // The seed that each grown rule being rebuilt was grown from
+        HashMap<Long, Integer> seeds = new HashMap<>();
+        nodes.push(root);
+        states.push(new int[]{slots.start(start), 0});
+        if(grown.containsKey(key(slots.start(start), 0))) {
+            seeds.put(key(slots.start(start), 0), regrow(slots.start(start), 0, input.length));
+        }
+        while(!nodes.isEmpty()) {
+            int[] state = states.peek();
+            int edge = choice(state[0], state[1]);
+            if(edge < 0) {
+                nodes.pop();
+                states.pop();
+                continue;
+            }
+            int x = graph.label(GraphRelations.THEN, edge);
+            int i = state[1];
+            state[0] = graph.target(GraphRelations.THEN, edge);
+            if(!isLeaf(x, i)) {
+                int rule = slots.start(x);
+                Integer seed = seeds.get(key(rule, i));
+                if(seed == null && recall(rule, i) == 0) {
+                    eval(rule, i);
+                }
+                int end = seed != null ? seed : recall(rule, i) - 2;
+                if(grown.containsKey(key(rule, i))) {
+                    seeds.put(key(rule, i), regrow(rule, i, end));
+                }
+                TreeNode child = new TreeNode(symbols.nameOf(x), x, null,
+                        i < input.length ? tokens.apply(i).loc : null, i, end);
+                nodes.peek().addChild(child);
+                state[1] = end;
+                nodes.push(child);
+                states.push(new int[]{rule, i});
+            } else {
+                Token t = tokens.apply(i);
+                nodes.peek().addChild(new TreeNode(symbols.nameOf(x), x, t.content, t.loc, i, i + 1));
+                state[1] = i + 1;
+            }
+        }
+        return root;
+    }
+    
+    /**
+     * An evaluation of a slot at an index that is waiting on another one
+     */
+    private static final class Frame {
+        static final int START = 0, TRY = 1, CALLED = 2, CONTINUED = 3;
+        final int slot, index;
+        /**
+         * Whether the slot starts a rule, which may be left recursive
+         */
+        final boolean isRule;
+        int phase;
+        int choice, edge;
+        int result;
+        boolean recursive;
+        int seed = FAIL, seedEdge = -1;
+        /**
+         * For a left recursive rule, the end of the match to stop growing at,
+         * and the seed that it was grown from
+         */
+        int limit = FAIL, below = FAIL;
+        int[] levels = new int[0];
+        int grown;
+        
+        Frame(int slot, int index, boolean isRule) {
+            this.slot = slot;
+            this.index = index;
+            this.isRule = isRule;
+            this.phase = START;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser;
+
+import co.louiscap.moka.exceptions.LanguageSyntaxException;
+import co.louiscap.moka.lexer.TokenBuffer;
+import co.louiscap.moka.translator.tree.TreeNode;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parses a long run of statements by splitting the tokens just after each
+ * statement boundary token, parsing the statements concurrently, and then
+ * parsing the program once more with each statement's subtree given to the
+ * parser as a single symbol. That last parse only sees one symbol per
+ * statement, so most of the work is done in parallel.
+ * <br><br>
+ * A statement is only parsed on its own as one of the rules that
+ * {@link GrammarAnalysis#statements(int)} finds for the boundary, so a rule
+ * that the boundary token can appear in the middle of is never split; a
+ * piece of the input that doesn't match any of those rules is left as tokens
+ * for the last parse. If the last parse fails, because a statement was
+ * parsed as a rule that the program doesn't allow there, the tokens are
+ * parsed again sequentially, so the result is always a valid parse and any
+ * syntax error is reported where a sequential parse would report it.
+ * @author Louis Capitanchik
+ */
+final class ParallelParse {
+    
+    /**
+     * The fewest tokens worth parsing as a separate task
+     */
+    static final int MIN_CHUNK_TOKENS = 1024;
+    
+    private final Parser parser;
+    private final TokenBuffer tokens;
+    private final ForkJoinPool pool;
+    
+    ParallelParse(Parser parser, TokenBuffer tokens, ForkJoinPool pool) {
+        this.parser = parser;
+        this.tokens = tokens;
+        this.pool = pool;
+    }
+    
+    /**
+     * @param boundary The symbol id of the token that statements end with
+     * @param entry The symbol id of the rule that the whole input is parsed as
+     * @return The parse tree of the whole input
+     * @throws LanguageSyntaxException Thrown if the tokens don't form a
+     * program
+     */
+    TreeNode run(int boundary, int entry) throws LanguageSyntaxException {
+        // The index after each boundary token
+        ArrayList<Integer> ends = new ArrayList<>();
+        for(int i = 0; i < tokens.size(); i += 1) {
+            if(parser.idOf(tokens, i) == boundary) {
+                ends.add(i + 1);
+            }
+        }
+        int chunks = Math.min(ends.size(), Math.min(pool.getParallelism() * 4, tokens.size() / MIN_CHUNK_TOKENS));
+        if(chunks < 2) {
+            return parser.parse(tokens);
+        }
+        
+        // Each task parses a run of consecutive statements
+        TreeNode[] statements = new TreeNode[ends.size()];
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+        for(int k = 0; k < chunks; k += 1) {
+            int first = (int) ((long) ends.size() * k / chunks);
+            int last = (int) ((long) ends.size() * (k + 1) / chunks);
+            tasks.add(pool.submit(() -> {
+                for(int s = first; s < last; s += 1) {
+                    statements[s] = parser.parseStatement(tokens, s == 0 ? 0 : ends.get(s - 1), ends.get(s));
+                }
+            }));
+        }
+        try {
+            tasks.forEach(ForkJoinTask::join);
+        } finally {
+            tasks.forEach(task -> task.cancel(false));
+        }
+        
+        ArrayList<TreeNode> kept = new ArrayList<>(statements.length);
+        for(TreeNode statement : statements) {
+            if(statement != null) {
+                kept.add(statement);
+            }
+        }
+        int[] starts = kept.stream().mapToInt(statement -> statement.start).toArray();
+        TreeNode tree = parser.parseAround(tokens, 0, tokens.size(), entry, kept, starts);
+        return tree != null ? tree : parser.parse(tokens);
+    }
+}
@@ -29,46 +29,711 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 package co.louiscap.moka.parser;
 
-import co.louiscap.moka.exceptions.MismatchedRuleTargetException;
-import co.louiscap.moka.parser.graph.GraphRelations;
-import co.louiscap.moka.utils.data.DirectedMultiStore;
-import co.louiscap.moka.utils.io.Logging;
+import co.louiscap.moka.exceptions.LanguageSyntaxException;
+import co.louiscap.moka.lexer.Token;
+import co.louiscap.moka.lexer.TokenBuffer;
+import co.louiscap.moka.lexer.TokenEdit;
+import co.louiscap.moka.parser.forest.Disambiguator;
+import co.louiscap.moka.parser.forest.ParseForest;
+import co.louiscap.moka.translator.tree.TreeNode;
+import co.louiscap.moka.utils.data.Location;
+import co.louiscap.moka.utils.data.SymbolTable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
 /**
- * 
+ * Parses token streams against a set of language rules using the GLL
+ * algorithm, which accepts any context free grammar; including the left
+ * recursive and ambiguous rules that a hand written recursive descent parser
+ * would loop forever on. The rules are merged and compiled into a table of
+ * slots once, when the Parser is created, and the table can then be shared by
+ * any number of parses.
+ * <br><br>
+ * A Parser can instead be set to use the {@link Engine#PACKRAT} engine, which
+ * reads the rules as a parsing expression grammar; it takes the first way
+ * that each rule can match rather than every way, but runs in linear time
+ * while its memo table fits in the memory it is given.
+ * <br><br>
+ * Either way, rules whose binary operators have {@link Precedence}
+ * declarations are parsed as flat runs of operands and operators, which are
+ * then grouped by precedence climbing; see {@link OperatorRule}.
  * @author Louis Captianchik
  */
 public class Parser {
     
-    private DirectedMultiStore<GraphRelations> arcs;
+    /**
+     * The rule that every program must be an instance of
+     */
+    public static final String ENTRY = "CORE";
     
-    private HashMap<String, LangRule> condensedRules;
-    private HashMap<String, String> terminals;
+    /**
+     * The default limit on the memory used by the {@link Engine#PACKRAT}
+     * engine to remember results; 64MB
+     */
+    public static final long DEFAULT_MEMO_LIMIT = 64L << 20;
+    
+    /**
+     * The algorithms that a Parser can use
+     */
+    public enum Engine {
+        /**
+         * Generalised LL; finds every way that the rules can match the input,
+         * however ambiguous, and picks one of them
+         */
+        GLL,
+        /**
+         * Read the rules as a parsing expression grammar, in which the first
+         * way found for a rule to match is the only one, and remember the
+         * result of every rule at every token. Parses in linear time
+         */
+        PACKRAT
+    }
+    
+    private final SymbolTable symbols;
+    /**
+     * The merged rule for each nonterminal, indexed by symbol id
+     */
+    private LangRule[] condensedRules;
+    /**
+     * The compiled form of each merged rule, indexed by the symbol id of the
+     * rule's target
+     */
+    private RuleAutomaton[] automata;
+    /**
+     * The operator form of each rule that is parsed by precedence climbing,
+     * indexed by the symbol id of the rule's target
+     */
+    private final OperatorRule[] operatorRules;
+    private final boolean hasOperators;
+    private final GrammarSlots slots;
+    private Engine engine;
+    private long memoLimit;
+    private String boundary;
+    /**
+     * The rules that statements ending with the boundary token are parsed
+     * as, and the FIRST set of each
+     */
+    private int[] statements;
+    private BitSet[] statementFirst;
     
     public Parser(LangRule[] rules) {
-        condensedRules = new HashMap<>();
-        terminals = new HashMap<>();
-        Arrays.stream(rules).forEach(rule -> {
-            if(condensedRules.containsKey(rule.target)) {
-                try {
-                    condensedRules.get(rule.target).merge(rule);
-                } catch (MismatchedRuleTargetException ex) {
-                    //Should never happen based on logic
-                    ex.printStackTrace(Logging.LOGGER.getChannel("err"));
+        this(rules, new SymbolTable());
+    }
+    
+    public Parser(LangRule[] rules, SymbolTable symbols) {
+        this(rules, new Precedence[0], symbols);
+    }
+    
+    /**
+     * @param rules The language rules, which are merged by target
+     * @param precedences Operator declarations, from loosest binding to
+     * tightest; rules whose binary alternatives use the declared operators
+     * are parsed by precedence climbing
+     * @param symbols The table to intern the rules' symbols in
+     */
+    public Parser(LangRule[] rules, Precedence[] precedences, SymbolTable symbols) {
+        this.symbols = symbols;
+        RuleMerger merger = new RuleMerger(symbols);
+        Arrays.stream(rules).forEach(merger::addRule);
+        LangRule[] merged = merger.getRules().stream().toArray(LangRule[]::new);
+        HashMap<String, Integer> levels = new HashMap<>();
+        HashMap<String, Precedence.Associativity> associativity = new HashMap<>();
+        for(int level = 0; level < precedences.length; level += 1) {
+            for(String op : precedences[level].operators) {
+                levels.put(op, level + 1);
+                associativity.put(op, precedences[level].associativity);
+            }
+        }
+        ArrayList<RuleAutomaton> compiled = new ArrayList<>();
+        ArrayList<OperatorRule> grouped = new ArrayList<>();
+        for(LangRule rule : merged) {
+            RuleAutomaton automaton = rule.compile(symbols);
+            OperatorRule operators = levels.isEmpty() ? null
+                    : OperatorRule.of(automaton, symbols, levels, associativity);
+            if(operators == null) {
+                compiled.add(automaton);
+            } else {
+                compiled.addAll(Arrays.asList(operators.automata()));
+                grouped.add(operators);
+            }
+        }
+        condensedRules = new LangRule[symbols.size()];
+        automata = new RuleAutomaton[symbols.size()];
+        operatorRules = new OperatorRule[symbols.size()];
+        for(LangRule rule : merged) {
+            condensedRules[symbols.idOf(rule.target)] = rule;
+        }
+        for(RuleAutomaton rule : compiled) {
+            automata[rule.target] = rule;
+        }
+        for(OperatorRule rule : grouped) {
+            operatorRules[rule.target] = rule;
+        }
+        hasOperators = !grouped.isEmpty();
+        slots = new GrammarSlots(automata, new GrammarAnalysis(automata, symbols.idOf(ENTRY), symbols));
+        engine = Engine.GLL;
+        memoLimit = DEFAULT_MEMO_LIMIT;
+    }
+    
+    /**
+     * Select the algorithm used by subsequent calls to parse
+     * @param engine The engine to use
+     */
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+    
+    public Engine getEngine() {
+        return engine;
+    }
+    
+    /**
+     * @return The nullable, FIRST and FOLLOW sets of the merged rules, and the
+     * problems found in them, that the parse tables were built from
+     */
+    public GrammarAnalysis getAnalysis() {
+        return slots.analysis();
+    }
+    
+    /**
+     * Set how much memory the {@link Engine#PACKRAT} engine may use to
+     * remember results. Inputs that would need more than this are still
+     * parsed, but may have to work some results out more than once
+     * @param bytes The limit, in bytes
+     * @throws IllegalArgumentException Thrown if the limit is negative
+     */
+    public void setMemoLimit(long bytes) {
+        if(bytes < 0) {
+            throw new IllegalArgumentException("Memo limit can't be negative: " + bytes);
+        }
+        this.memoLimit = bytes;
+    }
+    
+    public long getMemoLimit() {
+        return memoLimit;
+    }
+    
+    /**
+     * Set the token that {@link Parser#parseParallel(TokenBuffer)} splits the
+     * input after. Only rules that always end with the token, and never
+     * contain it anywhere else, are parsed as separate statements
+     * @param tokenType The name of the token type, such as T_EOL, or null to
+     * always parse sequentially
+     */
+    public void setStatementBoundary(String tokenType) {
+        boundary = tokenType;
+        int id = tokenType == null ? -1 : symbols.idOf(tokenType);
+        BitSet found = id < 0 ? new BitSet() : getAnalysis().statements(id);
+        statements = found.stream().filter(getAnalysis()::isReachable).toArray();
+        statementFirst = new BitSet[statements.length];
+        for(int k = 0; k < statements.length; k += 1) {
+            statementFirst[k] = getAnalysis().first(statements[k]);
+        }
+    }
+    
+    public String getStatementBoundary() {
+        return boundary;
+    }
+    
+    /**
+     * Parse a buffer of tokens into a tree rooted at the {@link Parser#ENTRY}
+     * rule. Where the grammar is ambiguous, one of the possible trees is
+     * chosen
+     * @param tokens The tokens to parse
+     * @return The root of the parse tree
+     * @throws LanguageSyntaxException Thrown if the tokens don't form a
+     * program. The location is that of the furthest token that could still be
+     * part of a valid program
+     */
+    public TreeNode parse(TokenBuffer tokens) throws LanguageSyntaxException {
+        int[] input = new int[tokens.size()];
+        for(int i = 0; i < input.length; i += 1) {
+            input[i] = idOf(tokens, i);
+        }
+        return parse(input, tokens::get, tokens.getName());
+    }
+    
+    /**
+     * Parse a buffer of tokens into a tree rooted at the {@link Parser#ENTRY}
+     * rule, parsing the statements that end with the
+     * {@link Parser#setStatementBoundary(String) statement boundary} on the
+     * common pool. See {@link Parser#parseParallel(TokenBuffer, ForkJoinPool)}
+     * @param tokens The tokens to parse
+     * @return The root of the parse tree
+     * @throws LanguageSyntaxException Thrown if the tokens don't form a
+     * program
+     */
+    public TreeNode parseParallel(TokenBuffer tokens) throws LanguageSyntaxException {
+        return parseParallel(tokens, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Parse a buffer of tokens into a tree rooted at the {@link Parser#ENTRY}
+     * rule, by splitting the tokens just after each
+     * {@link Parser#setStatementBoundary(String) statement boundary} and
+     * parsing the statements concurrently. The result is always a valid parse
+     * of the tokens, and where the rules are unambiguous it is the same tree
+     * that {@link Parser#parse(TokenBuffer)} gives; inputs that are too small
+     * to split, or a Parser without a statement boundary, are simply parsed
+     * sequentially
+     * @param tokens The tokens to parse
+     * @param pool The pool to parse statements on
+     * @return The root of the parse tree
+     * @throws LanguageSyntaxException Thrown if the tokens don't form a
+     * program
+     */
+    public TreeNode parseParallel(TokenBuffer tokens, ForkJoinPool pool) throws LanguageSyntaxException {
+        if(boundary == null || statements.length == 0) {
+            return parse(tokens);
+        }
+        return new ParallelParse(this, tokens, pool).run(symbols.idOf(boundary), entry());
+    }
+    
+    /**
+     * Parse a range of tokens that ends with the statement boundary as a
+     * single statement
+     * @return The tree for the statement, or null if the range doesn't match
+     * any of the rules that statements are parsed as
+     */
+    TreeNode parseStatement(TokenBuffer tokens, int from, int to) {
+        int lookahead = slots.lookahead(idOf(tokens, from));
+        for(int k = 0; k < statements.length; k += 1) {
+            if(statementFirst[k].get(lookahead)) {
+                TreeNode tree = parseAround(tokens, from, to, statements[k], Collections.emptyList(), new int[0]);
+                if(tree != null) {
+                    return tree;
                 }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Parse an array of tokens into a tree rooted at the {@link Parser#ENTRY}
+     * rule
+     * @param tokens The tokens to parse
+     * @param filename The file that the tokens were read from
+     * @return The root of the parse tree
+     * @throws LanguageSyntaxException Thrown if the tokens don't form a
+     * program
+     * @see Parser#parse(TokenBuffer) 
+     */
+    public TreeNode parse(Token[] tokens, String filename) throws LanguageSyntaxException {
+        int[] input = Arrays.stream(tokens)
+                .mapToInt(t -> symbols.idOf(t.ident))
+                .toArray();
+        return parse(input, i -> tokens[i], filename);
+    }
+    
+    /**
+     * Parse a buffer of tokens into a forest of every possible parse tree
+     * rooted at the {@link Parser#ENTRY} rule, sharing the parts that the
+     * trees have in common. The forest is always built by the
+     * {@link Engine#GLL} engine, since an ordered choice only ever finds one
+     * tree. Rules parsed by precedence climbing appear in the forest as runs
+     * of operands and operators; {@link Parser#toTree(ParseForest, Disambiguator)}
+     * groups them
+     * @param tokens The tokens to parse
+     * @return The parse forest
+     * @throws LanguageSyntaxException Thrown if the tokens don't form a
+     * program
+     */
+    public ParseForest parseForest(TokenBuffer tokens) throws LanguageSyntaxException {
+        int[] input = new int[tokens.size()];
+        for(int i = 0; i < input.length; i += 1) {
+            input[i] = idOf(tokens, i);
+        }
+        return new GllParse(slots, symbols, input, tokens::get, tokens.getName(), null).run(entry());
+    }
+    
+    /**
+     * Parse an array of tokens into a forest of every possible parse tree
+     * @param tokens The tokens to parse
+     * @param filename The file that the tokens were read from
+     * @return The parse forest
+     * @throws LanguageSyntaxException Thrown if the tokens don't form a
+     * program
+     * @see Parser#parseForest(TokenBuffer)
+     */
+    public ParseForest parseForest(Token[] tokens, String filename) throws LanguageSyntaxException {
+        int[] input = Arrays.stream(tokens)
+                .mapToInt(t -> symbols.idOf(t.ident))
+                .toArray();
+        return new GllParse(slots, symbols, input, i -> tokens[i], filename, null).run(entry());
+    }
+    
+    private TreeNode parse(int[] input, IntFunction<Token> tokens, String filename) throws LanguageSyntaxException {
+        return parse(input, tokens, filename, entry(), null, null);
+    }
+    
+    /**
+     * @return The symbol id of the {@link Parser#ENTRY} rule
+     * @throws IllegalStateException Thrown if the language has no such rule
+     */
+    private int entry() {
+        int entry = symbols.idOf(ENTRY);
+        if(!slots.isNonterminal(entry)) {
+            throw new IllegalStateException("The language has no " + ENTRY + " rule");
+        }
+        return entry;
+    }
+    
+    /**
+     * Parse an input as the given rule, using the selected engine
+     * @param lookaheads The lookahead symbol at every index of the input and
+     * after it, or null to work them out from the input
+     * @param kept The indexes of the input that stand in for kept subtrees,
+     * or null if there are none
+     */
+    private TreeNode parse(int[] input, IntFunction<Token> tokens, String filename, int rule, int[] lookaheads,
+            BitSet kept) throws LanguageSyntaxException {
+        TreeNode tree;
+        if(engine == Engine.PACKRAT) {
+            tree = new PackratParse(slots, symbols, input, kept, tokens, filename, memoLimit).run(rule);
+        } else {
+            tree = new GllParse(slots, symbols, input, tokens, filename, lookaheads).run(rule).toTree();
+        }
+        return group(tree);
+    }
+    
+    /**
+     * Pick one tree out of a forest made by this parser, and group the
+     * operators of any rules parsed by precedence climbing
+     * @param forest A forest from {@link Parser#parseForest(TokenBuffer)}
+     * @param disambiguator Chooses between the derivations of ambiguous nodes
+     * @return The root of the parse tree
+     * @throws LanguageSyntaxException Thrown if an operator with no
+     * associativity follows another of the same precedence
+     */
+    public TreeNode toTree(ParseForest forest, Disambiguator disambiguator) throws LanguageSyntaxException {
+        return group(forest.toTree(disambiguator));
+    }
+    
+    /**
+     * Group every run of operands and operators in a tree by precedence, in
+     * place
+     * @return The tree
+     */
+    private TreeNode group(TreeNode tree) throws LanguageSyntaxException {
+        if(!hasOperators) {
+            return tree;
+        }
+        ArrayDeque<TreeNode> nodes = new ArrayDeque<>();
+        nodes.push(tree);
+        while(!nodes.isEmpty()) {
+            TreeNode node = nodes.pop();
+            OperatorRule rule = operatorRule(node);
+            if(rule != null && rule.isRun(node)) {
+                rule.group(node, symbols);
+            }
+            node.leaves.forEach(nodes::push);
+        }
+        return tree;
+    }
+    
+    /**
+     * @return The operator form of the rule that a node is for, or null if
+     * it isn't parsed by precedence climbing
+     */
+    private OperatorRule operatorRule(TreeNode node) {
+        int id = symbols.idOf(node.id);
+        return id >= 0 && id < operatorRules.length ? operatorRules[id] : null;
+    }
+    
+    /**
+     * @return Whether the child of a node at the given index is an operand
+     * of one of the node's operators, and so only part of a run of operators
+     * that has to be parsed as a whole
+     */
+    private boolean isOperand(TreeNode parent, int index) {
+        OperatorRule rule = operatorRule(parent);
+        return rule != null && (index == 0 || index == 2) && rule.isBinary(parent, symbols);
+    }
+    
+    /**
+     * Update the parse tree of a source after an edit, parsing as little of
+     * the new tokens as possible. The smallest rule of the previous tree that
+     * covers every token that was lexed again is parsed again, but every
+     * subtree of it that doesn't touch those tokens is kept, and given to the
+     * parser as a single symbol rather than as its tokens; so the parsing
+     * done depends on the size of the edit and the depth of the tree around
+     * it, rather than on the size of the source. If the rule can't be parsed
+     * again that way, the rule around it is tried, and so on out to the whole
+     * program; failing that, the tokens are parsed from scratch.
+     * <br><br>
+     * Kept subtrees still hold absolute token indexes and locations, so when
+     * an edit changes the number of tokens or moves later tokens to another
+     * line or column, every node after the edit is visited to update them.
+     * That costs time in proportion to the size of the tree, though far less
+     * than parsing it again.
+     * <br><br>
+     * The result is always a valid parse of the new tokens. Where the rules
+     * are unambiguous, it is the same tree that parsing from scratch would
+     * give; otherwise it may be a different one of the possible trees
+     * @param previous The tree of the source before the edit, which is
+     * updated in place
+     * @param tokens The tokens after the edit, from
+     * {@link co.louiscap.moka.lexer.Lexer#relex(TokenBuffer, co.louiscap.moka.utils.string.TextEdit)}
+     * @return The root of the new parse tree
+     * @throws LanguageSyntaxException Thrown if the tokens don't form a
+     * program
+     */
+    public TreeNode reparse(TreeNode previous, TokenBuffer tokens) throws LanguageSyntaxException {
+        TokenEdit edit = tokens.getEdit();
+        if(edit == null || previous.start != 0 || previous.end != tokens.size() - edit.delta()) {
+            return parse(tokens);
+        }
+        // The rules from the root down to the smallest one around the edit,
+        // and the index of each within its parent
+        ArrayList<TreeNode> path = new ArrayList<>();
+        ArrayList<Integer> indexes = new ArrayList<>();
+        path.add(previous);
+        indexes.add(-1);
+        boolean deeper = true;
+        while(deeper) {
+            deeper = false;
+            int k = 0;
+            for(TreeNode child : path.get(path.size() - 1).leaves) {
+                if(isRule(child) && child.start <= edit.start && child.end >= edit.start + edit.replaced
+                        && child.end > child.start) {
+                    path.add(child);
+                    indexes.add(k);
+                    deeper = true;
+                    break;
+                }
+                k += 1;
+            }
+        }
+        for(int d = path.size() - 1; d >= 0; d -= 1) {
+            if(d > 0 && isOperand(path.get(d - 1), indexes.get(d))) {
+                // Parsing part of a run of operators on its own could group
+                // it differently to the whole run
+                continue;
+            }
+            TreeNode replacement = reparse(path.get(d), tokens, edit);
+            if(replacement == null) {
+                continue;
+            }
+            if(d == 0) {
+                return replacement;
+            }
+            path.get(d - 1).leaves.set(indexes.get(d), replacement);
+            // Everything after the new subtree moves along, and an ancestor
+            // that starts at a relexed token may now start somewhere else
+            for(int a = d - 1; a >= 0; a -= 1) {
+                TreeNode ancestor = path.get(a);
+                ancestor.end += edit.delta();
+                ancestor.loc = ancestor.start < tokens.size() ? tokens.location(ancestor.start) : null;
+                ListIterator<TreeNode> later = ancestor.leaves.listIterator(indexes.get(a + 1) + 1);
+                while(later.hasNext()) {
+                    move(later.next(), edit.delta(), tokens);
+                }
+            }
+            return previous;
+        }
+        return parse(tokens);
+    }
+    
+    /**
+     * Parse the tokens of a rule of the previous tree again after an edit,
+     * keeping every subtree of it that is outside of the edit
+     * @return The new tree for the rule, or null if it no longer matches
+     */
+    private TreeNode reparse(TreeNode rule, TokenBuffer tokens, TokenEdit edit) {
+        int changed = edit.start + edit.replaced;
+        // The largest subtrees that are untouched by the edit, in order
+        ArrayList<TreeNode> kept = new ArrayList<>();
+        ArrayDeque<ListIterator<TreeNode>> walk = new ArrayDeque<>();
+        ArrayDeque<TreeNode> parents = new ArrayDeque<>();
+        walk.push(rule.leaves.listIterator());
+        parents.push(rule);
+        while(!walk.isEmpty()) {
+            if(!walk.peek().hasNext()) {
+                walk.pop();
+                parents.pop();
+                continue;
+            }
+            int index = walk.peek().nextIndex();
+            TreeNode child = walk.peek().next();
+            if(!isRule(child) || child.start == child.end) {
+                continue;
+            }
+            // Operands of a run of operators can't stand in for the run's
+            // operands, so their own children are kept instead
+            if((child.end <= edit.start || child.start >= changed) && !isOperand(parents.peek(), index)) {
+                kept.add(child);
+            } else {
+                walk.push(child.leaves.listIterator());
+                parents.push(child);
+            }
+        }
+        
+        int from = rule.start, to = rule.end + edit.delta();
+        if(to < from || to > tokens.size()) {
+            return null;
+        }
+        int[] starts = new int[kept.size()];
+        for(int k = 0; k < starts.length; k += 1) {
+            int start = kept.get(k).start;
+            starts[k] = start + (start >= changed ? edit.delta() : 0);
+        }
+        return parseAround(tokens, from, to, symbols.idOf(rule.id), kept, starts);
+    }
+    
+    /**
+     * Parse a range of tokens as a rule, giving the parser each of a list of
+     * subtrees as a single symbol in place of the tokens that it covers, and
+     * putting the subtrees back into the result
+     * @param tokens The tokens to parse
+     * @param from The index of the first token of the range
+     * @param to The index after the last token of the range
+     * @param rule The symbol id of the rule to parse the range as
+     * @param kept The subtrees, in order, which are moved onto the tokens
+     * that they now cover
+     * @param starts The index of the first token that each subtree now
+     * covers
+     * @return The tree for the range, or null if it doesn't match the rule
+     */
+    TreeNode parseAround(TokenBuffer tokens, int from, int to, int rule, List<TreeNode> kept, int[] starts) {
+        // Tokens and kept subtrees, each as a single symbol of the input
+        int[] input = new int[to - from];
+        int[] lookaheads = new int[to - from + 1];
+        int[] positions = new int[to - from + 1];
+        TreeNode[] subtrees = new TreeNode[to - from];
+        BitSet standIns = new BitSet();
+        int length = 0, next = 0;
+        for(int i = from; i < to; length += 1) {
+            TreeNode subtree = next < kept.size() ? kept.get(next) : null;
+            positions[length] = i;
+            lookaheads[length] = slots.lookahead(idOf(tokens, i));
+            if(subtree != null && i == starts[next]) {
+                input[length] = symbols.idOf(subtree.id);
+                subtrees[length] = subtree;
+                standIns.set(length);
+                next += 1;
+                i += subtree.end - subtree.start;
             } else {
-                condensedRules.put(rule.target, rule);
+                input[length] = idOf(tokens, i);
+                i += 1;
             }
-        });
-        condensedRules.values().forEach(rule -> {
-            List tokens = rule.sequences.stream().collect(Collectors.toList());
-            
-        });
+        }
+        positions[length] = to;
+        lookaheads[length] = to < tokens.size() ? slots.lookahead(idOf(tokens, to)) : slots.eof;
         
-        //TODO: Create graph here
+        TreeNode tree;
+        try {
+            tree = parse(Arrays.copyOf(input, length), i -> tokens.get(positions[i]), tokens.getName(),
+                    rule, Arrays.copyOf(lookaheads, length + 1), standIns);
+        } catch (LanguageSyntaxException ex) {
+            return null;
+        }
+        
+        // Put the kept subtrees back in place of their symbols, and move
+        // every new node onto the tokens it really covers
+        ArrayDeque<TreeNode> nodes = new ArrayDeque<>();
+        nodes.push(tree);
+        while(!nodes.isEmpty()) {
+            TreeNode node = nodes.pop();
+            ListIterator<TreeNode> children = node.leaves.listIterator();
+            while(children.hasNext()) {
+                TreeNode child = children.next();
+                if(child.leaves.isEmpty() && child.end == child.start + 1 && subtrees[child.start] != null) {
+                    TreeNode subtree = subtrees[child.start];
+                    move(subtree, positions[child.start] - subtree.start, tokens);
+                    children.set(subtree);
+                } else {
+                    nodes.push(child);
+                }
+            }
+            boolean empty = node.start == node.end;
+            node.start = positions[node.start];
+            node.end = positions[node.end];
+            if(empty) {
+                node.loc = node.start < tokens.size() ? tokens.location(node.start) : null;
+            }
+        }
+        return tree;
+    }
+    
+    /**
+     * @return Whether a node of a tree is for a rule, rather than a token
+     */
+    private boolean isRule(TreeNode node) {
+        return slots.isNonterminal(symbols.idOf(node.id));
+    }
+    
+    /**
+     * Move a subtree along the token stream, updating the location of every
+     * node in it whose token has moved to a different line or column
+     */
+    private void move(TreeNode subtree, int delta, TokenBuffer tokens) {
+        if(delta == 0 && subtree.start < subtree.end && subtree.loc.line == tokens.line(subtree.start)
+                && subtree.loc.column == tokens.column(subtree.start)) {
+            // An edit moves every later token by the same number of lines,
+            // and only changes the columns on the line where it ends, so if
+            // the first token hasn't moved then none of them have
+            return;
+        }
+        subtree.shift(delta);
+        ArrayDeque<TreeNode> nodes = new ArrayDeque<>();
+        nodes.push(subtree);
+        while(!nodes.isEmpty()) {
+            TreeNode node = nodes.pop();
+            if(node.start == node.end) {
+                node.loc = node.start < tokens.size() ? tokens.location(node.start) : null;
+            } else if(node.loc.line != tokens.line(node.start) || node.loc.column != tokens.column(node.start)) {
+                node.loc = tokens.location(node.start);
+            }
+            node.leaves.forEach(nodes::push);
+        }
+    }
+    
+    int idOf(TokenBuffer tokens, int index) {
+        return tokens.getSymbols() == symbols ? tokens.type(index) : symbols.idOf(tokens.typeName(index));
+    }
+    
+    /**
+     * Create the exception for an input that couldn't be parsed
+     * @param furthest The index of the furthest token reached
+     * @param expected The symbols that would have let the parse continue
+     * from the furthest token
+     * @param length The number of tokens in the input
+     * @param tokens Looks up the token at an index of the input
+     * @param filename The name of the file being parsed
+     * @param symbols The table that the expected symbols are interned in
+     * @return An exception located at the furthest token
+     */
+    static LanguageSyntaxException syntaxError(int furthest, BitSet expected, int length,
+            IntFunction<Token> tokens, String filename, SymbolTable symbols) {
+        String wanted = expected.stream()
+                .filter(x -> x < symbols.size())
+                .mapToObj(symbols::nameOf)
+                .collect(Collectors.joining(", "));
+        wanted = wanted.isEmpty() ? "" : ", expected one of " + wanted;
+        if(furthest < length) {
+            Token t = tokens.apply(furthest);
+            return new LanguageSyntaxException("Unexpected " + t.ident + wanted, t.loc);
+        } else {
+            Location loc = length == 0 
+                    ? new Location(filename, 1, 0) 
+                    : tokens.apply(length - 1).loc;
+            return new LanguageSyntaxException("Unexpected end of input" + wanted, loc);
+        }
+    }
+    
+    /**
+     * @return The table that this parser's symbols are interned in
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
     }
 }
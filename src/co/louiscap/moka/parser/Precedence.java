@@ -0,0 +1,108 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser;
+
+import co.louiscap.moka.exceptions.InvalidFormatException;
+import java.util.Arrays;
+
+/**
+ * A precedence declaration of a language file, such as
+ * <code>%left T_PLUS T_MINUS</code>
+ * <br><br>
+ * Every token listed is a binary operator of the given associativity, and
+ * all of them bind equally tightly. As with yacc, declarations that come
+ * later bind more tightly than earlier ones. A rule alternative of the form
+ * <code>S_EXPR : S_EXPR T_PLUS S_EXPR</code>, where the operator has been
+ * declared, is then parsed by precedence climbing rather than as an
+ * ambiguous rule; see {@link OperatorRule}
+ * @author Louis Capitanchik
+ */
+public class Precedence {
+    
+    public enum Associativity {
+        /**
+         * <code>a + b + c</code> groups as <code>(a + b) + c</code>
+         */
+        LEFT,
+        /**
+         * <code>a ^ b ^ c</code> groups as <code>a ^ (b ^ c)</code>
+         */
+        RIGHT,
+        /**
+         * <code>a &lt; b &lt; c</code> is a syntax error
+         */
+        NONASSOC
+    }
+    
+    public final Associativity associativity;
+    public final String[] operators;
+    
+    /**
+     * @param src A line of a language file starting with <code>%left</code>,
+     * <code>%right</code> or <code>%nonassoc</code>, followed by the tokens
+     * that it declares
+     * @throws InvalidFormatException Thrown if the line isn't a precedence
+     * declaration, or declares no tokens
+     */
+    public Precedence(String src) throws InvalidFormatException {
+        String[] words = src.trim().split("\\s+");
+        switch(words[0]) {
+            case "%left":
+                associativity = Associativity.LEFT;
+                break;
+            case "%right":
+                associativity = Associativity.RIGHT;
+                break;
+            case "%nonassoc":
+                associativity = Associativity.NONASSOC;
+                break;
+            default:
+                throw new InvalidFormatException("Precedence Parse " + words[0],
+                        "Unknown declaration; expected %left, %right or %nonassoc");
+        }
+        if(words.length < 2) {
+            throw new InvalidFormatException("Precedence Parse " + words[0], "No operator tokens declared");
+        }
+        operators = Arrays.copyOfRange(words, 1, words.length);
+    }
+    
+    /**
+     * @param line A line of a language file
+     * @return Whether the line is a precedence declaration rather than a rule
+     */
+    public static boolean isDeclaration(String line) {
+        return line.trim().startsWith("%");
+    }
+    
+    @Override
+    public String toString() {
+        return "%" + associativity.name().toLowerCase() + " " + String.join(" ", operators);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser;
+
+import co.louiscap.moka.utils.data.SymbolTable;
+import java.util.Arrays;
+
+/**
+ * A {@link LangRule} compiled against a {@link SymbolTable}; a nondeterministic
+ * automaton with one state for every symbol written in the rule (a position)
+ * and a single start state. Taking a transition into a position means
+ * matching that position's symbol, so the automaton needs no empty
+ * transitions, and optional symbols and groups are represented by transitions
+ * that skip over them rather than by listing every combination separately.
+ * <br><br>
+ * Every path from the start state to an accepting state spells out one of
+ * the sequences of the rule. Rules can't repeat, so the automaton never has a
+ * cycle, and transitions always lead to a later position.
+ * @author Louis Capitanchik
+ */
+public final class RuleAutomaton {
+    
+    /**
+     * The symbol id of the rule's target
+     */
+    public final int target;
+    final int[] symbols;
+    final int[] first;
+    final int[][] follow;
+    final boolean[] accepting;
+    final boolean nullable;
+    
+    RuleAutomaton(int target, int[] symbols, int[] first, int[][] follow, boolean[] accepting, boolean nullable) {
+        this.target = target;
+        this.symbols = symbols;
+        this.first = first;
+        this.follow = follow;
+        this.accepting = accepting;
+        this.nullable = nullable;
+    }
+    
+    /**
+     * @return The number of positions, not counting the start state
+     */
+    public int size() {
+        return symbols.length;
+    }
+    
+    /**
+     * @param position A position of the automaton
+     * @return The symbol id matched on entering the position
+     */
+    public int symbol(int position) {
+        return symbols[position];
+    }
+    
+    /**
+     * @return The positions that can be entered from the start state. Must
+     * not be modified
+     */
+    public int[] first() {
+        return first;
+    }
+    
+    /**
+     * @param position A position of the automaton
+     * @return The positions that can be entered from the given position. Must
+     * not be modified
+     */
+    public int[] follow(int position) {
+        return follow[position];
+    }
+    
+    /**
+     * @param position A position of the automaton
+     * @return Whether a sequence of the rule can end at the position
+     */
+    public boolean isAccepting(int position) {
+        return accepting[position];
+    }
+    
+    /**
+     * @return Whether the rule has an empty sequence, so that the start state
+     * is also accepting
+     */
+    public boolean isNullable() {
+        return nullable;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(target).append(" : start").append(nullable ? "*" : "")
+                .append(" -> ").append(Arrays.toString(first));
+        for(int p = 0; p < symbols.length; p += 1) {
+            sb.append("\n\t").append(p).append('(').append(symbols[p]).append(')')
+                    .append(accepting[p] ? "*" : "").append(" -> ").append(Arrays.toString(follow[p]));
+        }
+        return sb.toString();
+    }
+}
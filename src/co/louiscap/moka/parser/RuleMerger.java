@@ -30,41 +30,70 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package co.louiscap.moka.parser;
 
 import co.louiscap.moka.exceptions.MismatchedRuleTargetException;
+import co.louiscap.moka.utils.data.SymbolTable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 /**
  * @author Louis Capitanchik
  */
 public class RuleMerger {
-    private HashMap<String, LangRule> rules;
+    private final SymbolTable symbols;
+    private final ArrayList<LangRule> rules;
     public RuleMerger(){
-        rules = new HashMap<>();
+        this(new SymbolTable());
+    }
+    public RuleMerger(SymbolTable symbols){
+        this.symbols = symbols;
+        rules = new ArrayList<>();
     }
     public RuleMerger(LangRule... rules){
         this();
         Arrays.stream(rules).forEach(this::addRule);        
     }
     
+    /**
+     * Merge a rule into the rule that shares its target, if there is one.
+     * Rules are stored by the symbol id of their target, and the rule given
+     * is never modified
+     * @param rule The rule to add
+     */
     public void addRule(LangRule rule) {
-        if(this.rules.containsKey(rule.target)) {
+        int target = symbols.internNonterminal(rule.target);
+        while(rules.size() <= target) {
+            rules.add(null);
+        }
+        if(rules.get(target) != null) {
             try {
-                this.rules.get(rule.target).merge(rule);
+                rules.get(target).merge(rule);
             } catch (MismatchedRuleTargetException ex) {
                 //Not possible to reach
             }
         } else {
-            this.rules.put(rule.target, rule);
+            // Copied, so that merging doesn't change the rules passed in
+            rules.set(target, new LangRule(rule));
         }
     }
     public Collection<LangRule> getRules() {
-        return rules.values();
+        return rules.stream().filter(Objects::nonNull).collect(Collectors.toList());
+    }
+    /**
+     * @param target The symbol id of a nonterminal
+     * @return The merged rule for that nonterminal, or null if there isn't one
+     */
+    public LangRule getRule(int target) {
+        return target < rules.size() ? rules.get(target) : null;
+    }
+    public SymbolTable getSymbols() {
+        return symbols;
     }
     @Override
     public String toString(){
         StringBuilder sb = new StringBuilder();
-        rules.values().forEach(rule -> {
+        getRules().forEach(rule -> {
             sb.append(rule.toString());
             sb.append("\n");
         });
@@ -0,0 +1,128 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser.forest;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * A node of a {@link ParseForest}. Symbol nodes are labelled with the symbol
+ * id of a rule or token, and intermediate nodes, which stand for a prefix of
+ * one of a rule's alternatives, with the parser's slot at the end of the
+ * prefix. Token nodes, and empty nodes labelled {@link ParseForest#EMPTY},
+ * have no derivations
+ * @author Louis Capitanchik
+ */
+public final class ForestNode {
+    
+    /**
+     * The number of derivations a node can have before they are indexed in
+     * a hash set; an ambiguous grammar can give a node a derivation for
+     * every index it covers, but most nodes have only one
+     */
+    private static final int INDEX_AT = 8;
+    
+    public final int label;
+    public final boolean intermediate;
+    /**
+     * The index of the first token covered by this node, and the index after
+     * the last
+     */
+    public final int start, end;
+    private final ArrayList<PackedNode> packed;
+    private HashSet<PackedNode> index;
+    
+    ForestNode(int label, boolean intermediate, int start, int end) {
+        this.label = label;
+        this.intermediate = intermediate;
+        this.start = start;
+        this.end = end;
+        packed = new ArrayList<>(1);
+    }
+    
+    /**
+     * Add a derivation to this node, unless it has already been added
+     * @param slot The parser's slot at the end of the derivation
+     * @param pivot The index at which the last part of the derivation starts
+     * @param left The node for everything before the pivot, or null
+     * @param right The node for everything after the pivot
+     * @return Whether the derivation was new
+     */
+    public boolean addPacked(int slot, int pivot, ForestNode left, ForestNode right) {
+        PackedNode p = new PackedNode(slot, pivot, left, right);
+        if(index != null) {
+            if(!index.add(p)) {
+                return false;
+            }
+        } else if(packed.contains(p)) {
+            return false;
+        } else if(packed.size() + 1 >= INDEX_AT) {
+            index = new HashSet<>(packed);
+            index.add(p);
+        }
+        packed.add(p);
+        return true;
+    }
+    
+    /**
+     * @return The number of different derivations found for this node
+     */
+    public int derivations() {
+        return packed.size();
+    }
+    
+    /**
+     * @param n The index of a derivation, in the order they were found
+     * @return The derivation
+     */
+    public PackedNode derivation(int n) {
+        return packed.get(n);
+    }
+    
+    /**
+     * @return Whether more than one derivation of this node was found
+     */
+    public boolean isAmbiguous() {
+        return packed.size() > 1;
+    }
+    
+    /**
+     * @return Whether this node is a token or empty node, rather than the
+     * match of a rule
+     */
+    public boolean isLeaf() {
+        return packed.isEmpty();
+    }
+    
+    @Override
+    public String toString() {
+        return (intermediate ? "slot " : "") + label + " [" + start + ", " + end + ")";
+    }
+}
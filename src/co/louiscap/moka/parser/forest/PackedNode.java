@@ -0,0 +1,71 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser.forest;
+
+/**
+ * One derivation of a {@link ForestNode}: the slot it reaches, the index at
+ * which its last part starts, and the nodes either side of that index. The
+ * left node is null when the last part is the whole derivation
+ * @author Louis Capitanchik
+ */
+public final class PackedNode {
+    
+    public final int slot, pivot;
+    public final ForestNode left, right;
+    
+    PackedNode(int slot, int pivot, ForestNode left, ForestNode right) {
+        this.slot = slot;
+        this.pivot = pivot;
+        this.left = left;
+        this.right = right;
+    }
+    
+    /**
+     * Derivations of the same node are the same if they reach the same slot
+     * from the same nodes; forest nodes are unique, so they are compared by
+     * identity, and the pivot follows from them
+     */
+    @Override
+    public int hashCode() {
+        int hash = slot;
+        hash = 31 * hash + System.identityHashCode(left);
+        hash = 31 * hash + System.identityHashCode(right);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if(!(obj instanceof PackedNode)) {
+            return false;
+        }
+        PackedNode other = (PackedNode) obj;
+        return slot == other.slot && left == other.left && right == other.right;
+    }
+}
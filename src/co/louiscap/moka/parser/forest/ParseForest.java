@@ -0,0 +1,298 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser.forest;
+
+import co.louiscap.moka.lexer.Token;
+import co.louiscap.moka.translator.tree.TreeNode;
+import co.louiscap.moka.utils.data.Location;
+import co.louiscap.moka.utils.data.SymbolTable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * A binarised shared packed parse forest (SPPF): every parse of one input,
+ * with each (symbol, start, end) match stored exactly once however many
+ * parses share it. Where a match can be made in more than one way the node
+ * keeps a {@link PackedNode} for each, rather than a copy of the tree above
+ * it, so an ambiguous input with exponentially many parse trees still takes
+ * at most a cubic number of nodes and derivations.
+ * <br><br>
+ * Every rule match is split into a chain of intermediate nodes, one for each
+ * symbol of the alternative, so that no derivation has more than two
+ * children. {@link ParseForest#toTree(Disambiguator)} flattens the chains
+ * away again when it takes one tree out of the forest, visiting only the
+ * derivations that it picks.
+ * <br><br>
+ * Forests are filled in by the parser, and not safe for concurrent
+ * modification.
+ * @author Louis Capitanchik
+ */
+public final class ParseForest {
+    
+    /**
+     * The label of nodes that match nothing
+     */
+    public static final int EMPTY = -1;
+    
+    private final SymbolTable symbols;
+    private final int[] input;
+    private final IntFunction<Token> tokens;
+    /**
+     * The symbol and intermediate nodes ending at each index, by label and
+     * start
+     */
+    private final HashMap<Long, ForestNode>[] nodes;
+    private final ForestNode[] terminals;
+    private final ForestNode[] empties;
+    private int size;
+    private ForestNode root;
+    
+    /**
+     * @param symbols The table that the grammar was interned in
+     * @param input The symbol id of each token's type, in the same table
+     * @param tokens Looks up the token at an index of the input
+     */
+    public ParseForest(SymbolTable symbols, int[] input, IntFunction<Token> tokens) {
+        this.symbols = symbols;
+        this.input = input;
+        this.tokens = tokens;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        HashMap<Long, ForestNode>[] table = new HashMap[input.length + 1];
+        nodes = table;
+        terminals = new ForestNode[input.length];
+        empties = new ForestNode[input.length + 1];
+        size = 0;
+    }
+    
+    /**
+     * Find or create the symbol or intermediate node with the given label
+     * and span
+     * @param label A symbol id, or a slot for an intermediate node
+     * @param intermediate Whether the node is an intermediate node
+     * @param start The index of the first token covered by the node
+     * @param end The index after the last token covered by the node
+     * @return The only node with the given label and span
+     */
+    public ForestNode node(int label, boolean intermediate, int start, int end) {
+        HashMap<Long, ForestNode> ending = nodes[end];
+        if(ending == null) {
+            ending = new HashMap<>();
+            nodes[end] = ending;
+        }
+        long key = key(label, intermediate, start);
+        ForestNode y = ending.get(key);
+        if(y == null) {
+            y = new ForestNode(label, intermediate, start, end);
+            ending.put(key, y);
+            size += 1;
+        }
+        return y;
+    }
+    
+    /**
+     * @return The symbol or intermediate node with the given label and span,
+     * or null if there isn't one
+     */
+    public ForestNode find(int label, boolean intermediate, int start, int end) {
+        HashMap<Long, ForestNode> ending = nodes[end];
+        return ending == null ? null : ending.get(key(label, intermediate, start));
+    }
+    
+    private static long key(int label, boolean intermediate, int start) {
+        return ((long) label << 33) | (intermediate ? 1L << 32 : 0) | start;
+    }
+    
+    /**
+     * @param i An index of the input
+     * @return The node for the token at the index
+     */
+    public ForestNode terminal(int i) {
+        if(terminals[i] == null) {
+            terminals[i] = new ForestNode(input[i], false, i, i + 1);
+        }
+        return terminals[i];
+    }
+    
+    /**
+     * @param i An index of the input, or the index after it
+     * @return The node for an empty match at the index
+     */
+    public ForestNode empty(int i) {
+        if(empties[i] == null) {
+            empties[i] = new ForestNode(EMPTY, false, i, i);
+        }
+        return empties[i];
+    }
+    
+    /**
+     * @return The node for the whole input, or null if it hasn't been set
+     */
+    public ForestNode getRoot() {
+        return root;
+    }
+    
+    public void setRoot(ForestNode root) {
+        this.root = root;
+    }
+    
+    /**
+     * @return The number of symbol and intermediate nodes in the forest,
+     * including any that aren't part of a parse of the whole input
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * @return Whether any node below the root has more than one derivation;
+     * that is, whether there is more than one parse tree
+     */
+    public boolean isAmbiguous() {
+        HashSet<ForestNode> seen = new HashSet<>();
+        ArrayDeque<ForestNode> pending = new ArrayDeque<>();
+        pending.push(root);
+        seen.add(root);
+        while(!pending.isEmpty()) {
+            ForestNode node = pending.pop();
+            if(node.isAmbiguous()) {
+                return true;
+            }
+            for(int d = 0; d < node.derivations(); d += 1) {
+                PackedNode p = node.derivation(d);
+                for(ForestNode child : new ForestNode[]{p.left, p.right}) {
+                    if(child != null && seen.add(child)) {
+                        pending.push(child);
+                    }
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @return The tree made of the first derivation found for every node
+     * @see ParseForest#toTree(Disambiguator)
+     */
+    public TreeNode toTree() {
+        return toTree(Disambiguator.FIRST);
+    }
+    
+    /**
+     * Pick one tree out of the forest, starting at the root and asking the
+     * disambiguator to choose between the derivations of each ambiguous node
+     * as it is reached. Nodes that aren't part of the chosen tree are never
+     * visited.
+     * <br><br>
+     * A node is always created after the nodes that its first derivation is
+     * made of, so first derivations can never lead around a cycle. If any
+     * other choice would lead back to a node that is already being built,
+     * as can happen when a rule can derive itself, the first derivation is
+     * used instead
+     * @param disambiguator Chooses between the derivations of ambiguous nodes
+     * @return The root of the tree
+     */
+    public TreeNode toTree(Disambiguator disambiguator) {
+        TreeNode result = treeNode(root);
+        HashSet<ForestNode> building = new HashSet<>();
+        ArrayDeque<ForestNode> nodes = new ArrayDeque<>();
+        ArrayDeque<TreeNode> parents = new ArrayDeque<>();
+        ArrayDeque<Iterator<ForestNode>> children = new ArrayDeque<>();
+        building.add(root);
+        nodes.push(root);
+        parents.push(result);
+        children.push(children(root, disambiguator, building).iterator());
+        while(!parents.isEmpty()) {
+            Iterator<ForestNode> it = children.peek();
+            if(!it.hasNext()) {
+                building.remove(nodes.pop());
+                parents.pop();
+                children.pop();
+                continue;
+            }
+            ForestNode child = it.next();
+            TreeNode leaf = treeNode(child);
+            parents.peek().addChild(leaf);
+            if(!child.isLeaf()) {
+                building.add(child);
+                nodes.push(child);
+                parents.push(leaf);
+                children.push(children(child, disambiguator, building).iterator());
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * @return The symbol and token nodes that make up the chosen derivation
+     * of a node, with intermediate and empty nodes flattened away
+     */
+    private static List<ForestNode> children(ForestNode node, Disambiguator disambiguator,
+            HashSet<ForestNode> building) {
+        ArrayList<ForestNode> result = new ArrayList<>();
+        collect(node, disambiguator, result);
+        for(ForestNode child : result) {
+            if(building.contains(child)) {
+                result.clear();
+                collect(node, Disambiguator.FIRST, result);
+                break;
+            }
+        }
+        return result;
+    }
+    
+    private static void collect(ForestNode node, Disambiguator disambiguator, List<ForestNode> into) {
+        PackedNode chosen = node.derivation(node.isAmbiguous() ? disambiguator.choose(node) : 0);
+        for(ForestNode child : new ForestNode[]{chosen.left, chosen.right}) {
+            if(child == null || child.label == EMPTY) {
+                continue;
+            }
+            if(child.intermediate) {
+                collect(child, disambiguator, into);
+            } else {
+                into.add(child);
+            }
+        }
+    }
+    
+    private TreeNode treeNode(ForestNode node) {
+        String id = symbols.nameOf(node.label);
+        if(node.isLeaf()) {
+            Token t = tokens.apply(node.start);
+            return new TreeNode(id, node.label, t.content, t.loc, node.start, node.end);
+        }
+        Location loc = node.start < input.length ? tokens.apply(node.start).loc : null;
+        return new TreeNode(id, node.label, null, loc, node.start, node.end);
+    }
+}
@@ -0,0 +1,274 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser.graph;
+
+import java.util.Arrays;
+
+/**
+ * An immutable directed graph over dense integer node ids, with a separate
+ * set of edges for each of the {@link GraphRelations}. Edges are stored in
+ * compressed sparse row form: for each relation, the edges leaving node
+ * <code>n</code> occupy the index range 
+ * <code>[first(r, n), end(r, n))</code> of a single flat array, sorted by
+ * target. Walking a node's edges is therefore a loop over an array index, and
+ * testing for an edge is a binary search, neither of which allocates.
+ * <br><br>
+ * Each edge also carries an int label, whose meaning is up to whoever built
+ * the graph.
+ * <pre>
+ * for(int e = graph.first(THEN, node); e &lt; graph.end(THEN, node); e += 1) {
+ *     visit(graph.target(THEN, e), graph.label(THEN, e));
+ * }
+ * </pre>
+ * @author Louis Capitanchik
+ */
+public final class GrammarGraph {
+    
+    private final int size;
+    private final int[][] offsets;
+    private final int[][] targets;
+    private final int[][] labels;
+    
+    private GrammarGraph(int size, int[][] offsets, int[][] targets, int[][] labels) {
+        this.size = size;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.labels = labels;
+    }
+    
+    /**
+     * @return The number of nodes in the graph; one greater than the largest
+     * node id
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * @param relation The type of edge
+     * @param node A node id
+     * @return The index of the first edge of the given type leaving the node
+     */
+    public int first(GraphRelations relation, int node) {
+        return offsets[relation.ordinal()][node];
+    }
+    
+    /**
+     * @param relation The type of edge
+     * @param node A node id
+     * @return One greater than the index of the last edge of the given type
+     * leaving the node
+     */
+    public int end(GraphRelations relation, int node) {
+        return offsets[relation.ordinal()][node + 1];
+    }
+    
+    /**
+     * @param relation The type of edge
+     * @param node A node id
+     * @return The number of edges of the given type leaving the node
+     */
+    public int degree(GraphRelations relation, int node) {
+        return end(relation, node) - first(relation, node);
+    }
+    
+    /**
+     * @param relation The type of edge
+     * @param edge The index of an edge, between {@link GrammarGraph#first} and
+     * {@link GrammarGraph#end} for some node
+     * @return The node that the edge leads to
+     */
+    public int target(GraphRelations relation, int edge) {
+        return targets[relation.ordinal()][edge];
+    }
+    
+    /**
+     * @param relation The type of edge
+     * @param edge The index of an edge
+     * @return The label given to the edge when it was added
+     */
+    public int label(GraphRelations relation, int edge) {
+        return labels[relation.ordinal()][edge];
+    }
+    
+    /**
+     * @param relation The type of edge
+     * @param from A node id
+     * @param to A node id
+     * @return The index of an edge of the given type between the two nodes,
+     * or a negative number if there is no such edge
+     */
+    public int find(GraphRelations relation, int from, int to) {
+        int r = relation.ordinal();
+        int found = Arrays.binarySearch(targets[r], offsets[r][from], offsets[r][from + 1], to);
+        return found >= 0 ? found : -1;
+    }
+    
+    /**
+     * @param relation The type of edge
+     * @param from A node id
+     * @param to A node id
+     * @return Whether there is an edge of the given type between the nodes
+     */
+    public boolean hasEdge(GraphRelations relation, int from, int to) {
+        return find(relation, from, to) >= 0;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for(GraphRelations relation : GraphRelations.values()) {
+            for(int n = 0; n < size; n += 1) {
+                for(int e = first(relation, n); e < end(relation, n); e += 1) {
+                    sb.append(n).append(' ').append(relation).append(' ').append(target(relation, e))
+                            .append(" [").append(label(relation, e)).append("]\n");
+                }
+            }
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Collects edges in any order and packs them into a GrammarGraph. Adding
+     * the same edge more than once keeps the first label it was added with
+     */
+    public static final class Builder {
+        private final int size;
+        private final int[][] from, to, label;
+        private final int[] counts;
+        
+        /**
+         * @param size The number of nodes that the graph will have
+         */
+        public Builder(int size) {
+            this.size = size;
+            int relations = GraphRelations.values().length;
+            from = new int[relations][16];
+            to = new int[relations][16];
+            label = new int[relations][16];
+            counts = new int[relations];
+        }
+        
+        /**
+         * @param from The node id that the edge leaves
+         * @param relation The type of edge
+         * @param to The node id that the edge leads to
+         * @param label A value to store with the edge
+         * @return This builder
+         * @throws IndexOutOfBoundsException Thrown if either node id is
+         * outside the graph
+         */
+        public Builder addEdge(int from, GraphRelations relation, int to, int label) {
+            if(from < 0 || from >= size || to < 0 || to >= size) {
+                throw new IndexOutOfBoundsException("Edge " + from + " -> " + to
+                        + " is outside a graph of " + size + " nodes");
+            }
+            int r = relation.ordinal();
+            if(counts[r] == this.from[r].length) {
+                int capacity = counts[r] * 2;
+                this.from[r] = Arrays.copyOf(this.from[r], capacity);
+                this.to[r] = Arrays.copyOf(this.to[r], capacity);
+                this.label[r] = Arrays.copyOf(this.label[r], capacity);
+            }
+            this.from[r][counts[r]] = from;
+            this.to[r][counts[r]] = to;
+            this.label[r][counts[r]] = label;
+            counts[r] += 1;
+            return this;
+        }
+        
+        /**
+         * @return A graph containing every edge added so far
+         */
+        public GrammarGraph build() {
+            int relations = counts.length;
+            int[][] offsets = new int[relations][];
+            int[][] targets = new int[relations][];
+            int[][] labels = new int[relations][];
+            for(int r = 0; r < relations; r += 1) {
+                // Bucket the edges by source node, keeping the order they
+                // were added in
+                int[] offset = new int[size + 1];
+                for(int e = 0; e < counts[r]; e += 1) {
+                    offset[from[r][e] + 1] += 1;
+                }
+                for(int n = 0; n < size; n += 1) {
+                    offset[n + 1] += offset[n];
+                }
+                int[] fill = Arrays.copyOf(offset, size);
+                int[] target = new int[counts[r]];
+                int[] lbl = new int[counts[r]];
+                for(int e = 0; e < counts[r]; e += 1) {
+                    int slot = fill[from[r][e]]++;
+                    target[slot] = to[r][e];
+                    lbl[slot] = label[r][e];
+                }
+                // Sort each row by target, then drop repeated edges
+                int[] packed = new int[size + 1];
+                int out = 0;
+                for(int n = 0; n < size; n += 1) {
+                    packed[n] = out;
+                    sortRow(target, lbl, offset[n], offset[n + 1]);
+                    for(int e = offset[n]; e < offset[n + 1]; e += 1) {
+                        if(e > offset[n] && target[e] == target[e - 1]) {
+                            continue;
+                        }
+                        target[out] = target[e];
+                        lbl[out] = lbl[e];
+                        out += 1;
+                    }
+                }
+                packed[size] = out;
+                offsets[r] = packed;
+                targets[r] = Arrays.copyOf(target, out);
+                labels[r] = Arrays.copyOf(lbl, out);
+            }
+            return new GrammarGraph(size, offsets, targets, labels);
+        }
+        
+        /**
+         * A stable insertion sort; rows are short, and stability keeps the
+         * first label of a repeated edge
+         */
+        private static void sortRow(int[] target, int[] lbl, int from, int to) {
+            for(int i = from + 1; i < to; i += 1) {
+                int t = target[i], l = lbl[i];
+                int j = i - 1;
+                while(j >= from && target[j] > t) {
+                    target[j + 1] = target[j];
+                    lbl[j + 1] = lbl[j];
+                    j -= 1;
+                }
+                target[j + 1] = t;
+                lbl[j + 1] = l;
+            }
+        }
+    }
+}
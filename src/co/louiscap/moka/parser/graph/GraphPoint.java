@@ -29,6 +29,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 package co.louiscap.moka.parser.graph;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -82,8 +83,29 @@ public class GraphPoint {
         return this.getConnection(gp.id);
     }
     
+    /**
+     * Marks this graph point as one that can end the rule with the given ID
+     * @param terminalID The ID of a rule that this point terminates
+     */
     public void addTerminal(String terminalID) {
-        
+        this.terminals.add(terminalID);
+    }
+    
+    /**
+     * @param terminalID The ID of a rule
+     * @return Whether {@link GraphPoint#addTerminal(String)} has been called
+     * with the given ID
+     */
+    public boolean terminates(String terminalID) {
+        return this.terminals.contains(terminalID);
+    }
+    
+    /**
+     * @return A read only view of the IDs of the rules that this point
+     * terminates
+     */
+    public Set<String> getTerminals() {
+        return Collections.unmodifiableSet(terminals);
     }
     
     @Override
@@ -29,26 +29,167 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 package co.louiscap.moka.translator;
 
+import co.louiscap.moka.exceptions.InvalidFormatException;
 import co.louiscap.moka.utils.io.ModuleFile;
 import java.util.LinkedList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
- * A file that holds all of the lexical rules for its given lexical scope
+ * A file that holds the {@link Translation} handlers of a module. Each
+ * handler is a decorator line followed by a function, whose body is every
+ * indented or blank line after it:
+ * <pre>
+ * &#64;Pattern("S_VAR_DEC T_EOL")
+ * def S_STATEMENT_VAR_DEC(var, eol):
+ *     """Evaluates an S_STATEMENT node"""
+ *     return var + ";"
+ * </pre>
+ * Unindented lines starting with <code>#</code> are comments
  * @author Louis Capitanchik
  */
 public class InterpFile implements ModuleFile {
 
+    private static final Pattern DECORATOR = Pattern.compile("@(Pattern|Token)\\(\\s*\"([^\"]*)\"\\s*\\)\\s*");
+    private static final Pattern FUNCTION = Pattern.compile("def\\s+(\\w+)\\s*\\(([^)]*)\\)\\s*:\\s*");
+    private static final String DOC_QUOTE = "\"\"\"";
+    
     private final String source, moduleID;
     
     protected final LinkedList<Translation> rules;
     
-    public InterpFile (String moduleID, String source) {
+    /**
+     * @param moduleID The module the file belongs to
+     * @param source The handlers of the file
+     * @throws InvalidFormatException Thrown if any handler is malformed. The
+     * first malformed handler is reported, with the rest attached as
+     * suppressed exceptions
+     */
+    public InterpFile (String moduleID, String source) throws InvalidFormatException {
         this.moduleID = moduleID;
         this.source = source;
+        this.rules = new LinkedList<>();
+        
+        LinkedList<InvalidFormatException> errors = new LinkedList<>();
+        String[] lines = source.split("\\r\\n|\\n|\\r", -1);
+        int i = 0;
+        while(i < lines.length) {
+            String line = lines[i];
+            if(line.trim().isEmpty() || line.startsWith("#")) {
+                i += 1;
+                continue;
+            }
+            int end = blockEnd(lines, i + 1);
+            try {
+                rules.add(parseHandler(lines, i, end));
+            } catch (InvalidFormatException ex) {
+                errors.add(ex);
+            }
+            i = end;
+        }
+        if(!errors.isEmpty()) {
+            InvalidFormatException first = errors.removeFirst();
+            errors.forEach(first::addSuppressed);
+            throw first;
+        }
+    }
+    
+    /**
+     * @return The index of the first line at or after the given one that
+     * starts a new handler, or the number of lines if none does
+     */
+    private static int blockEnd(String[] lines, int from) {
+        int i = from;
+        // The function line belongs to the decorator before it
+        if(i < lines.length && FUNCTION.matcher(lines[i]).matches()) {
+            i += 1;
+        }
+        while(i < lines.length && (lines[i].trim().isEmpty() || Character.isWhitespace(lines[i].charAt(0)))) {
+            i += 1;
+        }
+        return i;
+    }
+    
+    private Translation parseHandler(String[] lines, int from, int to) throws InvalidFormatException {
+        Matcher decorator = DECORATOR.matcher(lines[from]);
+        if(!decorator.matches()) {
+            throw error(from, "Expected @Pattern or @Token, found " + lines[from].trim());
+        }
+        Translation.Kind kind = decorator.group(1).equals("Pattern") ? Translation.Kind.PATTERN
+                : Translation.Kind.TOKEN;
+        String[] pattern = words(decorator.group(2), "\\s+");
+        if(pattern.length == 0) {
+            throw error(from, "Empty " + decorator.group(1) + " decorator");
+        }
+        if(kind == Translation.Kind.TOKEN && pattern.length != 1) {
+            throw error(from, "A @Token decorator matches exactly one token type");
+        }
         
-        // TODO : Process the source into rules
+        if(from + 1 >= to) {
+            throw error(from, "Expected a function after " + lines[from].trim());
+        }
+        Matcher function = FUNCTION.matcher(lines[from + 1]);
+        if(!function.matches()) {
+            throw error(from + 1, "Expected a function declaration, found " + lines[from + 1].trim());
+        }
+        String name = function.group(1);
+        String[] parameters = words(function.group(2), "\\s*,\\s*");
+        if(parameters.length != pattern.length) {
+            throw error(from + 1, name + " takes " + parameters.length + " parameters but its decorator matches "
+                    + pattern.length + " symbols");
+        }
         
-        this.rules = new LinkedList<>();
+        int first = from + 2;
+        while(first < to && lines[first].trim().isEmpty()) {
+            first += 1;
+        }
+        if(first == to) {
+            throw error(from + 1, name + " has no body");
+        }
+        String indent = lines[first].substring(0, lines[first].indexOf(lines[first].trim()));
+        
+        String doc = null;
+        String head = lines[first].trim();
+        if(head.startsWith(DOC_QUOTE)) {
+            StringBuilder docText = new StringBuilder();
+            String rest = head.substring(DOC_QUOTE.length());
+            int close = rest.indexOf(DOC_QUOTE);
+            while(close < 0) {
+                docText.append(rest).append('\n');
+                first += 1;
+                if(first == to) {
+                    throw error(from + 1, "Unterminated docstring in " + name);
+                }
+                rest = lines[first].trim();
+                close = rest.indexOf(DOC_QUOTE);
+            }
+            docText.append(rest, 0, close);
+            doc = docText.toString().trim();
+            first += 1;
+        }
+        
+        StringBuilder body = new StringBuilder();
+        for(int i = first; i < to; i += 1) {
+            String line = lines[i];
+            if(line.trim().isEmpty()) {
+                body.append('\n');
+                continue;
+            }
+            if(!line.startsWith(indent)) {
+                throw error(i, "Inconsistent indentation in " + name);
+            }
+            body.append(line.substring(indent.length())).append('\n');
+        }
+        return new Translation(kind, pattern, name, parameters, doc, body.toString().trim(), from + 2);
+    }
+    
+    private static String[] words(String src, String separator) {
+        String trimmed = src.trim();
+        return trimmed.isEmpty() ? new String[0] : trimmed.split(separator);
+    }
+    
+    private InvalidFormatException error(int line, String reason) {
+        return new InvalidFormatException("Interp Parse " + moduleID, "Line " + (line + 1) + ": " + reason);
     }
     
     @Override
@@ -62,8 +203,7 @@ public class InterpFile implements ModuleFile {
     }
     
     public Translation[] getTranslations() {
-        
-        return null;
+        return rules.stream().toArray(Translation[]::new);
     }
     
 }
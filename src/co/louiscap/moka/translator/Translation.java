@@ -29,10 +29,64 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 package co.louiscap.moka.translator;
 
+import java.util.Arrays;
+
 /**
- *
+ * A single handler of an interpreter file, which turns one kind of tree node
+ * into output. Handlers are written as a decorated python style function;
+ * <code>@Pattern("S_VAR_DEC T_EOL")</code> matches a rule node whose children
+ * are exactly the given symbols, passing one parameter for each child, and
+ * <code>@Token("T_IDENT")</code> matches a token, passing its content.
+ * <br><br>
+ * A pattern handler applies to the nonterminal its function is named after,
+ * optionally followed by an underscore separated suffix to tell alternatives
+ * apart, so <code>S_STATEMENT_VAR_DEC</code> handles an
+ * <code>S_STATEMENT</code>; see {@link TranslationTable}
  * @author commander-lol
  */
 public class Translation {
     
+    public enum Kind {
+        PATTERN,
+        TOKEN
+    }
+    
+    public final Kind kind;
+    /**
+     * The symbols matched, one for each parameter
+     */
+    public final String[] pattern;
+    public final String name;
+    public final String[] parameters;
+    /**
+     * The docstring of the function, or null if it has none
+     */
+    public final String doc;
+    /**
+     * The source of the function body, without its indentation
+     */
+    public final String body;
+    /**
+     * The line of the interpreter file that the function is declared on,
+     * counting from 1
+     */
+    public final int line;
+
+    public Translation(Kind kind, String[] pattern, String name, String[] parameters, String doc, String body,
+            int line) {
+        this.kind = kind;
+        this.pattern = pattern;
+        this.name = name;
+        this.parameters = parameters;
+        this.doc = doc;
+        this.body = body;
+        this.line = line;
+    }
+
+    @Override
+    public String toString() {
+        return "@" + (kind == Kind.PATTERN ? "Pattern" : "Token") + Arrays.toString(pattern) + " " + name
+                + "(" + String.join(", ", parameters) + ")";
+    }
+    
 }
@@ -0,0 +1,176 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.translator;
+
+import co.louiscap.moka.translator.tree.HashConsTable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers what handlers returned for the subtrees a {@link Translator} has
+ * already translated, so that repeated subtrees are only translated once.
+ * Results are kept for the most recently used (handler, subtree shape)
+ * pairs, up to a fixed number; shapes are numbered by a
+ * {@link HashConsTable}, so subtrees share a result only if they are
+ * identical. Handlers can't keep any state of their own, so every handler
+ * gives the same result for the same subtree, and can be memoised.
+ * <br><br>
+ * The shapes stay numbered from one translation to the next, so a cache can
+ * be shared by the translations of many sources. At most
+ * {@link #SHAPES_PER_RESULT} shapes are numbered for each result that the
+ * cache can hold; once there are that many, the whole cache is emptied
+ * before the next shape is numbered, even part way through a translation,
+ * so its memory is bounded by its capacity however large the input is. A
+ * node whose children were numbered before the cache was last emptied isn't
+ * numbered itself, and its handler is run without the cache.
+ * <br><br>
+ * A TranslationCache is not safe for concurrent use
+ * @author Louis Capitanchik
+ */
+public class TranslationCache {
+    
+    public static final int SHAPES_PER_RESULT = 16;
+    
+    /**
+     * Returned by {@link #lookup(int, int)} for a result that isn't cached
+     */
+    static final Object MISSING = new Object();
+    private static final Object NONE = new Object();
+    
+    public final int capacity;
+    private final HashConsTable shapes;
+    private final LinkedHashMap<Long, Object> results;
+    /**
+     * The number of times the cache has been emptied, which tells shapes
+     * numbered before it was last emptied from those numbered since
+     */
+    private int generation;
+    private long hits, misses;
+    
+    /**
+     * @param capacity The most handler results to keep
+     * @throws IllegalArgumentException Thrown if the capacity isn't positive
+     */
+    public TranslationCache(int capacity) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("Invalid cache capacity " + capacity);
+        }
+        this.capacity = capacity;
+        this.shapes = new HashConsTable();
+        this.results = new LinkedHashMap<Long, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Object> eldest) {
+                return size() > TranslationCache.this.capacity;
+            }
+        };
+    }
+    
+    /**
+     * Called before each shape is numbered, to make room for it
+     */
+    void reserve() {
+        if(shapes.size() >= (long)capacity * SHAPES_PER_RESULT) {
+            clear();
+        }
+    }
+    
+    /**
+     * @return The number of times the cache has been emptied; shapes
+     * numbered in an earlier generation are no longer valid
+     */
+    int generation() {
+        return generation;
+    }
+    
+    HashConsTable shapes() {
+        return shapes;
+    }
+    
+    /**
+     * @param handler The index of a handler in its translator's table
+     * @param shape The shape of the subtree the handler was run on
+     * @return What the handler returned, or {@link #MISSING}
+     */
+    Object lookup(int handler, int shape) {
+        Object result = results.get(key(handler, shape));
+        if(result == null) {
+            misses += 1;
+            return MISSING;
+        }
+        hits += 1;
+        return result == NONE ? null : result;
+    }
+    
+    void store(int handler, int shape, Object result) {
+        results.put(key(handler, shape), result == null ? NONE : result);
+    }
+    
+    private static long key(int handler, int shape) {
+        return ((long)handler << 32) | (shape & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Forget every result and shape; the hit and miss counts are kept
+     */
+    public void clear() {
+        results.clear();
+        shapes.clear();
+        generation += 1;
+    }
+    
+    /**
+     * @return The number of handler results currently kept
+     */
+    public int size() {
+        return results.size();
+    }
+    
+    /**
+     * @return The number of times a handler didn't need to be run because
+     * its result was cached
+     */
+    public long getHits() {
+        return hits;
+    }
+    
+    /**
+     * @return The number of times a handler had to be run
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public String toString() {
+        return "TranslationCache{" + "size=" + size() + "/" + capacity + ", hits=" + hits + ", misses=" + misses
+                + '}';
+    }
+    
+}
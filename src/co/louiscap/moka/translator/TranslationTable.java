@@ -0,0 +1,318 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.translator;
+
+import co.louiscap.moka.translator.tree.TreeNode;
+import co.louiscap.moka.utils.data.SymbolTable;
+import co.louiscap.moka.utils.io.Logging;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the {@link Translation} that handles a tree node without searching
+ * through the handlers. Token handlers are kept in an array indexed by symbol
+ * id, and pattern handlers in a trie over symbol ids; the first edge from the
+ * root is the nonterminal that the handler applies to, and each edge after it
+ * is the next child in the pattern. Looking up a rule node therefore costs
+ * one step per child, however many handlers the module has. The edges are
+ * kept in an open addressed table of primitive keys, and nodes are looked up
+ * by the symbol ids that the parser gave them, so a lookup allocates nothing
+ * and never hashes a symbol's name.
+ * <br><br>
+ * A pattern handler applies to the longest underscore separated prefix of
+ * its name that is a nonterminal of the grammar, so both
+ * <code>S_STATEMENT</code> and <code>S_STATEMENT_VAR_DEC</code> handle
+ * <code>S_STATEMENT</code> nodes. If no prefix is a nonterminal, the handler
+ * matches its pattern under any nonterminal, and is only used when no
+ * handler for the node's own nonterminal matches. When two handlers match
+ * the same thing, the first one given wins.
+ * <br><br>
+ * A TranslationTable is immutable, and may be read from any number of
+ * threads.
+ * @author Louis Capitanchik
+ */
+public class TranslationTable {
+    
+    /**
+     * The first edge of a handler that matches under any nonterminal
+     */
+    private static final int ANY = -1;
+    private static final int ROOT = 0;
+    /**
+     * The key of an unused slot of the edge table; no edge has it, since
+     * states are never negative
+     */
+    private static final long NO_EDGE = -1L;
+    
+    private final SymbolTable symbols;
+    private final Translation[] translations;
+    private final int[] tokens;
+    /**
+     * The edges of the trie, by (state, symbol) key, and the state each one
+     * leads to. The length of the keys is a power of two, at least twice the
+     * number of edges, and unused slots hold {@link #NO_EDGE}
+     */
+    private final long[] edgeKeys;
+    private final int[] edgeTargets;
+    /**
+     * The index of the handler accepted at each state of the trie, or -1
+     */
+    private final int[] accepts;
+    
+    /**
+     * While the table is being built, the edges of the trie and the handler
+     * accepted at each state
+     */
+    private HashMap<Long, Integer> building;
+    private ArrayList<Integer> accepting;
+    
+    /**
+     * @param translations The handlers to look up, in order of priority
+     * @param symbols The table that the grammar was interned in. Handlers
+     * that use a symbol not in it can never match, and are left out
+     */
+    public TranslationTable(Translation[] translations, SymbolTable symbols) {
+        this.symbols = symbols;
+        this.translations = translations.clone();
+        this.tokens = new int[symbols.size()];
+        this.building = new HashMap<>();
+        this.accepting = new ArrayList<>();
+        Arrays.fill(tokens, -1);
+        accepting.add(-1);
+        
+        for(int h = 0; h < translations.length; h += 1) {
+            Translation t = translations[h];
+            int[] ids = new int[t.pattern.length];
+            boolean valid = true;
+            for(int i = 0; i < ids.length && valid; i += 1) {
+                ids[i] = symbols.idOf(t.pattern[i]);
+                if(ids[i] < 0) {
+                    Logging.LOGGER.println("Translation " + t.name + " can never match; no symbol "
+                            + t.pattern[i], "debug");
+                    valid = false;
+                }
+            }
+            if(!valid) {
+                continue;
+            }
+            if(t.kind == Translation.Kind.TOKEN) {
+                addToken(h, ids[0]);
+            } else {
+                addPattern(h, ids);
+            }
+        }
+        
+        int capacity = Integer.highestOneBit(Math.max(building.size(), 1)) * 4;
+        edgeKeys = new long[capacity];
+        edgeTargets = new int[capacity];
+        Arrays.fill(edgeKeys, NO_EDGE);
+        for(Map.Entry<Long, Integer> edge : building.entrySet()) {
+            int i = slot(edge.getKey(), capacity - 1);
+            while(edgeKeys[i] != NO_EDGE) {
+                i = (i + 1) & (capacity - 1);
+            }
+            edgeKeys[i] = edge.getKey();
+            edgeTargets[i] = edge.getValue();
+        }
+        accepts = accepting.stream().mapToInt(Integer::intValue).toArray();
+        building = null;
+        accepting = null;
+    }
+    
+    private void addToken(int handler, int symbol) {
+        if(tokens[symbol] >= 0) {
+            shadowed(handler, tokens[symbol]);
+        } else {
+            tokens[symbol] = handler;
+        }
+    }
+    
+    private void addPattern(int handler, int[] ids) {
+        int state = addEdge(ROOT, target(translations[handler].name));
+        for(int id : ids) {
+            state = addEdge(state, id);
+        }
+        if(accepting.get(state) >= 0) {
+            shadowed(handler, accepting.get(state));
+        } else {
+            accepting.set(state, handler);
+        }
+    }
+    
+    private void shadowed(int handler, int by) {
+        Logging.LOGGER.println("Translation " + translations[handler].name + " is shadowed by "
+                + translations[by].name, "debug");
+    }
+    
+    /**
+     * @return The id of the nonterminal that a handler with the given name
+     * applies to, or {@link #ANY}
+     */
+    private int target(String name) {
+        for(int end = name.length(); end > 0; end = name.lastIndexOf('_', end - 1)) {
+            int id = symbols.idOf(name.substring(0, end));
+            if(id >= 0 && symbols.isNonterminal(id)) {
+                return id;
+            }
+        }
+        return ANY;
+    }
+    
+    /**
+     * Follow the edge labelled with the given symbol out of a state while
+     * the table is being built, adding it if it doesn't exist
+     * @return The state the edge leads to
+     */
+    private int addEdge(int state, int symbol) {
+        long key = key(state, symbol);
+        Integer next = building.get(key);
+        if(next == null) {
+            next = accepting.size();
+            accepting.add(-1);
+            building.put(key, next);
+        }
+        return next;
+    }
+    
+    private static long key(int state, int symbol) {
+        return ((long)state << 32) | (symbol & 0xFFFFFFFFL);
+    }
+    
+    private static int slot(long key, int mask) {
+        return (int)((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+    
+    /**
+     * Follow the edge labelled with the given symbol out of a state
+     * @return The state the edge leads to, or -1 if there is no such edge
+     */
+    private int step(int state, int symbol) {
+        if(state < 0) {
+            return -1;
+        }
+        long key = key(state, symbol);
+        int mask = edgeKeys.length - 1;
+        for(int i = slot(key, mask); edgeKeys[i] != NO_EDGE; i = (i + 1) & mask) {
+            if(edgeKeys[i] == key) {
+                return edgeTargets[i];
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * @return The id of a node's symbol in this table, or -1 if it isn't in
+     * it. The id the parser gave the node is used if it names the same
+     * symbol here, which it always does when the tree was parsed with this
+     * table
+     */
+    private int symbolOf(TreeNode node) {
+        int symbol = node.symbol;
+        if(symbol >= 0 && symbol < symbols.size() && symbols.nameOf(symbol).equals(node.id)) {
+            return symbol;
+        }
+        return symbols.idOf(node.id);
+    }
+    
+    /**
+     * @param node A node of a parse tree
+     * @return The handler for the node, or null if there isn't one
+     */
+    public Translation lookup(TreeNode node) {
+        int handler = find(node);
+        return handler < 0 ? null : translations[handler];
+    }
+    
+    /**
+     * @param node A node of a parse tree
+     * @return The index of the node's handler in {@link #getTranslations()},
+     * or -1 if there isn't one
+     */
+    public int find(TreeNode node) {
+        int symbol = symbolOf(node);
+        if(symbol < 0) {
+            return -1;
+        }
+        if(!symbols.isNonterminal(symbol)) {
+            return findToken(symbol);
+        }
+        int found = match(step(ROOT, symbol), node.leaves);
+        return found >= 0 ? found : match(step(ROOT, ANY), node.leaves);
+    }
+    
+    private int match(int state, List<TreeNode> children) {
+        for(int i = 0; i < children.size() && state >= 0; i += 1) {
+            state = step(state, symbolOf(children.get(i)));
+        }
+        return state >= 0 ? accepts[state] : -1;
+    }
+    
+    /**
+     * @param symbol The id of a token type
+     * @return The index of the handler for tokens of the type, or -1 if there
+     * isn't one
+     */
+    public int findToken(int symbol) {
+        return symbol >= 0 && symbol < tokens.length ? tokens[symbol] : -1;
+    }
+    
+    /**
+     * @param symbol The id of a nonterminal
+     * @param children The symbol id of each child of the node, in order
+     * @return The index of the handler for the node, or -1 if there isn't one
+     */
+    public int find(int symbol, int[] children) {
+        int found = match(step(ROOT, symbol), children);
+        return found >= 0 ? found : match(step(ROOT, ANY), children);
+    }
+    
+    private int match(int state, int[] children) {
+        for(int i = 0; i < children.length && state >= 0; i += 1) {
+            state = step(state, children[i]);
+        }
+        return state >= 0 ? accepts[state] : -1;
+    }
+    
+    /**
+     * @return Every handler given to this table, including any that can
+     * never match, in order of priority
+     */
+    public Translation[] getTranslations() {
+        return translations.clone();
+    }
+    
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+    
+}
@@ -0,0 +1,221 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.translator;
+
+import co.louiscap.moka.exceptions.InvalidFormatException;
+import co.louiscap.moka.exceptions.TranslationException;
+import co.louiscap.moka.translator.runtime.Handler;
+import co.louiscap.moka.translator.tree.HashConsTable;
+import co.louiscap.moka.translator.tree.TreeNode;
+import co.louiscap.moka.translator.tree.TreeWalker;
+import co.louiscap.moka.utils.string.Rope;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Translates parse trees into output with the compiled handlers of a
+ * {@link TranslationTable}. Every handler is compiled once, when the
+ * translator is created, so a Translator should be kept and reused for as
+ * long as its module is; see {@link co.louiscap.moka.modules.Module#getTranslator()}
+ * <br><br>
+ * Each node is translated after its children, by a {@link TreeWalker} so
+ * that trees of any depth can be translated. A node with a handler is
+ * translated by calling the handler with the translation of each child, or
+ * for a token, with its content. A token without a handler translates to
+ * its content, and a rule node without a handler to the translations of its
+ * children, one after another.
+ * <br><br>
+ * Translations are joined as {@link Rope}s, so each fragment of the output
+ * is copied once, however deep in the tree it was made. The whole Rope is
+ * kept until the walk of the tree finishes; {@link #translate(TreeNode, Writer)}
+ * then writes it out fragment by fragment, without first copying it into a
+ * single String.
+ * <br><br>
+ * A Translator may be used from any number of threads, unless it has been
+ * given a {@link TranslationCache}, which then lets it translate repeated
+ * subtrees only once.
+ * @author Louis Capitanchik
+ */
+public class Translator {
+    
+    private final TranslationTable table;
+    /**
+     * The compiled form of each of the table's translations
+     */
+    private final Handler[] handlers;
+    private TranslationCache cache;
+    
+    /**
+     * @param table The translations to compile
+     * @throws InvalidFormatException Thrown if any of the translations fails
+     * to compile, since translating without it would quietly give the wrong
+     * output
+     */
+    public Translator(TranslationTable table) throws InvalidFormatException {
+        this.table = table;
+        Translation[] translations = table.getTranslations();
+        this.handlers = new Handler[translations.length];
+        for(int i = 0; i < translations.length; i += 1) {
+            handlers[i] = Handler.compile(translations[i]);
+        }
+    }
+    
+    /**
+     * @param root The root of a parse tree
+     * @return The translation of the tree
+     * @throws TranslationException Thrown if a handler fails on a node of the
+     * tree
+     */
+    public String translate(TreeNode root) throws TranslationException {
+        return Handler.text(walk(root)).toString();
+    }
+    
+    /**
+     * @param root The root of a parse tree
+     * @param out Where to write the translation of the tree
+     * @throws TranslationException Thrown if a handler fails on a node of the
+     * tree, in which case nothing has been written
+     * @throws IOException Thrown if the writer fails
+     */
+    public void translate(TreeNode root, Writer out) throws TranslationException, IOException {
+        Rope.write(Handler.text(walk(root)), out);
+    }
+    
+    /**
+     * @return The value that the root of the tree translates to
+     */
+    private Object walk(TreeNode root) throws TranslationException {
+        if(cache == null) {
+            return TreeWalker.walk(root, (node, children) -> evaluate(node, children.toArray(), -1));
+        }
+        HashConsTable shapes = cache.shapes();
+        return TreeWalker.walk(root, (TreeNode node, List<Shaped> children) -> {
+            cache.reserve();
+            int generation = cache.generation();
+            int[] ids = new int[children.size()];
+            Object[] values = new Object[ids.length];
+            // Children numbered before the cache was last emptied have lost
+            // their shapes, so the node can't be numbered either
+            boolean numbered = true;
+            for(int i = 0; i < ids.length; i += 1) {
+                Shaped child = children.get(i);
+                ids[i] = child.shape;
+                values[i] = child.value;
+                numbered &= child.shape >= 0 && child.generation == generation;
+            }
+            int shape = numbered ? shapes.intern(node, ids) : -1;
+            return new Shaped(shape, generation, evaluate(node, values, shape));
+        }).value;
+    }
+    
+    /**
+     * @param children The translation of each child of the node
+     * @param shape The number of the node's shape in the cache, or -1 if it
+     * isn't cached
+     * @return The translation of the node
+     */
+    private Object evaluate(TreeNode node, Object[] children, int shape) throws TranslationException {
+        int index = table.find(node);
+        Handler handler = index < 0 ? null : handlers[index];
+        Object[] args = node.content != null ? new Object[]{node.content} : children;
+        if(handler == null) {
+            if(node.content != null) {
+                return node.content;
+            }
+            CharSequence result = "";
+            try {
+                for(Object arg : args) {
+                    result = Rope.concat(result, Handler.text(arg));
+                }
+            } catch (IllegalArgumentException ex) {
+                throw new TranslationException("Translation failed on " + node.id + ": " + ex.getMessage(), node.loc, ex);
+            }
+            return result;
+        }
+        if(shape >= 0) {
+            Object cached = cache.lookup(index, shape);
+            if(cached != TranslationCache.MISSING) {
+                return cached;
+            }
+        }
+        Object result;
+        try {
+            result = handler.invoke(args);
+        } catch (IllegalArgumentException ex) {
+            throw new TranslationException("Translation " + handler.translation.name + " failed on " + node.id
+                    + ": " + ex.getMessage(), node.loc, ex);
+        }
+        if(shape >= 0) {
+            cache.store(index, shape, result);
+        }
+        return result;
+    }
+    
+    /**
+     * @param cache Where to remember the results of handlers, or null to run
+     * every handler on every node
+     */
+    public void setCache(TranslationCache cache) {
+        this.cache = cache;
+    }
+    
+    public TranslationCache getCache() {
+        return cache;
+    }
+    
+    public TranslationTable getTable() {
+        return table;
+    }
+    
+    /**
+     * @param translation The index of one of the table's translations
+     * @return The compiled translation
+     */
+    public Handler getHandler(int translation) {
+        return handlers[translation];
+    }
+    
+    /**
+     * The translation of a node, with the number of the node's shape and
+     * the generation of the cache it was numbered in
+     */
+    private static final class Shaped {
+        final int shape, generation;
+        final Object value;
+        
+        Shaped(int shape, int generation, Object value) {
+            this.shape = shape;
+            this.generation = generation;
+            this.value = value;
+        }
+    }
+    
+}
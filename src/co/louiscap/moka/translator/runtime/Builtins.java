@@ -0,0 +1,227 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.translator.runtime;
+
+import co.louiscap.moka.utils.string.Rope;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The operations that compiled handlers are built from. Values are text
+ * (Strings, or {@link Rope}s built by joining text), Longs, Booleans or null
+ * (<code>None</code>); these are the only functions a handler can reach,
+ * which is what keeps handlers sandboxed
+ * @author Louis Capitanchik
+ */
+final class Builtins {
+    
+    /**
+     * The result of a statement that didn't return
+     */
+    static final Object NONE = new Object();
+    
+    /**
+     * The functions that can be called by name, such as <code>len(x)</code>,
+     * and the methods that can be called on a value, such as
+     * <code>x.upper()</code>, which take the value as their first argument
+     */
+    static final Map<String, MethodHandle> FUNCTIONS = new HashMap<>();
+    static final Map<String, MethodHandle> METHODS = new HashMap<>();
+    
+    static final MethodHandle TRUTHY, ADD, EQ, NE, LT, LE, GT, GE, NOT, IS_NONE, NONE_TO_NULL;
+    
+    static {
+        TRUTHY = find("truthy", boolean.class, Object.class);
+        ADD = find("add", Object.class, Object.class, Object.class);
+        EQ = find("eq", Object.class, Object.class, Object.class);
+        NE = find("ne", Object.class, Object.class, Object.class);
+        LT = find("lt", Object.class, Object.class, Object.class);
+        LE = find("le", Object.class, Object.class, Object.class);
+        GT = find("gt", Object.class, Object.class, Object.class);
+        GE = find("ge", Object.class, Object.class, Object.class);
+        NOT = find("not", Object.class, Object.class);
+        IS_NONE = find("isNone", boolean.class, Object.class);
+        NONE_TO_NULL = find("noneToNull", Object.class, Object.class);
+        
+        FUNCTIONS.put("str", find("str", Object.class, Object.class));
+        FUNCTIONS.put("len", find("len", Object.class, Object.class));
+        METHODS.put("upper", find("upper", Object.class, Object.class));
+        METHODS.put("lower", find("lower", Object.class, Object.class));
+        METHODS.put("strip", find("strip", Object.class, Object.class));
+        METHODS.put("replace", find("replace", Object.class, Object.class, Object.class, Object.class));
+        METHODS.put("startswith", find("startswith", Object.class, Object.class, Object.class));
+        METHODS.put("endswith", find("endswith", Object.class, Object.class, Object.class));
+    }
+    
+    private Builtins() {
+    }
+    
+    private static MethodHandle find(String name, Class<?> returns, Class<?>... params) {
+        try {
+            return MethodHandles.lookup().findStatic(Builtins.class, name, MethodType.methodType(returns, params));
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+    
+    /**
+     * @return The text of a value as output; None is empty
+     */
+    static String text(Object value) {
+        return chars(value).toString();
+    }
+    
+    /**
+     * @return The text of a value as output, without copying it if it is
+     * already text
+     */
+    static CharSequence chars(Object value) {
+        if(value == null) {
+            return "";
+        }
+        if(value instanceof CharSequence) {
+            return (CharSequence)value;
+        }
+        if(value instanceof Boolean) {
+            return (Boolean)value ? "True" : "False";
+        }
+        return value.toString();
+    }
+    
+    static boolean truthy(Object value) {
+        if(value == null) {
+            return false;
+        }
+        if(value instanceof Boolean) {
+            return (Boolean)value;
+        }
+        if(value instanceof Long) {
+            return (Long)value != 0;
+        }
+        return chars(value).length() > 0;
+    }
+    
+    static Object add(Object a, Object b) {
+        if(a instanceof Long && b instanceof Long) {
+            return (Long)a + (Long)b;
+        }
+        return Rope.concat(chars(a), chars(b));
+    }
+    
+    static Object eq(Object a, Object b) {
+        return equal(a, b);
+    }
+    
+    static Object ne(Object a, Object b) {
+        return !equal(a, b);
+    }
+    
+    private static boolean equal(Object a, Object b) {
+        if(a instanceof CharSequence && b instanceof CharSequence) {
+            CharSequence x = (CharSequence)a, y = (CharSequence)b;
+            return x.length() == y.length() && x.toString().equals(y.toString());
+        }
+        return Objects.equals(a, b);
+    }
+    
+    static Object lt(Object a, Object b) {
+        return compare(a, b) < 0;
+    }
+    
+    static Object le(Object a, Object b) {
+        return compare(a, b) <= 0;
+    }
+    
+    static Object gt(Object a, Object b) {
+        return compare(a, b) > 0;
+    }
+    
+    static Object ge(Object a, Object b) {
+        return compare(a, b) >= 0;
+    }
+    
+    private static int compare(Object a, Object b) {
+        if(a instanceof Long && b instanceof Long) {
+            return Long.compare((Long)a, (Long)b);
+        }
+        if(a instanceof Long || b instanceof Long) {
+            throw new IllegalArgumentException("Can't compare " + a + " with " + b);
+        }
+        return text(a).compareTo(text(b));
+    }
+    
+    static Object not(Object a) {
+        return !truthy(a);
+    }
+    
+    static boolean isNone(Object a) {
+        return a == NONE;
+    }
+    
+    static Object noneToNull(Object a) {
+        return a == NONE ? null : a;
+    }
+    
+    static Object str(Object a) {
+        return text(a);
+    }
+    
+    static Object len(Object a) {
+        return (long)chars(a).length();
+    }
+    
+    static Object upper(Object a) {
+        return text(a).toUpperCase();
+    }
+    
+    static Object lower(Object a) {
+        return text(a).toLowerCase();
+    }
+    
+    static Object strip(Object a) {
+        return text(a).trim();
+    }
+    
+    static Object replace(Object a, Object from, Object to) {
+        return text(a).replace(text(from), text(to));
+    }
+    
+    static Object startswith(Object a, Object prefix) {
+        return text(a).startsWith(text(prefix));
+    }
+    
+    static Object endswith(Object a, Object suffix) {
+        return text(a).endsWith(text(suffix));
+    }
+}
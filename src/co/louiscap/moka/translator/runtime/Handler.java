@@ -0,0 +1,125 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.translator.runtime;
+
+import co.louiscap.moka.exceptions.InvalidFormatException;
+import co.louiscap.moka.translator.Translation;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A {@link Translation} compiled so that it can be run. Handler bodies are
+ * written in a small, python like language:
+ * <ul>
+ * <li>Statements are <code>return EXPR</code>, <code>NAME = EXPR</code>,
+ * <code>pass</code>, a bare expression, and <code>if EXPR:</code> with
+ * optional <code>elif EXPR:</code> and <code>else:</code> branches, each
+ * followed by an indented block. A trailing semicolon is allowed, and
+ * <code>#</code> starts a comment</li>
+ * <li>Values are strings, integers, <code>True</code>, <code>False</code>
+ * and <code>None</code>. <code>+</code> adds two integers and otherwise
+ * joins their text, treating None as empty; long text is joined as a
+ * {@link co.louiscap.moka.utils.string.Rope} rather than copied</li>
+ * <li>Expressions combine values with <code>+</code>, comparisons,
+ * <code>and</code>, <code>or</code> and <code>not</code>, the functions
+ * <code>str</code> and <code>len</code>, and the string methods
+ * <code>upper</code>, <code>lower</code>, <code>strip</code>,
+ * <code>replace</code>, <code>startswith</code> and <code>endswith</code></li>
+ * </ul>
+ * There are no loops, imports or attribute access, so a handler can only
+ * ever compute a value from its arguments, and always finishes. A handler
+ * that doesn't reach a return statement returns None.
+ * <br><br>
+ * Compiling turns the body into a chain of method handles once, so calling
+ * a handler does no parsing or interpretation. Handlers are immutable and
+ * may be called from any number of threads
+ * @author Louis Capitanchik
+ */
+public final class Handler {
+    
+    public final Translation translation;
+    private final MethodHandle body;
+    private final int frameSize;
+    
+    private Handler(Translation translation, MethodHandle body, int frameSize) {
+        this.translation = translation;
+        this.body = body;
+        this.frameSize = frameSize;
+    }
+    
+    /**
+     * @param translation The handler to compile
+     * @return The compiled handler
+     * @throws InvalidFormatException Thrown if the body of the handler isn't
+     * valid, or uses something that isn't supported
+     */
+    public static Handler compile(Translation translation) throws InvalidFormatException {
+        HandlerCompiler compiler = new HandlerCompiler(translation);
+        MethodHandle body = compiler.compile();
+        return new Handler(translation, body, compiler.frameSize());
+    }
+    
+    /**
+     * Run the handler
+     * @param args One value for each of the handler's parameters
+     * @return The value that the handler returned, which is a CharSequence,
+     * Long, Boolean or null
+     * @throws IllegalArgumentException Thrown if the wrong number of
+     * arguments is given, or the handler can't operate on them
+     */
+    public Object invoke(Object... args) {
+        if(args.length != translation.parameters.length) {
+            throw new IllegalArgumentException(translation.name + " takes " + translation.parameters.length
+                    + " arguments, not " + args.length);
+        }
+        Object[] frame = new Object[frameSize];
+        System.arraycopy(args, 0, frame, 0, args.length);
+        try {
+            return (Object) body.invokeExact(frame);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+    
+    /**
+     * @param value A value returned by a handler
+     * @return The value as it appears in output, without copying it if it is
+     * already text; None is empty
+     */
+    public static CharSequence text(Object value) {
+        return Builtins.chars(value);
+    }
+    
+    @Override
+    public String toString() {
+        return translation.toString();
+    }
+}
@@ -0,0 +1,535 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.translator.runtime;
+
+import co.louiscap.moka.exceptions.InvalidFormatException;
+import co.louiscap.moka.translator.Translation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles the body of a {@link Translation} into a single method handle of
+ * type <code>(Object[])Object</code>, which takes the frame of parameters
+ * and local variables and returns the handler's result. Each statement and
+ * expression becomes a handle combined from its parts with the
+ * {@link MethodHandles} combinators, so the body is parsed exactly once and
+ * nothing is interpreted when the handler runs
+ * @author Louis Capitanchik
+ */
+final class HandlerCompiler {
+    
+    private static final Pattern TOKEN = Pattern.compile("\\s*(?:(#.*)|(\"(?:[^\"\\\\]|\\\\.)*\"|'(?:[^'\\\\]|\\\\.)*')"
+            + "|(\\d+)|([A-Za-z_]\\w*)|(==|!=|<=|>=|[+<>=(),.:;]))");
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("and", "or", "not", "if", "elif",
+            "else", "return", "pass", "True", "False", "None", "def", "for", "while", "import", "from", "lambda",
+            "class", "global", "del", "with", "yield", "try", "except", "raise", "in", "is"));
+    private static final MethodType BODY = MethodType.methodType(Object.class, Object[].class);
+    
+    private final Translation translation;
+    private final List<Line> lines;
+    private final HashMap<String, Integer> slots;
+    private int pos;
+    private Line line;
+    private int cursor;
+    
+    HandlerCompiler(Translation translation) throws InvalidFormatException {
+        this.translation = translation;
+        this.lines = new ArrayList<>();
+        this.slots = new HashMap<>();
+        
+        String[] src = translation.body.split("\n", -1);
+        for(int i = 0; i < src.length; i += 1) {
+            Line l = tokenize(src[i], i);
+            if(!l.tokens.isEmpty()) {
+                lines.add(l);
+            }
+        }
+        for(String param : translation.parameters) {
+            if(KEYWORDS.contains(param) || slots.put(param, slots.size()) != null) {
+                throw new InvalidFormatException(filename(), "Invalid parameter name " + param);
+            }
+        }
+        for(Line l : lines) {
+            if(l.tokens.size() > 1 && l.tokens.get(1).equals("=") && isName(l.tokens.get(0))) {
+                slots.putIfAbsent(l.tokens.get(0), slots.size());
+            }
+        }
+    }
+    
+    /**
+     * @return The number of parameters and local variables in the frame
+     */
+    int frameSize() {
+        return slots.size();
+    }
+    
+    /**
+     * @return The compiled body, of type <code>(Object[])Object</code>
+     * @throws InvalidFormatException Thrown if the body isn't valid
+     */
+    MethodHandle compile() throws InvalidFormatException {
+        pos = 0;
+        MethodHandle body = lines.isEmpty() ? constant(Builtins.NONE) : block(lines.get(0).indent);
+        if(pos < lines.size()) {
+            line = lines.get(pos);
+            throw error("Unexpected indent");
+        }
+        return MethodHandles.filterReturnValue(body, Builtins.NONE_TO_NULL);
+    }
+    
+    private String filename() {
+        return "Handler " + translation.name;
+    }
+    
+    private InvalidFormatException error(String reason) {
+        return new InvalidFormatException(filename(), "Line " + (line.number + 1) + " of body: " + reason);
+    }
+    
+    private Line tokenize(String src, int number) throws InvalidFormatException {
+        Line l = new Line(number, src.length() - src.replaceAll("^\\s+", "").length());
+        line = l;
+        Matcher m = TOKEN.matcher(src);
+        int at = 0;
+        while(at < src.length()) {
+            if(!m.find(at) || m.start() != at) {
+                if(src.substring(at).trim().isEmpty()) {
+                    break;
+                }
+                throw error("Unexpected character " + src.substring(at).trim().charAt(0));
+            }
+            if(m.group(1) == null) {
+                l.tokens.add(m.group().trim());
+            }
+            at = m.end();
+        }
+        // Statements may end in a semicolon
+        if(!l.tokens.isEmpty() && l.tokens.get(l.tokens.size() - 1).equals(";")) {
+            l.tokens.remove(l.tokens.size() - 1);
+        }
+        return l;
+    }
+    
+    // Statements
+    
+    /**
+     * Compile the statements at the given indent, starting at the current
+     * line, into a handle that returns the result of the first return
+     * statement reached, or {@link Builtins#NONE}
+     */
+    private MethodHandle block(int indent) throws InvalidFormatException {
+        ArrayList<MethodHandle> statements = new ArrayList<>();
+        while(pos < lines.size() && lines.get(pos).indent == indent) {
+            statements.add(statement());
+        }
+        MethodHandle result = statements.get(statements.size() - 1);
+        for(int i = statements.size() - 2; i >= 0; i -= 1) {
+            result = sequence(statements.get(i), result);
+        }
+        return result;
+    }
+    
+    private MethodHandle statement() throws InvalidFormatException {
+        line = lines.get(pos);
+        cursor = 0;
+        String first = peek();
+        MethodHandle result;
+        switch(first) {
+            case "return":
+                next();
+                result = atEnd() ? constant(null) : expression();
+                end();
+                pos += 1;
+                return result;
+            case "pass":
+                next();
+                end();
+                pos += 1;
+                return constant(Builtins.NONE);
+            case "if":
+                return conditional();
+            case "elif":
+            case "else":
+                throw error(first + " without if");
+            default:
+                if(line.tokens.size() > 1 && line.tokens.get(1).equals("=")) {
+                    int slot = slots.get(name());
+                    next();
+                    result = assign(slot, expression());
+                } else {
+                    result = discard(expression());
+                }
+                end();
+                pos += 1;
+                return result;
+        }
+    }
+    
+    /**
+     * Compile an if statement along with any elif and else branches after it
+     */
+    private MethodHandle conditional() throws InvalidFormatException {
+        Line head = line;
+        next();
+        MethodHandle test = expression();
+        expect(":");
+        end();
+        pos += 1;
+        MethodHandle then = indented(head);
+        MethodHandle otherwise = constant(Builtins.NONE);
+        if(pos < lines.size() && lines.get(pos).indent == head.indent) {
+            line = lines.get(pos);
+            cursor = 0;
+            if(peek().equals("elif")) {
+                otherwise = conditional();
+            } else if(peek().equals("else")) {
+                Line elseHead = line;
+                next();
+                expect(":");
+                end();
+                pos += 1;
+                otherwise = indented(elseHead);
+            }
+        }
+        return MethodHandles.guardWithTest(MethodHandles.filterReturnValue(test, Builtins.TRUTHY), then, otherwise);
+    }
+    
+    /**
+     * Compile the block indented under the given line
+     */
+    private MethodHandle indented(Line head) throws InvalidFormatException {
+        if(pos >= lines.size() || lines.get(pos).indent <= head.indent) {
+            line = head;
+            throw error("Expected an indented block");
+        }
+        return block(lines.get(pos).indent);
+    }
+    
+    // Expressions
+    
+    private MethodHandle expression() throws InvalidFormatException {
+        MethodHandle result = conjunction();
+        while(accept("or")) {
+            result = shortCircuit(result, conjunction(), true);
+        }
+        return result;
+    }
+    
+    private MethodHandle conjunction() throws InvalidFormatException {
+        MethodHandle result = negation();
+        while(accept("and")) {
+            result = shortCircuit(result, negation(), false);
+        }
+        return result;
+    }
+    
+    private MethodHandle negation() throws InvalidFormatException {
+        if(accept("not")) {
+            return apply(Builtins.NOT, negation());
+        }
+        return comparison();
+    }
+    
+    private MethodHandle comparison() throws InvalidFormatException {
+        MethodHandle left = sum();
+        MethodHandle op;
+        switch(atEnd() ? "" : peek()) {
+            case "==":
+                op = Builtins.EQ;
+                break;
+            case "!=":
+                op = Builtins.NE;
+                break;
+            case "<":
+                op = Builtins.LT;
+                break;
+            case "<=":
+                op = Builtins.LE;
+                break;
+            case ">":
+                op = Builtins.GT;
+                break;
+            case ">=":
+                op = Builtins.GE;
+                break;
+            default:
+                return left;
+        }
+        next();
+        return apply(op, left, sum());
+    }
+    
+    private MethodHandle sum() throws InvalidFormatException {
+        MethodHandle result = postfix();
+        while(accept("+")) {
+            result = apply(Builtins.ADD, result, postfix());
+        }
+        return result;
+    }
+    
+    private MethodHandle postfix() throws InvalidFormatException {
+        MethodHandle result = atom();
+        while(accept(".")) {
+            String method = name();
+            MethodHandle function = Builtins.METHODS.get(method);
+            if(function == null) {
+                throw error("Unknown method " + method);
+            }
+            ArrayList<MethodHandle> args = new ArrayList<>();
+            args.add(result);
+            result = call(method, function, args);
+        }
+        return result;
+    }
+    
+    private MethodHandle atom() throws InvalidFormatException {
+        if(atEnd()) {
+            throw error("Expected an expression");
+        }
+        String token = next();
+        char c = token.charAt(0);
+        if(c == '"' || c == '\'') {
+            return constant(unescape(token.substring(1, token.length() - 1)));
+        }
+        if(Character.isDigit(c)) {
+            try {
+                return constant(Long.parseLong(token));
+            } catch (NumberFormatException ex) {
+                throw error("Number out of range " + token);
+            }
+        }
+        if(token.equals("(")) {
+            MethodHandle inner = expression();
+            expect(")");
+            return inner;
+        }
+        switch(token) {
+            case "True":
+                return constant(true);
+            case "False":
+                return constant(false);
+            case "None":
+                return constant(null);
+        }
+        if(!isName(token) || KEYWORDS.contains(token)) {
+            throw error("Unexpected " + token);
+        }
+        if(!atEnd() && peek().equals("(")) {
+            MethodHandle function = Builtins.FUNCTIONS.get(token);
+            if(function == null) {
+                throw error("Unknown function " + token);
+            }
+            return call(token, function, new ArrayList<>());
+        }
+        Integer slot = slots.get(token);
+        if(slot == null) {
+            throw error("Unknown name " + token);
+        }
+        return MethodHandles.insertArguments(MethodHandles.arrayElementGetter(Object[].class), 1, slot);
+    }
+    
+    /**
+     * Parse the argument list of a call, after any receiver already in args,
+     * and apply the function to them
+     */
+    private MethodHandle call(String name, MethodHandle function, List<MethodHandle> args)
+            throws InvalidFormatException {
+        expect("(");
+        if(!accept(")")) {
+            do {
+                args.add(expression());
+            } while(accept(","));
+            expect(")");
+        }
+        if(args.size() != function.type().parameterCount()) {
+            throw error(name + " takes " + function.type().parameterCount() + " arguments, not " + args.size());
+        }
+        return apply(function, args.toArray(new MethodHandle[args.size()]));
+    }
+    
+    private static String unescape(String src) {
+        StringBuilder result = new StringBuilder(src.length());
+        for(int i = 0; i < src.length(); i += 1) {
+            char c = src.charAt(i);
+            if(c == '\\' && i + 1 < src.length()) {
+                i += 1;
+                c = src.charAt(i);
+                switch(c) {
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case '\\':
+                    case '"':
+                    case '\'':
+                        break;
+                    default:
+                        result.append('\\');
+                }
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+    
+    // Tokens of the current line
+    
+    private boolean atEnd() {
+        return cursor >= line.tokens.size();
+    }
+    
+    private String peek() {
+        return line.tokens.get(cursor);
+    }
+    
+    private String next() throws InvalidFormatException {
+        if(atEnd()) {
+            throw error("Unexpected end of line");
+        }
+        cursor += 1;
+        return line.tokens.get(cursor - 1);
+    }
+    
+    private boolean accept(String token) {
+        if(!atEnd() && peek().equals(token)) {
+            cursor += 1;
+            return true;
+        }
+        return false;
+    }
+    
+    private void expect(String token) throws InvalidFormatException {
+        if(!accept(token)) {
+            throw error("Expected " + token + (atEnd() ? " at end of line" : ", found " + peek()));
+        }
+    }
+    
+    private void end() throws InvalidFormatException {
+        if(!atEnd()) {
+            throw error("Unexpected " + peek());
+        }
+    }
+    
+    private String name() throws InvalidFormatException {
+        String token = next();
+        if(!isName(token) || KEYWORDS.contains(token)) {
+            throw error("Expected a name, found " + token);
+        }
+        return token;
+    }
+    
+    private static boolean isName(String token) {
+        char c = token.charAt(0);
+        return Character.isLetter(c) || c == '_';
+    }
+    
+    // Combinators, each building a handle of type (Object[])Object
+    
+    private static MethodHandle constant(Object value) {
+        return MethodHandles.dropArguments(MethodHandles.constant(Object.class, value), 0, Object[].class);
+    }
+    
+    /**
+     * @return A handle that calls the function on the results of the given
+     * handles, all run on the same frame
+     */
+    private static MethodHandle apply(MethodHandle function, MethodHandle... args) {
+        MethodHandle spread = MethodHandles.filterArguments(function, 0, args);
+        return MethodHandles.permuteArguments(spread, BODY, new int[args.length]);
+    }
+    
+    /**
+     * @return A handle that runs first, and then second only if first didn't
+     * return
+     */
+    private static MethodHandle sequence(MethodHandle first, MethodHandle second) {
+        return choose(first, MethodHandles.dropArguments(Builtins.IS_NONE, 1, Object[].class), second, true);
+    }
+    
+    /**
+     * @return A handle for <code>left or right</code> when or is true, or
+     * <code>left and right</code> otherwise, which only runs right if it has
+     * to and otherwise returns the result of left
+     */
+    private static MethodHandle shortCircuit(MethodHandle left, MethodHandle right, boolean or) {
+        return choose(left, MethodHandles.dropArguments(Builtins.TRUTHY, 1, Object[].class), right, !or);
+    }
+    
+    /**
+     * @return A handle that runs first, and then returns the result of second
+     * if the test of first's result is equal to runSecond, or else the
+     * result of first
+     */
+    private static MethodHandle choose(MethodHandle first, MethodHandle test, MethodHandle second,
+            boolean runSecond) {
+        MethodHandle keep = MethodHandles.dropArguments(MethodHandles.identity(Object.class), 1, Object[].class);
+        MethodHandle replace = MethodHandles.dropArguments(second, 0, Object.class);
+        MethodHandle pick = runSecond ? MethodHandles.guardWithTest(test, replace, keep)
+                : MethodHandles.guardWithTest(test, keep, replace);
+        return MethodHandles.foldArguments(pick, first);
+    }
+    
+    private static MethodHandle assign(int slot, MethodHandle value) {
+        MethodHandle store = MethodHandles.insertArguments(MethodHandles.arrayElementSetter(Object[].class), 1, slot);
+        store = MethodHandles.permuteArguments(store, MethodType.methodType(void.class, Object.class, Object[].class),
+                1, 0);
+        return MethodHandles.filterReturnValue(MethodHandles.foldArguments(store, value),
+                MethodHandles.constant(Object.class, Builtins.NONE));
+    }
+    
+    private static MethodHandle discard(MethodHandle value) {
+        return MethodHandles.filterReturnValue(value,
+                MethodHandles.dropArguments(MethodHandles.constant(Object.class, Builtins.NONE), 0, Object.class));
+    }
+    
+    private static final class Line {
+        final int number, indent;
+        final ArrayList<String> tokens;
+        
+        Line(int number, int indent) {
+            this.number = number;
+            this.indent = indent;
+            this.tokens = new ArrayList<>();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.translator.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Objects;
+
+/**
+ * Gives every distinct shape of subtree a number, so that two subtrees with
+ * the same symbols and token contents in the same arrangement get the same
+ * number wherever they appear. Nodes are numbered bottom-up; a node's shape
+ * is its symbol, its content and the numbers of its children, so comparing
+ * two shapes never looks further down the tree than one level.
+ * <br><br>
+ * Each shape also has a 64 bit structural hash, worked out from the hashes
+ * of its children, which is what the table is looked up by. Locations and
+ * token indexes aren't part of a shape.
+ * <br><br>
+ * A HashConsTable is not safe for concurrent use
+ * @author Louis Capitanchik
+ */
+public final class HashConsTable {
+    
+    private final HashMap<Shape, Integer> ids;
+    private final ArrayList<Shape> shapes;
+    
+    public HashConsTable() {
+        ids = new HashMap<>();
+        shapes = new ArrayList<>();
+    }
+    
+    /**
+     * @param node A node of a tree
+     * @param children The number of each child of the node, in order, as
+     * given by this table
+     * @return The number of the node's shape
+     */
+    public int intern(TreeNode node, int[] children) {
+        long hash = mix(node.id.hashCode() * 31L + Objects.hashCode(node.content));
+        for(int child : children) {
+            hash = mix(hash * 31 + shapes.get(child).hash);
+        }
+        Shape shape = new Shape(node.id, node.content, children, hash);
+        Integer id = ids.get(shape);
+        if(id == null) {
+            id = shapes.size();
+            ids.put(shape, id);
+            shapes.add(shape);
+        }
+        return id;
+    }
+    
+    /**
+     * Number every node of a tree
+     * @param root The root of the tree
+     * @return The number of the root's shape
+     */
+    public int intern(TreeNode root) {
+        return TreeWalker.walk(root, (node, children) -> {
+            int[] ids = new int[children.size()];
+            for(int i = 0; i < ids.length; i += 1) {
+                ids[i] = children.get(i);
+            }
+            return intern(node, ids);
+        });
+    }
+    
+    /**
+     * @param id The number of a shape
+     * @return The structural hash of the shape
+     */
+    public long hashOf(int id) {
+        return shapes.get(id).hash;
+    }
+    
+    /**
+     * @return The number of distinct shapes seen
+     */
+    public int size() {
+        return shapes.size();
+    }
+    
+    public void clear() {
+        ids.clear();
+        shapes.clear();
+    }
+    
+    /**
+     * Spread the bits of a hash, so that similar shapes don't get similar
+     * hashes
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+    
+    private static final class Shape {
+        final String id, content;
+        final int[] children;
+        final long hash;
+        
+        Shape(String id, String content, int[] children, long hash) {
+            this.id = id;
+            this.content = content;
+            this.children = children;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int)(hash ^ (hash >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof Shape)) {
+                return false;
+            }
+            Shape other = (Shape) obj;
+            return hash == other.hash && id.equals(other.id) && Objects.equals(content, other.content)
+                    && Arrays.equals(children, other.children);
+        }
+    }
+}
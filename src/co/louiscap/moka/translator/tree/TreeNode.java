@@ -29,23 +29,117 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 package co.louiscap.moka.translator.tree;
 
+import co.louiscap.moka.utils.data.Location;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 
 /**
  * @author Louis Capitanchik
  */
 public class TreeNode {
     
+    /**
+     * The deepest level that {@link #toString()} indents a node to
+     */
+    public static final int MAX_INDENT = 32;
+    
     public final String id;
+    /**
+     * The id of the node's symbol in the {@link co.louiscap.moka.utils.data.SymbolTable}
+     * of the parser that produced it, or -1 for nodes that weren't produced
+     * by a parser
+     */
+    public final int symbol;
+    /**
+     * The content of the token for a leaf, or null for a rule
+     */
+    public final String content;
+    /**
+     * Where the first token covered by this node starts, or null if the node
+     * covers no tokens. Updated when the tree is reparsed after an edit
+     */
+    public Location loc;
+    /**
+     * The index of the first token covered by this node, and the index after
+     * the last. Both are -1 for nodes that weren't produced by a parser.
+     * Updated when the tree is reparsed after an edit
+     */
+    public int start, end;
     public List<TreeNode> leaves;
     
     public TreeNode(String id){
+        this(id, null, null, -1, -1);
+    }
+    
+    public TreeNode(String id, String content, Location loc, int start, int end) {
+        this(id, -1, content, loc, start, end);
+    }
+    
+    public TreeNode(String id, int symbol, String content, Location loc, int start, int end) {
         this.id = id;
-        this.leaves = new LinkedList<>();
+        this.symbol = symbol;
+        this.content = content;
+        this.loc = loc;
+        this.start = start;
+        this.end = end;
+        this.leaves = new ArrayList<>();
     }
     
     public void addChild(TreeNode child) {
         this.leaves.add(child);
     }
+    
+    /**
+     * Move this node and every node below it along the token stream
+     * @param delta The number of tokens to move by
+     */
+    public void shift(int delta) {
+        LinkedList<TreeNode> nodes = new LinkedList<>();
+        nodes.push(this);
+        while(!nodes.isEmpty()) {
+            TreeNode node = nodes.pop();
+            node.start += delta;
+            node.end += delta;
+            node.leaves.forEach(nodes::push);
+        }
+    }
+    
+    /**
+     * Renders the tree below this node, one node per line, indenting children
+     * below their parent. Right recursive rules nest as deeply as the input
+     * is long, so the indent stops growing at {@link #MAX_INDENT} levels, and
+     * nodes deeper than that are prefixed with their depth instead, keeping
+     * the rendering in proportion to the size of the tree
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        LinkedList<TreeNode> nodes = new LinkedList<>();
+        LinkedList<Integer> depths = new LinkedList<>();
+        nodes.push(this);
+        depths.push(0);
+        while(!nodes.isEmpty()) {
+            TreeNode node = nodes.pop();
+            int depth = depths.pop();
+            for(int d = 0; d < Math.min(depth, MAX_INDENT); d += 1) {
+                sb.append("  ");
+            }
+            if(depth > MAX_INDENT) {
+                sb.append('[').append(depth).append("] ");
+            }
+            sb.append(node.id);
+            if(node.content != null) {
+                sb.append(" `").append(node.content).append('`');
+            }
+            sb.append('\n');
+            ListIterator<TreeNode> children = node.leaves.listIterator(node.leaves.size());
+            while(children.hasPrevious()) {
+                nodes.push(children.previous());
+                depths.push(depth + 1);
+            }
+        }
+        return sb.substring(0, sb.length() - 1);
+    }
 }
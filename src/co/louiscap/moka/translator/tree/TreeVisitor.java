@@ -0,0 +1,65 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.translator.tree;
+
+import java.util.List;
+
+/**
+ * The callbacks of a {@link TreeWalker}, which works out a result for every
+ * node of a tree from the results of the node's children
+ * @param <T> The type of result of each node
+ * @param <E> The type of exception that the callbacks may throw
+ * @author Louis Capitanchik
+ */
+@FunctionalInterface
+public interface TreeVisitor<T, E extends Exception> {
+    
+    /**
+     * Called on a node before any of its children
+     * @param node The node being visited
+     * @return Whether to visit the node's children. When false, the children
+     * are skipped and {@link #leave(TreeNode, List)} is called straight away
+     * with no results
+     * @throws E Thrown to stop the walk
+     */
+    default boolean enter(TreeNode node) throws E {
+        return true;
+    }
+    
+    /**
+     * Called on a node after all of its children
+     * @param node The node being visited
+     * @param children The result of each child of the node, in order. The
+     * list is only valid until this method returns
+     * @return The result of the node
+     * @throws E Thrown to stop the walk
+     */
+    T leave(TreeNode node, List<T> children) throws E;
+}
@@ -0,0 +1,102 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.translator.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Visits every node of a tree after its children, keeping the path from the
+ * root and the results waiting for their parents on explicit stacks rather
+ * than the call stack. Rules that recurse on themselves build trees as deep
+ * as their input is long, which a recursive walk would overflow the call
+ * stack on; a TreeWalker handles trees of any depth with a constant depth of
+ * calls, using memory in proportion to the depth of the tree
+ * @author Louis Capitanchik
+ */
+public final class TreeWalker {
+    
+    private TreeWalker() {
+    }
+    
+    /**
+     * Visit every node of a tree in post-order
+     * @param <T> The type of result of each node
+     * @param <E> The type of exception that the visitor may throw
+     * @param root The root of the tree
+     * @param visitor The callbacks to make on each node
+     * @return The result of the root
+     * @throws E Thrown if a callback throws, stopping the walk
+     */
+    public static <T, E extends Exception> T walk(TreeNode root, TreeVisitor<T, E> visitor) throws E {
+        ArrayList<T> results = new ArrayList<>();
+        if(!visitor.enter(root)) {
+            return visitor.leave(root, Collections.emptyList());
+        }
+        // The nodes on the path from the root, the index of the next child
+        // of each to visit, and where each one's children's results start
+        TreeNode[] path = new TreeNode[16];
+        int[] next = new int[16];
+        int[] base = new int[16];
+        int depth = 1;
+        path[0] = root;
+        while(depth > 0) {
+            int top = depth - 1;
+            TreeNode node = path[top];
+            if(next[top] < node.leaves.size()) {
+                TreeNode child = node.leaves.get(next[top]);
+                next[top] += 1;
+                if(!visitor.enter(child)) {
+                    results.add(visitor.leave(child, Collections.emptyList()));
+                    continue;
+                }
+                if(depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                    next = Arrays.copyOf(next, depth * 2);
+                    base = Arrays.copyOf(base, depth * 2);
+                }
+                path[depth] = child;
+                next[depth] = 0;
+                base[depth] = results.size();
+                depth += 1;
+            } else {
+                List<T> children = results.subList(base[top], results.size());
+                T result = visitor.leave(node, children);
+                children.clear();
+                results.add(result);
+                path[top] = null;
+                depth -= 1;
+            }
+        }
+        return results.get(0);
+    }
+}
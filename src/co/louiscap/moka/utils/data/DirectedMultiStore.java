@@ -29,30 +29,133 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 package co.louiscap.moka.utils.data;
 
-import co.louiscap.moka.utils.data.DirectedMultiStore.Relation;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Objects;
-import java.util.Set;
-import java.util.TreeSet;
 
 /**
  * A sorted set of relationships between various entities that can be identified
  * by a singular value. Every relationship has an object, a subject and a relation
  * between the two; this relationship is stored multiple times in various
  * permutations to make range queries on the data set easier
+ * <br><br>
+ * Entities are interned into a {@link SymbolTable} and relations are
+ * identified by their ordinal, so each permutation (object-relation-subject,
+ * object-subject-relation and relation-object-subject) is a sorted array of
+ * triples packed into longs. A query is a pair of binary searches into one of
+ * these arrays, and the matches are read through a {@link Cursor} rather than
+ * copied out into new objects. Entities can have any String id, and a store
+ * can hold up to 2^24 distinct entities.
+ * <br><br>
+ * Relations that are added are only sorted into the indexes when the store is
+ * next queried, so adding many relations before querying is cheap.
  * @author Louis Capitanchik
  * @param <RTYPE>
  */
 public class DirectedMultiStore<RTYPE extends Enum> {
-    private final TreeSet<String> relations;
+    
+    private static final int ENTITY_BITS = 24;
+    private static final int RELATION_BITS = 15;
+    private static final long ENTITY_MASK = (1L << ENTITY_BITS) - 1;
+    private static final long RELATION_MASK = (1L << RELATION_BITS) - 1;
+    
+    private final SymbolTable entities;
+    private RTYPE[] relationTypes;
+    private long[] ors, osr, ros;
+    private int size;
+    private boolean dirty;
 
     public DirectedMultiStore() {
-        this.relations = new TreeSet<>();
+        this.entities = new SymbolTable();
+        this.ors = new long[16];
+        this.osr = new long[16];
+        this.ros = new long[16];
+        this.size = 0;
+        this.dirty = false;
     }
     
+    @SuppressWarnings("unchecked")
     public void add(String object, RTYPE relation, String subject) {
-        relations.add(toEntry(object, relation.toString(), subject));
-        relations.add(toEntry(object, subject, relation.toString()));
-        relations.add(toEntry(relation.toString(), object, subject));
+        if(relationTypes == null) {
+            relationTypes = (RTYPE[]) relation.getDeclaringClass().getEnumConstants();
+        }
+        long o = intern(object), r = relation.ordinal(), s = intern(subject);
+        if(size == ors.length) {
+            ors = Arrays.copyOf(ors, size * 2);
+            osr = Arrays.copyOf(osr, size * 2);
+            ros = Arrays.copyOf(ros, size * 2);
+        }
+        ors[size] = packORS(o, r, s);
+        osr[size] = packOSR(o, s, r);
+        ros[size] = packROS(r, o, s);
+        size += 1;
+        dirty = true;
+    }
+    
+    /**
+     * @return The number of distinct relationships in the store
+     */
+    public int size() {
+        index();
+        return size;
+    }
+    
+    /**
+     * Find the relations of a specific type from one object
+     * @param object
+     * @param relation
+     * @return A cursor over every relationship with the given object and
+     * relation, ordered by the order in which subjects were first added
+     */
+    public Cursor from(String object, RTYPE relation) {
+        int o = entities.idOf(object);
+        if(o < 0) {
+            return new Cursor(ors, 0, 0, Cursor.ORS);
+        }
+        long lo = packORS(o, relation.ordinal(), 0);
+        return range(ors, lo, lo + (1L << ENTITY_BITS), Cursor.ORS);
+    }
+    
+    /**
+     * Find every relation between an object and a subject
+     * @param object
+     * @param subject
+     * @return A cursor over every relationship with the given object and
+     * subject, ordered by relation ordinal
+     */
+    public Cursor between(String object, String subject) {
+        int o = entities.idOf(object), s = entities.idOf(subject);
+        if(o < 0 || s < 0) {
+            return new Cursor(osr, 0, 0, Cursor.OSR);
+        }
+        long lo = packOSR(o, s, 0);
+        return range(osr, lo, lo + (1L << RELATION_BITS), Cursor.OSR);
+    }
+    
+    /**
+     * Find every relation of one type
+     * @param relation
+     * @return A cursor over every relationship of the given type, ordered by
+     * object and then subject in the order they were first added
+     */
+    public Cursor ofType(RTYPE relation) {
+        long lo = packROS(relation.ordinal(), 0, 0);
+        return range(ros, lo, lo + (1L << (2 * ENTITY_BITS)), Cursor.ROS);
+    }
+    
+    /**
+     * @param object
+     * @param relation
+     * @param subject
+     * @return Whether the given relationship has been added to the store
+     */
+    public boolean contains(String object, RTYPE relation, String subject) {
+        int o = entities.idOf(object), s = entities.idOf(subject);
+        if(o < 0 || s < 0) {
+            return false;
+        }
+        index();
+        return Arrays.binarySearch(ors, 0, size, packORS(o, relation.ordinal(), s)) >= 0;
     }
     
     /**
@@ -61,42 +164,118 @@ public class DirectedMultiStore<RTYPE extends Enum> {
      * all relevant subjects
      * @param object
      * @param relation
-     * @return 
+     * @return The matching relationships, sorted by subject
      */
     public Relation[] getRelationsFrom(String object, RTYPE relation) {
-        Set<String> results = relations.subSet(toQuery(object, relation.toString()),
-                                                false,
-                                                toQuery(object, relation.toString()) + "~",
-                                                false);
-        return results.stream()
-                .map(Relation::fromORSString)
-                .toArray(Relation[]::new);
+        return sorted(from(object, relation), Comparator.comparing(r -> r.subject));
     }
     
+    /**
+     * @param object
+     * @param subject
+     * @return The relationships between the given object and subject, sorted
+     * by the name of the relation
+     */
     public Relation[] getRelationsBetween(String object, String subject) {
-        Set<String> results = relations.subSet(toQuery(object, subject),
-                                                false,
-                                                toQuery(object, subject) + "~",
-                                                false);
-        return results.stream()
-                .map(Relation::fromOSRString)
-                .toArray(Relation[]::new);
+        return sorted(between(object, subject), Comparator.comparing(r -> r.relation));
     }
     
+    /**
+     * @param relation
+     * @return The relationships of the given type, sorted by object and then
+     * by subject
+     */
     public Relation[] getRelationsOfType(RTYPE relation) {
-        Set<String> results = relations.subSet(relation.toString() + "::",
-                                                false,
-                                                relation.toString() + "::~",
-                                                false);
-        return results.stream()
-                .map(Relation::fromROSString)
-                .toArray(Relation[]::new);
+        return sorted(ofType(relation), Comparator.<Relation, String>comparing(r -> r.object)
+                .thenComparing(r -> r.subject));
+    }
+    
+    private Relation[] sorted(Cursor cursor, Comparator<Relation> order) {
+        Relation[] result = new Relation[cursor.count()];
+        for(int i = 0; cursor.next(); i += 1) {
+            result[i] = cursor.toRelation();
+        }
+        Arrays.sort(result, order);
+        return result;
+    }
+    
+    private int intern(String entity) {
+        int id = entities.intern(entity);
+        if(id > ENTITY_MASK) {
+            throw new IllegalStateException("A DirectedMultiStore can hold at most "
+                    + (ENTITY_MASK + 1) + " entities");
+        }
+        return id;
+    }
+    
+    /**
+     * Sort any newly added relationships into the indexes
+     */
+    private void index() {
+        if(!dirty) {
+            return;
+        }
+        Arrays.sort(ors, 0, size);
+        Arrays.sort(osr, 0, size);
+        Arrays.sort(ros, 0, size);
+        int unique = dedupe(ors, size);
+        dedupe(osr, size);
+        dedupe(ros, size);
+        size = unique;
+        dirty = false;
+    }
+    
+    private static int dedupe(long[] index, int length) {
+        int out = 0;
+        for(int i = 0; i < length; i += 1) {
+            if(out == 0 || index[out - 1] != index[i]) {
+                index[out++] = index[i];
+            }
+        }
+        return out;
+    }
+    
+    private Cursor range(long[] index, long lo, long hi, int order) {
+        index();
+        return new Cursor(index, lowerBound(index, size, lo), lowerBound(index, size, hi), order);
+    }
+    
+    private static int lowerBound(long[] index, int length, long key) {
+        int lo = 0, hi = length;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(index[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    private static long packORS(long o, long r, long s) {
+        return (o << (ENTITY_BITS + RELATION_BITS)) | (r << ENTITY_BITS) | s;
+    }
+    
+    private static long packOSR(long o, long s, long r) {
+        return (o << (ENTITY_BITS + RELATION_BITS)) | (s << RELATION_BITS) | r;
+    }
+    
+    private static long packROS(long r, long o, long s) {
+        return (r << (2 * ENTITY_BITS)) | (o << ENTITY_BITS) | s;
     }
     
     @Override
     public int hashCode() {
-        int hash = 7;
-        hash = 47 * hash + Objects.hashCode(this.relations);
+        index();
+        int hash = 0;
+        for(int i = 0; i < size; i += 1) {
+            long t = ors[i];
+            int o = (int)(t >>> (ENTITY_BITS + RELATION_BITS));
+            int r = (int)((t >>> ENTITY_BITS) & RELATION_MASK);
+            int s = (int)(t & ENTITY_MASK);
+            hash += (entities.nameOf(o).hashCode() * 31 + r) * 31 + entities.nameOf(s).hashCode();
+        }
         return hash;
     }
 
@@ -112,26 +291,134 @@ public class DirectedMultiStore<RTYPE extends Enum> {
             return false;
         }
         final DirectedMultiStore<?> other = (DirectedMultiStore<?>) obj;
-        if (!Objects.equals(this.relations, other.relations)) {
+        if (this.size() != other.size()) {
             return false;
         }
+        for(int i = 0; i < other.size; i += 1) {
+            long t = other.ors[i];
+            int o = entities.idOf(other.entities.nameOf((int)(t >>> (ENTITY_BITS + RELATION_BITS))));
+            int s = entities.idOf(other.entities.nameOf((int)(t & ENTITY_MASK)));
+            if(o < 0 || s < 0 || Arrays.binarySearch(ors, 0, size, 
+                    packORS(o, (t >>> ENTITY_BITS) & RELATION_MASK, s)) < 0) {
+                return false;
+            }
+        }
         return true;
     }
     
-            
-    private String toQuery(String first, String second) {
-        return first + "::" + second + "::";
-    }
-    
-    private String toEntry(String first, String second, String third) {
-        return first + "::" + second + "::" + third;
+    /**
+     * A read only, forward only view of the results of a query. The cursor
+     * starts before the first result; each call to {@link Cursor#next()}
+     * moves it on to the next one, and the accessors then describe that
+     * result. Reading a result through a cursor doesn't allocate anything.
+     * <pre>
+     * DirectedMultiStore&lt;GraphRelations&gt;.Cursor c = store.from("S_LINE", THEN);
+     * while(c.next()) {
+     *     visit(c.subject());
+     * }
+     * </pre>
+     * A cursor shouldn't be used after more relations are added to the store
+     * it came from.
+     */
+    public class Cursor {
+        static final int ORS = 0, OSR = 1, ROS = 2;
+        
+        private final long[] index;
+        private final int end, order;
+        private int position;
+        private long current;
+        
+        Cursor(long[] index, int start, int end, int order) {
+            this.index = index;
+            this.position = start - 1;
+            this.end = end;
+            this.order = order;
+        }
+        
+        /**
+         * Move on to the next result
+         * @return false if there are no more results
+         */
+        public boolean next() {
+            if(position + 1 >= end) {
+                position = end;
+                return false;
+            }
+            position += 1;
+            current = index[position];
+            return true;
+        }
+        
+        /**
+         * @return The number of results that {@link Cursor#next()} has yet
+         * to move on to
+         */
+        public int count() {
+            return Math.max(end - position - 1, 0);
+        }
+        
+        /**
+         * @return The interned id of the current result's object
+         */
+        public int objectId() {
+            switch(order) {
+                case ROS:
+                    return (int)((current >>> ENTITY_BITS) & ENTITY_MASK);
+                default:
+                    return (int)(current >>> (ENTITY_BITS + RELATION_BITS));
+            }
+        }
+        
+        /**
+         * @return The interned id of the current result's subject
+         */
+        public int subjectId() {
+            switch(order) {
+                case OSR:
+                    return (int)((current >>> RELATION_BITS) & ENTITY_MASK);
+                default:
+                    return (int)(current & ENTITY_MASK);
+            }
+        }
+        
+        /**
+         * @return The ordinal of the current result's relation
+         */
+        public int relationId() {
+            switch(order) {
+                case ORS:
+                    return (int)((current >>> ENTITY_BITS) & RELATION_MASK);
+                case OSR:
+                    return (int)(current & RELATION_MASK);
+                default:
+                    return (int)(current >>> (2 * ENTITY_BITS));
+            }
+        }
+        
+        public String object() {
+            return entities.nameOf(objectId());
+        }
+        
+        public String subject() {
+            return entities.nameOf(subjectId());
+        }
+        
+        public RTYPE relation() {
+            return relationTypes[relationId()];
+        }
+        
+        /**
+         * @return A copy of the current result that outlives the cursor
+         */
+        public Relation toRelation() {
+            return new Relation(object(), relation().toString(), subject());
+        }
     }
     
     /**
      * A struct that provides read only access to a relationship retrieved from
-     * the MultiStore. As data in the MultiStore is serialised, a Relation will
-     * only provide object/relation/subject data as a String; other conversions
-     * are the responsibility of the calling code.
+     * the MultiStore. A Relation only provides object/relation/subject data as
+     * a String; other conversions are the responsibility of the calling code.
      */
     public static class Relation {
         public final String object, relation, subject;
@@ -140,7 +427,6 @@ public class DirectedMultiStore<RTYPE extends Enum> {
             this.relation = relation;
             this.subject = subject;
         }
-
         @Override
         public int hashCode() {
             int hash = 7;
@@ -173,36 +459,5 @@ public class DirectedMultiStore<RTYPE extends Enum> {
             }
             return true;
         }
-        
-        /**
-         * Creates a new relation from a MultiStore relationship string with 
-         * O R S ordering
-         * @param src The ORS ordered string to parse
-         * @return A relation that represents the given string
-         */
-        private static Relation fromORSString(String src) {
-            String[] parts = src.split("::");
-            return new Relation(parts[0], parts[1], parts[2]);
-        }
-        /**
-         * Creates a new relation from a MultiStore relationship string with 
-         * O S R ordering
-         * @param src The OSR ordered string to parse
-         * @return A relation that represents the given string
-         */
-        private static Relation fromOSRString(String src) {
-            String[] parts = src.split("::");
-            return new Relation(parts[0], parts[2], parts[1]);
-        }
-        /**
-         * Creates a new relation from a MultiStore relationship string with 
-         * R O S ordering
-         * @param src The ROS ordered string to parse
-         * @return A relation that represents the given string
-         */
-        private static Relation fromROSString(String src) {
-            String[] parts = src.split("::");
-            return new Relation(parts[1], parts[0], parts[2]);
-        }
     }
 }
@@ -0,0 +1,169 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.utils.data;
+
+import co.louiscap.moka.utils.io.BinaryIO;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * Assigns a dense integer id to every terminal and nonterminal symbol used by
+ * a module, so that the lexer and parser can compare and look up symbols by
+ * array index rather than by hashing and comparing Strings. Ids are assigned
+ * in the order symbols are first interned, starting at 0, and never change
+ * once assigned.
+ * <br><br>
+ * A SymbolTable is not safe for concurrent interning, but may be read from
+ * any number of threads once it has been filled.
+ * @author Louis Capitanchik
+ */
+public class SymbolTable {
+    
+    private final HashMap<String, Integer> ids;
+    private final ArrayList<String> names;
+    private final BitSet nonterminals;
+    
+    public SymbolTable() {
+        ids = new HashMap<>();
+        names = new ArrayList<>();
+        nonterminals = new BitSet();
+    }
+    
+    /**
+     * Get the id of a symbol, assigning it the next free id if it hasn't been
+     * seen before
+     * @param name The name of the symbol, such as T_IDENT
+     * @return The id of the symbol
+     */
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        if(id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+    
+    /**
+     * Get the id of a symbol that is the target of a language rule, assigning
+     * it the next free id if it hasn't been seen before
+     * @param name The name of the symbol, such as S_STATEMENT
+     * @return The id of the symbol
+     */
+    public int internNonterminal(String name) {
+        int id = intern(name);
+        nonterminals.set(id);
+        return id;
+    }
+    
+    /**
+     * @param name The name of a symbol
+     * @return The id of the symbol, or -1 if it has not been interned
+     */
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+    
+    /**
+     * @param id The id of a symbol
+     * @return The name of the symbol
+     * @throws IndexOutOfBoundsException Thrown if no symbol has the given id
+     */
+    public String nameOf(int id) {
+        return names.get(id);
+    }
+    
+    /**
+     * @param id The id of a symbol
+     * @return Whether or not the symbol is the target of a language rule
+     */
+    public boolean isNonterminal(int id) {
+        return nonterminals.get(id);
+    }
+    
+    /**
+     * @return The number of symbols in this table; one greater than the
+     * largest id
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Write every symbol, in id order, in the format read by
+     * {@link SymbolTable#read(ByteBuffer)}
+     * @param out The stream to write to
+     * @throws IOException Thrown if the stream can't be written to
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(names.size());
+        for(int i = 0; i < names.size(); i += 1) {
+            BinaryIO.writeString(out, names.get(i));
+            out.writeBoolean(nonterminals.get(i));
+        }
+    }
+    
+    /**
+     * @param in A buffer positioned at a table written by
+     * {@link SymbolTable#write(DataOutputStream)}
+     * @return A table with the same ids as the one that was written
+     */
+    public static SymbolTable read(ByteBuffer in) {
+        SymbolTable table = new SymbolTable();
+        int size = in.getInt();
+        for(int i = 0; i < size; i += 1) {
+            String name = BinaryIO.readString(in);
+            if(in.get() != 0) {
+                table.internNonterminal(name);
+            } else {
+                table.intern(name);
+            }
+        }
+        return table;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < names.size(); i += 1) {
+            sb.append(i);
+            sb.append(nonterminals.get(i) ? " N " : " T ");
+            sb.append(names.get(i));
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.utils.io;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads and writes the primitive building blocks of Moka's binary files.
+ * Values are written with a DataOutputStream and read back from a ByteBuffer,
+ * usually one mapped straight from the file, so both sides use big-endian
+ * byte order. Strings are written as their length followed by their UTF-16
+ * characters, and int arrays as their length followed by their elements, so
+ * that both can be read back in bulk.
+ * @author Louis Capitanchik
+ */
+public class BinaryIO {
+    
+    public static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+    
+    /**
+     * @param in The buffer to read from
+     * @return A String written by {@link BinaryIO#writeString}
+     * @throws BufferUnderflowException Thrown if the buffer ends before the
+     * String does
+     */
+    public static String readString(ByteBuffer in) {
+        char[] chars = new char[readLength(in, 2)];
+        in.asCharBuffer().get(chars);
+        in.position(in.position() + chars.length * 2);
+        return new String(chars);
+    }
+    
+    public static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for(int v : values) {
+            out.writeInt(v);
+        }
+    }
+    
+    /**
+     * @param in The buffer to read from
+     * @return An array written by {@link BinaryIO#writeInts}
+     * @throws BufferUnderflowException Thrown if the buffer ends before the
+     * array does
+     */
+    public static int[] readInts(ByteBuffer in) {
+        int[] values = new int[readLength(in, 4)];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * 4);
+        return values;
+    }
+    
+    /**
+     * Read a length, checking that the buffer holds that many elements so that
+     * a corrupt file can't cause a huge allocation
+     */
+    private static int readLength(ByteBuffer in, int elementSize) {
+        int length = in.getInt();
+        if(length < 0 || (long) length * elementSize > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.utils.io;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+
+/**
+ * A CharSequence over a Reader that is only ever partially held in memory.
+ * Characters are indexed by their absolute position in the input, so a
+ * {@link java.util.regex.Matcher} or automaton can be run over the window as
+ * if it were the whole input. Characters are read from the Reader when
+ * {@link CharWindow#fill(long)} asks for them, and characters before the index
+ * given to {@link CharWindow#release(int)} may be discarded to make room.
+ * <br><br>
+ * {@link CharWindow#length()} reports the number of characters read so far,
+ * rather than the length of the whole input, which is unknown until the
+ * Reader is exhausted.
+ * <br><br>
+ * Like any CharSequence, a window indexes at most {@link Integer#MAX_VALUE}
+ * characters. The bytes of a source may be mapped past 2GB, but an input that
+ * decodes to more characters than that is refused rather than wrapping to
+ * negative indexes.
+ * @author Louis Capitanchik
+ */
+public class CharWindow implements CharSequence {
+    
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    
+    private final Reader reader;
+    private char[] buffer;
+    private int offset, count, released;
+    private boolean exhausted;
+    
+    public CharWindow(Reader reader) {
+        this(reader, DEFAULT_CAPACITY);
+    }
+    
+    public CharWindow(Reader reader, int initialCapacity) {
+        this.reader = reader;
+        this.buffer = new char[Math.max(initialCapacity, 16)];
+        this.offset = 0;
+        this.count = 0;
+        this.released = 0;
+        this.exhausted = false;
+    }
+    
+    /**
+     * Read from the underlying Reader until the character at the given
+     * absolute index is available, or the Reader runs out
+     * @param end The absolute index (exclusive) up to which characters should
+     * be available. An index past {@link Integer#MAX_VALUE} is never
+     * available, but asking for one reads to the end of the input
+     * @return True if every character before {@code end} is now available,
+     * false if the input finished first
+     * @throws UncheckedIOException Thrown if the Reader fails, or has more
+     * than {@link Integer#MAX_VALUE} characters
+     */
+    public boolean fill(long end) {
+        try {
+            while(!exhausted && length() < end) {
+                if(count == buffer.length) {
+                    makeRoom();
+                }
+                int room = Math.min(buffer.length - count, Integer.MAX_VALUE - length());
+                if(room == 0) {
+                    if(reader.read() == -1) {
+                        exhausted = true;
+                        reader.close();
+                        break;
+                    }
+                    throw new IOException("Input is longer than " + Integer.MAX_VALUE + " characters");
+                }
+                int read = reader.read(buffer, count, room);
+                if(read == -1) {
+                    exhausted = true;
+                    reader.close();
+                } else {
+                    count += read;
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return length() >= end;
+    }
+    
+    /**
+     * Signal that characters before the given absolute index will not be read
+     * again, so they can be dropped the next time the window needs room
+     * @param index The absolute index of the first character still needed
+     */
+    public void release(int index) {
+        released = Math.max(released, Math.min(index, length()));
+    }
+    
+    /**
+     * @return True if the underlying Reader has no more characters, meaning
+     * that {@link CharWindow#length()} is the length of the whole input
+     */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+    
+    /**
+     * @return The absolute index of the earliest character still held in
+     * memory
+     */
+    public int start() {
+        return offset;
+    }
+
+    @Override
+    public int length() {
+        return offset + count;
+    }
+
+    @Override
+    public char charAt(int index) {
+        int relative = index - offset;
+        if(relative < 0 || relative >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + " is outside of the window "
+                    + offset + " to " + length());
+        }
+        return buffer[relative];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if(start < offset || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("Range " + start + " to " + end
+                    + " is outside of the window " + offset + " to " + length());
+        }
+        return new String(buffer, start - offset, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, count);
+    }
+    
+    /**
+     * Drops released characters from the front of the buffer, growing the
+     * buffer if that doesn't free up at least half of it
+     */
+    private void makeRoom() {
+        int drop = released - offset;
+        if(drop < buffer.length / 2) {
+            char[] grown = new char[(int)Math.min(buffer.length * 2L, Integer.MAX_VALUE - 8)];
+            System.arraycopy(buffer, drop, grown, 0, count - drop);
+            buffer = grown;
+        } else {
+            System.arraycopy(buffer, drop, buffer, 0, count - drop);
+        }
+        offset += drop;
+        count -= drop;
+    }
+}
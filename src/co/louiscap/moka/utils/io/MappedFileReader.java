@@ -0,0 +1,123 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.utils.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A Reader that decodes a file through a series of memory mapped segments,
+ * rather than copying it onto the heap. Only one segment is mapped at a time,
+ * so files larger than 2GB can be read, and the decoded characters are only
+ * ever held by whoever is consuming the Reader (typically a
+ * {@link CharWindow}). Malformed input is replaced rather than reported, in
+ * the same way as {@link org.apache.commons.io.FileUtils#readFileToString(File)}
+ * <br><br>
+ * The Reader itself has no limit on the size of a file, but a lexer reads it
+ * through a {@link CharWindow}, which refuses inputs of more than
+ * {@link Integer#MAX_VALUE} characters.
+ * @author Louis Capitanchik
+ */
+public class MappedFileReader extends Reader {
+    
+    public static final long DEFAULT_SEGMENT_SIZE = 1L << 26;
+    
+    private final FileChannel channel;
+    private final CharsetDecoder decoder;
+    private final long size, segmentSize;
+    
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    private boolean lastSegment, flushed;
+    
+    public MappedFileReader(File file, Charset charset) throws IOException {
+        this(file, charset, DEFAULT_SEGMENT_SIZE);
+    }
+    
+    MappedFileReader(File file, Charset charset, long segmentSize) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.segmentSize = Math.max(segmentSize, 16);
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.segmentStart = 0;
+        this.flushed = false;
+        mapSegment(0);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if(len == 0) {
+            return 0;
+        }
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        while(out.hasRemaining() && !flushed) {
+            CoderResult result = decoder.decode(segment, out, lastSegment);
+            if(result.isOverflow()) {
+                break;
+            }
+            if(lastSegment) {
+                if(decoder.flush(out).isOverflow()) {
+                    break;
+                }
+                flushed = true;
+            } else {
+                // Any bytes left over are the start of a character that
+                // continues in the next segment, so map from there
+                mapSegment(segmentStart + segment.position());
+            }
+        }
+        int read = out.position() - off;
+        return read == 0 && flushed ? -1 : read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        segment = null;
+        channel.close();
+    }
+    
+    private void mapSegment(long start) throws IOException {
+        long length = Math.min(segmentSize, size - start);
+        segmentStart = start;
+        segment = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        lastSegment = start + length >= size;
+    }
+}
@@ -65,12 +65,32 @@ public class IntUtils {
      * {@code -1} is returned instead.
      */
     public static int getClosestLowerBoundIndex(int target, int[] bounds) {
-        int c = bounds.length;
-        while((--c) >= 0) {
-            if(bounds[c] <= target) {
-                return c;
+        return getClosestLowerBoundIndex(target, bounds, bounds.length);
+    }
+    
+    /**
+     * Finds the array index of the largest number in the first {@code length}
+     * elements of a sorted array of ints that is less than or equal to the
+     * provided target value, using a binary search
+     * @param target The value that should be used to find the correct lower
+     * bound
+     * @param bounds An array of ints whose first {@code length} elements are
+     * sorted
+     * @param length The number of elements of the array to search
+     * @return The index in the array of the largest int that is not larger
+     * than the provided target value. If none of the numbers in the array are
+     * smaller, {@code -1} is returned instead.
+     */
+    public static int getClosestLowerBoundIndex(int target, int[] bounds, int length) {
+        int low = 0, high = length;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(bounds[mid] <= target) {
+                low = mid + 1;
+            } else {
+                high = mid;
             }
         }
-        return -1;
+        return low - 1;
     }
 }
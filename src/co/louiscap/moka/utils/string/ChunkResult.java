@@ -0,0 +1,104 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.utils.string;
+
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+
+/**
+ * A snapshot of a match made by a {@link StringChunker}. Only the group
+ * offsets are copied out of the matcher; group contents are read from the
+ * original source on request, so no part of the source is copied unless it is
+ * actually asked for.
+ * @author Louis Capitanchik
+ */
+class ChunkResult implements MatchResult {
+    
+    private final CharSequence source;
+    private final int[] offsets;
+    
+    ChunkResult(CharSequence source, Matcher match) {
+        this.source = source;
+        int groups = match.groupCount();
+        this.offsets = new int[(groups + 1) * 2];
+        for(int g = 0; g <= groups; g += 1) {
+            offsets[g * 2] = match.start(g);
+            offsets[g * 2 + 1] = match.end(g);
+        }
+    }
+
+    @Override
+    public int start() {
+        return start(0);
+    }
+
+    @Override
+    public int start(int group) {
+        checkGroup(group);
+        return offsets[group * 2];
+    }
+
+    @Override
+    public int end() {
+        return end(0);
+    }
+
+    @Override
+    public int end(int group) {
+        checkGroup(group);
+        return offsets[group * 2 + 1];
+    }
+
+    @Override
+    public String group() {
+        return group(0);
+    }
+
+    @Override
+    public String group(int group) {
+        checkGroup(group);
+        int start = offsets[group * 2];
+        if(start == -1) {
+            return null;
+        }
+        return source.subSequence(start, offsets[group * 2 + 1]).toString();
+    }
+
+    @Override
+    public int groupCount() {
+        return offsets.length / 2 - 1;
+    }
+    
+    private void checkGroup(int group) {
+        if(group < 0 || group > groupCount()) {
+            throw new IndexOutOfBoundsException("No group " + group);
+        }
+    }
+}
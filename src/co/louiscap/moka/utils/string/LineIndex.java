@@ -0,0 +1,255 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.utils.string;
+
+import co.louiscap.moka.utils.data.Location;
+import co.louiscap.moka.utils.number.IntUtils;
+import java.util.Arrays;
+
+/**
+ * Records the offset at which each line of a source starts, so that any offset
+ * can be turned into a line and column without rescanning the source. Lines
+ * are broken by {@code \r\n}, {@code \r} or {@code \n}, the same as
+ * {@link StringUtils#linesInString(String)}; the characters of a line break
+ * belong to the line that they end. Lines are numbered from 1 and columns
+ * from 0.
+ * <br><br>
+ * An index can be built over a whole source at once, or extended bit by bit
+ * as a source is read, in which case offsets can be resolved as soon as they
+ * have been scanned. Lookups are a binary search over the line starts; a
+ * {@link LineIndex.Cursor} answers lookups that move forwards through the
+ * source in amortised constant time.
+ * @author Louis Capitanchik
+ */
+public class LineIndex {
+    
+    private int[] lineStarts;
+    /**
+     * The number of the first line in this index, less one
+     */
+    private final int base;
+    private int lines;
+    private int scanned;
+    private boolean pendingReturn;
+    
+    /**
+     * Create an empty index whose first line starts at the given offset.
+     * Characters must be scanned with {@link LineIndex#extend} before the
+     * offsets they cover can be resolved
+     * @param origin The offset of the start of the first line
+     */
+    public LineIndex(int origin) {
+        this(origin, 1);
+    }
+    
+    /**
+     * Create an empty index of part of a source, starting from a line whose
+     * number is already known
+     * @param origin The offset of the start of the first line
+     * @param line The 1-based number of the line that starts at the origin
+     */
+    public LineIndex(int origin, int line) {
+        this.base = line - 1;
+        this.lineStarts = new int[16];
+        this.lineStarts[0] = origin;
+        this.lines = 1;
+        this.scanned = origin;
+        this.pendingReturn = false;
+    }
+    
+    /**
+     * Create an index covering the whole of a source, in a single pass
+     * @param src The source to index
+     */
+    public LineIndex(CharSequence src) {
+        this(0);
+        extend(src, src.length());
+    }
+    
+    /**
+     * Scan a source up to the given offset, recording any line breaks that
+     * haven't been seen before
+     * @param src The source that this index covers
+     * @param end The offset to scan up to, exclusive
+     */
+    public void extend(CharSequence src, int end) {
+        for(; scanned < end; scanned += 1) {
+            char c = src.charAt(scanned);
+            if(pendingReturn) {
+                pendingReturn = false;
+                if(c == '\n') {
+                    addLine(scanned + 1);
+                    continue;
+                }
+                addLine(scanned);
+            }
+            if(c == '\r') {
+                // Can't tell whether this is \r or \r\n until the next char
+                pendingReturn = true;
+            } else if(c == '\n') {
+                addLine(scanned + 1);
+            }
+        }
+    }
+    
+    /**
+     * @return The offset up to which the source has been scanned
+     */
+    public int getScanned() {
+        return scanned;
+    }
+    
+    /**
+     * @return The number of lines that have been found so far
+     */
+    public int lineCount() {
+        return base + lines + (pendingReturn ? 1 : 0);
+    }
+    
+    /**
+     * @param offset An offset that has been scanned, or the offset just past
+     * the end of the scanned characters
+     * @return The 1-based line that the offset is on
+     */
+    public int lineOf(int offset) {
+        return base + indexOf(offset);
+    }
+    
+    /**
+     * @param offset An offset that has been scanned, or the offset just past
+     * the end of the scanned characters
+     * @return The 0-based column of the offset within its line
+     */
+    public int columnOf(int offset) {
+        return offset - lineStart(lineOf(offset));
+    }
+    
+    /**
+     * @param line A 1-based line number
+     * @return The offset that the line starts at
+     */
+    public int lineStart(int line) {
+        int index = line - base;
+        if(index == lines + 1 && pendingReturn) {
+            return scanned;
+        }
+        if(index < 1 || index > lines) {
+            throw new IndexOutOfBoundsException("Line " + line + " of " + lineCount());
+        }
+        return lineStarts[index - 1];
+    }
+    
+    /**
+     * @param name The name of the source
+     * @param offset An offset that has been scanned
+     * @return A new Location for the offset
+     */
+    public Location locate(String name, int offset) {
+        int line = lineOf(offset);
+        return new Location(name, line, offset - lineStart(line));
+    }
+    
+    /**
+     * @return A new cursor, positioned on the first line
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+    
+    /**
+     * @return The 1-based position of the offset's line within this index
+     */
+    private int indexOf(int offset) {
+        if(pendingReturn && offset >= scanned) {
+            return lines + 1;
+        }
+        return IntUtils.getClosestLowerBoundIndex(offset, lineStarts, lines) + 1;
+    }
+    
+    private void addLine(int start) {
+        if(lines == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, lines * 2);
+        }
+        lineStarts[lines] = start;
+        lines += 1;
+    }
+    
+    /**
+     * Resolves offsets relative to the line of the previous lookup, so that a
+     * sequence of lookups that only move forwards costs constant time each on
+     * average. Moving backwards, or jumping a long way forwards, falls back to
+     * a binary search. Each Cursor holds its own position, so separate threads
+     * can read the same index through separate cursors.
+     */
+    public class Cursor {
+        
+        /**
+         * How many lines a lookup will step through before it falls back to a
+         * binary search
+         */
+        private static final int MAX_STEPS = 8;
+        
+        private int line = 1;
+        
+        /**
+         * @param offset An offset that has been scanned, or the offset just
+         * past the end of the scanned characters
+         * @return The 1-based line that the offset is on
+         */
+        public int lineOf(int offset) {
+            if(line > lines || offset < lineStarts[line - 1]) {
+                line = indexOf(offset);
+                return base + line;
+            }
+            int steps = 0;
+            while(line < lines && lineStarts[line] <= offset) {
+                line += 1;
+                steps += 1;
+                if(steps == MAX_STEPS) {
+                    line = indexOf(offset);
+                    return base + line;
+                }
+            }
+            if(line == lines && pendingReturn && offset >= scanned) {
+                return base + lines + 1;
+            }
+            return base + line;
+        }
+        
+        /**
+         * @param offset An offset that has been scanned, or the offset just
+         * past the end of the scanned characters
+         * @return The 0-based column of the offset within its line
+         */
+        public int columnOf(int offset) {
+            return offset - lineStart(lineOf(offset));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.utils.string;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+
+/**
+ * An immutable piece of text made by joining two others, without copying
+ * either of them. Building a long text by repeatedly joining fragments, as a
+ * translator does up a parse tree, copies every fragment once per join when
+ * done with Strings, but only once in total when done with Ropes and written
+ * out with {@link #write(CharSequence, Writer)}. The fragments themselves
+ * stay in memory for as long as the Rope does, but are written out one by
+ * one rather than copied into a single String first.
+ * <br><br>
+ * Like any CharSequence, a Rope is at most {@link Integer#MAX_VALUE}
+ * characters long; joining texts that would make a longer one is refused.
+ * <br><br>
+ * Joins of short texts are cheaper to copy than to link, so
+ * {@link #concat(CharSequence, CharSequence)} only makes a Rope when the
+ * result is at least {@link #MIN_LENGTH} characters long.
+ * @author Louis Capitanchik
+ */
+public final class Rope implements CharSequence {
+    
+    /**
+     * The shortest text that is joined as a Rope rather than copied
+     */
+    public static final int MIN_LENGTH = 64;
+    
+    private final CharSequence left, right;
+    private final int length;
+    
+    private Rope(CharSequence left, CharSequence right) {
+        this.left = left;
+        this.right = right;
+        this.length = left.length() + right.length();
+    }
+    
+    /**
+     * @param left The start of the text
+     * @param right The end of the text
+     * @return The two texts joined together; a Rope, unless the result is
+     * shorter than {@link #MIN_LENGTH} or either text is empty
+     * @throws IllegalArgumentException Thrown if the joined text would be
+     * longer than {@link Integer#MAX_VALUE} characters
+     */
+    public static CharSequence concat(CharSequence left, CharSequence right) {
+        if(left.length() == 0) {
+            return right;
+        }
+        if(right.length() == 0) {
+            return left;
+        }
+        long length = (long)left.length() + right.length();
+        if(length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Joined text would be " + length + " characters long, more than "
+                    + Integer.MAX_VALUE);
+        }
+        if(length < MIN_LENGTH) {
+            return new StringBuilder((int)length).append(left).append(right).toString();
+        }
+        return new Rope(left, right);
+    }
+    
+    /**
+     * Write out a text, a piece at a time if it is a Rope
+     * @param text The text to write
+     * @param out Where to write it
+     * @throws IOException Thrown if the writer fails
+     */
+    public static void write(CharSequence text, Writer out) throws IOException {
+        // Ropes nest as deeply as the trees that build them, so the pieces
+        // are visited with an explicit stack
+        ArrayDeque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(text);
+        while(!pending.isEmpty()) {
+            CharSequence next = pending.pop();
+            if(next instanceof Rope) {
+                Rope rope = (Rope)next;
+                pending.push(rope.right);
+                pending.push(rope.left);
+            } else {
+                out.append(next);
+            }
+        }
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if(index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + length);
+        }
+        CharSequence at = this;
+        while(at instanceof Rope) {
+            Rope rope = (Rope)at;
+            if(index < rope.left.length()) {
+                at = rope.left;
+            } else {
+                index -= rope.left.length();
+                at = rope.right;
+            }
+        }
+        return at.charAt(index);
+    }
+
+    /**
+     * Copies the requested part of the text
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    /**
+     * Copies the whole text into a single String
+     */
+    @Override
+    public String toString() {
+        StringWriter out = new StringWriter(length);
+        try {
+            write(this, out);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return out.toString();
+    }
+}
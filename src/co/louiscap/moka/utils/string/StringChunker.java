@@ -29,29 +29,35 @@
  */
 package co.louiscap.moka.utils.string;
 
+import java.util.IdentityHashMap;
 import java.util.Objects;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * A class for stepping through a string and returning certain elements ("chunks") of it
+ * A class for stepping through a string and returning certain elements ("chunks") of it. The
+ * source is never copied; regular expressions are run over a region of the original sequence,
+ * using one reusable {@link Matcher} per pattern, so chunking through a source is linear in its
+ * length rather than quadratic.
  * @author Louis Capitanchik &lt;contact@louiscap.co&gt;
  */
 public class StringChunker {
     
-    private int position, sourceLength;
-    private String source;
+    private int position;
+    private CharSequence source;
+    private final IdentityHashMap<Pattern, Matcher> matchers;
     
     /**
      * Create a new instance of StringChunker with the target string as the source for future
      * operations
-     * @param source The string that will be split in to chunks
+     * @param source The string that will be split in to chunks. Any CharSequence may be used, such
+     * as a {@link java.nio.CharBuffer} over a larger input, without it being copied
      */
-    public StringChunker(String source) {
+    public StringChunker(CharSequence source) {
         this.source = source;
-        this.sourceLength = source.length();
         this.position = 0;
+        this.matchers = new IdentityHashMap<>();
     }
     
     /**
@@ -77,10 +83,10 @@ public class StringChunker {
      * if it was newly instantiated
      * @param newSource The new String to use as the source for future operations
      */
-    public void reset(String newSource) {
+    public void reset(CharSequence newSource) {
         this.source = newSource;
-        this.sourceLength = newSource.length();
         this.position = 0;
+        this.matchers.clear();
     }
     
     /**
@@ -103,8 +109,8 @@ public class StringChunker {
      */
     public void skip(int length) {
         position += length;
-        if(position >= sourceLength) {
-            position = sourceLength - 1;
+        if(position >= source.length()) {
+            position = source.length() - 1;
         }
     }
     
@@ -113,7 +119,7 @@ public class StringChunker {
      * @return Wether or not the StringChunker has reached the end of the current source String
      */
     public boolean hasNext() {
-        return position < (sourceLength);
+        return position < source.length();
     }
     
     /**
@@ -143,27 +149,19 @@ public class StringChunker {
      * position of the chunker until the end of the source String.
      */
     public String getUntil(String needle, boolean includeNeedle) {
-        boolean found = false; // If found isn't included, the needle gets appended to the
-                               // result when it isn't present
         if(needle == null) {
             return tail();
         }
         
-        StringBuilder contents = new StringBuilder();
-        String sub = source.substring(position);
-        
-        while(!(found = sub.startsWith(needle)) && sub.length() > 0) {
-            contents.append(sub.charAt(0));
-            sub = sub.substring(1);
-            position += 1;
-        }
-        
-        if(includeNeedle && found) {
-            contents.append(needle);
-            position += needle.length();
+        int found = StringUtils.indexOf(source, needle, position);
+        int end = found == -1 ? source.length() : found;
+        if(includeNeedle && found != -1) {
+            end += needle.length();
         }
         
-        return contents.toString();
+        String contents = source.subSequence(position, end).toString();
+        position = end;
+        return contents;
     }
     
     /**
@@ -192,8 +190,9 @@ public class StringChunker {
      * position of the chunker until the end of the source String.
      */
     public String peekUntil(String needle, boolean includeNeedle){
+        int start = position;
         String result = getUntil(needle, includeNeedle);
-        reverse(result.length());
+        position = start;
         return result;
     }
     
@@ -207,10 +206,10 @@ public class StringChunker {
      * Otherwise, the remainder of the source String is returned.
      */
     public String getNext(int n) {
-        if(sourceLength - position < n) {
-            n = sourceLength - position;
+        if(source.length() - position < n) {
+            n = source.length() - position;
         }
-        String result = source.substring(position, position + n);
+        String result = source.subSequence(position, position + n).toString();
         position += n;
         return result;
     }
@@ -237,18 +236,26 @@ public class StringChunker {
      * if the match is found after part way through the remainder of the source,
      * the position of the string chunker will skip over content that appears 
      * before).
-     * The matcher object is returned to allow arbitrary processing of the output
+     * The match result is returned to allow arbitrary processing of the output.
+     * The pattern is run over a region of the source starting at the current
+     * position, so {@code ^} anchors to the current position and indexes in the
+     * result are relative to the start of the whole source.
      * @param regex A regular expression that will be used to proceed ahead in
      * the source string based on the position of the match
      * @return If the provided regex matches an element of the remaining string,
-     * a {@link java.util.regex.Matcher} object with the results of the match.
+     * a {@link java.util.regex.MatchResult} object with the results of the match.
      * Othewise, returns {@code null}.
      */
     public MatchResult chunkWith(Pattern regex) {
-        Matcher m = regex.matcher(tail());
+        Matcher m = matchers.get(regex);
+        if(m == null) {
+            m = regex.matcher(source);
+            matchers.put(regex, m);
+        }
+        m.region(position, source.length());
         if(m.find()){
-            this.position += m.end();
-            return m.toMatchResult();
+            this.position = m.end();
+            return new ChunkResult(source, m);
         } else {
             return null;
         }
@@ -259,7 +266,7 @@ public class StringChunker {
      * and updates the position of the StringChunker accordingly
      */
     public void eatWhitespace() {
-        this.chunkWith(Pattern.compile("\\s+"));
+        this.position = StringUtils.skipWhitespace(source, position);
     }
     
     /**
@@ -269,7 +276,7 @@ public class StringChunker {
      * the StringChunker
      */
     public String head(){
-        return source.substring(0, position);
+        return source.subSequence(0, position).toString();
     }
     /**
      * Gets the remaining content of the source String from the current position of the 
@@ -278,7 +285,7 @@ public class StringChunker {
      * the StringChunker until the end of the source String
      */
     public String tail(){
-        return source.substring(position);
+        return source.subSequence(position, source.length()).toString();
     }
     
     /**
@@ -29,7 +29,6 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 package co.louiscap.moka.utils.string;
 
-import java.util.ArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -40,17 +39,72 @@ import java.util.regex.Pattern;
  */
 public class StringUtils {
     private static final Pattern NEWLINE_REGEX = Pattern.compile("(\\r\\n)|(\\n)|(\\r)");
+    /**
+     * Finds the start of every line in a string after the first
+     * @param src The string to search
+     * @return The index just past each line break, in order. Line breaks are
+     * {@code \r\n}, {@code \r} or {@code \n}
+     */
     public static int[] getNewlineIndexes(String src) {
-        ArrayList<Integer> indexes = new ArrayList<>();
-        
-        int cur = 0;
-        
-        while((cur = src.indexOf("\n", cur)+1) - 1 != -1 && !(src.replace("\\s+", "")).isEmpty()) {
-            indexes.add(cur);
+        LineIndex index = new LineIndex(src);
+        int[] indexes = new int[index.lineCount() - 1];
+        for(int i = 0; i < indexes.length; i += 1) {
+            indexes[i] = index.lineStart(i + 2);
         }
-        
-        return indexes.stream().mapToInt(i -> i).toArray();
+        return indexes;
     }
+    /**
+     * Checks whether a character belongs to the {@code \s} character class of
+     * {@link java.util.regex.Pattern}
+     * @param c The character to check
+     * @return True if the character is a space, tab, newline, vertical tab,
+     * form feed or carriage return
+     */
+    public static boolean isWhitespace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+    
+    /**
+     * Finds the end of the run of whitespace starting at the given index
+     * @param src The characters to scan
+     * @param from The index to start scanning from
+     * @return The index of the first non-whitespace character at or after
+     * {@code from}, or the length of the source if there is none
+     */
+    public static int skipWhitespace(CharSequence src, int from) {
+        int length = src.length();
+        while(from < length && isWhitespace(src.charAt(from))) {
+            from += 1;
+        }
+        return from;
+    }
+    
+    /**
+     * Finds the first occurrence of a needle in any CharSequence, without
+     * converting the sequence to a String first
+     * @param haystack The characters to search through
+     * @param needle The sequence of characters to look for
+     * @param from The index from which to start searching
+     * @return The index at which the needle starts, or -1 if it does not appear
+     * at or after {@code from}
+     */
+    public static int indexOf(CharSequence haystack, String needle, int from) {
+        if(haystack instanceof String) {
+            return ((String) haystack).indexOf(needle, from);
+        }
+        int last = haystack.length() - needle.length();
+        for(int i = Math.max(from, 0); i <= last; i += 1) {
+            int n = 0;
+            while(n < needle.length() && haystack.charAt(i + n) == needle.charAt(n)) {
+                n += 1;
+            }
+            if(n == needle.length()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
     public static int linesInString(String s) {
         Matcher m = NEWLINE_REGEX.matcher(s);
         int lines = 1;
@@ -0,0 +1,98 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.utils.string;
+
+/**
+ * A single change to a piece of text: some number of characters removed from
+ * an offset, and a string inserted in their place. Used to update the tokens
+ * and parse tree of a source that has been edited, rather than lexing and
+ * parsing it again from scratch.
+ * @author Louis Capitanchik
+ */
+public class TextEdit {
+    
+    /**
+     * The offset in the old text that the edit starts at
+     */
+    public final int offset;
+    /**
+     * The number of characters of the old text that were removed
+     */
+    public final int removed;
+    /**
+     * The text that was inserted at the offset
+     */
+    public final String inserted;
+    
+    public TextEdit(int offset, int removed, String inserted) {
+        if(offset < 0 || removed < 0) {
+            throw new IllegalArgumentException("Invalid edit of " + removed + " characters at " + offset);
+        }
+        this.offset = offset;
+        this.removed = removed;
+        this.inserted = inserted == null ? "" : inserted;
+    }
+    
+    /**
+     * @param text The text before the edit
+     * @return The text after the edit
+     * @throws IndexOutOfBoundsException Thrown if the edit reaches past the
+     * end of the text
+     */
+    public String apply(CharSequence text) {
+        if(offset + removed > text.length()) {
+            throw new IndexOutOfBoundsException("Edit ends at " + (offset + removed) + " of " + text.length());
+        }
+        return new StringBuilder(text.length() + delta())
+                .append(text, 0, offset)
+                .append(inserted)
+                .append(text, offset + removed, text.length())
+                .toString();
+    }
+    
+    /**
+     * @return How much longer the text is after the edit
+     */
+    public int delta() {
+        return inserted.length() - removed;
+    }
+    
+    /**
+     * @return The offset in the new text just after the inserted text
+     */
+    public int insertedEnd() {
+        return offset + inserted.length();
+    }
+    
+    @Override
+    public String toString() {
+        return "-" + removed + "+\"" + inserted + "\"@" + offset;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class DispatchTableTest {
+    
+    public DispatchTableTest() {
+    }
+
+    /**
+     * Test of candidates method, of class DispatchTable.
+     */
+    @Test
+    public void testCandidates() {
+        System.out.println("candidates");
+        LexRule[] rules = new LexRule[]{
+            new LexRule(5, "T_ANNOUNCE", "VERILY"),
+            new LexRule(5, "T_EOL", "#"),
+            new LexRule(10, "T_IDENT", "([A-Za-z]\\w*)"),
+            new LexRule(15, "T_STRING", "\"((?:.(?!\"))*.)\""),
+            new LexRule(20, "T_WORD", "(?=\\w)\\p{L}+"),
+            new LexRule(22, "T_DIGITS", "\\b\\d+"),
+            new LexRule(25, "T_FLAGGED", "(?i)x")
+        };
+        DispatchTable instance = new DispatchTable(rules, new int[]{0, 1, 2, 3, 4, 5, 6});
+        assertArrayEquals(new int[]{1, 4, 6}, instance.candidates('#'));
+        assertArrayEquals(new int[]{0, 2, 4, 6}, instance.candidates('V'));
+        assertArrayEquals(new int[]{3, 4, 6}, instance.candidates('"'));
+        assertArrayEquals(new int[]{4, 5, 6}, instance.candidates('1'));
+        assertArrayEquals(new int[]{4, 6}, instance.candidates('é'));
+        
+        DispatchTable subset = new DispatchTable(rules, new int[]{2, 3});
+        assertArrayEquals(new int[]{2}, subset.candidates('V'));
+        assertArrayEquals(new int[0], subset.candidates('#'));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer;
+
+import java.util.regex.PatternSyntaxException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class LexFileTest {
+    
+    public LexFileTest() {
+    }
+
+    /**
+     * Test of getRules method, of class LexFile.
+     */
+    @Test
+    public void testGetRules() {
+        System.out.println("getRules");
+        LexFile file = new LexFile("test", "5 : T_EOL : #\n10 : T_IDENT : ([A-Za-z]\\w*)");
+        LexRule[] rules = file.getRules();
+        assertEquals(2, rules.length);
+        assertEquals("T_EOL", rules[0].getOutToken());
+        assertEquals("^([A-Za-z]\\w*)", rules[1].getPattern());
+    }
+    
+    /**
+     * A malformed pattern should fail as the file is loaded
+     */
+    @Test(expected = PatternSyntaxException.class)
+    public void testInvalidPattern() {
+        System.out.println("invalidPattern");
+        new LexFile("test", "5 : T_EOL : #\n10 : T_BAD : (abc");
+    }
+}
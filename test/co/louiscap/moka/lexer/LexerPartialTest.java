@@ -0,0 +1,197 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer;
+
+import co.louiscap.moka.exceptions.InvalidFormatException;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class LexerPartialTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    public static final LexRule[] RULES = {
+        new LexRule(5, "T_ANNOUNCE", "VERILY"),
+        new LexRule(5, "T_CONCAT", "\\+"),
+        new LexRule(5, "T_EOL", "#"),
+        new LexRule(10, "T_IDENT", "([A-Za-z]\\w*)"),
+        new LexRule(15, "T_STRING", "\"((?:.(?!\"))*.)\"")
+    };
+    
+    public static final String PROGRAM = "VERILY \"Hello \" + name#\r\nVERILY name#";
+    
+    public LexerPartialTest() {
+    }
+
+    /**
+     * A lexer loaded from a partial should produce exactly the same tokens as
+     * the lexer that was saved, with either engine
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        System.out.println("roundTrip");
+        for(Lexer.Engine engine : Lexer.Engine.values()) {
+            Lexer lexer = new Lexer(RULES);
+            lexer.setStripWhitespace(true);
+            lexer.setEngine(engine);
+            lexer.setSyncPattern("#");
+            File file = folder.newFile();
+            new LexerPartial("Announcejs", lexer).write(file);
+            
+            LexerPartial result = LexerPartial.read(file);
+            assertEquals("Announcejs", result.getModuleID());
+            Lexer loaded = result.getLexer();
+            assertEquals(engine, loaded.getEngine());
+            assertEquals("#", loaded.getSyncPattern());
+            assertTrue(loaded.isStripWhitespace());
+            assertEquals(lexer.getSymbols().toString(), loaded.getSymbols().toString());
+            assertArrayEquals(lexer.process(PROGRAM, "prog.ajs"), loaded.process(PROGRAM, "prog.ajs"));
+        }
+    }
+    
+    /**
+     * Test of read method, of class LexerPartial, with files that aren't
+     * partials of the current version
+     */
+    @Test
+    public void testReadInvalid() throws Exception {
+        System.out.println("readInvalid");
+        File file = folder.newFile();
+        new LexerPartial("Announcejs", new Lexer(RULES)).write(file);
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(4);
+            raf.writeInt(LexerPartial.VERSION + 1);
+        }
+        try {
+            LexerPartial.read(file);
+            fail("Expected a version mismatch");
+        } catch (InvalidFormatException ex) {
+            assertTrue(ex.getMessage().contains("version"));
+        }
+        try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(40);
+            raf.seek(4);
+            raf.writeInt(LexerPartial.VERSION);
+        }
+        try {
+            LexerPartial.read(file);
+            fail("Expected a truncated partial");
+        } catch (InvalidFormatException ex) {
+            assertTrue(ex.getMessage().contains("truncated"));
+        }
+        try {
+            LexerPartial.read(folder.newFile());
+            fail("Expected an empty file to be rejected");
+        } catch (InvalidFormatException ex) {
+            assertTrue(ex.getMessage().contains("Not a Moka lexer partial"));
+        }
+    }
+    
+    /**
+     * A partial holding a malformed pattern should be rejected as it is
+     * read, not when the pattern is first used
+     */
+    @Test
+    public void testReadInvalidPattern() throws Exception {
+        System.out.println("readInvalidPattern");
+        File file = folder.newFile();
+        new LexerPartial("Announcejs", new Lexer(RULES)).write(file);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        // Strings are written as UTF-16 chars
+        byte[] pattern = "^VERILY".getBytes(StandardCharsets.UTF_16BE);
+        int at = -1;
+        for(int i = 0; at < 0 && i + pattern.length <= bytes.length; i += 1) {
+            if(Arrays.equals(pattern, Arrays.copyOfRange(bytes, i, i + pattern.length))) {
+                at = i;
+            }
+        }
+        assertTrue(at >= 0);
+        bytes[at + 3 * 2 + 1] = '(';
+        Files.write(file.toPath(), bytes);
+        try {
+            LexerPartial.read(file);
+            fail("Expected the malformed pattern to be rejected");
+        } catch (InvalidFormatException ex) {
+            assertTrue(ex.getMessage().contains("invalid pattern ^VE(ILY"));
+        }
+    }
+    
+    /**
+     * A partial whose automaton doesn't form a valid automaton should be
+     * rejected as it is read, rather than failing while lexing
+     */
+    @Test
+    public void testReadCorruptAutomaton() throws Exception {
+        System.out.println("readCorruptAutomaton");
+        Lexer lexer = new Lexer(RULES);
+        lexer.setEngine(Lexer.Engine.DFA);
+        File file = folder.newFile();
+        new LexerPartial("Announcejs", lexer).write(file);
+        ByteArrayOutputStream section = new ByteArrayOutputStream();
+        lexer.getAutomaton().write(new DataOutputStream(section));
+        byte[] automaton = section.toByteArray();
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        int at = -1;
+        for(int i = 0; at < 0 && i + automaton.length <= bytes.length; i += 1) {
+            if(Arrays.equals(automaton, Arrays.copyOfRange(bytes, i, i + automaton.length))) {
+                at = i;
+            }
+        }
+        assertTrue(at >= 0);
+        int classStarts = ByteBuffer.wrap(bytes, at, 4).getInt();
+        // The first transition, and then the last accepting value
+        int[] offsets = {at + 4 * (classStarts + 2), at + automaton.length - 4};
+        for(int offset : offsets) {
+            byte[] corrupt = bytes.clone();
+            ByteBuffer.wrap(corrupt, offset, 4).putInt(RULES.length + 1000);
+            Files.write(file.toPath(), corrupt);
+            try {
+                LexerPartial.read(file);
+                fail("Expected the corrupt automaton to be rejected");
+            } catch (InvalidFormatException ex) {
+                assertTrue(ex.getMessage().contains("corrupt"));
+            }
+        }
+    }
+}
@@ -29,7 +29,9 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 package co.louiscap.moka.lexer;
 
+import co.louiscap.moka.exceptions.LanguageSyntaxException;
 import co.louiscap.moka.utils.data.Location;
+import co.louiscap.moka.utils.string.TextEdit;
 import org.apache.commons.collections4.bag.TreeBag;
 import org.junit.BeforeClass;
 import static org.junit.Assert.*;
@@ -74,4 +76,134 @@ public class LexerTest {
         assertArrayEquals(expResult, result);
     }
     
+    /**
+     * Test of process method using the automaton engine, with a rule that
+     * has to fall back to its regular expression
+     */
+    @Test
+    public void testProcessAutomaton() throws Exception {
+        System.out.println("Process (DFA):");
+        String src = "VERILY \"Hello \" + VERILYname!";
+        String name = "file.aff";
+        LexRule[] rules = {
+            new LexRule(1, "T_EOL", "!"),
+            new LexRule(5, "T_ANNOUNCE", "VERILY"),
+            new LexRule(5, "T_CONCAT", "\\+"),
+            new LexRule(10, "T_IDENT", "([A-Za-z]\\w*)"),
+            new LexRule(15, "T_STRING", "\"((?:.(?!\"))*.)\"")
+        };
+        Lexer instance = new Lexer(rules);
+        instance.setStripWhitespace(true);
+        instance.setEngine(Lexer.Engine.DFA);
+        Token[] expResult = {
+            new Token("T_ANNOUNCE", "VERILY", new Location(name, 1, 0)),
+            new Token("T_STRING", "Hello ", new Location(name, 1, 7)),
+            new Token("T_CONCAT", "+", new Location(name, 1, 16)),
+            new Token("T_IDENT", "VERILYname", new Location(name, 1, 18)),
+            new Token("T_EOL", "!", new Location(name, 1, 28)),
+        };
+        Token[] result = instance.process(src, name);
+        assertArrayEquals(expResult, result);
+    }
+    
+    /**
+     * The automaton engine should lex characters outside of the Basic
+     * Multilingual Plane exactly as the regex engine does
+     */
+    @Test
+    public void testProcessAutomatonSupplementary() throws Exception {
+        System.out.println("Process (DFA, supplementary characters):");
+        String src = "VERILY \"\uD83D\uDE00 \uD83C\uDF89\"!\uD83D\uDC4D";
+        String name = "file.aff";
+        LexRule[] rules = {
+            new LexRule(1, "T_EOL", "!"),
+            new LexRule(5, "T_ANNOUNCE", "VERILY"),
+            new LexRule(10, "T_STRING", "\"([^\"]*)\""),
+            new LexRule(15, "T_OTHER", "[^\\s\\w]")
+        };
+        Lexer regex = new Lexer(rules);
+        regex.setStripWhitespace(true);
+        Lexer automaton = new Lexer(rules);
+        automaton.setStripWhitespace(true);
+        automaton.setEngine(Lexer.Engine.DFA);
+        Token[] expResult = regex.process(src, name);
+        assertEquals(4, expResult.length);
+        assertEquals("\uD83D\uDC4D", expResult[3].content);
+        assertArrayEquals(expResult, automaton.process(src, name));
+    }
+    
+    /**
+     * Test of processParallel method, of class Lexer. String literals contain
+     * the synchronisation character, so some chunks start in the wrong place
+     * and have to be lexed again sequentially
+     */
+    @Test
+    public void testProcessParallel() throws Exception {
+        System.out.println("Process (parallel):");
+        LexRule[] rules = {
+            new LexRule(1, "T_EOL", "!"),
+            new LexRule(5, "T_ANNOUNCE", "VERILY"),
+            new LexRule(10, "T_IDENT", "([A-Za-z]\\w*)"),
+            new LexRule(15, "T_STRING", "\"((?:.(?!\"))*.)\"")
+        };
+        StringBuilder sb = new StringBuilder("\n ");
+        for(int i = 0; i < 500; i += 1) {
+            sb.append("VERILY \"Hello! name\" name").append(i).append("!\n");
+            sb.append(i % 3 == 0 ? "VERILY x!\r" : "VERILY x!\r\n");
+        }
+        String src = sb.toString();
+        Lexer instance = new Lexer(rules);
+        instance.setStripWhitespace(true);
+        instance.setSyncPattern("!");
+        instance.setChunkSize(100);
+        Token[] expResult = instance.process(src, "file.aff");
+        Token[] result = instance.processParallel(src, "file.aff").toArray();
+        assertEquals(3500, expResult.length);
+        assertArrayEquals(expResult, result);
+        
+        try {
+            instance.processParallel(src + "VERILY ?!", "file.aff");
+            fail("Expected a syntax error");
+        } catch (LanguageSyntaxException ex) {
+            assertEquals(1001, ex.loc.line);
+        }
+    }
+    
+    /**
+     * Test of relex method, of class Lexer. Relexing after each edit should
+     * give the same tokens as lexing the edited source from scratch, while
+     * only lexing again the tokens around the edit
+     */
+    @Test
+    public void testRelex() throws Exception {
+        System.out.println("relex");
+        LexRule[] rules = {
+            new LexRule(1, "T_EOL", "!"),
+            new LexRule(5, "T_ANNOUNCE", "VERILY"),
+            new LexRule(10, "T_IDENT", "([A-Za-z]\\w*)"),
+            new LexRule(15, "T_STRING", "\"((?:.(?!\"))*.)\"")
+        };
+        Lexer instance = new Lexer(rules);
+        instance.setStripWhitespace(true);
+        String src = "\n VERILY name!\r\nVERILY \"Hello\"!\nVERILY x!";
+        TokenBuffer tokens = instance.stream(src, "file.aff").toBuffer();
+        TextEdit[] edits = {
+            new TextEdit(13, 0, "s"),
+            new TextEdit(15, 0, "\nVERILY y!"),
+            new TextEdit(33, 7, "\"Hi!\" \"!"),
+            new TextEdit(0, 2, ""),
+            new TextEdit(11, 0, "\r")
+        };
+        // The first token, and any leading whitespace, can only be relexed
+        // along with the rest of the source
+        int[][] changed = {{1, 2, 1}, {3, 6, 0}, {7, 9, 1}, {0, 13, 13}, {1, 3, 1}};
+        for(int e = 0; e < edits.length; e += 1) {
+            src = edits[e].apply(src);
+            tokens = instance.relex(tokens, edits[e]);
+            assertArrayEquals(instance.process(src, "file.aff"), tokens.toArray());
+            TokenEdit edit = tokens.getEdit();
+            assertArrayEquals(changed[e], new int[]{edit.start, edit.end, edit.replaced});
+        }
+    }
+    
 }
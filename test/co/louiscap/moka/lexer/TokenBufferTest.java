@@ -0,0 +1,104 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer;
+
+import co.louiscap.moka.utils.data.Location;
+import co.louiscap.moka.utils.io.CharWindow;
+import java.io.StringReader;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class TokenBufferTest {
+    
+    public static LexRule[] rules;
+    public static String program;
+    
+    public TokenBufferTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+        rules = new LexRule[]{
+            new LexRule(5, "T_KEYWORD", "VERILY"),
+            new LexRule(5, "T_KEYWORD", "RIGHTLY"),
+            new LexRule(5, "T_EOL", "#"),
+            new LexRule(10, "T_IDENT", "([A-Za-z]\\w*)")
+        };
+        program = "RIGHTLY name#\n  VERILY other#";
+    }
+
+    /**
+     * Test of the primitive accessors, of class TokenBuffer.
+     */
+    @Test
+    public void testAccessors() throws Exception {
+        System.out.println("accessors");
+        Lexer lexer = new Lexer(rules);
+        lexer.setStripWhitespace(true);
+        TokenBuffer buffer = lexer.stream(program, "prog.ajs").toBuffer();
+        assertEquals(6, buffer.size());
+        assertSame(program, buffer.getText());
+        assertEquals(buffer.type(0), buffer.type(3));
+        assertEquals(buffer.typeId("T_KEYWORD"), buffer.type(0));
+        assertEquals(-1, buffer.typeId("T_STRING"));
+        assertEquals("T_IDENT", buffer.typeName(4));
+        assertTrue(buffer.contentEquals(4, "other"));
+        assertFalse(buffer.contentEquals(4, "othe"));
+        assertEquals(23, buffer.contentStart(4));
+        assertEquals(28, buffer.contentEnd(4));
+        assertEquals(2, buffer.line(3));
+        assertEquals(2, buffer.column(3));
+        assertEquals(new Location("prog.ajs", 2, 2), buffer.location(3));
+    }
+    
+    /**
+     * Materialized tokens should be identical to those produced by process,
+     * whether or not the buffer owns its text
+     */
+    @Test
+    public void testGet() throws Exception {
+        System.out.println("get");
+        Lexer lexer = new Lexer(rules);
+        lexer.setStripWhitespace(true);
+        Token[] expResult = lexer.process(program, "prog.ajs");
+        TokenBuffer buffer = lexer.stream(new CharWindow(new StringReader(program), 4), "prog.ajs").toBuffer();
+        assertEquals("RIGHTLYname#VERILYother#", buffer.getText().toString());
+        assertArrayEquals(expResult, buffer.toArray());
+        int i = 0;
+        for(Token t : buffer) {
+            assertEquals(expResult[i], t);
+            i += 1;
+        }
+    }
+}
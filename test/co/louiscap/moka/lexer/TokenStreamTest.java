@@ -0,0 +1,118 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer;
+
+import co.louiscap.moka.exceptions.UncheckedSyntaxException;
+import co.louiscap.moka.utils.io.CharWindow;
+import java.io.StringReader;
+import java.util.Iterator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class TokenStreamTest {
+    
+    public static LexRule[] rules;
+    public static String program;
+    
+    public TokenStreamTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+        rules = new LexRule[]{
+            new LexRule(5, "T_ANNOUNCE", "VERILY"),
+            new LexRule(5, "T_READ", "RIGHTLY"),
+            new LexRule(5, "T_CONCAT", "\\+"),
+            new LexRule(5, "T_EOL", "#"),
+            new LexRule(10, "T_IDENT", "([A-Za-z]\\w*)"),
+            new LexRule(15, "T_STRING", "\"((?:.(?!\"))*.)\"")
+        };
+        StringBuilder sb = new StringBuilder("\n  ");
+        for(int i = 0; i < 200; i += 1) {
+            sb.append("RIGHTLY name").append(i).append("#\n");
+            sb.append("VERILY \"Hello, a rather long string literal \" + name").append(i).append("#\r\n");
+        }
+        program = sb.append("  \n").toString();
+    }
+
+    /**
+     * Reading through a window much smaller than the source should produce
+     * exactly the same tokens as lexing the whole source in one go
+     */
+    @Test
+    public void testReaderMatchesProcess() throws Exception {
+        System.out.println("readerMatchesProcess");
+        for(Lexer.Engine engine : Lexer.Engine.values()) {
+            Lexer lexer = new Lexer(rules);
+            lexer.setStripWhitespace(true);
+            lexer.setEngine(engine);
+            Token[] expResult = lexer.process(program, "prog.ajs");
+            TokenStream stream = lexer.stream(new CharWindow(new StringReader(program), 16), "prog.ajs");
+            assertArrayEquals(expResult, stream.toArray());
+            assertEquals(1600, expResult.length);
+        }
+    }
+    
+    @Test
+    public void testStream() throws Exception {
+        System.out.println("stream");
+        Lexer lexer = new Lexer(rules);
+        lexer.setStripWhitespace(true);
+        long idents = lexer.stream(new StringReader(program), "prog.ajs").stream()
+                .filter(t -> t.ident.equals("T_IDENT"))
+                .count();
+        assertEquals(400, idents);
+    }
+    
+    /**
+     * Errors should only be raised once the offending token is reached
+     */
+    @Test
+    public void testLazyError() {
+        System.out.println("lazyError");
+        Lexer lexer = new Lexer(rules);
+        lexer.setStripWhitespace(true);
+        Iterator<Token> tokens = lexer.stream("RIGHTLY name# ?", "bad.ajs");
+        assertEquals("T_READ", tokens.next().ident);
+        assertEquals("T_IDENT", tokens.next().ident);
+        assertEquals("T_EOL", tokens.next().ident);
+        try {
+            tokens.next();
+            fail("Expected a syntax error");
+        } catch (UncheckedSyntaxException ex) {
+            assertEquals(14, ex.getCause().loc.column);
+        }
+    }
+    
+}
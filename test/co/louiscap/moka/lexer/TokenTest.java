@@ -0,0 +1,81 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer;
+
+import co.louiscap.moka.utils.data.Location;
+import co.louiscap.moka.utils.data.SymbolTable;
+import java.util.HashSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class TokenTest {
+    
+    public TokenTest() {
+    }
+
+    /**
+     * Test of equals method, of class Token, with tokens typed by different
+     * SymbolTables
+     */
+    @Test
+    public void testEquals() {
+        System.out.println("equals");
+        SymbolTable first = new SymbolTable();
+        first.intern("T_VAR");
+        first.intern("T_IDENT");
+        SymbolTable second = new SymbolTable();
+        second.intern("T_IDENT");
+        second.intern("T_VAR");
+        Location loc = new Location("test", 1, 0);
+        
+        Token ident = new Token(first.idOf("T_IDENT"), "T_IDENT", "x", loc);
+        Token sameIdent = new Token(second.idOf("T_IDENT"), "T_IDENT", "x", loc);
+        Token untyped = new Token("T_IDENT", "x", loc);
+        // Same id as ident, but another symbol
+        Token var = new Token(second.idOf("T_VAR"), "T_VAR", "x", loc);
+        assertEquals(ident.type, var.type);
+        
+        assertEquals(ident, sameIdent);
+        assertEquals(ident, untyped);
+        assertEquals(sameIdent, untyped);
+        assertEquals(ident.hashCode(), sameIdent.hashCode());
+        assertEquals(ident.hashCode(), untyped.hashCode());
+        assertNotEquals(ident, var);
+        
+        HashSet<Token> tokens = new HashSet<>();
+        tokens.add(ident);
+        assertTrue(tokens.contains(sameIdent));
+        assertTrue(tokens.contains(untyped));
+        assertFalse(tokens.contains(var));
+    }
+}
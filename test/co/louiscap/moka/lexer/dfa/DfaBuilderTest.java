@@ -0,0 +1,124 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.lexer.dfa;
+
+import co.louiscap.moka.exceptions.UnsupportedPatternException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class DfaBuilderTest {
+    
+    public DfaBuilderTest() {
+    }
+    
+    private static int endOfMatch(Dfa dfa, String src) {
+        long match = dfa.match(src, 0, src.length());
+        return Dfa.isMatch(match) ? Dfa.endOf(match) : -1;
+    }
+
+    /**
+     * The automaton should always report the longest match, even when a
+     * shorter one is found first
+     */
+    @Test
+    public void testLongestMatch() throws UnsupportedPatternException {
+        System.out.println("longestMatch");
+        DfaBuilder builder = new DfaBuilder();
+        builder.add(0, "^(?:ab|a)(bc)?");
+        Dfa dfa = builder.build();
+        assertEquals(3, endOfMatch(dfa, "abcd"));
+        assertEquals(2, endOfMatch(dfa, "abd"));
+        assertEquals(-1, endOfMatch(dfa, "bcd"));
+    }
+
+    /**
+     * When two patterns match the same length, the lowest accepting value
+     * should win regardless of the order that the patterns were added
+     */
+    @Test
+    public void testPriority() throws UnsupportedPatternException {
+        System.out.println("priority");
+        DfaBuilder builder = new DfaBuilder();
+        builder.add(1, "^([A-Za-z]\\w*)");
+        builder.add(0, "^VERILY");
+        Dfa dfa = builder.build();
+        assertEquals(0, Dfa.acceptOf(dfa.match("VERILY", 0, 6)));
+        assertEquals(1, Dfa.acceptOf(dfa.match("VERILYx", 0, 7)));
+        assertEquals(7, Dfa.endOf(dfa.match("VERILYx", 0, 7)));
+    }
+    
+    @Test
+    public void testClassesAndCounts() throws UnsupportedPatternException {
+        System.out.println("classesAndCounts");
+        DfaBuilder builder = new DfaBuilder();
+        builder.add(0, "^[^\\s\\d]{2,3}\\.?");
+        Dfa dfa = builder.build();
+        assertEquals(-1, endOfMatch(dfa, "a1"));
+        assertEquals(2, endOfMatch(dfa, "ab1"));
+        assertEquals(4, endOfMatch(dfa, "abc."));
+        assertEquals(3, endOfMatch(dfa, "abcd"));
+    }
+    
+    /**
+     * Characters outside of the Basic Multilingual Plane should be matched
+     * as whole surrogate pairs, as java.util.regex does
+     */
+    @Test
+    public void testSupplementaryCharacters() throws UnsupportedPatternException {
+        System.out.println("supplementaryCharacters");
+        DfaBuilder builder = new DfaBuilder();
+        builder.add(0, "^\"[^\"]*\"");
+        builder.add(1, "^.");
+        builder.add(2, "^[\uD83D\uDE00-\uD83D\uDE4F]+");
+        Dfa dfa = builder.build();
+        String quoted = "\"\uD83D\uDE00 \uD800\uDC00\uDBFF\uDFFF\"";
+        assertEquals(quoted.length(), endOfMatch(dfa, quoted));
+        assertEquals(1, Dfa.acceptOf(dfa.match("\uD83D\uDC4D", 0, 2)));
+        assertEquals(2, endOfMatch(dfa, "\uD83D\uDC4D"));
+        assertEquals(2, Dfa.acceptOf(dfa.match("\uD83D\uDE00\uD83D\uDE4F", 0, 4)));
+        assertEquals(4, endOfMatch(dfa, "\uD83D\uDE00\uD83D\uDE4F"));
+        assertEquals(-1, endOfMatch(dfa, "\n"));
+    }
+    
+    @Test(expected = UnsupportedPatternException.class)
+    public void testLookaheadUnsupported() throws UnsupportedPatternException {
+        System.out.println("lookaheadUnsupported");
+        new DfaBuilder().add(0, "^\"((?:.(?!\"))*.)\"");
+    }
+    
+    @Test(expected = UnsupportedPatternException.class)
+    public void testBackreferenceUnsupported() throws UnsupportedPatternException {
+        System.out.println("backreferenceUnsupported");
+        new DfaBuilder().add(0, "^(a)\\1");
+    }
+}
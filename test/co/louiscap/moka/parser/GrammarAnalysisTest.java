@@ -0,0 +1,155 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser;
+
+import co.louiscap.moka.utils.data.SymbolTable;
+import java.util.BitSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class GrammarAnalysisTest {
+    
+    private final SymbolTable symbols = new SymbolTable();
+    
+    public GrammarAnalysisTest() {
+    }
+    
+    private GrammarAnalysis analyse(String... rules) throws Exception {
+        RuleMerger merger = new RuleMerger(symbols);
+        for(String rule : rules) {
+            merger.addRule(new LangRule(rule));
+        }
+        RuleAutomaton[] compiled = merger.getRules().stream()
+                .map(rule -> rule.compile(symbols))
+                .toArray(RuleAutomaton[]::new);
+        RuleAutomaton[] automata = new RuleAutomaton[symbols.size()];
+        for(RuleAutomaton rule : compiled) {
+            automata[rule.target] = rule;
+        }
+        return new GrammarAnalysis(automata, symbols.idOf(Parser.ENTRY), symbols);
+    }
+    
+    private BitSet set(String... names) {
+        BitSet set = new BitSet();
+        for(String name : names) {
+            set.set(name == null ? symbols.size() : symbols.idOf(name));
+        }
+        return set;
+    }
+
+    /**
+     * Test of first, follow and isNullable methods, of class GrammarAnalysis.
+     */
+    @Test
+    public void testSets() throws Exception {
+        System.out.println("sets");
+        GrammarAnalysis analysis = analyse(
+                "CORE : S_LIST T_END",
+                "S_LIST : S_ITEM? (T_COMMA S_ITEM)?",
+                "S_ITEM : T_SIGN? T_NUM");
+        assertTrue(analysis.isNullable(symbols.idOf("S_LIST")));
+        assertFalse(analysis.isNullable(symbols.idOf("S_ITEM")));
+        assertFalse(analysis.isNullable(symbols.idOf("T_END")));
+        assertEquals(set("T_SIGN", "T_NUM", "T_COMMA", "T_END"), analysis.first(symbols.idOf("CORE")));
+        assertEquals(set("T_SIGN", "T_NUM", "T_COMMA"), analysis.first(symbols.idOf("S_LIST")));
+        assertEquals(set("T_NUM"), analysis.first(symbols.idOf("T_NUM")));
+        assertEquals(set((String) null), analysis.follow(symbols.idOf("CORE")));
+        assertEquals(set("T_END"), analysis.follow(symbols.idOf("S_LIST")));
+        assertEquals(set("T_COMMA", "T_END"), analysis.follow(symbols.idOf("S_ITEM")));
+        assertEquals(symbols.size(), analysis.eof);
+    }
+    
+    /**
+     * Test of getUnproductive and getUnreachable methods, of class
+     * GrammarAnalysis.
+     */
+    @Test
+    public void testProblems() throws Exception {
+        System.out.println("problems");
+        GrammarAnalysis analysis = analyse(
+                "CORE : S_A",
+                "CORE : S_B",
+                "S_A : T_X",
+                "S_B : T_Y S_LOOP",
+                "S_LOOP : T_Z S_LOOP",
+                "S_UNUSED : T_X");
+        assertEquals(set("S_B", "S_LOOP"), analysis.getUnproductive());
+        assertEquals(set("S_UNUSED"), analysis.getUnreachable());
+        assertTrue(analysis.isProductive(symbols.idOf("CORE")));
+        assertTrue(analysis.isReachable(symbols.idOf("T_Z")));
+        String problems = analysis.describeProblems(symbols);
+        assertTrue(problems.contains("S_LOOP can never match"));
+        assertTrue(problems.contains("S_UNUSED is not used by CORE"));
+        assertTrue(analyse("CORE : T_X").describeProblems(symbols).isEmpty());
+    }
+    
+    /**
+     * Test of getUndefined method, of class GrammarAnalysis. A module marks
+     * every symbol that its lexical rules don't produce as a nonterminal, so
+     * a misspelt rule name is reported rather than taken for a token
+     */
+    @Test
+    public void testUndefined() throws Exception {
+        System.out.println("undefined");
+        symbols.intern("T_A");
+        symbols.internNonterminal("S_MISSING");
+        GrammarAnalysis analysis = analyse(
+                "CORE : S_MISSING T_A",
+                "CORE : S_LATER",
+                "S_LATER : S_MISSING");
+        assertEquals(set("S_MISSING"), analysis.getUndefined());
+        assertFalse(analysis.isProductive(symbols.idOf("S_MISSING")));
+        assertEquals(set("CORE", "S_LATER"), analysis.getUnproductive());
+        assertTrue(analysis.isProductive(symbols.idOf("T_A")));
+        assertTrue(analysis.describeProblems(symbols)
+                .contains("Symbol S_MISSING is used by CORE, S_LATER but has no rule"));
+    }
+    
+    /**
+     * Test of getLeftRecursive method, of class GrammarAnalysis.
+     */
+    @Test
+    public void testLeftRecursion() throws Exception {
+        System.out.println("leftRecursion");
+        GrammarAnalysis analysis = analyse(
+                "CORE : S_SUM",
+                "S_SUM : S_TERM T_PLUS S_SUM",
+                "S_SUM : S_TERM",
+                "S_TERM : S_OPT S_TERM T_TIMES T_NUM",
+                "S_TERM : T_NUM",
+                "S_OPT : T_SIGN?");
+        assertEquals(set("S_TERM"), analysis.getLeftRecursive());
+        assertTrue(analysis.leftCorners(symbols.idOf("S_SUM")).get(symbols.idOf("S_TERM")));
+        assertFalse(analysis.isLeftRecursive(symbols.idOf("S_SUM")));
+    }
+}
@@ -30,6 +30,8 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package co.louiscap.moka.parser;
 
 import co.louiscap.moka.exceptions.InvalidFormatException;
+import co.louiscap.moka.exceptions.MismatchedRuleTargetException;
+import co.louiscap.moka.utils.data.SymbolTable;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -70,6 +72,83 @@ public class LangRuleTest {
         });
         assertEquals("Incorrect number of rules", c.c, seqs.size());
     }
+    
+    /**
+     * Optional parts inside an optional group should be optional on their
+     * own, rather than being dropped or required
+     */
+    @Test
+    public void testNestedOptional() throws InvalidFormatException {
+        System.out.println("nestedOptional");
+        LangRule r = new LangRule("S_ASSIGN : (T_VAR T_SPACE?)? T_IDENT");
+        Set<String> seqs = new HashSet<>();
+        r.sequences.forEach(seq -> seqs.add(String.join(" ", seq)));
+        assertEquals(3, r.sequences.size());
+        assertEquals(new HashSet<>(Arrays.asList("T_VAR T_SPACE T_IDENT", "T_VAR T_IDENT", "T_IDENT")), seqs);
+    }
+    
+    /**
+     * Each optional part should add a single position to the compiled rule,
+     * not double the number of sequences
+     */
+    @Test
+    public void testCompile() throws InvalidFormatException {
+        System.out.println("compile");
+        StringBuilder src = new StringBuilder("S_LONG :");
+        for(int i = 0; i < 40; i += 1) {
+            src.append(" T_A").append(i).append("?");
+        }
+        LangRule r = new LangRule(src.toString());
+        SymbolTable symbols = new SymbolTable();
+        RuleAutomaton compiled = r.compile(symbols);
+        assertEquals(40, compiled.size());
+        assertTrue(compiled.isNullable());
+        assertEquals(40, compiled.first().length);
+        assertEquals(symbols.idOf("S_LONG"), compiled.target);
+        assertTrue(symbols.isNonterminal(compiled.target));
+        assertEquals(Integer.MAX_VALUE, r.sequences.size());
+    }
+    
+    /**
+     * Test of toString method, of class LangRule, which should render the
+     * rules as written rather than every sequence they match
+     */
+    @Test
+    public void testToString() throws Exception {
+        System.out.println("toString");
+        StringBuilder src = new StringBuilder("S_LONG :");
+        for(int i = 0; i < 40; i += 1) {
+            src.append(" T_A").append(i).append("?");
+        }
+        LangRule r = new LangRule(src.toString());
+        assertEquals("Target: S_LONG\n\t" + src.substring("S_LONG :".length()).trim(), r.toString());
+        
+        LangRule merged = new RuleMerger(new LangRule("S_X : T_A T_B?"), new LangRule("S_X : (T_C T_D)?"))
+                .getRules().iterator().next();
+        assertEquals("Target: S_X\n\tT_A T_B?\n\t(T_C T_D)?", merged.toString());
+    }
+    
+    /**
+     * Test of merge method, of class LangRule.
+     */
+    @Test
+    public void testMerge() throws Exception {
+        System.out.println("merge");
+        LangRule a = new LangRule("S_X : T_A T_B?");
+        LangRule b = new LangRule("S_X : T_C");
+        LangRule merged = new RuleMerger(a, b).getRules().iterator().next();
+        assertEquals(3, merged.sequences.size());
+        assertEquals(2, a.sequences.size());
+        RuleAutomaton compiled = merged.compile(new SymbolTable());
+        assertEquals(3, compiled.size());
+        assertArrayEquals(new int[]{0, 2}, compiled.first());
+        try {
+            merged.merge(new LangRule("S_Y : T_A"));
+            fail("Expected a mismatched target");
+        } catch (MismatchedRuleTargetException ex) {
+        }
+    }
+    
     private class MutableBoolean {
         public boolean state;
         private MutableBoolean(boolean state) {
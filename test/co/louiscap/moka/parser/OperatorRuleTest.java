@@ -0,0 +1,180 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser;
+
+import co.louiscap.moka.exceptions.LanguageSyntaxException;
+import co.louiscap.moka.lexer.Token;
+import co.louiscap.moka.parser.forest.Disambiguator;
+import co.louiscap.moka.translator.tree.TreeNode;
+import co.louiscap.moka.utils.data.Location;
+import co.louiscap.moka.utils.data.SymbolTable;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class OperatorRuleTest {
+    
+    public OperatorRuleTest() {
+    }
+    
+    private static Parser parser(Parser.Engine engine) throws Exception {
+        Parser parser = new Parser(new LangRule[]{
+            new LangRule("CORE : S_EXPR"),
+            new LangRule("S_EXPR : S_EXPR T_PLUS S_EXPR"),
+            new LangRule("S_EXPR : S_EXPR T_MINUS S_EXPR"),
+            new LangRule("S_EXPR : S_EXPR T_TIMES S_EXPR"),
+            new LangRule("S_EXPR : S_EXPR T_POW S_EXPR"),
+            new LangRule("S_EXPR : S_EXPR T_LESS S_EXPR"),
+            new LangRule("S_EXPR : T_LP S_EXPR T_RP"),
+            new LangRule("S_EXPR : T_NUM")
+        }, new Precedence[]{
+            new Precedence("%nonassoc T_LESS"),
+            new Precedence("%left T_PLUS T_MINUS"),
+            new Precedence("%left T_TIMES"),
+            new Precedence("%right T_POW")
+        }, new SymbolTable());
+        parser.setEngine(engine);
+        return parser;
+    }
+    
+    /**
+     * Lex an expression in which every character is a token
+     */
+    private static Token[] tokens(String src) {
+        Location loc = new Location("expr", 1, 0);
+        Token[] tokens = new Token[src.length()];
+        for(int i = 0; i < tokens.length; i += 1) {
+            char c = src.charAt(i);
+            String type = "+-*^<()".indexOf(c) < 0 ? "T_NUM"
+                    : new String[]{"T_PLUS", "T_MINUS", "T_TIMES", "T_POW", "T_LESS", "T_LP", "T_RP"}["+-*^<()".indexOf(c)];
+            tokens[i] = new Token(type, Character.toString(c), loc);
+        }
+        return tokens;
+    }
+    
+    /**
+     * Write out the grouping of a tree of S_EXPR nodes with brackets
+     */
+    private static String group(TreeNode node) {
+        if(node.content != null) {
+            return node.content;
+        }
+        StringBuilder sb = new StringBuilder();
+        for(TreeNode child : node.leaves) {
+            sb.append(group(child));
+        }
+        return node.leaves.size() == 3 && node.leaves.get(1).content != null
+                && "+-*^<".contains(node.leaves.get(1).content) ? "[" + sb + "]" : sb.toString();
+    }
+    
+    private static String parse(String src, Parser.Engine engine) throws Exception {
+        TreeNode tree = parser(engine).parse(tokens(src), "expr");
+        assertEquals(src.length(), tree.end);
+        return group(tree.leaves.get(0));
+    }
+
+    /**
+     * Test of group method, of class OperatorRule.
+     */
+    @Test
+    public void testGroup() throws Exception {
+        System.out.println("group");
+        for(Parser.Engine engine : Parser.Engine.values()) {
+            assertEquals("1", parse("1", engine));
+            assertEquals("[[1-2]+3]", parse("1-2+3", engine));
+            assertEquals("[1+[2*3]]", parse("1+2*3", engine));
+            assertEquals("[[1*2]+3]", parse("1*2+3", engine));
+            assertEquals("[1^[2^3]]", parse("1^2^3", engine));
+            assertEquals("[[1+2]<[3*[4^5]]]", parse("1+2<3*4^5", engine));
+            assertEquals("[([1+2])*3]", parse("(1+2)*3", engine));
+        }
+    }
+    
+    /**
+     * Every node of a grouped tree should cover the tokens below it, and be a
+     * node of the rule as written
+     */
+    @Test
+    public void testShape() throws Exception {
+        System.out.println("shape");
+        TreeNode expr = parser(Parser.Engine.GLL).parse(tokens("1+2*3"), "expr").leaves.get(0);
+        assertEquals("S_EXPR", expr.id);
+        assertEquals(0, expr.start);
+        assertEquals(5, expr.end);
+        assertEquals(3, expr.leaves.size());
+        TreeNode product = expr.leaves.get(2);
+        assertEquals("S_EXPR", product.id);
+        assertEquals(2, product.start);
+        assertEquals(5, product.end);
+        assertEquals("T_TIMES", product.leaves.get(1).id);
+        TreeNode one = expr.leaves.get(0);
+        assertEquals(1, one.leaves.size());
+        assertEquals("T_NUM", one.leaves.get(0).id);
+        Parser parser = parser(Parser.Engine.GLL);
+        TreeNode fromForest = parser.toTree(parser.parseForest(tokens("1+2*3"), "expr"), Disambiguator.FIRST);
+        assertEquals("[1+[2*3]]", group(fromForest.leaves.get(0)));
+    }
+    
+    /**
+     * Looking for operator alternatives shouldn't expand the optional parts
+     * of a rule into every sequence they allow
+     */
+    @Test(timeout = 10000)
+    public void testManyOptionals() throws Exception {
+        System.out.println("manyOptionals");
+        StringBuilder src = new StringBuilder("S_LONG : T_PLUS");
+        for(int i = 0; i < 40; i += 1) {
+            src.append(" T_A").append(i).append("?");
+        }
+        Parser parser = new Parser(new LangRule[]{
+            new LangRule("CORE : S_EXPR S_LONG?"),
+            new LangRule("S_EXPR : S_EXPR T_PLUS S_EXPR"),
+            new LangRule("S_EXPR : T_NUM"),
+            new LangRule(src.toString())
+        }, new Precedence[]{
+            new Precedence("%left T_PLUS")
+        }, new SymbolTable());
+        parser.setEngine(Parser.Engine.GLL);
+        TreeNode tree = parser.parse(tokens("1+2+3+"), "expr");
+        assertEquals("[[1+2]+3]", group(tree.leaves.get(0)));
+        assertEquals("S_LONG", tree.leaves.get(1).id);
+    }
+    
+    /**
+     * Operators with no associativity can't follow each other
+     */
+    @Test(expected = LanguageSyntaxException.class)
+    public void testNonassoc() throws Exception {
+        System.out.println("nonassoc");
+        parse("1<2<3", Parser.Engine.GLL);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser;
+
+import co.louiscap.moka.exceptions.LanguageSyntaxException;
+import co.louiscap.moka.lexer.Lexer;
+import co.louiscap.moka.lexer.Token;
+import co.louiscap.moka.translator.tree.TreeNode;
+import co.louiscap.moka.utils.data.Location;
+import co.louiscap.moka.utils.data.SymbolTable;
+import java.util.ArrayDeque;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class PackratParseTest {
+    
+    public PackratParseTest() {
+    }
+    
+    private static TreeNode parse(String src, long memoLimit) throws LanguageSyntaxException {
+        Lexer lexer = new Lexer(ParserTest.lexRules);
+        lexer.setStripWhitespace(true);
+        Parser parser = new Parser(ParserTest.langRules);
+        parser.setEngine(Parser.Engine.PACKRAT);
+        parser.setMemoLimit(memoLimit);
+        return parser.parse(lexer.process(src, "prog.ajs"), "prog.ajs");
+    }
+    
+    private static Token[] sum(int terms) {
+        Location loc = new Location("sum", 1, 0);
+        Token[] tokens = new Token[terms * 2 - 1];
+        for(int i = 0; i < tokens.length; i += 1) {
+            tokens[i] = i % 2 == 0 ? new Token("T_NUM", Integer.toString(i / 2), loc) : new Token("T_PLUS", "+", loc);
+        }
+        return tokens;
+    }
+
+    /**
+     * Test of run method, of class PackratParse.
+     */
+    @Test
+    public void testRun() throws Exception {
+        System.out.println("run");
+        ParserTest.setUpClass();
+        TreeNode tree = parse("RIGHTLY name#\nVERILY \"Hello \" + name + x#", Parser.DEFAULT_MEMO_LIMIT);
+        assertEquals("CORE", tree.id);
+        assertEquals(10, tree.end);
+        TreeNode print = tree.leaves.get(0).leaves.get(1).leaves.get(0);
+        assertEquals("S_PRINT_OUT", print.id);
+        TreeNode phrase = print.leaves.get(1);
+        assertEquals(3, phrase.leaves.size());
+        assertEquals(2, phrase.loc.line);
+    }
+    
+    /**
+     * Every node of a parsed tree should carry the id of its symbol in the
+     * parser's table
+     */
+    @Test
+    public void testSymbols() throws Exception {
+        System.out.println("symbols");
+        ParserTest.setUpClass();
+        Lexer lexer = new Lexer(ParserTest.lexRules);
+        lexer.setStripWhitespace(true);
+        SymbolTable symbols = lexer.getSymbols();
+        Parser parser = new Parser(ParserTest.langRules, symbols);
+        parser.setEngine(Parser.Engine.PACKRAT);
+        ArrayDeque<TreeNode> nodes = new ArrayDeque<>();
+        nodes.push(parser.parse(lexer.process("RIGHTLY name#\nVERILY \"Hello \" + name#", "prog.ajs"), "prog.ajs"));
+        while(!nodes.isEmpty()) {
+            TreeNode node = nodes.pop();
+            assertEquals(node.id, symbols.nameOf(node.symbol));
+            node.leaves.forEach(nodes::push);
+        }
+    }
+    
+    /**
+     * A directly left recursive rule should be grown into a left nested tree,
+     * even though its other path is written first
+     */
+    @Test
+    public void testLeftRecursion() throws Exception {
+        System.out.println("leftRecursion");
+        Parser parser = new Parser(new LangRule[]{
+            new LangRule("CORE : S_SUM"),
+            new LangRule("S_SUM : T_NUM"),
+            new LangRule("S_SUM : S_SUM T_PLUS T_NUM")
+        });
+        parser.setEngine(Parser.Engine.PACKRAT);
+        TreeNode sum = parser.parse(sum(4), "sum").leaves.get(0);
+        int depth = 0;
+        while(sum.leaves.size() == 3) {
+            assertEquals("S_SUM", sum.leaves.get(0).id);
+            assertEquals(Integer.toString(3 - depth), sum.leaves.get(2).content);
+            sum = sum.leaves.get(0);
+            depth += 1;
+        }
+        assertEquals(3, depth);
+        assertEquals("0", sum.leaves.get(0).content);
+    }
+    
+    /**
+     * A token whose type is named like a nonterminal shouldn't be matched as
+     * a whole subtree of that nonterminal, just as the GLL engine rejects it
+     */
+    @Test
+    public void testNonterminalToken() throws Exception {
+        System.out.println("nonterminalToken");
+        Token[] tokens = {new Token("S_SUM", "1", new Location("sum", 1, 0))};
+        for(Parser.Engine engine : Parser.Engine.values()) {
+            Parser parser = new Parser(new LangRule[]{
+                new LangRule("CORE : S_SUM"),
+                new LangRule("S_SUM : T_NUM"),
+                new LangRule("S_SUM : S_SUM T_PLUS T_NUM")
+            });
+            parser.setEngine(engine);
+            try {
+                parser.parse(tokens, "sum");
+                fail("Expected a syntax error from " + engine);
+            } catch (LanguageSyntaxException ex) {
+                assertEquals(1, ex.loc.line);
+            }
+        }
+    }
+    
+    /**
+     * A memo table too small to hold the whole input should give the same
+     * tree as one that can
+     */
+    @Test
+    public void testEviction() throws Exception {
+        System.out.println("eviction");
+        ParserTest.setUpClass();
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 200; i += 1) {
+            sb.append("RIGHTLY name").append(i).append("#\nVERILY \"Hi \" + name").append(i).append("#\n");
+        }
+        TreeNode expResult = parse(sb.toString(), Parser.DEFAULT_MEMO_LIMIT);
+        TreeNode result = parse(sb.toString(), 2048);
+        assertEquals(1600, result.end);
+        assertEquals(expResult.toString(), result.toString());
+    }
+    
+    /**
+     * Any non negative memory limit should be accepted, however large, and a
+     * negative one refused
+     */
+    @Test
+    public void testMemoLimit() throws Exception {
+        System.out.println("memoLimit");
+        ParserTest.setUpClass();
+        TreeNode expResult = parse("RIGHTLY name#\nVERILY \"Hello \" + name#", Parser.DEFAULT_MEMO_LIMIT);
+        TreeNode result = parse("RIGHTLY name#\nVERILY \"Hello \" + name#", Long.MAX_VALUE);
+        assertEquals(expResult.toString(), result.toString());
+        try {
+            new Parser(ParserTest.langRules).setMemoLimit(-1);
+            fail("Expected a negative limit to be refused");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains("-1"));
+        }
+    }
+    
+    /**
+     * Errors should be reported at the furthest token that any rule reached
+     */
+    @Test
+    public void testSyntaxError() throws Exception {
+        System.out.println("syntaxError");
+        ParserTest.setUpClass();
+        try {
+            parse("RIGHTLY name#\nVERILY \"Hello \" + + name#", Parser.DEFAULT_MEMO_LIMIT);
+            fail("Expected a syntax error");
+        } catch (LanguageSyntaxException ex) {
+            assertEquals(2, ex.loc.line);
+            assertEquals(18, ex.loc.column);
+            assertTrue(ex.getMessage().contains("T_IDENT"));
+        }
+    }
+    
+}
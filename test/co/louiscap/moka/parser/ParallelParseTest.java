@@ -0,0 +1,151 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser;
+
+import co.louiscap.moka.exceptions.LanguageSyntaxException;
+import co.louiscap.moka.lexer.Lexer;
+import co.louiscap.moka.lexer.TokenBuffer;
+import co.louiscap.moka.translator.tree.TreeNode;
+import co.louiscap.moka.utils.data.SymbolTable;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class ParallelParseTest {
+    
+    private static ForkJoinPool pool;
+    
+    public ParallelParseTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        ParserTest.setUpClass();
+        pool = new ForkJoinPool(4);
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+        pool.shutdown();
+    }
+    
+    private static TokenBuffer program(int statements, String last) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for(int s = 0; s < statements; s += 1) {
+            sb.append(s % 3 == 0 ? "RIGHTLY name" + s + "#\n" : "VERILY \"Hello \" + name + x" + s + "#\n");
+        }
+        sb.append(last);
+        Lexer lexer = new Lexer(ParserTest.lexRules);
+        lexer.setStripWhitespace(true);
+        return lexer.stream(sb, "prog.ajs").toBuffer();
+    }
+    
+    private static Parser parser(Parser.Engine engine) {
+        Parser parser = new Parser(ParserTest.langRules);
+        parser.setEngine(engine);
+        parser.setStatementBoundary("T_EOL");
+        assertEquals("T_EOL", parser.getStatementBoundary());
+        return parser;
+    }
+
+    /**
+     * Test of run method, of class ParallelParse.
+     */
+    @Test
+    public void testRun() throws Exception {
+        System.out.println("run");
+        TokenBuffer tokens = program(2000, "VERILY done#");
+        assertTrue(tokens.size() > 4 * ParallelParse.MIN_CHUNK_TOKENS);
+        for(Parser.Engine engine : Parser.Engine.values()) {
+            Parser parser = parser(engine);
+            TreeNode sequential = parser.parse(tokens);
+            TreeNode parallel = parser.parseParallel(tokens, pool);
+            assertEquals(sequential.toString(), parallel.toString());
+            assertEquals(tokens.size(), parallel.end);
+            // Spot check the positions of a statement near the end
+            TreeNode line = parallel.leaves.get(0);
+            TreeNode expected = sequential.leaves.get(0);
+            for(int s = 0; s < 1500; s += 1) {
+                line = line.leaves.get(1);
+                expected = expected.leaves.get(1);
+            }
+            assertEquals(expected.leaves.get(0).start, line.leaves.get(0).start);
+            assertEquals(expected.leaves.get(0).end, line.leaves.get(0).end);
+            assertEquals(expected.leaves.get(0).loc, line.leaves.get(0).loc);
+        }
+    }
+    
+    /**
+     * Only rules that end with the boundary and never contain it elsewhere
+     * are parsed as statements
+     */
+    @Test
+    public void testStatements() throws Exception {
+        System.out.println("statements");
+        SymbolTable symbols = new SymbolTable();
+        Parser parser = new Parser(ParserTest.langRules, symbols);
+        BitSet statements = parser.getAnalysis().statements(symbols.idOf("T_EOL"));
+        assertTrue(statements.get(symbols.idOf("S_READ_IN")));
+        assertTrue(statements.get(symbols.idOf("S_PRINT_OUT")));
+        assertFalse(statements.get(symbols.idOf("S_LINE")));
+        assertFalse(statements.get(symbols.idOf("CORE")));
+        assertFalse(statements.get(symbols.idOf("S_PHRASE")));
+        assertNull(parser.getStatementBoundary());
+    }
+    
+    /**
+     * A syntax error is reported just as a sequential parse reports it
+     */
+    @Test
+    public void testSyntaxError() throws Exception {
+        System.out.println("syntaxError");
+        TokenBuffer tokens = program(2000, "VERILY + done#");
+        Parser parser = parser(Parser.Engine.GLL);
+        String expected = null;
+        try {
+            parser.parse(tokens);
+            fail();
+        } catch (LanguageSyntaxException ex) {
+            expected = ex.getMessage();
+        }
+        try {
+            parser.parseParallel(tokens, pool);
+            fail();
+        } catch (LanguageSyntaxException ex) {
+            assertEquals(expected, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser;
+
+import co.louiscap.moka.exceptions.LanguageSyntaxException;
+import co.louiscap.moka.lexer.LexRule;
+import co.louiscap.moka.lexer.Lexer;
+import co.louiscap.moka.lexer.Token;
+import co.louiscap.moka.lexer.TokenBuffer;
+import co.louiscap.moka.translator.tree.TreeNode;
+import co.louiscap.moka.utils.data.Location;
+import co.louiscap.moka.utils.string.TextEdit;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class ParserTest {
+    
+    public static LexRule[] lexRules;
+    public static LangRule[] langRules;
+    
+    public ParserTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        lexRules = new LexRule[]{
+            new LexRule(5, "T_ANNOUNCE", "VERILY"),
+            new LexRule(5, "T_READ", "RIGHTLY"),
+            new LexRule(5, "T_CONCAT", "\\+"),
+            new LexRule(5, "T_EOL", "#"),
+            new LexRule(10, "T_IDENT", "([A-Za-z]\\w*)"),
+            new LexRule(15, "T_STRING", "\"((?:.(?!\"))*.)\"")
+        };
+        langRules = new LangRule[]{
+            new LangRule("S_LINE : S_READ_IN S_LINE?"),
+            new LangRule("S_LINE : S_PRINT_OUT S_LINE?"),
+            new LangRule("CORE : S_LINE"),
+            new LangRule("S_READ_IN : T_READ T_IDENT T_EOL"),
+            new LangRule("S_PRINT_OUT : T_ANNOUNCE S_PHRASE T_EOL"),
+            new LangRule("S_PHRASE : T_IDENT"),
+            new LangRule("S_PHRASE : T_STRING"),
+            new LangRule("S_PHRASE : S_PHRASE T_CONCAT S_PHRASE")
+        };
+    }
+    
+    private static TreeNode parse(String src) throws LanguageSyntaxException {
+        Lexer lexer = new Lexer(lexRules);
+        lexer.setStripWhitespace(true);
+        return new Parser(langRules).parse(lexer.process(src, "prog.ajs"), "prog.ajs");
+    }
+
+    /**
+     * Test of parse method, of class Parser.
+     */
+    @Test
+    public void testParse() throws Exception {
+        System.out.println("parse");
+        TreeNode tree = parse("RIGHTLY name#\nVERILY \"Hello \" + name#");
+        assertEquals("CORE", tree.id);
+        assertEquals(0, tree.start);
+        assertEquals(8, tree.end);
+        TreeNode first = tree.leaves.get(0);
+        assertEquals("S_LINE", first.id);
+        assertEquals("S_READ_IN", first.leaves.get(0).id);
+        TreeNode ident = first.leaves.get(0).leaves.get(1);
+        assertEquals("T_IDENT", ident.id);
+        assertEquals("name", ident.content);
+        assertEquals(new Location("prog.ajs", 1, 8), ident.loc);
+        TreeNode print = first.leaves.get(1).leaves.get(0);
+        assertEquals("S_PRINT_OUT", print.id);
+        assertEquals(3, print.leaves.size());
+        assertEquals("S_PHRASE", print.leaves.get(1).id);
+        assertEquals(3, print.leaves.get(1).leaves.size());
+        assertEquals(2, print.loc.line);
+    }
+    
+    /**
+     * Long chains of an ambiguous, left recursive rule have exponentially many
+     * trees, but should still parse in polynomial time
+     */
+    @Test(timeout = 20000)
+    public void testAmbiguous() throws Exception {
+        System.out.println("ambiguous");
+        StringBuilder sb = new StringBuilder("VERILY a");
+        for(int i = 0; i < 150; i += 1) {
+            sb.append(" + a");
+        }
+        TreeNode tree = parse(sb.append("#").toString());
+        assertEquals(303, tree.end);
+    }
+    
+    /**
+     * Directly and indirectly left recursive rules, and rules that can match
+     * nothing at all
+     */
+    @Test
+    public void testLeftRecursion() throws Exception {
+        System.out.println("leftRecursion");
+        Parser parser = new Parser(new LangRule[]{
+            new LangRule("CORE : S_SUM"),
+            new LangRule("S_SUM : S_SUM T_PLUS T_NUM"),
+            new LangRule("S_SUM : S_PAD S_SUM T_MINUS T_NUM"),
+            new LangRule("S_SUM : T_NUM"),
+            new LangRule("S_PAD : T_SPACE?")
+        });
+        Location loc = new Location("sum", 1, 0);
+        Token[] tokens = {
+            new Token("T_NUM", "1", loc),
+            new Token("T_PLUS", "+", loc),
+            new Token("T_NUM", "2", loc),
+            new Token("T_MINUS", "-", loc),
+            new Token("T_NUM", "3", loc)
+        };
+        TreeNode sum = parser.parse(tokens, "sum").leaves.get(0);
+        assertEquals(4, sum.leaves.size());
+        assertEquals("S_PAD", sum.leaves.get(0).id);
+        assertTrue(sum.leaves.get(0).leaves.isEmpty());
+        TreeNode inner = sum.leaves.get(1);
+        assertEquals("S_SUM", inner.id);
+        assertEquals(3, inner.leaves.size());
+        assertEquals("1", inner.leaves.get(0).leaves.get(0).content);
+    }
+    
+    /**
+     * Rules with optional groups should match every combination of their
+     * optional parts
+     */
+    @Test
+    public void testOptionalGroups() throws Exception {
+        System.out.println("optionalGroups");
+        Parser parser = new Parser(new LangRule[]{
+            new LangRule("CORE : S_ASSIGN"),
+            new LangRule("S_ASSIGN : (T_VAR T_WS?)? T_IDENT T_WS? T_ASSIGN T_WS? (T_NUM)")
+        });
+        Location loc = new Location("assign", 1, 0);
+        Token[] full = {
+            new Token("T_VAR", "var", loc),
+            new Token("T_WS", " ", loc),
+            new Token("T_IDENT", "x", loc),
+            new Token("T_WS", " ", loc),
+            new Token("T_ASSIGN", "=", loc),
+            new Token("T_NUM", "1", loc)
+        };
+        assertEquals(6, parser.parse(full, "assign").leaves.get(0).leaves.size());
+        Token[] bare = {full[0], full[2], full[4], full[5]};
+        TreeNode assign = parser.parse(bare, "assign").leaves.get(0);
+        assertEquals(4, assign.leaves.size());
+        assertEquals("T_VAR", assign.leaves.get(0).id);
+        try {
+            parser.parse(new Token[]{full[1], full[2], full[4], full[5]}, "assign");
+            fail("Expected a syntax error");
+        } catch (LanguageSyntaxException ex) {
+            assertTrue(ex.getMessage().contains("T_VAR"));
+        }
+    }
+    
+    /**
+     * Errors should be reported at the furthest token any rule could reach
+     */
+    @Test
+    public void testSyntaxError() throws Exception {
+        System.out.println("syntaxError");
+        try {
+            parse("RIGHTLY name#\nVERILY \"Hello \" + + name#");
+            fail("Expected a syntax error");
+        } catch (LanguageSyntaxException ex) {
+            assertEquals(2, ex.loc.line);
+            assertEquals(18, ex.loc.column);
+            assertTrue(ex.getMessage().contains("T_IDENT"));
+        }
+        try {
+            parse("RIGHTLY name#\nVERILY \"Hello \" +");
+            fail("Expected a syntax error");
+        } catch (LanguageSyntaxException ex) {
+            assertTrue(ex.getMessage().startsWith("Unexpected end of input"));
+        }
+    }
+    
+    /**
+     * Test of reparse method, of class Parser. Each edit should give the same
+     * tree as parsing from scratch, keeping the subtrees that it didn't touch
+     */
+    @Test
+    public void testReparse() throws Exception {
+        System.out.println("reparse");
+        Lexer lexer = new Lexer(lexRules);
+        lexer.setStripWhitespace(true);
+        Parser parser = new Parser(langRules);
+        String src = "RIGHTLY name#\nVERILY \"Hello \" + name#\nRIGHTLY other#";
+        TokenBuffer tokens = lexer.stream(src, "prog.ajs").toBuffer();
+        TreeNode tree = parser.parse(tokens);
+        TreeNode read = tree.leaves.get(0).leaves.get(0);
+        TreeNode last = tree.leaves.get(0).leaves.get(1).leaves.get(1).leaves.get(0);
+        TextEdit[] edits = {
+            new TextEdit(12, 0, "s"),
+            new TextEdit(15, 0, "VERILY x#\n"),
+            new TextEdit(src.length() + 11, 0, "\n\nVERILY y#")
+        };
+        for(TextEdit edit : edits) {
+            src = edit.apply(src);
+            tokens = lexer.relex(tokens, edit);
+            tree = parser.reparse(tree, tokens);
+            TreeNode expResult = parser.parse(lexer.stream(src, "prog.ajs").toBuffer());
+            assertEquals(expResult.toString(), tree.toString());
+            assertSameLocations(expResult, tree);
+            assertEquals(tokens.size(), tree.end);
+        }
+        assertEquals("names", tree.leaves.get(0).leaves.get(0).leaves.get(1).content);
+        TreeNode moved = tree.leaves.get(0).leaves.get(1).leaves.get(1).leaves.get(1).leaves.get(0);
+        assertSame(last, moved);
+        assertEquals(new Location("prog.ajs", 4, 0), moved.loc);
+        assertEquals(11, moved.start);
+        assertNotSame(read, tree.leaves.get(0).leaves.get(0));
+        
+        try {
+            parser.reparse(tree, lexer.relex(tokens, new TextEdit(8, 5, "+")));
+            fail("Expected a syntax error");
+        } catch (LanguageSyntaxException ex) {
+            assertEquals(1, ex.loc.line);
+        }
+        
+        // Joining two lines moves the rule that starts at the relexed token
+        src = "VERILY x#\nVERILY y#\nRIGHTLY z#";
+        tree = parser.parse(lexer.stream(src, "prog.ajs").toBuffer());
+        tokens = lexer.relex(lexer.stream(src, "prog.ajs").toBuffer(), new TextEdit(9, 2, "V"));
+        tree = parser.reparse(tree, tokens);
+        TreeNode expResult = parser.parse(lexer.stream(new TextEdit(9, 2, "V").apply(src), "prog.ajs").toBuffer());
+        assertEquals(expResult.toString(), tree.toString());
+        assertSameLocations(expResult, tree);
+    }
+    
+    /**
+     * Assert that every node of two trees of the same shape has the same
+     * location
+     */
+    private static void assertSameLocations(TreeNode expected, TreeNode actual) {
+        assertEquals(expected.id + "[" + expected.start + "," + expected.end + "]", expected.loc, actual.loc);
+        assertEquals(expected.leaves.size(), actual.leaves.size());
+        for(int i = 0; i < expected.leaves.size(); i += 1) {
+            assertSameLocations(expected.leaves.get(i), actual.leaves.get(i));
+        }
+    }
+    
+}
@@ -0,0 +1,77 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser;
+
+import co.louiscap.moka.exceptions.InvalidFormatException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class PrecedenceTest {
+    
+    public PrecedenceTest() {
+    }
+
+    /**
+     * Test of the constructor of class Precedence.
+     */
+    @Test
+    public void testParse() throws Exception {
+        System.out.println("parse");
+        Precedence p = new Precedence("  %right T_POW   T_EXP ");
+        assertEquals(Precedence.Associativity.RIGHT, p.associativity);
+        assertArrayEquals(new String[]{"T_POW", "T_EXP"}, p.operators);
+        assertEquals("%right T_POW T_EXP", p.toString());
+        assertTrue(Precedence.isDeclaration("%left T_PLUS"));
+        assertFalse(Precedence.isDeclaration("S_EXPR : T_NUM"));
+        LangFile file = new LangFile("test", "%left T_PLUS\nS_EXPR : S_EXPR T_PLUS S_EXPR\n%nonassoc T_LESS");
+        assertEquals(2, file.getPrecedences().length);
+        assertEquals(Precedence.Associativity.NONASSOC, file.getPrecedences()[1].associativity);
+        assertEquals(1, file.getRules().length);
+    }
+    
+    /**
+     * Declarations must have a known associativity and at least one token
+     */
+    @Test
+    public void testInvalid() {
+        System.out.println("invalid");
+        for(String src : new String[]{"%left", "%prec T_PLUS"}) {
+            try {
+                new Precedence(src);
+                fail(src);
+            } catch (InvalidFormatException ex) {
+                // Expected
+            }
+        }
+    }
+}
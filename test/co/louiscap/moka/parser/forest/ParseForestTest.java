@@ -0,0 +1,128 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser.forest;
+
+import co.louiscap.moka.lexer.Token;
+import co.louiscap.moka.parser.LangRule;
+import co.louiscap.moka.parser.Parser;
+import co.louiscap.moka.translator.tree.TreeNode;
+import co.louiscap.moka.utils.data.Location;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class ParseForestTest {
+    
+    public ParseForestTest() {
+    }
+    
+    /**
+     * A sum of the given number of terms, under a grammar that doesn't say
+     * which way round they group; so there are Catalan(terms - 1) trees
+     */
+    private static ParseForest sum(int terms) throws Exception {
+        Parser parser = new Parser(new LangRule[]{
+            new LangRule("CORE : S_SUM"),
+            new LangRule("S_SUM : S_SUM T_PLUS S_SUM"),
+            new LangRule("S_SUM : T_NUM")
+        });
+        Location loc = new Location("sum", 1, 0);
+        Token[] tokens = new Token[terms * 2 - 1];
+        for(int i = 0; i < tokens.length; i += 1) {
+            tokens[i] = i % 2 == 0 ? new Token("T_NUM", Integer.toString(i / 2), loc) : new Token("T_PLUS", "+", loc);
+        }
+        return parser.parseForest(tokens, "sum");
+    }
+
+    /**
+     * Test of size and isAmbiguous methods, of class ParseForest.
+     */
+    @Test
+    public void testSharing() throws Exception {
+        System.out.println("sharing");
+        // 24 terms have over 10^11 trees
+        ParseForest forest = sum(24);
+        int tokens = 47;
+        assertTrue(forest.isAmbiguous());
+        assertTrue(forest.size() < tokens * tokens * tokens);
+        assertEquals(0, forest.getRoot().start);
+        assertEquals(tokens, forest.getRoot().end);
+        assertSame(forest.getRoot(), forest.find(forest.getRoot().label, false, 0, tokens));
+        assertFalse(sum(1).isAmbiguous());
+    }
+    
+    /**
+     * Test of toTree method, of class ParseForest.
+     */
+    @Test
+    public void testToTree() throws Exception {
+        System.out.println("toTree");
+        ParseForest forest = sum(6);
+        int[] asked = {0};
+        // The smallest pivot groups to the right, the largest to the left
+        TreeNode right = forest.toTree(node -> {
+            asked[0] += 1;
+            int best = 0;
+            for(int d = 1; d < node.derivations(); d += 1) {
+                if(node.derivation(d).pivot < node.derivation(best).pivot) {
+                    best = d;
+                }
+            }
+            return best;
+        });
+        TreeNode left = forest.toTree(node -> {
+            int best = 0;
+            for(int d = 1; d < node.derivations(); d += 1) {
+                if(node.derivation(d).pivot > node.derivation(best).pivot) {
+                    best = d;
+                }
+            }
+            return best;
+        });
+        // Only the ambiguous nodes that make it into the tree are asked about
+        assertEquals(4, asked[0]);
+        TreeNode sum = right.leaves.get(0);
+        for(int term = 0; term < 5; term += 1) {
+            assertEquals(3, sum.leaves.size());
+            assertEquals(Integer.toString(term), sum.leaves.get(0).leaves.get(0).content);
+            sum = sum.leaves.get(2);
+        }
+        sum = left.leaves.get(0);
+        for(int term = 5; term > 0; term -= 1) {
+            assertEquals(3, sum.leaves.size());
+            assertEquals(Integer.toString(term), sum.leaves.get(2).leaves.get(0).content);
+            sum = sum.leaves.get(0);
+        }
+        assertEquals("0", sum.leaves.get(0).content);
+        assertEquals(11, forest.toTree().end);
+    }
+}
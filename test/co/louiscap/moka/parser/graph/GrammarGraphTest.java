@@ -0,0 +1,100 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.parser.graph;
+
+import static co.louiscap.moka.parser.graph.GraphRelations.*;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class GrammarGraphTest {
+    
+    public GrammarGraphTest() {
+    }
+    
+    private static GrammarGraph sample() {
+        return new GrammarGraph.Builder(5)
+                .addEdge(3, THEN, 4, 30)
+                .addEdge(0, THEN, 2, 10)
+                .addEdge(0, THEN, 1, 11)
+                .addEdge(0, TERMINATES, 4, 12)
+                .addEdge(3, THEN, 0, 31)
+                .addEdge(0, THEN, 2, 99)
+                .build();
+    }
+
+    /**
+     * Edges should come back grouped by node and sorted by target, with
+     * repeated edges dropped
+     */
+    @Test
+    public void testEdges() {
+        System.out.println("edges");
+        GrammarGraph graph = sample();
+        assertEquals(5, graph.size());
+        assertEquals(2, graph.degree(THEN, 0));
+        assertEquals(0, graph.degree(THEN, 1));
+        assertEquals(1, graph.degree(TERMINATES, 0));
+        int e = graph.first(THEN, 0);
+        assertEquals(1, graph.target(THEN, e));
+        assertEquals(11, graph.label(THEN, e));
+        assertEquals(2, graph.target(THEN, e + 1));
+        assertEquals(10, graph.label(THEN, e + 1));
+        assertEquals(e + 2, graph.end(THEN, 0));
+        int f = graph.first(THEN, 3);
+        assertEquals(0, graph.target(THEN, f));
+        assertEquals(4, graph.target(THEN, f + 1));
+        assertEquals(0, graph.degree(THEN, 4));
+    }
+
+    /**
+     * Test of hasEdge method, of class GrammarGraph.
+     */
+    @Test
+    public void testHasEdge() {
+        System.out.println("hasEdge");
+        GrammarGraph graph = sample();
+        assertTrue(graph.hasEdge(THEN, 0, 2));
+        assertTrue(graph.hasEdge(TERMINATES, 0, 4));
+        assertFalse(graph.hasEdge(THEN, 0, 4));
+        assertFalse(graph.hasEdge(THEN, 2, 0));
+        assertEquals(31, graph.label(THEN, graph.find(THEN, 3, 0)));
+        assertEquals(-1, graph.find(TERMINATES, 3, 4));
+    }
+    
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testAddEdgeOutOfRange() {
+        System.out.println("addEdgeOutOfRange");
+        new GrammarGraph.Builder(2).addEdge(0, THEN, 2, 0);
+    }
+    
+}
@@ -0,0 +1,109 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.translator;
+
+import co.louiscap.moka.exceptions.InvalidFormatException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class InterpFileTest {
+    
+    public InterpFileTest() {
+    }
+
+    /**
+     * Test of getTranslations method, of class InterpFile.
+     */
+    @Test
+    public void testGetTranslations() throws Exception {
+        System.out.println("getTranslations");
+        InterpFile file = new InterpFile("test", "# Handlers\r\n"
+                + "@Pattern(\"S_VAR_DEC T_EOL\")\r\n"
+                + "def S_STATEMENT_VAR_DEC(var, eol):\r\n"
+                + "    \"\"\"Evaluates an S_STATEMENT node\"\"\"\r\n"
+                + "    return var + \";\";\r\n"
+                + "\r\n"
+                + "@Token(\"T_IDENT\")\n"
+                + "def T_IDENT(identifier):\n"
+                + "  \"\"\"Evaluates\n"
+                + "  an Identifier\"\"\"\n"
+                + "\n"
+                + "  if identifier:\n"
+                + "      return identifier\n");
+        Translation[] result = file.getTranslations();
+        assertEquals(2, result.length);
+        
+        assertEquals(Translation.Kind.PATTERN, result[0].kind);
+        assertArrayEquals(new String[]{"S_VAR_DEC", "T_EOL"}, result[0].pattern);
+        assertEquals("S_STATEMENT_VAR_DEC", result[0].name);
+        assertArrayEquals(new String[]{"var", "eol"}, result[0].parameters);
+        assertEquals("Evaluates an S_STATEMENT node", result[0].doc);
+        assertEquals("return var + \";\";", result[0].body);
+        assertEquals(3, result[0].line);
+        
+        assertEquals(Translation.Kind.TOKEN, result[1].kind);
+        assertEquals("Evaluates\nan Identifier", result[1].doc);
+        assertEquals("if identifier:\n    return identifier", result[1].body);
+    }
+    
+    /**
+     * Every malformed handler is reported, the first as the thrown exception
+     * and the rest as its suppressed exceptions
+     */
+    @Test
+    public void testInvalid() {
+        System.out.println("invalid");
+        try {
+            new InterpFile("test", "@Pattern(\"T_A T_B\")\n"
+                    + "def S_ONE(a):\n"
+                    + "    return a\n"
+                    + "@Token(\"T_A T_B\")\n"
+                    + "def T_A(a, b):\n"
+                    + "    return a\n"
+                    + "@Pattern(\"T_A\")\n"
+                    + "def S_TWO(a):\n"
+                    + "    return a\n"
+                    + "return 1\n"
+                    + "@Pattern(\"T_A\")\n"
+                    + "def S_THREE(a):\n");
+            fail("Expected the malformed handlers to be reported");
+        } catch (InvalidFormatException ex) {
+            assertTrue(ex.getMessage().contains("Line 2"));
+            Throwable[] rest = ex.getSuppressed();
+            assertEquals(3, rest.length);
+            assertTrue(rest[0].getMessage().contains("Line 4"));
+            assertTrue(rest[1].getMessage().contains("Line 10"));
+            assertTrue(rest[2].getMessage().contains("Line 12"));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.translator;
+
+import co.louiscap.moka.translator.tree.TreeNode;
+import co.louiscap.moka.utils.data.SymbolTable;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class TranslationCacheTest {
+    
+    public TranslationCacheTest() {
+    }
+    
+    private static TreeNode statement(String name) {
+        TreeNode node = new TreeNode("S_STATEMENT");
+        node.addChild(new TreeNode("T_VAR", "var", null, -1, -1));
+        node.addChild(new TreeNode("T_IDENT", name, null, -1, -1));
+        return node;
+    }
+    
+    private static TreeNode program(String... names) {
+        TreeNode root = new TreeNode("S_PROGRAM");
+        for(String name : names) {
+            root.addChild(statement(name));
+        }
+        return root;
+    }
+
+    /**
+     * Test of memoising a translator, of class TranslationCache.
+     */
+    @Test
+    public void testTranslate() throws Exception {
+        System.out.println("translate");
+        SymbolTable symbols = new SymbolTable();
+        symbols.intern("T_VAR");
+        symbols.intern("T_IDENT");
+        symbols.internNonterminal("S_STATEMENT");
+        symbols.internNonterminal("S_PROGRAM");
+        Translator translator = new Translator(new TranslationTable(new InterpFile("test",
+                "@Pattern(\"T_VAR T_IDENT\")\n"
+                + "def S_STATEMENT(v, ident):\n"
+                + "    if ident == 'NONE':\n"
+                + "        return None\n"
+                + "    return 'let ' + ident + ';'\n"
+                + "@Token(\"T_IDENT\")\n"
+                + "def T_IDENT(ident):\n"
+                + "    return ident.upper()\n").getTranslations(), symbols));
+        String expected = translator.translate(program("a", "b", "a", "none", "a", "none"));
+        assertEquals("let A;let B;let A;let A;", expected);
+        
+        TranslationCache cache = new TranslationCache(100);
+        translator.setCache(cache);
+        assertEquals(expected, translator.translate(program("a", "b", "a", "none", "a", "none")));
+        // Each of a, b and none is translated once, as a token and as a
+        // statement
+        assertEquals(6, cache.getMisses());
+        assertEquals(6, cache.getHits());
+        assertEquals(6, cache.size());
+        
+        // Results are kept between translations
+        assertEquals("let B;let C;", translator.translate(program("b", "c")));
+        assertEquals(8, cache.getMisses());
+        assertEquals(8, cache.getHits());
+        
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(8, cache.getHits());
+    }
+    
+    /**
+     * The shapes numbered while translating one large tree should be bounded
+     * by the capacity of the cache, without changing the translation
+     */
+    @Test
+    public void testBoundedShapes() throws Exception {
+        System.out.println("boundedShapes");
+        SymbolTable symbols = new SymbolTable();
+        symbols.intern("T_VAR");
+        symbols.intern("T_IDENT");
+        symbols.internNonterminal("S_STATEMENT");
+        symbols.internNonterminal("S_PROGRAM");
+        Translator translator = new Translator(new TranslationTable(new InterpFile("test",
+                "@Pattern(\"T_VAR T_IDENT\")\n"
+                + "def S_STATEMENT(v, ident):\n"
+                + "    return ident + ';'\n").getTranslations(), symbols));
+        String[] names = new String[200];
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0; i < names.length; i += 1) {
+            names[i] = "n" + (i % 50);
+            expected.append(names[i]).append(';');
+        }
+        TranslationCache cache = new TranslationCache(2);
+        translator.setCache(cache);
+        assertEquals(expected.toString(), translator.translate(program(names)));
+        assertTrue(cache.shapes().size() <= 2 * TranslationCache.SHAPES_PER_RESULT);
+        assertTrue(cache.size() <= 2);
+    }
+    
+    /**
+     * The cache only keeps the most recently used results
+     */
+    @Test
+    public void testCapacity() {
+        System.out.println("capacity");
+        TranslationCache cache = new TranslationCache(2);
+        cache.store(0, 0, "a");
+        cache.store(0, 1, "b");
+        assertEquals("a", cache.lookup(0, 0));
+        cache.store(1, 0, null);
+        assertEquals(2, cache.size());
+        assertSame(TranslationCache.MISSING, cache.lookup(0, 1));
+        assertNull(cache.lookup(1, 0));
+        assertEquals("a", cache.lookup(0, 0));
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        System.out.println("invalidCapacity");
+        new TranslationCache(0);
+    }
+}
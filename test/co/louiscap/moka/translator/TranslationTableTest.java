@@ -0,0 +1,157 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.translator;
+
+import co.louiscap.moka.translator.tree.TreeNode;
+import co.louiscap.moka.utils.data.SymbolTable;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class TranslationTableTest {
+    
+    public TranslationTableTest() {
+    }
+    
+    private static SymbolTable symbols() {
+        SymbolTable symbols = new SymbolTable();
+        for(String token : new String[]{"T_VAR", "T_IDENT", "T_EOL"}) {
+            symbols.intern(token);
+        }
+        symbols.internNonterminal("S_STATEMENT");
+        symbols.internNonterminal("S_VAR_DEC");
+        return symbols;
+    }
+    
+    private static TreeNode node(String id, String... children) {
+        TreeNode node = new TreeNode(id);
+        for(String child : children) {
+            node.addChild(new TreeNode(child, "x", null, -1, -1));
+        }
+        return node;
+    }
+
+    /**
+     * Test of lookup method, of class TranslationTable.
+     */
+    @Test
+    public void testLookup() throws Exception {
+        System.out.println("lookup");
+        InterpFile file = new InterpFile("test", "@Pattern(\"S_VAR_DEC T_EOL\")\n"
+                + "def S_STATEMENT_VAR_DEC(var, eol):\n"
+                + "    return var\n"
+                + "@Pattern(\"T_VAR T_IDENT\")\n"
+                + "def S_VAR_DEC(dec, ident):\n"
+                + "    return ident\n"
+                + "@Pattern(\"T_IDENT\")\n"
+                + "def anything(ident):\n"
+                + "    return ident\n"
+                + "@Pattern(\"T_IDENT\")\n"
+                + "def S_STATEMENT_IDENT(ident):\n"
+                + "    return ident\n"
+                + "@Token(\"T_IDENT\")\n"
+                + "def T_IDENT(identifier):\n"
+                + "    return identifier\n"
+                + "@Pattern(\"T_UNKNOWN\")\n"
+                + "def S_VAR_DEC_UNKNOWN(u):\n"
+                + "    return u\n"
+                + "@Pattern(\"T_IDENT T_UNKNOWN T_EOL\")\n"
+                + "def S_VAR_DEC_UNKNOWN_MIDDLE(ident, u, eol):\n"
+                + "    return u\n");
+        TranslationTable table = new TranslationTable(file.getTranslations(), symbols());
+        assertEquals(7, table.getTranslations().length);
+        
+        TreeNode statement = node("S_STATEMENT", "S_VAR_DEC", "T_EOL");
+        assertEquals("S_STATEMENT_VAR_DEC", table.lookup(statement).name);
+        assertEquals("S_VAR_DEC", table.lookup(node("S_VAR_DEC", "T_VAR", "T_IDENT")).name);
+        // A handler for the node's own nonterminal beats a wildcard
+        assertEquals("S_STATEMENT_IDENT", table.lookup(node("S_STATEMENT", "T_IDENT")).name);
+        assertEquals("anything", table.lookup(node("S_VAR_DEC", "T_IDENT")).name);
+        assertEquals("T_IDENT", table.lookup(new TreeNode("T_IDENT", "a", null, 0, 1)).name);
+        
+        assertNull(table.lookup(node("S_VAR_DEC", "T_VAR")));
+        assertNull(table.lookup(node("S_STATEMENT", "S_VAR_DEC", "T_EOL", "T_EOL")));
+        assertNull(table.lookup(new TreeNode("T_EOL", "#", null, 0, 1)));
+        assertNull(table.lookup(node("S_UNKNOWN", "T_IDENT")));
+        // A pattern with an unknown symbol matches nothing, wherever the
+        // symbol is in the pattern
+        assertNull(table.lookup(node("S_VAR_DEC", "T_IDENT", "T_MISSING", "T_EOL")));
+        assertNull(table.lookup(node("S_VAR_DEC", "T_IDENT", "T_MISSING", "T_VAR")));
+    }
+    
+    /**
+     * Nodes are looked up by the symbol id they carry, falling back to their
+     * name when the id belongs to another table
+     */
+    @Test
+    public void testSymbolIds() throws Exception {
+        System.out.println("symbolIds");
+        InterpFile file = new InterpFile("test", "@Pattern(\"T_VAR T_IDENT\")\n"
+                + "def S_VAR_DEC(dec, ident):\n"
+                + "    return ident\n");
+        SymbolTable symbols = symbols();
+        TranslationTable table = new TranslationTable(file.getTranslations(), symbols);
+        
+        TreeNode dec = new TreeNode("S_VAR_DEC", symbols.idOf("S_VAR_DEC"), null, null, -1, -1);
+        dec.addChild(new TreeNode("T_VAR", symbols.idOf("T_VAR"), "var", null, -1, -1));
+        dec.addChild(new TreeNode("T_IDENT", symbols.idOf("T_IDENT"), "x", null, -1, -1));
+        assertEquals("S_VAR_DEC", table.lookup(dec).name);
+        
+        TreeNode stale = new TreeNode("S_VAR_DEC", symbols.idOf("S_STATEMENT"), null, null, -1, -1);
+        stale.addChild(new TreeNode("T_VAR", symbols.idOf("T_EOL"), "var", null, -1, -1));
+        stale.addChild(new TreeNode("T_IDENT", symbols.size() + 10, "x", null, -1, -1));
+        assertEquals("S_VAR_DEC", table.lookup(stale).name);
+    }
+    
+    /**
+     * When two handlers match the same nodes, the first one wins
+     */
+    @Test
+    public void testShadowed() throws Exception {
+        System.out.println("shadowed");
+        InterpFile file = new InterpFile("test", "@Pattern(\"T_IDENT\")\n"
+                + "def S_STATEMENT_FIRST(ident):\n"
+                + "    return ident\n"
+                + "@Pattern(\"T_IDENT\")\n"
+                + "def S_STATEMENT(ident):\n"
+                + "    return ident\n"
+                + "@Token(\"T_EOL\")\n"
+                + "def eol(e):\n"
+                + "    return e\n"
+                + "@Token(\"T_EOL\")\n"
+                + "def T_EOL(e):\n"
+                + "    return e\n");
+        TranslationTable table = new TranslationTable(file.getTranslations(), symbols());
+        assertEquals("S_STATEMENT_FIRST", table.lookup(node("S_STATEMENT", "T_IDENT")).name);
+        assertEquals("eol", table.lookup(new TreeNode("T_EOL", "#", null, 0, 1)).name);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.translator;
+
+import co.louiscap.moka.exceptions.InvalidFormatException;
+import co.louiscap.moka.exceptions.TranslationException;
+import co.louiscap.moka.translator.tree.TreeNode;
+import co.louiscap.moka.utils.data.Location;
+import co.louiscap.moka.utils.data.SymbolTable;
+import java.io.StringWriter;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class TranslatorTest {
+    
+    public TranslatorTest() {
+    }
+    
+    private static Translator translator(String interp) throws InvalidFormatException {
+        SymbolTable symbols = new SymbolTable();
+        for(String token : new String[]{"T_READ", "T_IDENT", "T_STRING", "T_EOL"}) {
+            symbols.intern(token);
+        }
+        symbols.internNonterminal("S_LINE");
+        symbols.internNonterminal("S_READ_IN");
+        return new Translator(new TranslationTable(new InterpFile("test", interp).getTranslations(), symbols));
+    }
+    
+    private static TreeNode token(String id, String content) {
+        return new TreeNode(id, content, new Location("test", 1, 1), 0, 1);
+    }
+    
+    private static TreeNode tree() {
+        TreeNode read = new TreeNode("S_READ_IN");
+        read.addChild(token("T_READ", "RIGHTLY"));
+        read.addChild(token("T_IDENT", "name"));
+        read.addChild(token("T_EOL", "#"));
+        TreeNode line = new TreeNode("S_LINE");
+        line.addChild(read);
+        line.addChild(token("T_STRING", "hi"));
+        return line;
+    }
+
+    /**
+     * Test of translate method, of class Translator.
+     */
+    @Test
+    public void testTranslate() throws Exception {
+        System.out.println("translate");
+        Translator translator = translator("@Pattern(\"T_READ T_IDENT T_EOL\")\n"
+                + "def S_READ_IN(read, ident, eol):\n"
+                + "    return 'var ' + ident.upper() + eol\n"
+                + "@Token(\"T_EOL\")\n"
+                + "def T_EOL(eol):\n"
+                + "    return ';'\n");
+        // S_LINE and T_STRING have no handler
+        assertEquals("var NAME;hi", translator.translate(tree()));
+        assertNotNull(translator.getHandler(0));
+        
+        StringWriter out = new StringWriter();
+        translator.translate(tree(), out);
+        assertEquals("var NAME;hi", out.toString());
+    }
+    
+    /**
+     * Right recursive rules build trees as deep as their input is long
+     */
+    @Test
+    public void testDeep() throws Exception {
+        System.out.println("deep");
+        Translator translator = translator("@Pattern(\"S_READ_IN S_LINE\")\n"
+                + "def S_LINE_MORE(read, rest):\n"
+                + "    return read + rest\n"
+                + "@Pattern(\"T_IDENT\")\n"
+                + "def S_READ_IN(ident):\n"
+                + "    return ident + ';'\n");
+        TreeNode root = new TreeNode("S_LINE");
+        TreeNode at = root;
+        for(int i = 0; i < 200000; i += 1) {
+            TreeNode read = new TreeNode("S_READ_IN");
+            read.addChild(token("T_IDENT", "x"));
+            TreeNode rest = new TreeNode("S_LINE");
+            at.addChild(read);
+            at.addChild(rest);
+            at = rest;
+        }
+        String result = translator.translate(root);
+        assertEquals(400000, result.length());
+        assertTrue(result.startsWith("x;x;"));
+    }
+    
+    /**
+     * A handler that fails to compile stops the translator from being
+     * created, and one that fails to run stops the translation
+     */
+    @Test
+    public void testErrors() throws Exception {
+        System.out.println("errors");
+        try {
+            translator("@Pattern(\"T_READ T_IDENT T_EOL\")\n"
+                    + "def S_READ_IN(read, ident, eol):\n"
+                    + "    return missing\n");
+            fail("Expected a handler that doesn't compile to be rejected");
+        } catch (InvalidFormatException ex) {
+            // Expected
+        }
+        Translator translator = translator("@Token(\"T_STRING\")\n"
+                + "def T_STRING(s):\n"
+                + "    return len(s) > s\n");
+        try {
+            translator.translate(tree());
+            fail();
+        } catch (TranslationException ex) {
+            assertEquals(1, ex.loc.line);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.translator.runtime;
+
+import co.louiscap.moka.exceptions.InvalidFormatException;
+import co.louiscap.moka.translator.Translation;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class HandlerTest {
+    
+    public HandlerTest() {
+    }
+    
+    private static Handler compile(String body, String... parameters) throws InvalidFormatException {
+        String[] pattern = new String[parameters.length];
+        java.util.Arrays.fill(pattern, "T_A");
+        return Handler.compile(new Translation(Translation.Kind.PATTERN, pattern, "S_TEST", parameters, null,
+                body, 1));
+    }
+
+    /**
+     * Test of invoke method, of class Handler.
+     */
+    @Test
+    public void testInvoke() throws Exception {
+        System.out.println("invoke");
+        assertEquals("var x;", compile("return \"var \" + name + ';';", "name").invoke("x"));
+        assertEquals(5L, compile("return len(a) + 2", "a").invoke("abc"));
+        assertEquals("A-\"B\"\n", compile("return a.upper().replace('B', \"-\\\"B\\\"\\n\")", "a").invoke("ab"));
+        assertEquals(true, compile("return a.strip() == 'x' and not a.startswith('y')", "a").invoke(" x "));
+        assertEquals("fallback", compile("return a or 'fallback'", "a").invoke(""));
+        assertEquals("1", compile("return (a + b)", "a", "b").invoke(null, "1"));
+        assertNull(compile("pass").invoke());
+    }
+    
+    /**
+     * Local variables and branches
+     */
+    @Test
+    public void testStatements() throws Exception {
+        System.out.println("statements");
+        Handler h = compile("# Pick a keyword\n"
+                + "kind = a.lower()\n"
+                + "if kind == 'let':\n"
+                + "    result = 'let '\n"
+                + "elif kind == \"const\":\n"
+                + "    return 'const ' + b\n"
+                + "else:\n"
+                + "    if len(b) > 3:\n"
+                + "        return 'long'\n"
+                + "    result = 'var '\n"
+                + "\n"
+                + "return result + b;", "a", "b");
+        assertEquals("let x", h.invoke("LET", "x"));
+        assertEquals("const x", h.invoke("const", "x"));
+        assertEquals("var x", h.invoke("other", "x"));
+        assertEquals("long", h.invoke("other", "xxxx"));
+        assertEquals("S_TEST", h.translation.name);
+    }
+    
+    /**
+     * Only the supported subset of the language can be compiled
+     */
+    @Test
+    public void testInvalid() {
+        System.out.println("invalid");
+        String[] bodies = {
+            "return b",
+            "import os",
+            "while True:\n    pass",
+            "return a.__class__",
+            "return open(a)",
+            "return len(a, a)",
+            "if a:\nreturn a",
+            "return a\n  return a",
+            "else:\n    return a",
+            "return 'unterminated",
+            "return a +",
+            "return a $ a"
+        };
+        for(String body : bodies) {
+            try {
+                compile(body, "a");
+                fail(body);
+            } catch (InvalidFormatException ex) {
+                // Expected
+            }
+        }
+    }
+    
+    /**
+     * Handlers must be given one argument for each parameter
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testArity() throws Exception {
+        System.out.println("arity");
+        compile("return a", "a").invoke("x", "y");
+    }
+}
@@ -0,0 +1,85 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.translator.tree;
+
+import co.louiscap.moka.utils.data.Location;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class HashConsTableTest {
+    
+    public HashConsTableTest() {
+    }
+    
+    private static TreeNode phrase(String first, String second, int at) {
+        TreeNode node = new TreeNode("S_PHRASE");
+        node.addChild(new TreeNode("T_STRING", first, new Location("a", 1, at), at, at + 1));
+        node.addChild(new TreeNode("T_CONCAT", "+", new Location("a", 1, at + 1), at + 1, at + 2));
+        node.addChild(new TreeNode("T_IDENT", second, new Location("a", 1, at + 2), at + 2, at + 3));
+        return node;
+    }
+
+    /**
+     * Test of intern method, of class HashConsTable.
+     */
+    @Test
+    public void testIntern() {
+        System.out.println("intern");
+        HashConsTable table = new HashConsTable();
+        int a = table.intern(phrase("x", "y", 0));
+        // Where a subtree is doesn't change its shape
+        int b = table.intern(phrase("x", "y", 10));
+        int c = table.intern(phrase("x", "z", 0));
+        int d = table.intern(phrase("y", "x", 0));
+        assertEquals(a, b);
+        assertNotEquals(a, c);
+        assertNotEquals(a, d);
+        assertEquals(table.hashOf(a), table.hashOf(b));
+        assertNotEquals(table.hashOf(a), table.hashOf(c));
+        // T_STRING x, T_CONCAT, T_IDENT y, z, T_STRING y, T_IDENT x, and
+        // three phrases
+        assertEquals(9, table.size());
+        
+        TreeNode line = new TreeNode("S_LINE");
+        line.addChild(phrase("x", "y", 0));
+        line.addChild(phrase("x", "y", 3));
+        TreeNode other = new TreeNode("S_LINE");
+        other.addChild(phrase("x", "y", 0));
+        assertNotEquals(table.intern(line), table.intern(other));
+        assertEquals(11, table.size());
+        
+        table.clear();
+        assertEquals(0, table.size());
+        assertEquals(0, table.intern(new TreeNode("S_EMPTY")));
+    }
+}
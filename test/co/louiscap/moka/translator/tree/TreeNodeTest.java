@@ -0,0 +1,78 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.translator.tree;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class TreeNodeTest {
+    
+    public TreeNodeTest() {
+    }
+
+    /**
+     * Test of toString method, of class TreeNode.
+     */
+    @Test
+    public void testToString() {
+        System.out.println("toString");
+        TreeNode root = new TreeNode("S_LINE");
+        root.addChild(new TreeNode("T_IDENT", "a", null, 0, 1));
+        root.addChild(new TreeNode("S_LINE"));
+        assertEquals("S_LINE\n  T_IDENT `a`\n  S_LINE", root.toString());
+    }
+    
+    /**
+     * The rendering of a right recursive tree should grow in proportion to
+     * the tree, not to the square of its depth
+     */
+    @Test
+    public void testToStringDeep() {
+        System.out.println("toStringDeep");
+        int depth = 20000;
+        TreeNode root = new TreeNode("S_LINE");
+        TreeNode node = root;
+        for(int i = 1; i < depth; i += 1) {
+            TreeNode child = new TreeNode("S_LINE");
+            node.addChild(child);
+            node = child;
+        }
+        String rendered = root.toString();
+        String[] lines = rendered.split("\n");
+        assertEquals(depth, lines.length);
+        assertEquals("S_LINE", lines[0]);
+        assertTrue(lines[TreeNode.MAX_INDENT].startsWith("  S_LINE", TreeNode.MAX_INDENT * 2 - 2));
+        assertTrue(lines[depth - 1].endsWith("[" + (depth - 1) + "] S_LINE"));
+        assertTrue(rendered.length() < depth * (TreeNode.MAX_INDENT * 2 + 16));
+    }
+}
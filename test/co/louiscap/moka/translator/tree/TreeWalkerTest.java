@@ -0,0 +1,120 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.translator.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class TreeWalkerTest {
+    
+    public TreeWalkerTest() {
+    }
+    
+    private static TreeNode node(String id, TreeNode... children) {
+        TreeNode node = new TreeNode(id);
+        for(TreeNode child : children) {
+            node.addChild(child);
+        }
+        return node;
+    }
+
+    /**
+     * Test of walk method, of class TreeWalker.
+     */
+    @Test
+    public void testWalk() {
+        System.out.println("walk");
+        TreeNode tree = node("A", node("B", node("C"), node("D")), node("E"), node("F", node("G")));
+        ArrayList<String> entered = new ArrayList<>();
+        String result = TreeWalker.walk(tree, new TreeVisitor<String, RuntimeException>() {
+            @Override
+            public boolean enter(TreeNode node) {
+                entered.add(node.id);
+                return !node.id.equals("F");
+            }
+
+            @Override
+            public String leave(TreeNode node, List<String> children) {
+                return node.id + children;
+            }
+        });
+        assertEquals("A[B[C[], D[]], E[], F[]]", result);
+        assertEquals("[A, B, C, D, E, F]", entered.toString());
+        
+        assertEquals("A", TreeWalker.walk(node("A"), (node, children) -> node.id));
+    }
+    
+    /**
+     * Trees as deep as a long input are walked without overflowing the call
+     * stack
+     */
+    @Test
+    public void testDeep() {
+        System.out.println("deep");
+        int depth = 1000000;
+        TreeNode root = node("N");
+        TreeNode at = root;
+        for(int i = 1; i < depth; i += 1) {
+            TreeNode child = node("N");
+            if(i % 2 == 0) {
+                at.addChild(node("L"));
+            }
+            at.addChild(child);
+            at = child;
+        }
+        int result = TreeWalker.walk(root, (node, children) -> {
+            int sum = 1;
+            for(int child : children) {
+                sum += child;
+            }
+            return sum;
+        });
+        assertEquals(depth + (depth - 1) / 2, result);
+    }
+    
+    /**
+     * Exceptions thrown by the visitor stop the walk
+     */
+    @Test(expected = Exception.class)
+    public void testThrows() throws Exception {
+        System.out.println("throws");
+        TreeWalker.walk(node("A", node("B")), (node, children) -> {
+            if(node.id.equals("B")) {
+                throw new Exception(node.id);
+            }
+            return node.id;
+        });
+    }
+}
@@ -134,4 +134,55 @@ public class DirectedMultiStoreTest {
         assertArrayEquals(expResult, result);
     }
     
+    /**
+     * Test of the cursor returned by from, of class DirectedMultiStore.
+     */
+    @Test
+    public void testFromCursor() {
+        System.out.println("fromCursor");
+        DirectedMultiStore<TestRelations> instance = newdms();
+        instance.add("T_Milo", TestRelations.THAT, "T_phul");
+        instance.add("T_phul", TestRelations.THIS, "S_fark");
+        instance.add("T_Milo", TestRelations.THAT, "S_fark");
+        instance.add("T_Milo", TestRelations.THAT, "T_phul");
+        DirectedMultiStore<TestRelations>.Cursor cursor = instance.from("T_Milo", TestRelations.THAT);
+        assertEquals(2, cursor.count());
+        assertTrue(cursor.next());
+        assertEquals("T_Milo", cursor.object());
+        assertEquals(TestRelations.THAT, cursor.relation());
+        assertEquals("T_phul", cursor.subject());
+        assertTrue(cursor.next());
+        assertEquals("S_fark", cursor.subject());
+        assertFalse(cursor.next());
+        assertFalse(instance.from("T_nobody", TestRelations.THAT).next());
+        assertEquals(0, instance.between("T_phul", "T_Milo").count());
+    }
+    
+    /**
+     * Ids that contain the old separator, or sort after it, should be stored
+     * like any other id
+     */
+    @Test
+    public void testAwkwardIds() {
+        System.out.println("awkwardIds");
+        DirectedMultiStore<TestRelations> instance = newdms();
+        instance.add("a::b", TestRelations.THIS, "c");
+        instance.add("a", TestRelations.THIS, "b::c");
+        instance.add("~", TestRelations.THEOTHER, "~~");
+        assertEquals(3, instance.size());
+        assertTrue(instance.contains("a::b", TestRelations.THIS, "c"));
+        assertFalse(instance.contains("a", TestRelations.THIS, "c"));
+        assertEquals(2, instance.getRelationsOfType(TestRelations.THIS).length);
+        DirectedMultiStore<TestRelations>.Cursor cursor = instance.between("~", "~~");
+        assertTrue(cursor.next());
+        assertEquals(TestRelations.THEOTHER, cursor.relation());
+        
+        DirectedMultiStore<TestRelations> other = newdms();
+        other.add("~", TestRelations.THEOTHER, "~~");
+        other.add("a", TestRelations.THIS, "b::c");
+        other.add("a::b", TestRelations.THIS, "c");
+        assertEquals(instance, other);
+        assertEquals(instance.hashCode(), other.hashCode());
+    }
+    
 }
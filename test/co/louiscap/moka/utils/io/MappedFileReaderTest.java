@@ -0,0 +1,98 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.utils.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class MappedFileReaderTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    public MappedFileReaderTest() {
+    }
+    
+    private File write(String contents, Charset charset) throws IOException {
+        File f = folder.newFile();
+        FileUtils.writeStringToFile(f, contents, charset);
+        return f;
+    }
+
+    /**
+     * Multi-byte characters that are split across two mapped segments must
+     * still be decoded correctly
+     */
+    @Test
+    public void testSegmentBoundaries() throws IOException {
+        System.out.println("segmentBoundaries");
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 500; i += 1) {
+            sb.append("VERILY \"café ☃ 😀\"#\n");
+        }
+        String expResult = sb.toString();
+        File f = write(expResult, StandardCharsets.UTF_8);
+        for(long segment : new long[]{16, 17, 33, 1000}) {
+            MappedFileReader reader = new MappedFileReader(f, StandardCharsets.UTF_8, segment);
+            assertEquals(expResult, IOUtils.toString(reader));
+            reader.close();
+        }
+    }
+    
+    @Test
+    public void testEncoding() throws IOException {
+        System.out.println("encoding");
+        String expResult = "RIGHTLY naïve#";
+        File f = write(expResult, StandardCharsets.UTF_16LE);
+        MappedFileReader reader = new MappedFileReader(f, StandardCharsets.UTF_16LE);
+        assertEquals(expResult, IOUtils.toString(reader));
+        reader.close();
+    }
+    
+    @Test
+    public void testEmptyFile() throws IOException {
+        System.out.println("emptyFile");
+        File f = write("", StandardCharsets.UTF_8);
+        MappedFileReader reader = new MappedFileReader(f, StandardCharsets.UTF_8);
+        assertEquals(-1, reader.read(new char[8], 0, 8));
+        reader.close();
+    }
+}
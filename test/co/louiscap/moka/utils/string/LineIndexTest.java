@@ -0,0 +1,132 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.utils.string;
+
+import co.louiscap.moka.utils.data.Location;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class LineIndexTest {
+    
+    public static final String SOURCE = "one\r\ntwo\rthree\n\nfive\r";
+    
+    public LineIndexTest() {
+    }
+
+    /**
+     * Test of lineOf and columnOf methods, of class LineIndex.
+     */
+    @Test
+    public void testLineOf() {
+        System.out.println("lineOf");
+        LineIndex instance = new LineIndex(SOURCE);
+        assertEquals(StringUtils.linesInString(SOURCE), instance.lineCount());
+        assertEquals(1, instance.lineOf(0));
+        assertEquals(1, instance.lineOf(4));
+        assertEquals(2, instance.lineOf(5));
+        assertEquals(3, instance.lineOf(9));
+        assertEquals(4, instance.lineOf(15));
+        assertEquals(5, instance.lineOf(16));
+        assertEquals(6, instance.lineOf(21));
+        assertEquals(2, instance.columnOf(11));
+        assertEquals(new Location("src", 3, 3), instance.locate("src", 12));
+    }
+    
+    /**
+     * Extending an index a character at a time, including between the two
+     * characters of a \r\n, should give the same lines as building it in one go
+     */
+    @Test
+    public void testExtend() {
+        System.out.println("extend");
+        LineIndex full = new LineIndex(SOURCE);
+        LineIndex instance = new LineIndex(0);
+        for(int i = 0; i < SOURCE.length(); i += 1) {
+            instance.extend(SOURCE, i + 1);
+            for(int j = 0; j < i; j += 1) {
+                assertEquals(full.lineOf(j), instance.lineOf(j));
+            }
+        }
+        assertEquals(full.lineCount(), instance.lineCount());
+    }
+    
+    /**
+     * Test of the Cursor class, moving forwards and backwards
+     */
+    @Test
+    public void testCursor() {
+        System.out.println("cursor");
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 100; i += 1) {
+            sb.append("line").append(i).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        String src = sb.toString();
+        LineIndex instance = new LineIndex(src);
+        LineIndex.Cursor cursor = instance.cursor();
+        for(int offset = 0; offset < src.length(); offset += 3) {
+            assertEquals(instance.lineOf(offset), cursor.lineOf(offset));
+        }
+        assertEquals(1, cursor.lineOf(2));
+        assertEquals(instance.columnOf(400), cursor.columnOf(400));
+    }
+
+    /**
+     * Test of getNewlineIndexes method, of class StringUtils.
+     */
+    @Test
+    public void testGetNewlineIndexes() {
+        System.out.println("getNewlineIndexes");
+        assertArrayEquals(new int[]{5, 9, 15, 16, 21}, StringUtils.getNewlineIndexes(SOURCE));
+        assertArrayEquals(new int[0], StringUtils.getNewlineIndexes("no breaks"));
+    }
+    
+    /**
+     * An index started part way through a source should number its lines
+     * from the line it was started on
+     */
+    @Test
+    public void testStartLine() {
+        System.out.println("startLine");
+        LineIndex full = new LineIndex(SOURCE);
+        LineIndex instance = new LineIndex(9, 3);
+        instance.extend(SOURCE, SOURCE.length());
+        for(int j = 9; j < SOURCE.length(); j += 1) {
+            assertEquals(full.lineOf(j), instance.lineOf(j));
+            assertEquals(full.columnOf(j), instance.columnOf(j));
+        }
+        assertEquals(full.lineCount(), instance.lineCount());
+        assertEquals(16, instance.lineStart(5));
+        assertEquals(4, instance.cursor().lineOf(15));
+    }
+    
+}
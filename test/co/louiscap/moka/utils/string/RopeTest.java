@@ -0,0 +1,107 @@
+/*
+Copyright (c) 2015, Louis Capitanchik
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+* Neither the name of Affogato nor the names of its associated properties or
+  contributors may be used to endorse or promote products derived from
+  this software without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package co.louiscap.moka.utils.string;
+
+import java.io.StringWriter;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * @author Louis Capitanchik
+ */
+public class RopeTest {
+    
+    public RopeTest() {
+    }
+
+    /**
+     * Test of concat method, of class Rope.
+     */
+    @Test
+    public void testConcat() {
+        System.out.println("concat");
+        assertEquals("ab", Rope.concat("a", "b"));
+        assertSame("a", Rope.concat("a", ""));
+        
+        StringBuilder expected = new StringBuilder();
+        CharSequence rope = "";
+        for(int i = 0; i < 200; i += 1) {
+            String piece = "piece " + i + ";";
+            expected.append(piece);
+            rope = i % 2 == 0 ? Rope.concat(rope, piece) : Rope.concat(rope, Rope.concat(piece, ""));
+        }
+        assertTrue(rope instanceof Rope);
+        assertEquals(expected.length(), rope.length());
+        assertEquals(expected.toString(), rope.toString());
+        for(int i = 0; i < expected.length(); i += 37) {
+            assertEquals(expected.charAt(i), rope.charAt(i));
+        }
+        assertEquals(expected.substring(100, 300), rope.subSequence(100, 300));
+    }
+    
+    /**
+     * Joining texts into one longer than a CharSequence can be should be
+     * refused, rather than giving a Rope with a wrapped length
+     */
+    @Test
+    public void testConcatOverflow() {
+        System.out.println("concatOverflow");
+        CharSequence rope = new String(new char[Rope.MIN_LENGTH]);
+        // Each doubling shares the previous rope, so this takes no memory
+        while(rope.length() <= Integer.MAX_VALUE / 2) {
+            rope = Rope.concat(rope, rope);
+        }
+        assertTrue(rope.length() > 0);
+        try {
+            Rope.concat(rope, rope);
+            fail("Expected the join to be refused");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage().contains(Long.toString(2L * rope.length())));
+        }
+    }
+    
+    /**
+     * Test of write method, of class Rope, on a rope nested too deeply to
+     * be written out recursively
+     */
+    @Test
+    public void testWrite() throws Exception {
+        System.out.println("write");
+        CharSequence rope = "";
+        for(int i = 0; i < 500000; i += 1) {
+            rope = i % 2 == 0 ? Rope.concat(rope, "x") : Rope.concat("y", rope);
+        }
+        StringWriter out = new StringWriter();
+        Rope.write(rope, out);
+        assertEquals(500000, out.toString().length());
+        assertTrue(out.toString().startsWith("yyy"));
+        assertTrue(out.toString().endsWith("xxx"));
+    }
+}
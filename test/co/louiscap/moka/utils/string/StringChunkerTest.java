@@ -29,6 +29,9 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 package co.louiscap.moka.utils.string;
 
+import java.nio.CharBuffer;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -162,6 +165,52 @@ public class StringChunkerTest {
         assertEquals(expPos, instance.getPosition());
         assertEquals(expTail, instance.tail());
     }
+    
+    /**
+     * Eating whitespace must never skip over content to reach whitespace
+     * further along the source
+     */
+    @Test
+    public void testEatWhitespaceNoLeadingWhitespace() {
+        System.out.println("eatWhitespace-midstring");
+        String src = "name#\nnext";
+        StringChunker instance = new StringChunker(src);
+        instance.getUntil("#");
+        instance.eatWhitespace();
+        assertEquals(4, instance.getPosition());
+        assertEquals("#\nnext", instance.tail());
+    }
+    
+    /**
+     * Chunks are taken from the current position of the source, and report
+     * offsets relative to the start of the whole source
+     */
+    @Test
+    public void testChunkWith() {
+        System.out.println("chunkWith");
+        Pattern word = Pattern.compile("^([A-Za-z']+)");
+        StringChunker instance = new StringChunker(CharBuffer.wrap(testString));
+        MatchResult first = instance.chunkWith(word);
+        assertEquals("I'm", first.group(1));
+        instance.eatWhitespace();
+        MatchResult second = instance.chunkWith(word);
+        assertEquals("a", second.group());
+        assertEquals(4, second.start());
+        assertEquals(5, instance.getPosition());
+        assertNull(instance.chunkWith(Pattern.compile("^,")));
+        assertEquals(5, instance.getPosition());
+    }
+    
+    @Test
+    public void testGetUntil_String_include() {
+        System.out.println("getUntil-include");
+        StringChunker instance = new StringChunker(testString);
+        assertEquals("I'm a test,", instance.peekUntil(",", true));
+        assertEquals(0, instance.getPosition());
+        assertEquals("I'm a test,", instance.getUntil(",", true));
+        assertEquals(" with various anchor points", instance.getUntil("!"));
+        assertEquals(38, instance.getPosition());
+    }
 //
 //    /**
 //     * Test of getUntil method, of class StringChunker.
@@ -1,24 +1,19 @@
-@Pattern("S_VAR_ASSIGN T_EOL")
-def S_STATEMENT_VAR_ASSIGN(var, eol):
-    """Evaluates an S_STATEMENT(assignment) node"""
-    return var + ";";
+@Pattern("T_READ T_IDENT T_EOL")
+def S_READ_IN(read, ident, eol):
+    """Reads a line of input into a variable"""
+    return "var " + ident + " = prompt();\n"
 
-@Pattern("S_VAR_DEC T_EOL")
-def S_STATEMENT_VAR_DEC(var, eol):
-    """Evaluates an S_STATEMENT node"""
-    return var + ";";
+@Pattern("T_ANNOUNCE S_PHRASE T_EOL")
+def S_PRINT_OUT(announce, phrase, eol):
+    """Prints a phrase"""
+    return "console.log(" + phrase + ");\n"
 
-@Pattern("T_VAR_DEC T_IDENT")
-def S_VAR_DEC(dec, ident):
-    """Evaluates an S_STATEMENT node"""
-    return "var " + ident;
+@Pattern("S_PHRASE T_CONCAT S_PHRASE")
+def S_PHRASE_CONCAT(left, concat, right):
+    """Joins two phrases"""
+    return left + " + " + right
 
-@Pattern("S_VAR_DEC T_ASSIGN S_DATA")
-def S_VAR_ASSIGN(vardec, assign, data):
-    """Evaluates an S_STATEMENT node"""
-    return vardec + "=" + data;
-
-@Token("T_IDENT")
-def T_IDENT(identifier):
-    """Evaluates an Identifier"""
-    return identifier;
+@Token("T_STRING")
+def T_STRING(content):
+    """Quotes a string literal, which the lexer gives without its quotes"""
+    return "\"" + content.replace("\\", "\\\\").replace("\"", "\\\"") + "\""